@@ -0,0 +1,107 @@
+package android.util;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Sostituto di android.util.Log per gli strumenti headless (ReplayBenchmark, RecognitionServer,
+ * SoakTest, i check): il codice di main/ registra con Log anche fuori dal dispositivo, dove
+ * android.jar non c'è. Scrive su stderr i messaggi dal livello -Dspotting.log in su
+ * (VERBOSE, DEBUG, INFO, WARN, ERROR; predefinito INFO).
+ *
+ * Esiste solo nel sorgente jvm/: nell'APK resta la classe del framework.
+ * Classpath: java -cp <tflite>:<classi di main/ e jvm/> com.example.spotting.ReplayBenchmark ...
+ */
+public final class Log {
+
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    private static final String[] LEVEL_NAMES = {"", "", "V", "D", "I", "W", "E"};
+    private static final int MIN_LEVEL = parseLevel(System.getProperty("spotting.log", "INFO"));
+
+    private Log() {
+    }
+
+    public static int v(String tag, String msg) {
+        return println(VERBOSE, tag, msg, null);
+    }
+
+    public static int v(String tag, String msg, Throwable tr) {
+        return println(VERBOSE, tag, msg, tr);
+    }
+
+    public static int d(String tag, String msg) {
+        return println(DEBUG, tag, msg, null);
+    }
+
+    public static int d(String tag, String msg, Throwable tr) {
+        return println(DEBUG, tag, msg, tr);
+    }
+
+    public static int i(String tag, String msg) {
+        return println(INFO, tag, msg, null);
+    }
+
+    public static int i(String tag, String msg, Throwable tr) {
+        return println(INFO, tag, msg, tr);
+    }
+
+    public static int w(String tag, String msg) {
+        return println(WARN, tag, msg, null);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return println(WARN, tag, msg, tr);
+    }
+
+    public static int w(String tag, Throwable tr) {
+        return println(WARN, tag, "", tr);
+    }
+
+    public static int e(String tag, String msg) {
+        return println(ERROR, tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return println(ERROR, tag, msg, tr);
+    }
+
+    public static boolean isLoggable(String tag, int level) {
+        return level >= MIN_LEVEL;
+    }
+
+    private static int println(int level, String tag, String msg, Throwable tr) {
+        if (level < MIN_LEVEL) {
+            return 0;
+        }
+        PrintStream err = System.err;
+        String line = LEVEL_NAMES[level] + "/" + tag + ": " + msg;
+        // Una sola scrittura per riga: i thread del server non si mescolano a metà messaggio
+        synchronized (err) {
+            err.println(line);
+            if (tr != null) {
+                tr.printStackTrace(err);
+            }
+        }
+        return line.length();
+    }
+
+    private static int parseLevel(String name) {
+        switch (name.toUpperCase(Locale.ROOT)) {
+            case "VERBOSE":
+                return VERBOSE;
+            case "DEBUG":
+                return DEBUG;
+            case "WARN":
+                return WARN;
+            case "ERROR":
+                return ERROR;
+            default:
+                return INFO;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.spotting;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Verifica che VectorAudioKernels dia risultati identici bit per bit all'implementazione
+ * scalare (input casuali, lunghezze e offset non allineati, valori limite) e confronta
+ * i tempi su finestre da 44032 campioni.
+ *
+ * Uso: java --add-modules jdk.incubator.vector ... AudioKernelsCheck [iterazioni benchmark]
+ * Codice di uscita 1 se c'è anche una sola differenza.
+ */
+public class AudioKernelsCheck {
+
+    private static final int WINDOW = ModelConfig.INPUT_LENGTH;
+
+    private final AudioKernels scalar = AudioKernels.scalar();
+    private final AudioKernels vector;
+    private final Random random = new Random(42);
+    private int checks = 0;
+    private int mismatches = 0;
+
+    AudioKernelsCheck(AudioKernels vector) {
+        this.vector = vector;
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        AudioKernels vector;
+        try {
+            vector = new VectorAudioKernels();
+        } catch (LinkageError e) {
+            System.err.println("Vector API non disponibile (manca --add-modules jdk.incubator.vector?)");
+            System.exit(2);
+            return;
+        }
+
+        AudioKernelsCheck check = new AudioKernelsCheck(vector);
+        check.verify();
+        System.out.println(String.format(Locale.ROOT, "=== VERIFICA: %d confronti, %d differenze (%s) ===",
+                check.checks, check.mismatches, vector.getName()));
+        System.out.println("Implementazione selezionata: " + AudioKernels.getInstance().getName());
+
+        check.benchmark(iterations);
+        System.exit(check.mismatches == 0 ? 0 : 1);
+    }
+
+    void verify() {
+        for (int length = 0; length <= 70; length++) {
+            for (int offset = 0; offset < 3; offset++) {
+                compareAll(randomShorts(offset + length + 3), randomFloats(offset + length + 3), offset, length);
+            }
+        }
+        for (int round = 0; round < 20; round++) {
+            int offset = random.nextInt(9);
+            compareAll(randomShorts(WINDOW + offset), randomFloats(WINDOW + offset), offset, WINDOW);
+        }
+
+        // Valori limite
+        short[] extremes = new short[WINDOW];
+        for (int i = 0; i < extremes.length; i++) {
+            extremes[i] = (i & 1) == 0 ? Short.MIN_VALUE : Short.MAX_VALUE;
+        }
+        float[] specials = {0f, -0f, Float.MIN_VALUE, -Float.MIN_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE,
+                Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, 1e-40f, 1e20f, Float.NaN, 0.5f};
+        float[] mixed = new float[257];
+        for (int i = 0; i < mixed.length; i++) {
+            mixed[i] = specials[random.nextInt(specials.length - 1)];
+        }
+        compareAll(extremes, mixed, 0, mixed.length);
+        mixed[100] = Float.NaN;
+        compareAll(extremes, mixed, 1, mixed.length - 1);
+
+        // argmax con pareggi e zeri con segno, lunghezza dell'output del modello
+        float[] probabilities = new float[ModelConfig.NUM_CLASSES];
+        for (int round = 0; round < 1000; round++) {
+            for (int i = 0; i < probabilities.length; i++) {
+                probabilities[i] = random.nextInt(4) == 0 ? (random.nextBoolean() ? 0f : -0f)
+                        : random.nextInt(5) / 4f;
+            }
+            expect("argmax", scalar.argmax(probabilities, 0, probabilities.length),
+                    vector.argmax(probabilities, 0, probabilities.length));
+        }
+    }
+
+    private void compareAll(short[] shorts, float[] floats, int offset, int length) {
+        int shortLength = Math.min(length, shorts.length - offset);
+
+        float[] expected = new float[shortLength];
+        float[] actual = new float[shortLength];
+        scalar.normalize(shorts, offset, expected, 0, shortLength, 32768.0f);
+        vector.normalize(shorts, offset, actual, 0, shortLength, 32768.0f);
+        for (int i = 0; i < shortLength; i++) {
+            expectBits("normalize", expected[i], actual[i]);
+        }
+
+        expect("sumOfSquares(short)", scalar.sumOfSquares(shorts, offset, shortLength),
+                vector.sumOfSquares(shorts, offset, shortLength));
+        expectBits("sumOfSquares(float)", scalar.sumOfSquares(floats, offset, length),
+                vector.sumOfSquares(floats, offset, length));
+
+        float[] expectedStats = new float[4];
+        float[] actualStats = new float[4];
+        scalar.statistics(floats, offset, length, expectedStats);
+        vector.statistics(floats, offset, length, actualStats);
+        for (int i = 0; i < 4; i++) {
+            expectBits("statistics[" + i + "]", expectedStats[i], actualStats[i]);
+        }
+
+        if (length > 0) {
+            expect("argmax", scalar.argmax(floats, offset, length), vector.argmax(floats, offset, length));
+        }
+
+        // Prodotti scalari: righe di lunghezza length, query dal fondo di floats
+        int rows = Math.min(3, floats.length / Math.max(1, length));
+        float[] query = new float[length];
+        System.arraycopy(floats, floats.length - length, query, 0, length);
+        float[] expectedDots = new float[rows];
+        float[] actualDots = new float[rows];
+        scalar.dotProducts(floats, rows, length, query, expectedDots);
+        vector.dotProducts(floats, rows, length, query, actualDots);
+        for (int r = 0; r < rows; r++) {
+            expectBits("dotProducts[" + r + "]", expectedDots[r], actualDots[r]);
+        }
+    }
+
+    private void expectBits(String name, float expected, float actual) {
+        checks++;
+        if (Float.floatToIntBits(expected) != Float.floatToIntBits(actual)) {
+            report(name, expected + " (" + Integer.toHexString(Float.floatToRawIntBits(expected)) + ")",
+                    actual + " (" + Integer.toHexString(Float.floatToRawIntBits(actual)) + ")");
+        }
+    }
+
+    private void expect(String name, long expected, long actual) {
+        checks++;
+        if (expected != actual) {
+            report(name, String.valueOf(expected), String.valueOf(actual));
+        }
+    }
+
+    private void report(String name, String expected, String actual) {
+        mismatches++;
+        if (mismatches <= 20) {
+            System.out.println("DIFFERENZA " + name + ": scalare=" + expected + ", vettoriale=" + actual);
+        }
+    }
+
+    private short[] randomShorts(int length) {
+        short[] data = new short[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (short) random.nextInt(65536);
+        }
+        return data;
+    }
+
+    private float[] randomFloats(int length) {
+        float[] data = new float[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (float) (random.nextGaussian() * 0.3);
+        }
+        return data;
+    }
+
+    void benchmark(int iterations) {
+        short[] shorts = randomShorts(WINDOW);
+        float[] floats = new float[WINDOW];
+        float[] stats = new float[4];
+        float[] probabilities = randomFloats(ModelConfig.NUM_CLASSES);
+
+        System.out.println("=== TEMPI PER FINESTRA (" + WINDOW + " campioni, " + iterations + " iterazioni) ===");
+        for (AudioKernels kernels : new AudioKernels[]{scalar, vector, scalar, vector}) {
+            long sink = 0;
+            long normalize = 0;
+            long energy = 0;
+            long statistics = 0;
+            long energyShort = 0;
+            long argmax = 0;
+            for (int i = 0; i < iterations; i++) {
+                long t0 = System.nanoTime();
+                kernels.normalize(shorts, 0, floats, 0, WINDOW, 32768.0f);
+                long t1 = System.nanoTime();
+                sink += Float.floatToIntBits(kernels.sumOfSquares(floats, 0, WINDOW));
+                long t2 = System.nanoTime();
+                kernels.statistics(floats, 0, WINDOW, stats);
+                long t3 = System.nanoTime();
+                sink += kernels.sumOfSquares(shorts, 0, WINDOW);
+                long t4 = System.nanoTime();
+                sink += kernels.argmax(probabilities, 0, probabilities.length);
+                long t5 = System.nanoTime();
+                normalize += t1 - t0;
+                energy += t2 - t1;
+                statistics += t3 - t2;
+                energyShort += t4 - t3;
+                argmax += t5 - t4;
+            }
+            System.out.println(String.format(Locale.ROOT,
+                    "%-28s normalize %6.1f µs, energia %6.1f µs, statistiche %6.1f µs, energia int16 %6.1f µs, " +
+                            "argmax %5.3f µs (%d)",
+                    kernels.getName(), normalize / 1e3 / iterations, energy / 1e3 / iterations,
+                    statistics / 1e3 / iterations, energyShort / 1e3 / iterations, argmax / 1e3 / iterations,
+                    sink & 1));
+        }
+
+        // Ricerca su un indice di embedding: 500 modelli da 128 dimensioni
+        int rows = 500;
+        int dim = 128;
+        float[] matrix = randomFloats(rows * dim);
+        float[] query = randomFloats(dim);
+        float[] scores = new float[rows];
+        for (AudioKernels kernels : new AudioKernels[]{scalar, vector, scalar, vector}) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                kernels.dotProducts(matrix, rows, dim, query, scores);
+            }
+            System.out.println(String.format(Locale.ROOT, "%-28s ricerca %dx%d %6.1f µs",
+                    kernels.getName(), rows, dim, (System.nanoTime() - start) / 1e3 / iterations));
+        }
+    }
+}
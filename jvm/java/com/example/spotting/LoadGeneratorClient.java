@@ -0,0 +1,259 @@
+package com.example.spotting;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generatore di carico per RecognitionServer: apre N stream concorrenti che inviano
+ * PCM a 16 kHz al ritmo del tempo reale (o alla massima velocità) e misura ritardo
+ * di invio, eventi ricevuti e latenza evento (fine finestra → evento ricevuto).
+ * Il numero di stream sostenibili per core si legge dalle statistiche del server.
+ *
+ * Uso:
+ *   LoadGeneratorClient (--tcp porta | --unix percorso) [--streams 100] [--seconds 60]
+ *                       [--wav file.wav] [--format json|binary] [--fast]
+ */
+public class LoadGeneratorClient {
+
+    private static final int CHUNK_MS = 20;
+    private static final int CHUNK_SAMPLES = ModelConfig.SAMPLE_RATE * CHUNK_MS / 1000;
+    // Tempi di invio degli ultimi 10 s di chunk, per la latenza degli eventi
+    private static final int SEND_HISTORY_CHUNKS = 10000 / CHUNK_MS;
+
+    private final SocketAddress address;
+    private final RecognitionServer.EventFormat format;
+    private final File wavFile;
+    private final int seconds;
+    private final boolean realTime;
+
+    private final AtomicInteger streamsCompleted = new AtomicInteger();
+    private final AtomicInteger streamsFailed = new AtomicInteger();
+    private final AtomicLong eventsReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final LatencyStats sendLag = new LatencyStats("ritardo invio");
+    private final LatencyStats eventLatency = new LatencyStats("latenza evento");
+
+    public LoadGeneratorClient(SocketAddress address, RecognitionServer.EventFormat format, File wavFile,
+                               int seconds, boolean realTime) {
+        this.address = address;
+        this.format = format;
+        this.wavFile = wavFile;
+        this.seconds = seconds;
+        this.realTime = realTime;
+    }
+
+    public static void main(String[] args) throws Exception {
+        SocketAddress address = null;
+        int streams = 100;
+        int seconds = 60;
+        File wavFile = null;
+        boolean realTime = true;
+        RecognitionServer.EventFormat format = RecognitionServer.EventFormat.JSON;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--tcp":
+                    address = new InetSocketAddress("127.0.0.1", Integer.parseInt(args[++i]));
+                    break;
+                case "--unix":
+                    address = UnixDomainSocketAddress.of(Path.of(args[++i]));
+                    break;
+                case "--streams":
+                    streams = Integer.parseInt(args[++i]);
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(args[++i]);
+                    break;
+                case "--wav":
+                    wavFile = new File(args[++i]);
+                    break;
+                case "--format":
+                    format = RecognitionServer.EventFormat.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                    break;
+                case "--fast":
+                    realTime = false;
+                    break;
+                default:
+                    System.err.println("Argomento sconosciuto: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        if (address == null || streams <= 0 || seconds <= 0) {
+            System.err.println("Uso: LoadGeneratorClient (--tcp porta | --unix percorso) [--streams 100] " +
+                    "[--seconds 60] [--wav file.wav] [--format json|binary] [--fast]");
+            System.exit(2);
+        }
+
+        LoadGeneratorClient client = new LoadGeneratorClient(address, format, wavFile, seconds, realTime);
+        System.exit(client.run(streams));
+    }
+
+    /**
+     * Esegue gli stream e stampa il riepilogo; 0 se nessuno stream è fallito
+     */
+    public int run(int streams) throws InterruptedException {
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        ExecutorService executor = VirtualThreads.newPerTaskExecutor("load");
+        try {
+            for (int i = 0; i < streams; i++) {
+                futures.add(executor.submit(() -> {
+                    runStream();
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (Exception e) {
+                    streamsFailed.incrementAndGet();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        double audioSeconds = bytesSent.get() / 2.0 / ModelConfig.SAMPLE_RATE;
+        System.out.println(String.format(Locale.ROOT,
+                "=== CARICO: %d stream (%s, %s) ===\n" +
+                        "Completati: %d, falliti: %d, durata %.1f s\n" +
+                        "Audio inviato: %.0f s (%.1fx tempo reale)\n" +
+                        "Eventi ricevuti: %d\n%s\n%s",
+                streams, realTime ? "tempo reale" : "massima velocità", VirtualThreads.isAvailable()
+                        ? "thread virtuali" : "thread di piattaforma",
+                streamsCompleted.get(), streamsFailed.get(), elapsed, audioSeconds, audioSeconds / elapsed,
+                eventsReceived.get(), sendLag.summary(), eventLatency.summary()));
+        return streamsFailed.get() == 0 ? 0 : 1;
+    }
+
+    private void runStream() throws IOException, InterruptedException {
+        AudioSource source = wavFile != null
+                ? ReplayAudioSource.open(wavFile, false, Integer.MAX_VALUE)
+                : SyntheticAudioSource.toneBursts(seconds, false, 600, 2000);
+        long[] sendTimes = new long[SEND_HISTORY_CHUNKS];
+
+        SocketChannel channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                : SocketChannel.open();
+        try (SocketChannel socket = channel) {
+            socket.connect(address);
+            source.start();
+
+            Thread reader = VirtualThreads.start("load-reader", () -> readEvents(socket, sendTimes));
+
+            short[] chunk = new short[CHUNK_SAMPLES];
+            ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SAMPLES * 2).order(ByteOrder.LITTLE_ENDIAN);
+            long totalChunks = (long) seconds * 1000 / CHUNK_MS;
+            long startNanos = System.nanoTime();
+
+            for (long index = 0; index < totalChunks; index++) {
+                int read = source.read(chunk, 0, CHUNK_SAMPLES);
+                if (read <= 0) {
+                    break;
+                }
+
+                if (realTime) {
+                    long due = startNanos + index * CHUNK_MS * 1_000_000L;
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } else {
+                        sendLag.record(-wait);
+                    }
+                }
+
+                buffer.clear();
+                buffer.asShortBuffer().put(chunk, 0, read);
+                buffer.limit(read * 2);
+                while (buffer.hasRemaining()) {
+                    socket.write(buffer);
+                }
+                sendTimes[(int) (index % SEND_HISTORY_CHUNKS)] = System.nanoTime();
+                bytesSent.addAndGet(read * 2L);
+            }
+
+            // Fine stream: il server chiude dopo l'ultima finestra
+            socket.shutdownOutput();
+            reader.join();
+            streamsCompleted.incrementAndGet();
+        } finally {
+            source.release();
+        }
+    }
+
+    private void readEvents(SocketChannel socket, long[] sendTimes) {
+        ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            while (socket.read(buffer) >= 0) {
+                buffer.flip();
+                long now = System.nanoTime();
+                if (format == RecognitionServer.EventFormat.BINARY) {
+                    while (buffer.remaining() >= RecognitionServer.BINARY_RECORD_SIZE) {
+                        long position = buffer.getLong();
+                        buffer.getInt();
+                        onEvent(position, now, sendTimes);
+                    }
+                } else {
+                    int lineStart = buffer.position();
+                    for (int i = buffer.position(); i < buffer.limit(); i++) {
+                        if (buffer.get(i) == '\n') {
+                            onEvent(parsePosition(buffer, lineStart, i), now, sendTimes);
+                            lineStart = i + 1;
+                        }
+                    }
+                    buffer.position(lineStart);
+                }
+                buffer.compact();
+            }
+        } catch (IOException e) {
+            // Connessione chiusa
+        }
+    }
+
+    /**
+     * Legge il campo "pos" (primo campo) di una riga JSON dell'evento
+     */
+    private static long parsePosition(ByteBuffer buffer, int from, int to) {
+        long value = 0;
+        boolean inNumber = false;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                inNumber = true;
+            } else if (inNumber) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    private void onEvent(long position, long receivedNanos, long[] sendTimes) {
+        eventsReceived.incrementAndGet();
+        // Chunk che conteneva l'ultimo campione della finestra
+        long chunkIndex = (position - 1) / CHUNK_SAMPLES;
+        long sent = sendTimes[(int) (chunkIndex % SEND_HISTORY_CHUNKS)];
+        if (sent > 0 && receivedNanos >= sent) {
+            eventLatency.record(receivedNanos - sent);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.example.spotting;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Verifiche riproducibili della pipeline senza modello né dispositivo: girano con l'interprete
+ * finto di jvm/stub-tflite (predice sempre "yes"), messo nel classpath al posto di TFLite.
+ *
+ *   telemetry  3 produttori, 600k record a raffiche contro un drain ogni ms: scritti + persi =
+ *              prodotti, più segmenti, occupazione su disco in memoria = dimensione dei file
+ *   scheduler  40 stream, batch 8 su 2 interpreti: un solo interprete batch per interprete,
+ *              tutti gli stream tornano inattivi
+ *   replay     60 s di raffiche sintetiche: nessun falso positivo dall'anticipo, primo rilevamento
+ *              anticipato da --early, nessun falso positivo con segmenti + anticipo, grafo completo
+ *   soak       durata richiesta rispettata, serie piatte; un listener che trattiene 16 KB per
+ *              finestra (~10 MB in mezz'ora di audio) deve far fallire la tendenza dell'heap
+ *
+ * Uso:
+ *   javac -encoding UTF-8 -d stub-classes jvm/stub-tflite/org/tensorflow/lite/*.java
+ *   java -cp stub-classes:<classi di main/ e jvm/> com.example.spotting.PipelineSelfTest [sezione...]
+ * Senza argomenti esegue tutte le sezioni. Codice di uscita 1 se una verifica fallisce,
+ * 2 se nel classpath non c'è l'interprete finto.
+ */
+public class PipelineSelfTest {
+
+    private static final String[] SECTIONS = {"telemetry", "scheduler", "replay", "soak"};
+
+    private final File model;
+    private int checks = 0;
+    private int failures = 0;
+
+    PipelineSelfTest(File model) {
+        this.model = model;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> sections = Arrays.asList(args.length > 0 ? args : SECTIONS);
+        for (String section : sections) {
+            if (!Arrays.asList(SECTIONS).contains(section)) {
+                System.err.println("Sezione sconosciuta: " + section + " (disponibili: " + String.join(", ", SECTIONS) + ")");
+                System.exit(2);
+            }
+        }
+
+        // L'interprete finto non legge il modello: basta un file non vuoto
+        File model = File.createTempFile("selftest", ".tflite");
+        model.deleteOnExit();
+        Files.write(model.toPath(), new byte[64]);
+
+        KeywordClassifier probe = new KeywordClassifier(model);
+        boolean stub = probe.isInitialized();
+        probe.close();
+        if (!stub) {
+            System.err.println("Interprete non disponibile: serve jvm/stub-tflite nel classpath al posto di TFLite");
+            System.exit(2);
+        }
+
+        PipelineSelfTest test = new PipelineSelfTest(model);
+        for (String section : sections) {
+            System.out.println("=== " + section + " ===");
+            switch (section) {
+                case "telemetry":
+                    test.checkTelemetry();
+                    break;
+                case "scheduler":
+                    test.checkScheduler();
+                    break;
+                case "replay":
+                    test.checkReplay();
+                    break;
+                default:
+                    test.checkSoak();
+                    break;
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "=== SELF-TEST: %d verifiche, %d fallite ===",
+                test.checks, test.failures));
+        System.exit(test.failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Produttori lock-free contro il thread di scrittura
+     */
+    void checkTelemetry() throws IOException, InterruptedException {
+        final int producers = 3;
+        final int recordsPerProducer = 200_000;
+        File directory = Files.createTempDirectory("telemetry-selftest").toFile();
+        TelemetryStore store = new TelemetryStore(directory, 64 * 1024, TelemetryStore.DAY_MILLIS, Long.MAX_VALUE);
+        store.startSession();
+
+        AtomicBoolean producing = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            while (producing.get()) {
+                store.drain();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "telemetry-writer");
+        writer.start();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < recordsPerProducer; i++) {
+                    // Raffiche più piccole della coda: la maggior parte dei record arriva su disco
+                    if (i % 50 == 0) {
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (i % 10 == 0) {
+                        store.recordDetection(0, 2, 0.9f, 1000, 2000, 3000);
+                    } else {
+                        store.recordWindow(0, 0, 0.1f, 1000, 2000, 3000);
+                    }
+                }
+            }, "telemetry-producer-" + p);
+            threads.add(producer);
+            producer.start();
+        }
+        for (Thread producer : threads) {
+            producer.join();
+        }
+        producing.set(false);
+        writer.join();
+        store.drain();
+        store.flush();
+
+        long produced = (long) producers * recordsPerProducer;
+        long written = store.getRecordCount();
+        long dropped = store.getRecordsDropped();
+        check(written + dropped == produced, String.format(Locale.ROOT,
+                "scritti %d + persi %d = prodotti %d", written, dropped, produced));
+        check(store.getSegmentCount() > 1, "segmenti ruotati dal thread di scrittura: " + store.getSegmentCount());
+
+        long onDisk = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                onDisk += file.length();
+            }
+        }
+        check(store.getDiskUsageBytes() == onDisk, String.format(Locale.ROOT,
+                "occupazione in memoria %d byte = file su disco %d byte", store.getDiskUsageBytes(), onDisk));
+
+        store.close();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Molti stream su pochi interpreti a batch fisso
+     */
+    void checkScheduler() throws InterruptedException {
+        final int streams = 40;
+        final int interpreters = 2;
+        final int batch = 8;
+        LongAdder results = new LongAdder();
+
+        try (ClassifierPool pool = new ClassifierPool(model, interpreters);
+             InferenceScheduler scheduler = new InferenceScheduler(pool, batch)) {
+            List<InferenceScheduler.Stream> opened = new ArrayList<>();
+            for (int i = 0; i < streams; i++) {
+                opened.add(scheduler.openStream("selftest-" + i, ModelConfig.SAMPLE_RATE / 2, 10_000,
+                        (stream, result, windowEnd) -> results.increment()));
+            }
+
+            // 4 s di tono per stream, a blocchi da 100 ms alternati tra gli stream
+            short[] chunk = tone(ModelConfig.SAMPLE_RATE / 10, 8000);
+            for (int block = 0; block < 40; block++) {
+                for (InferenceScheduler.Stream stream : opened) {
+                    stream.push(chunk, 0, chunk.length);
+                }
+            }
+
+            boolean idle = true;
+            for (InferenceScheduler.Stream stream : opened) {
+                idle &= stream.awaitIdle(30_000);
+            }
+            check(idle, "tutti gli stream tornano inattivi");
+            check(results.sum() > 0, "risultati consegnati: " + results.sum());
+
+            long served = scheduler.getWindowsServed();
+            long inferences = scheduler.getMetrics().inferences.get();
+            check(served > inferences, String.format(Locale.ROOT,
+                    "finestre servite in batch: %d in %d inferenze", served, inferences));
+
+            KeywordClassifier[] classifiers = new KeywordClassifier[interpreters];
+            for (int i = 0; i < interpreters; i++) {
+                classifiers[i] = pool.acquire();
+            }
+            for (int i = 0; i < interpreters; i++) {
+                int created = classifiers[i].getBatchInterpretersCreated();
+                check(created <= 1, "interprete " + i + ": " + created + " interpreti batch creati (massimo 1)");
+                pool.release(classifiers[i]);
+            }
+            for (InferenceScheduler.Stream stream : opened) {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * Replay sintetico con rilevamenti confrontati con le raffiche etichettate
+     */
+    void checkReplay() throws InterruptedException {
+        ReplayBenchmark regular = replay(false, false);
+        ReplayBenchmark early = replay(false, true);
+        ReplayBenchmark segmentsEarly = replay(true, true);
+
+        check(regular.getBurstsDetected() > 0, "raffiche rilevate: " + regular.getBurstsDetected());
+        check(early.getEarlyFalseAccepts() == 0, "falsi positivi dall'anticipo: " + early.getEarlyFalseAccepts());
+        check(early.getFirstDetectionEnd() >= 0 && early.getFirstDetectionEnd() < regular.getFirstDetectionEnd(),
+                String.format(Locale.ROOT, "primo rilevamento con --early %.2f s, senza %.2f s",
+                        early.getFirstDetectionEnd() / (double) ModelConfig.SAMPLE_RATE,
+                        regular.getFirstDetectionEnd() / (double) ModelConfig.SAMPLE_RATE));
+        check(segmentsEarly.getFalseAccepts() == 0,
+                "falsi positivi con segmenti + anticipo: " + segmentsEarly.getFalseAccepts());
+
+        // Stesso audio attraverso il grafo di stadi, che condivide la pipeline di produzione
+        KeywordClassifier classifier = new KeywordClassifier(model);
+        SpottingPipeline pipeline = new SpottingPipeline(new AudioPreprocessor(), classifier);
+        long[] detections = {0};
+        PipelineGraph graph = PipelineStages.keywordSpotting(SyntheticAudioSource.toneBursts(60, false, 600, 4000),
+                pipeline, new EnergyVad(ModelConfig.SAMPLE_RATE), ModelConfig.SAMPLE_RATE, false,
+                (input, output) -> detections[0]++);
+        graph.run();
+        classifier.close();
+        check(pipeline.getClassifications() > 0 && detections[0] > 0, String.format(Locale.ROOT,
+                "grafo: %d finestre classificate, %d rilevamenti", pipeline.getClassifications(), detections[0]));
+    }
+
+    private ReplayBenchmark replay(boolean segments, boolean earlyExit) throws InterruptedException {
+        KeywordClassifier classifier = new KeywordClassifier(model);
+        ReplayBenchmark benchmark = new ReplayBenchmark(new SpottingPipeline(new AudioPreprocessor(), classifier),
+                SyntheticAudioSource.toneBursts(60, false, 600, 4000));
+        if (segments) {
+            benchmark.enableSegments();
+        }
+        if (earlyExit) {
+            benchmark.enableEarlyExit();
+        }
+        int exitCode = benchmark.run();
+        classifier.close();
+        check(exitCode == 0, "replay" + (segments ? " --segments" : "") + (earlyExit ? " --early" : "") + " senza errori");
+        return benchmark;
+    }
+
+    /**
+     * Durata rispettata e rilevazione di una crescita dell'heap
+     */
+    void checkSoak() throws InterruptedException {
+        final float hours = 0.5f;
+        KeywordClassifier classifier = new KeywordClassifier(model);
+        SoakTest flat = new SoakTest(new SpottingPipeline(new AudioPreprocessor(), classifier),
+                SyntheticAudioSource.toneBursts(0, false, 600, 4000), hours, 30);
+        int exitCode = flat.run();
+        classifier.close();
+        check(Math.abs(flat.getAudioHours() - hours) < 0.01, String.format(Locale.ROOT,
+                "ore di audio %.3f, richieste %.3f, in %d sessioni", flat.getAudioHours(), hours, flat.getSessions()));
+        check(exitCode == 0, "soak senza crescita superato");
+
+        classifier = new KeywordClassifier(model);
+        List<byte[]> retained = new ArrayList<>();
+        SoakTest leaking = new SoakTest(new SpottingPipeline(new AudioPreprocessor(), classifier),
+                SyntheticAudioSource.toneBursts(0, false, 600, 4000), hours, 30) {
+            @Override
+            public void onAudioDataReceived(short[] audioData) {
+                retained.add(new byte[16 * 1024]);
+                super.onAudioDataReceived(audioData);
+            }
+        };
+        exitCode = leaking.run();
+        classifier.close();
+        check(exitCode == 1, "soak con 16 KB trattenuti per finestra fallito (" + retained.size() + " finestre)");
+    }
+
+    private void check(boolean ok, String description) {
+        checks++;
+        if (!ok) {
+            failures++;
+        }
+        System.out.println((ok ? "✅ " : "❌ ") + description);
+    }
+
+    private static short[] tone(int length, int amplitude) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (amplitude * Math.sin(2 * Math.PI * 440 * i / ModelConfig.SAMPLE_RATE));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,414 @@
+package com.example.spotting;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Server di riconoscimento locale: accetta stream PCM int16 little-endian mono a 16 kHz
+ * su TCP o socket Unix e restituisce i rilevamenti sullo stesso canale,
+ * come righe JSON o record binari compatti.
+ *
+ * Ogni connessione è servita da un thread virtuale (JDK 21+, altrimenti thread di
+ * piattaforma) con I/O bloccante su SocketChannel; le finestre sono classificate
+ * dall'InferenceScheduler, che condivide gli interpreti tra tutti gli stream.
+ * La memoria per connessione è fissa: buffer di lettura diretto, finestre int16
+ * dello stream e una coda eventi limitata. I buffer float di inferenza appartengono
+ * ai worker dello scheduler, non alle connessioni.
+ *
+ * Uso:
+ *   RecognitionServer --model speech_commands.tflite [--tcp 7070] [--unix /tmp/spotting.sock]
+ *                     [--interpreters N] [--batch 8] [--deadline-ms 1000] [--hop-ms 500]
+ *                     [--format json|binary] [--metrics 9464]
+ *
+ * Con --metrics le metriche del motore (EngineMetrics) sono esposte in formato Prometheus
+ * su http://127.0.0.1:<porta>/metrics. I log della pipeline vanno su stderr tramite lo shim
+ * android.util.Log di jvm/ (livello con -Dspotting.log=DEBUG|INFO|WARN).
+ *
+ * Formato binario, un record di 12 byte little-endian per rilevamento:
+ *   int64 posizione di fine finestra (campioni) | uint8 indice classe | uint8 riservato |
+ *   uint16 confidenza * 65535
+ */
+public class RecognitionServer implements AutoCloseable {
+
+    public enum EventFormat {
+        JSON,
+        BINARY
+    }
+
+    public static final int BINARY_RECORD_SIZE = 12;
+
+    private static final int READ_BUFFER_BYTES = 8192;
+    private static final int EVENT_BUFFER_BYTES = 256;
+    private static final int EVENT_QUEUE_SIZE = 16;
+    private static final int STATS_INTERVAL_SECONDS = 10;
+    // Stesso comando ripetuto entro questo intervallo: un solo evento
+    private static final int DUPLICATE_SUPPRESSION_MS = 1000;
+    // Attesa massima, a fine stream, delle ultime finestre in inferenza
+    private static final long DRAIN_TIMEOUT_MS = 5000;
+
+    private final InferenceScheduler scheduler;
+    private final EngineMetrics metrics;
+    private final int hopSamples;
+    private final long deadlineMs;
+    private final EventFormat format;
+
+    private final List<ServerSocketChannel> listeners = new ArrayList<>();
+    private final ExecutorService connectionExecutor;
+    private final ScheduledExecutorService statsExecutor;
+    private volatile boolean running = true;
+
+    // Statistiche
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final AtomicLong totalStreams = new AtomicLong();
+    private final LongSupplier activeStreamsGauge;
+    private final LongSupplier readyQueueGauge;
+
+    public RecognitionServer(InferenceScheduler scheduler, int hopSamples, long deadlineMs, EventFormat format) {
+        this.scheduler = scheduler;
+        this.metrics = scheduler.getMetrics();
+        this.hopSamples = hopSamples;
+        this.deadlineMs = deadlineMs;
+        this.format = format;
+        this.connectionExecutor = VirtualThreads.newPerTaskExecutor("stream");
+        this.statsExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "server-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.activeStreamsGauge = activeStreams::get;
+        this.readyQueueGauge = scheduler::getReadyStreams;
+        metrics.registerGauge("active_streams", "Connessioni audio aperte", activeStreamsGauge);
+        metrics.registerGauge("ready_queue_depth", "Stream con una finestra in attesa di un interprete",
+                readyQueueGauge);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String modelPath = null;
+        int tcpPort = -1;
+        String unixPath = null;
+        int interpreters = Runtime.getRuntime().availableProcessors();
+        int hopMs = 500;
+        int batch = 8;
+        long deadlineMs = 1000;
+        EventFormat format = EventFormat.JSON;
+        int metricsPort = -1;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--model":
+                    modelPath = args[++i];
+                    break;
+                case "--tcp":
+                    tcpPort = Integer.parseInt(args[++i]);
+                    break;
+                case "--unix":
+                    unixPath = args[++i];
+                    break;
+                case "--interpreters":
+                    interpreters = Integer.parseInt(args[++i]);
+                    break;
+                case "--batch":
+                    batch = Integer.parseInt(args[++i]);
+                    break;
+                case "--deadline-ms":
+                    deadlineMs = Long.parseLong(args[++i]);
+                    break;
+                case "--hop-ms":
+                    hopMs = Integer.parseInt(args[++i]);
+                    break;
+                case "--format":
+                    format = EventFormat.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                    break;
+                case "--metrics":
+                    metricsPort = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Argomento sconosciuto: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        if (modelPath == null || (tcpPort < 0 && unixPath == null) || hopMs <= 0) {
+            System.err.println("Uso: RecognitionServer --model <file.tflite> [--tcp porta] [--unix percorso] " +
+                    "[--interpreters N] [--batch 8] [--deadline-ms 1000] [--hop-ms 500] [--format json|binary] [--metrics porta]");
+            System.exit(2);
+        }
+
+        try (ClassifierPool pool = new ClassifierPool(new File(modelPath), interpreters);
+             InferenceScheduler scheduler = new InferenceScheduler(pool, batch);
+             RecognitionServer server = new RecognitionServer(scheduler, hopMs * ModelConfig.SAMPLE_RATE / 1000,
+                     deadlineMs, format)) {
+            // Serve solo a restare aperto: lo chiude il finally, dopo la fine del server
+            MetricsServer metricsServer = null;
+            try {
+                if (metricsPort >= 0) {
+                    metricsServer = new MetricsServer(scheduler.getMetrics(), metricsPort);
+                }
+                if (tcpPort >= 0) {
+                    server.listenTcp(tcpPort);
+                }
+                if (unixPath != null) {
+                    server.listenUnix(Path.of(unixPath));
+                }
+                server.startStatistics();
+                Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+                server.awaitTermination();
+            } finally {
+                if (metricsServer != null) {
+                    metricsServer.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Apre un listener TCP su localhost; restituisce la porta effettiva (utile con 0)
+     */
+    public int listenTcp(int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress("127.0.0.1", port), 256);
+        startAcceptLoop(channel);
+        int boundPort = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        System.err.println("In ascolto su tcp://127.0.0.1:" + boundPort);
+        return boundPort;
+    }
+
+    public void listenUnix(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.bind(UnixDomainSocketAddress.of(path), 256);
+        startAcceptLoop(channel);
+        System.err.println("In ascolto su unix://" + path);
+    }
+
+    private void startAcceptLoop(ServerSocketChannel channel) {
+        synchronized (listeners) {
+            listeners.add(channel);
+        }
+        Thread acceptor = new Thread(() -> acceptLoop(channel), "accept-" + listeners.size());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void acceptLoop(ServerSocketChannel server) {
+        while (running) {
+            try {
+                SocketChannel client = server.accept();
+                connectionExecutor.execute(() -> serve(client));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Errore accept: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ciclo di una connessione: legge PCM, lo passa allo scheduler, scrive gli eventi
+     */
+    private void serve(SocketChannel client) {
+        activeStreams.incrementAndGet();
+        long id = totalStreams.incrementAndGet();
+        metrics.streamsOpened.increment();
+        ConnectionState state = new ConnectionState();
+
+        try (SocketChannel channel = client;
+             InferenceScheduler.Stream stream = scheduler.openStream("conn-" + id, hopSamples, deadlineMs,
+                     (s, result, windowEnd) -> state.onResult(result, windowEnd))) {
+            ByteBuffer readBuffer = state.readBuffer;
+            while (running) {
+                int read = channel.read(readBuffer);
+                if (read < 0) {
+                    break;
+                }
+                readBuffer.flip();
+                int samples = readBuffer.remaining() / 2;
+                readBuffer.asShortBuffer().get(state.samples, 0, samples);
+                readBuffer.position(samples * 2);
+                // Un byte dispari resta per la lettura successiva
+                readBuffer.compact();
+
+                stream.push(state.samples, 0, samples);
+                metrics.samplesReceived.add(samples);
+                writeEvents(state, channel);
+            }
+
+            // Fine stream: attende le ultime finestre prima di chiudere
+            stream.awaitIdle(DRAIN_TIMEOUT_MS);
+            writeEvents(state, channel);
+        } catch (IOException e) {
+            // Connessione chiusa dal client
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            activeStreams.decrementAndGet();
+        }
+    }
+
+    private void writeEvents(ConnectionState state, SocketChannel channel) throws IOException {
+        DetectionEvent detection;
+        while ((detection = state.events.poll()) != null) {
+            ClassificationResult result = detection.result;
+            long position = detection.windowEnd;
+
+            ByteBuffer event = state.eventBuffer;
+            event.clear();
+            if (format == EventFormat.BINARY) {
+                event.putLong(position);
+                event.put((byte) result.getClassIndex());
+                event.put((byte) 0);
+                event.putShort((short) Math.round(result.getConfidence() * 65535f));
+            } else {
+                String line = String.format(Locale.ROOT, "{\"pos\":%d,\"t\":%.3f,\"label\":\"%s\",\"index\":%d,\"confidence\":%.4f}\n",
+                        position, position / (double) ModelConfig.SAMPLE_RATE, result.getLabel(),
+                        result.getClassIndex(), result.getConfidence());
+                event.put(line.getBytes(StandardCharsets.UTF_8));
+            }
+            event.flip();
+            while (event.hasRemaining()) {
+                channel.write(event);
+            }
+            metrics.eventsSent.increment();
+        }
+    }
+
+    private static final class DetectionEvent {
+        final ClassificationResult result;
+        final long windowEnd;
+
+        DetectionEvent(ClassificationResult result, long windowEnd) {
+            this.result = result;
+            this.windowEnd = windowEnd;
+        }
+    }
+
+    /**
+     * Stato di una connessione: memoria fissa indipendente dalla durata dello stream
+     */
+    private final class ConnectionState {
+        final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        final short[] samples = new short[READ_BUFFER_BYTES / 2];
+        final ByteBuffer eventBuffer = ByteBuffer.allocate(EVENT_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        final BlockingQueue<DetectionEvent> events = new ArrayBlockingQueue<>(EVENT_QUEUE_SIZE);
+        final DetectionDecoder decoder = new DetectionDecoder(DUPLICATE_SUPPRESSION_MS);
+
+        /**
+         * Thread del worker: filtra e accoda, la scrittura avviene sul thread della connessione
+         */
+        synchronized void onResult(ClassificationResult result, long windowEnd) {
+            if (!result.isAccepted() || !ModelConfig.isCommandSupported(result.getLabel())) {
+                return;
+            }
+            if (!decoder.accept(result, windowEnd)) {
+                return;
+            }
+            metrics.recordDetection(result.getClassIndex());
+            if (!events.offer(new DetectionEvent(result, windowEnd))) {
+                metrics.eventsDropped.increment();
+            }
+        }
+    }
+
+    public void startStatistics() {
+        long startNanos = System.nanoTime();
+        long startCpu = processCpuNanos();
+        AtomicLong lastSamples = new AtomicLong();
+        AtomicLong lastCpu = new AtomicLong(startCpu);
+        AtomicLong lastNanos = new AtomicLong(startNanos);
+
+        statsExecutor.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            long cpu = processCpuNanos();
+            long samples = metrics.samplesReceived.get();
+            double interval = (now - lastNanos.getAndSet(now)) / 1e9;
+            double coresUsed = (cpu - lastCpu.getAndSet(cpu)) / 1e9 / interval;
+            double audioRate = (samples - lastSamples.getAndSet(samples)) / (double) ModelConfig.SAMPLE_RATE / interval;
+            System.err.println(String.format(Locale.ROOT,
+                    "[%5.0fs] stream attivi %d (tot %d), audio %.1fx tempo reale, core usati %.2f, " +
+                            "stream/core %.1f, eventi %d (scartati %d)\n  scheduler: %s",
+                    (now - startNanos) / 1e9, activeStreams.get(), totalStreams.get(), audioRate, coresUsed,
+                    coresUsed > 0 ? audioRate / coresUsed : 0, metrics.eventsSent.get(), metrics.eventsDropped.get(),
+                    scheduler.summary()));
+            // Solo l'ultimo intervallo: la memoria delle statistiche resta limitata
+            scheduler.resetLatencies();
+        }, STATS_INTERVAL_SECONDS, STATS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static long processCpuNanos() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        while (running) {
+            Thread.sleep(1000);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        synchronized (listeners) {
+            for (ServerSocketChannel channel : listeners) {
+                try {
+                    SocketAddress address = channel.getLocalAddress();
+                    channel.close();
+                    if (address instanceof UnixDomainSocketAddress) {
+                        Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+                    }
+                } catch (IOException e) {
+                    System.err.println("Errore chiusura listener: " + e.getMessage());
+                }
+            }
+        }
+        connectionExecutor.shutdownNow();
+        statsExecutor.shutdownNow();
+        metrics.unregisterGauge("active_streams", activeStreamsGauge);
+        metrics.unregisterGauge("ready_queue_depth", readyQueueGauge);
+    }
+
+    // Getters
+    public int getActiveStreams() {
+        return activeStreams.get();
+    }
+
+    public long getEventsSent() {
+        return metrics.eventsSent.get();
+    }
+
+    public long getEventsDropped() {
+        return metrics.eventsDropped.get();
+    }
+}
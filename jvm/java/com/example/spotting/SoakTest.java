@@ -0,0 +1,369 @@
+package com.example.spotting;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test di durata: spinge audio accelerato (sintetico o WAV in loop) attraverso
+ * AudioRecorder → AudioPreprocessor → KeywordClassifier per molte ore di audio,
+ * fermando e riavviando la cattura come startRecording/stopRecording di MainActivity.
+ *
+ * A ogni fine sessione misura heap dopo GC, thread vivi, memoria residente del processo
+ * (RSS: include le allocazioni native dell'Interpreter), buffer diretti e percentili
+ * di latenza della sessione.
+ * Alla fine stima la tendenza di ogni serie (pendenza di Theil-Sen, robusta al rumore del GC)
+ * dopo il riscaldamento e fallisce se la crescita proiettata sull'intera durata supera la tolleranza.
+ *
+ * Uso:
+ *   SoakTest --model speech_commands.tflite [--hours 24] [--session-minutes 30] [--wav file.wav]
+ * Le ore richieste sono rispettate: se bastano per meno di 10 sessioni, le sessioni si accorciano.
+ * Codice di uscita 1 se una serie cresce o se la pipeline segnala errori.
+ */
+public class SoakTest implements AudioRecorder.AudioRecorderListener {
+
+    // Le prime sessioni (JIT, cache, pool che si riempiono) non contano per la tendenza
+    private static final double WARMUP_FRACTION = 0.2;
+    private static final int MIN_TREND_SAMPLES = 5;
+    private static final long MB = 1024 * 1024;
+
+    /**
+     * Una misura a fine sessione
+     */
+    static final class Sample {
+        final double audioHours;
+        final double heapMb;
+        final double residentMb;
+        final double directMb;
+        final int threads;
+        final double p50Ms;
+        final double p99Ms;
+
+        Sample(double audioHours, double heapMb, double residentMb, double directMb, int threads,
+               double p50Ms, double p99Ms) {
+            this.audioHours = audioHours;
+            this.heapMb = heapMb;
+            this.residentMb = residentMb;
+            this.directMb = directMb;
+            this.threads = threads;
+            this.p50Ms = p50Ms;
+            this.p99Ms = p99Ms;
+        }
+    }
+
+    /**
+     * Serie da controllare: crescita massima ammessa = max(assoluta, relativa × mediana)
+     */
+    private enum Metric {
+        HEAP("heap dopo GC", "MB", 2.0, 0.10),
+        RESIDENT("memoria residente", "MB", 8.0, 0.10),
+        DIRECT("buffer diretti", "MB", 1.0, 0.05),
+        THREADS("thread vivi", "", 0.5, 0.0),
+        P50("latenza p50", "ms", 1.0, 0.25),
+        P99("latenza p99", "ms", 2.0, 0.25);
+
+        final String label;
+        final String unit;
+        final double absoluteTolerance;
+        final double relativeTolerance;
+
+        Metric(String label, String unit, double absoluteTolerance, double relativeTolerance) {
+            this.label = label;
+            this.unit = unit;
+            this.absoluteTolerance = absoluteTolerance;
+            this.relativeTolerance = relativeTolerance;
+        }
+
+        double valueOf(Sample sample) {
+            switch (this) {
+                case HEAP:
+                    return sample.heapMb;
+                case RESIDENT:
+                    return sample.residentMb;
+                case DIRECT:
+                    return sample.directMb;
+                case THREADS:
+                    return sample.threads;
+                case P50:
+                    return sample.p50Ms;
+                default:
+                    return sample.p99Ms;
+            }
+        }
+    }
+
+    private final SpottingPipeline pipeline;
+    private final AudioSource source;
+    private final long sessionSamples;
+    private final int sessions;
+
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final LatencyStats sessionLatency = new LatencyStats("Elaborazione finestra");
+    private final List<Sample> samples = new ArrayList<>();
+
+    private volatile CountDownLatch sessionDone;
+    private volatile long sessionCaptured = 0;
+    private long totalCaptured = 0;
+    private long windows = 0;
+    private long detections = 0;
+    private volatile String lastError = null;
+
+    public SoakTest(SpottingPipeline pipeline, AudioSource source, float hours, float sessionMinutes) {
+        this.pipeline = pipeline;
+        // La durata totale richiesta resta quella: per avere abbastanza punti di tendenza
+        // nelle prove brevi si accorciano le sessioni, non si aggiungono ore di audio
+        this.sessions = Math.max(MIN_TREND_SAMPLES * 2, Math.round(hours * 60 / sessionMinutes));
+        this.sessionSamples = (long) (hours * 3600 / sessions * ModelConfig.SAMPLE_RATE);
+        this.source = source;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String modelPath = null;
+        String wavPath = null;
+        float hours = 24;
+        float sessionMinutes = 30;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--model":
+                    modelPath = args[++i];
+                    break;
+                case "--wav":
+                    wavPath = args[++i];
+                    break;
+                case "--hours":
+                    hours = Float.parseFloat(args[++i]);
+                    break;
+                case "--session-minutes":
+                    sessionMinutes = Float.parseFloat(args[++i]);
+                    break;
+                default:
+                    System.err.println("Argomento sconosciuto: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (modelPath == null || hours <= 0 || sessionMinutes <= 0) {
+            System.err.println("Uso: SoakTest --model <file.tflite> [--hours 24] [--session-minutes 30] [--wav <file>]");
+            System.exit(2);
+        }
+
+        KeywordClassifier classifier = new KeywordClassifier(new File(modelPath));
+        if (!classifier.isInitialized()) {
+            System.err.println("❌ Modello non caricato: " + modelPath);
+            System.exit(1);
+        }
+
+        // Sorgente infinita alla massima velocità
+        AudioSource source = wavPath != null
+                ? ReplayAudioSource.open(new File(wavPath), false, 0)
+                : SyntheticAudioSource.toneBursts(0, false, 600, 4000);
+
+        SoakTest soak = new SoakTest(new SpottingPipeline(new AudioPreprocessor(), classifier), source,
+                hours, sessionMinutes);
+        int exitCode = soak.run();
+        classifier.close();
+        System.exit(exitCode);
+    }
+
+    /**
+     * Esegue tutte le sessioni e valuta le tendenze
+     */
+    public int run() throws InterruptedException {
+        System.out.println(String.format(Locale.ROOT, "▶️ Soak: %d sessioni da %.1f min di audio",
+                sessions, sessionSamples / (60.0 * ModelConfig.SAMPLE_RATE)));
+        System.out.println(" ore audio   heap MB    RSS MB  dirette MB  thread    p50 ms    p99 ms");
+
+        // Creato qui e non nel costruttore: il listener è this, che deve essere già costruito
+        AudioRecorder recorder = new AudioRecorder(this, source);
+        // Conta i campioni della sessione e la chiude dal thread di cattura
+        recorder.addCaptureTap((data, offset, length, streamPosition) -> {
+            sessionCaptured += length;
+            CountDownLatch done = sessionDone;
+            if (sessionCaptured >= sessionSamples && done != null) {
+                done.countDown();
+            }
+        });
+
+        long startNanos = System.nanoTime();
+        for (int session = 0; session < sessions && lastError == null; session++) {
+            sessionCaptured = 0;
+            sessionDone = new CountDownLatch(1);
+            sessionLatency.reset();
+
+            recorder.startRecording();
+            while (!sessionDone.await(1, TimeUnit.SECONDS)) {
+                if (lastError != null) {
+                    break;
+                }
+            }
+            recorder.stopRecording();
+            totalCaptured += sessionCaptured;
+
+            Sample sample = measure();
+            samples.add(sample);
+            System.out.println(String.format(Locale.ROOT, "%8.2f %9.1f %10.1f %11.2f %7d %9.2f %9.2f",
+                    sample.audioHours, sample.heapMb, sample.residentMb, sample.directMb, sample.threads,
+                    sample.p50Ms, sample.p99Ms));
+        }
+        recorder.release();
+
+        double wallSeconds = (System.nanoTime() - startNanos) / 1e9;
+        double audioHours = totalCaptured / (3600.0 * ModelConfig.SAMPLE_RATE);
+        System.out.println(String.format(Locale.ROOT,
+                "=== SOAK: %.1f ore di audio in %.0f s (%.0fx), %d finestre, %d rilevamenti ===",
+                audioHours, wallSeconds, wallSeconds > 0 ? audioHours * 3600 / wallSeconds : 0, windows, detections));
+
+        boolean failed = lastError != null;
+        if (failed) {
+            System.out.println("❌ Errore della pipeline: " + lastError);
+        }
+        for (Metric metric : Metric.values()) {
+            failed |= !checkTrend(metric);
+        }
+        System.out.println(failed ? "❌ SOAK FALLITO" : "✅ SOAK SUPERATO: nessuna crescita");
+        return failed ? 1 : 0;
+    }
+
+    /**
+     * Misura a cattura ferma: due GC per stabilizzare l'heap vivo
+     */
+    private Sample measure() {
+        System.gc();
+        System.gc();
+        long heapUsed = memoryBean.getHeapMemoryUsage().getUsed();
+        long rss = Math.max(0, readResidentBytes());
+
+        long direct = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            direct += pool.getMemoryUsed();
+        }
+
+        return new Sample(totalCaptured / (3600.0 * ModelConfig.SAMPLE_RATE), heapUsed / (double) MB,
+                rss / (double) MB, direct / (double) MB, threadBean.getThreadCount(),
+                sessionLatency.percentile(50) / 1e6, sessionLatency.percentile(99) / 1e6);
+    }
+
+    /**
+     * VmRSS da /proc/self/status (Linux, Android); -1 se non disponibile
+     */
+    private static long readResidentBytes() {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    String[] parts = line.substring(6).trim().split("\\s+");
+                    return Long.parseLong(parts[0]) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Piattaforma senza procfs
+        }
+        return -1;
+    }
+
+    /**
+     * Pendenza di Theil-Sen (mediana delle pendenze a coppie) dopo il riscaldamento;
+     * fallisce se la crescita proiettata sull'intervallo misurato supera la tolleranza
+     */
+    private boolean checkTrend(Metric metric) {
+        int first = (int) Math.floor(samples.size() * WARMUP_FRACTION);
+        int count = samples.size() - first;
+        if (count < MIN_TREND_SAMPLES) {
+            System.out.println("⚠️ " + metric.label + ": campioni insufficienti per la tendenza");
+            return true;
+        }
+
+        double[] values = new double[count];
+        double[] slopes = new double[count * (count - 1) / 2];
+        int slopeCount = 0;
+        for (int i = 0; i < count; i++) {
+            Sample a = samples.get(first + i);
+            values[i] = metric.valueOf(a);
+            for (int j = i + 1; j < count; j++) {
+                Sample b = samples.get(first + j);
+                double dx = b.audioHours - a.audioHours;
+                if (dx > 0) {
+                    slopes[slopeCount++] = (metric.valueOf(b) - values[i]) / dx;
+                }
+            }
+        }
+        double slope = median(slopes, slopeCount);
+        double median = median(values.clone(), count);
+        double span = samples.get(samples.size() - 1).audioHours - samples.get(first).audioHours;
+        double growth = slope * span;
+        double tolerance = Math.max(metric.absoluteTolerance, metric.relativeTolerance * Math.abs(median));
+
+        boolean ok = growth <= tolerance;
+        System.out.println(String.format(Locale.ROOT, "%s %-16s mediana %8.2f %s, tendenza %+8.3f %s/h, " +
+                        "crescita proiettata %+8.2f (tolleranza %.2f)",
+                ok ? "✅" : "❌", metric.label, median, metric.unit, slope, metric.unit, growth, tolerance));
+        return ok;
+    }
+
+    private static double median(double[] values, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(values, 0, count);
+        return count % 2 == 1 ? values[count / 2] : (values[count / 2 - 1] + values[count / 2]) / 2;
+    }
+
+    // ========== IMPLEMENTAZIONE AudioRecorderListener ==========
+
+    @Override
+    public void onAudioDataReceived(short[] audioData) {
+        long startTime = System.nanoTime();
+        ClassificationResult result = pipeline.process(audioData);
+        sessionLatency.record(System.nanoTime() - startTime);
+        windows++;
+        if (result != null && result.isAccepted()) {
+            detections++;
+        }
+    }
+
+    @Override
+    public void onSilenceDetected() {
+    }
+
+    @Override
+    public void onSpeechDetected() {
+    }
+
+    @Override
+    public void onError(String error) {
+        lastError = error;
+        System.err.println("❌ " + error);
+        CountDownLatch done = sessionDone;
+        if (done != null) {
+            done.countDown();
+        }
+    }
+
+    @Override
+    public void onRecordingStopped() {
+    }
+
+    // Getters
+    public int getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Ore di audio effettivamente elaborate
+     */
+    public double getAudioHours() {
+        return totalCaptured / (3600.0 * ModelConfig.SAMPLE_RATE);
+    }
+}
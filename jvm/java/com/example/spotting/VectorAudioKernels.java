@@ -0,0 +1,177 @@
+package com.example.spotting;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * AudioKernels con la Vector API (jdk.incubator.vector, avvio con
+ * --add-modules jdk.incubator.vector). Caricata per riflessione da AudioKernels.getInstance().
+ *
+ * Usa sempre 8 corsie float (256 bit) anche dove l'hardware ne ha di più o di meno:
+ * la corsia j accumula gli elementi i % 8 == j, esattamente come gli accumulatori
+ * a strisce della versione scalare, e le corsie si sommano in ordine alla fine.
+ * Niente FMA: moltiplicazione e somma arrotondano separatamente come in Java scalare.
+ */
+public class VectorAudioKernels extends AudioKernels {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_256;
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_128;
+    private static final VectorSpecies<Short> SHORTS_FOR_LONGS = ShortVector.SPECIES_64;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_256;
+
+    public VectorAudioKernels() {
+        if (FLOATS.length() != LANES || SHORTS.length() != LANES) {
+            throw new IllegalStateException("Corsie inattese: " + FLOATS.length());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Vector API (" + FLOATS + ")";
+    }
+
+    @Override
+    public void normalize(short[] source, int srcOffset, float[] destination, int dstOffset, int length,
+                          float divisor) {
+        int bound = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            ShortVector samples = ShortVector.fromArray(SHORTS, source, srcOffset + i);
+            FloatVector floats = (FloatVector) samples.convertShape(VectorOperators.S2F, FLOATS, 0);
+            floats.div(divisor).intoArray(destination, dstOffset + i);
+        }
+        for (; i < length; i++) {
+            destination[dstOffset + i] = source[srcOffset + i] / divisor;
+        }
+    }
+
+    @Override
+    public float sumOfSquares(float[] data, int offset, int length) {
+        int bound = FLOATS.loopBound(length);
+        FloatVector accumulator = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            FloatVector samples = FloatVector.fromArray(FLOATS, data, offset + i);
+            accumulator = accumulator.add(samples.mul(samples));
+        }
+        float[] lanes = accumulator.toArray();
+        for (; i < length; i++) {
+            float sample = data[offset + i];
+            lanes[i % LANES] += sample * sample;
+        }
+        return sumLanes(lanes);
+    }
+
+    @Override
+    public long sumOfSquares(short[] data, int offset, int length) {
+        int step = LONGS.length();
+        int bound = length - length % step;
+        LongVector accumulator = LongVector.zero(LONGS);
+        int i = 0;
+        for (; i < bound; i += step) {
+            ShortVector samples = ShortVector.fromArray(SHORTS_FOR_LONGS, data, offset + i);
+            LongVector wide = (LongVector) samples.convertShape(VectorOperators.S2L, LONGS, 0);
+            accumulator = accumulator.add(wide.mul(wide));
+        }
+        long energy = accumulator.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            long sample = data[offset + i];
+            energy += sample * sample;
+        }
+        return energy;
+    }
+
+    @Override
+    public void statistics(float[] data, int offset, int length, float[] out) {
+        int bound = FLOATS.loopBound(length);
+        FloatVector min = FloatVector.broadcast(FLOATS, Float.POSITIVE_INFINITY);
+        FloatVector max = FloatVector.broadcast(FLOATS, Float.NEGATIVE_INFINITY);
+        FloatVector sums = FloatVector.zero(FLOATS);
+        FloatVector squares = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            FloatVector samples = FloatVector.fromArray(FLOATS, data, offset + i);
+            min = min.min(samples);
+            max = max.max(samples);
+            sums = sums.add(samples);
+            squares = squares.add(samples.mul(samples));
+        }
+
+        float minValue = min.reduceLanes(VectorOperators.MIN);
+        float maxValue = max.reduceLanes(VectorOperators.MAX);
+        float[] sumLanes = sums.toArray();
+        float[] squareLanes = squares.toArray();
+        for (; i < length; i++) {
+            float sample = data[offset + i];
+            minValue = Math.min(minValue, sample);
+            maxValue = Math.max(maxValue, sample);
+            sumLanes[i % LANES] += sample;
+            squareLanes[i % LANES] += sample * sample;
+        }
+
+        out[0] = minValue;
+        out[1] = maxValue;
+        out[2] = sumLanes(sumLanes);
+        out[3] = sumLanes(squareLanes);
+    }
+
+    @Override
+    public void dotProducts(float[] matrix, int rows, int dim, float[] query, float[] out) {
+        int bound = FLOATS.loopBound(dim);
+        float[] lanes = new float[LANES];
+        for (int r = 0; r < rows; r++) {
+            int row = r * dim;
+            FloatVector accumulator = FloatVector.zero(FLOATS);
+            int i = 0;
+            for (; i < bound; i += LANES) {
+                FloatVector values = FloatVector.fromArray(FLOATS, matrix, row + i);
+                accumulator = accumulator.add(values.mul(FloatVector.fromArray(FLOATS, query, i)));
+            }
+            accumulator.intoArray(lanes, 0);
+            for (; i < dim; i++) {
+                lanes[i % LANES] += matrix[row + i] * query[i];
+            }
+            out[r] = sumLanes(lanes);
+        }
+    }
+
+    @Override
+    public int argmax(float[] data, int offset, int length) {
+        if (length < LANES) {
+            return super.argmax(data, offset, length);
+        }
+
+        int bound = FLOATS.loopBound(length);
+        FloatVector max = FloatVector.broadcast(FLOATS, Float.NEGATIVE_INFINITY);
+        for (int i = 0; i < bound; i += LANES) {
+            max = max.max(FloatVector.fromArray(FLOATS, data, offset + i));
+        }
+        float maxValue = max.reduceLanes(VectorOperators.MAX);
+        for (int i = bound; i < length; i++) {
+            maxValue = Math.max(maxValue, data[offset + i]);
+        }
+
+        // Con NaN il confronto scalare (>) li ignora: si delega per avere lo stesso indice
+        if (Float.isNaN(maxValue)) {
+            return super.argmax(data, offset, length);
+        }
+
+        // Primo indice uguale al massimo (a parità vince il più basso, come nello scalare)
+        for (int i = 0; i < bound; i += LANES) {
+            VectorMask<Float> equal = FloatVector.fromArray(FLOATS, data, offset + i).eq(maxValue);
+            if (equal.anyTrue()) {
+                return i + equal.firstTrue();
+            }
+        }
+        for (int i = bound; i < length; i++) {
+            if (data[offset + i] == maxValue) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.spotting;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor con un thread virtuale per task (JDK 21+). Il server richiede già JDK 16+
+ * (socket Unix), quindi la riflessione serve solo a girare anche su JDK 16-20, dove
+ * i thread virtuali mancano: lì ripiega su un pool di thread di piattaforma senza limite.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static ExecutorService newPerTaskExecutor(String fallbackName) {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, fallbackName + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Avvia un thread virtuale (o di piattaforma, daemon, se non disponibili)
+     */
+    static Thread start(String fallbackName, Runnable task) {
+        try {
+            return (Thread) Thread.class.getMethod("startVirtualThread", Runnable.class).invoke(null, task);
+        } catch (ReflectiveOperationException e) {
+            Thread thread = new Thread(task, fallbackName);
+            thread.setDaemon(true);
+            thread.start();
+            return thread;
+        }
+    }
+
+    static boolean isAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.tensorflow.lite;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Interprete finto per PipelineSelfTest: stessa API di TFLite per quanto la usa il progetto,
+ * nessun modello. Ingresso [batch, 44032] a batch dinamico, uscita [batch, 12] con "yes"
+ * (indice 2) sempre a 0,89; ogni inferenza occupa la CPU per 4 ms più 1 ms per riga, così
+ * batch, code e scadenze si comportano come su un dispositivo lento.
+ *
+ * Va nel classpath AL POSTO della libreria TFLite, mai insieme: il self-test è deterministico
+ * solo con questo interprete (e con il modello reale fallisce all'avvio, non a metà).
+ * Non misura la memoria nativa dell'interprete: per quella serve SoakTest con il modello reale.
+ */
+public class Interpreter implements AutoCloseable {
+
+    private static final int INPUT_LENGTH = 44032;
+    private static final int CLASSES = 12;
+    private static final int YES_INDEX = 2;
+    private static final float YES_CONFIDENCE = 0.89f;
+    private static final long BASE_COST_NANOS = 4_000_000L;
+    private static final long ROW_COST_NANOS = 1_000_000L;
+
+    public static class Options {
+        public Options setNumThreads(int numThreads) {
+            return this;
+        }
+    }
+
+    private int batch = 1;
+    private boolean closed = false;
+
+    public Interpreter(ByteBuffer model, Options options) {
+        if (model == null || model.capacity() == 0) {
+            throw new IllegalArgumentException("Modello vuoto");
+        }
+    }
+
+    public Interpreter(File model, Options options) {
+        if (!model.isFile()) {
+            throw new IllegalArgumentException("Modello non trovato: " + model);
+        }
+    }
+
+    public Tensor getInputTensor(int index) {
+        return tensor(new int[]{batch, INPUT_LENGTH});
+    }
+
+    public Tensor getOutputTensor(int index) {
+        return tensor(new int[]{batch, CLASSES});
+    }
+
+    public int getInputTensorCount() {
+        return 1;
+    }
+
+    public int getOutputTensorCount() {
+        return 1;
+    }
+
+    public void resizeInput(int index, int[] shape) {
+        batch = shape[0];
+    }
+
+    public void allocateTensors() {
+    }
+
+    /**
+     * output è float[righe][12]: ogni riga predice "yes"
+     */
+    public void run(Object input, Object output) {
+        checkOpen();
+        float[][] rows = (float[][]) output;
+        for (float[] row : rows) {
+            Arrays.fill(row, 0.01f);
+            row[YES_INDEX] = YES_CONFIDENCE;
+        }
+        busyWait(BASE_COST_NANOS + ROW_COST_NANOS * rows.length);
+    }
+
+    /**
+     * Uscite float[1][n] costanti (embedding finto)
+     */
+    public void runForMultipleInputsOutputs(Object[] inputs, Map<Integer, Object> outputs) {
+        checkOpen();
+        for (Object output : outputs.values()) {
+            for (float[] row : (float[][]) output) {
+                Arrays.fill(row, 0.1f);
+            }
+        }
+        busyWait(BASE_COST_NANOS);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Interprete chiuso");
+        }
+    }
+
+    private static void busyWait(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static Tensor tensor(int[] shape) {
+        return new Tensor() {
+            @Override
+            public int[] shape() {
+                return shape.clone();
+            }
+
+            @Override
+            public int[] shapeSignature() {
+                int[] signature = shape.clone();
+                signature[0] = -1;
+                return signature;
+            }
+
+            @Override
+            public int numElements() {
+                int elements = 1;
+                for (int dimension : shape) {
+                    elements *= dimension;
+                }
+                return elements;
+            }
+
+            @Override
+            public int numBytes() {
+                return numElements() * 4;
+            }
+        };
+    }
+}
@@ -0,0 +1,15 @@
+package org.tensorflow.lite;
+
+/**
+ * Tensore dell'interprete finto: solo i metodi usati da KeywordClassifier
+ */
+public interface Tensor {
+
+    int[] shape();
+
+    int[] shapeSignature();
+
+    int numElements();
+
+    int numBytes();
+}
@@ -0,0 +1,155 @@
+package com.example.spotting;
+
+import android.os.PowerManager;
+import android.util.Log;
+
+/**
+ * Controllo adattivo del punto di lavoro in base a latenza misurata, profondità
+ * della coda di inferenza e stato termico.
+ *
+ * - Sovraccarico (latenza media oltre il target o coda ≥ 2): un livello più leggero,
+ *   al massimo uno ogni DOWNGRADE_HOLD_MS.
+ * - Margine ampio (latenza sotto metà target, coda vuota) per UPGRADE_HOLD_MS di fila:
+ *   un livello più costoso. L'asimmetria dei tempi evita oscillazioni.
+ * - Lo stato termico fissa il livello minimo consentito e ha effetto immediato.
+ */
+public class AdaptiveController {
+    private static final String TAG = "AdaptiveController";
+
+    private static final long DOWNGRADE_HOLD_MS = 1000;
+    private static final long UPGRADE_HOLD_MS = 15000;
+    private static final float LATENCY_SMOOTHING = 0.2f;
+    private static final int BACKLOG_DEPTH = 2;
+
+    public interface Listener {
+        void onOperatingPointChanged(OperatingPoint previous, OperatingPoint current, String reason);
+    }
+
+    private final long targetLatencyNanos;
+    private final Listener listener;
+
+    private int level = OperatingPoint.DEFAULT_LEVEL;
+    private int thermalStatus = PowerManager.THERMAL_STATUS_NONE;
+    private float smoothedLatencyNanos = 0f;
+    private boolean hasSamples = false;
+    private long lastChangeNanos;
+    private long comfortableSinceNanos = -1;
+    private int changes = 0;
+
+    public AdaptiveController(long targetLatencyMs, Listener listener) {
+        this.targetLatencyNanos = targetLatencyMs * 1_000_000L;
+        this.listener = listener;
+        this.lastChangeNanos = System.nanoTime();
+    }
+
+    /**
+     * Registra una finestra servita: attesa in coda + inferenza, e coda residua
+     */
+    public void recordWindow(long queueWaitNanos, long inferenceNanos, int queueDepth) {
+        OperatingPoint previous;
+        OperatingPoint current;
+        String reason;
+
+        synchronized (this) {
+            long latency = queueWaitNanos + inferenceNanos;
+            smoothedLatencyNanos = hasSamples
+                    ? smoothedLatencyNanos + (latency - smoothedLatencyNanos) * LATENCY_SMOOTHING
+                    : latency;
+            hasSamples = true;
+
+            long now = System.nanoTime();
+            boolean overloaded = smoothedLatencyNanos > targetLatencyNanos || queueDepth >= BACKLOG_DEPTH;
+            boolean comfortable = smoothedLatencyNanos < targetLatencyNanos / 2 && queueDepth == 0;
+
+            if (!comfortable) {
+                comfortableSinceNanos = -1;
+            } else if (comfortableSinceNanos < 0) {
+                comfortableSinceNanos = now;
+            }
+
+            previous = getOperatingPoint();
+            if (overloaded && level < OperatingPoint.LEVELS.length - 1
+                    && now - lastChangeNanos >= DOWNGRADE_HOLD_MS * 1_000_000L) {
+                reason = String.format("latenza %.0f ms, coda %d", smoothedLatencyNanos / 1e6, queueDepth);
+                setLevel(level + 1, now);
+            } else if (comfortable && level > minimumLevel()
+                    && now - comfortableSinceNanos >= UPGRADE_HOLD_MS * 1_000_000L
+                    && now - lastChangeNanos >= UPGRADE_HOLD_MS * 1_000_000L) {
+                reason = String.format("latenza %.0f ms stabile", smoothedLatencyNanos / 1e6);
+                setLevel(level - 1, now);
+                comfortableSinceNanos = now;
+            } else {
+                return;
+            }
+            current = getOperatingPoint();
+        }
+        notifyChange(previous, current, reason);
+    }
+
+    /**
+     * Stato termico (PowerManager.THERMAL_STATUS_*); può solo alzare subito il livello minimo
+     */
+    public void onThermalStatus(int status) {
+        OperatingPoint previous;
+        OperatingPoint current;
+        synchronized (this) {
+            thermalStatus = status;
+            int minimum = minimumLevel();
+            if (level >= minimum) {
+                return;
+            }
+            previous = getOperatingPoint();
+            setLevel(minimum, System.nanoTime());
+            current = getOperatingPoint();
+        }
+        notifyChange(previous, current, "stato termico " + status);
+    }
+
+    /**
+     * Livello minimo (più costoso) consentito dallo stato termico
+     */
+    private int minimumLevel() {
+        if (thermalStatus >= PowerManager.THERMAL_STATUS_CRITICAL) {
+            return 3;
+        } else if (thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE) {
+            return 2;
+        } else if (thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private void setLevel(int newLevel, long now) {
+        level = Math.max(0, Math.min(OperatingPoint.LEVELS.length - 1, newLevel));
+        lastChangeNanos = now;
+        changes++;
+    }
+
+    private void notifyChange(OperatingPoint previous, OperatingPoint current, String reason) {
+        Log.i(TAG, "Punto di lavoro: " + previous.getName() + " → " + current + " (" + reason + ")");
+        if (listener != null) {
+            listener.onOperatingPointChanged(previous, current, reason);
+        }
+    }
+
+    // Getters
+    public synchronized OperatingPoint getOperatingPoint() {
+        return OperatingPoint.LEVELS[level];
+    }
+
+    public synchronized float getSmoothedLatencyMs() {
+        return smoothedLatencyNanos / 1e6f;
+    }
+
+    public synchronized int getThermalStatus() {
+        return thermalStatus;
+    }
+
+    public synchronized int getChanges() {
+        return changes;
+    }
+
+    public long getTargetLatencyMs() {
+        return targetLatencyNanos / 1_000_000L;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.spotting;
+
+import android.util.Log;
+
+/**
+ * Cicli interni di preprocessing e statistiche (normalizzazione, energia, min/max, argmax)
+ * e ricerca per similarità sugli embedding (prodotti scalari).
+ *
+ * Questa classe è l'implementazione scalare. Sulla JVM, se il modulo
+ * jdk.incubator.vector è disponibile, getInstance() restituisce VectorAudioKernels
+ * (sorgenti jvm/), caricata per riflessione; su Android o senza il modulo resta scalare.
+ *
+ * Le somme in float seguono un ordine fisso: LANES accumulatori a strisce
+ * (l'elemento i va nell'accumulatore i % LANES) sommati poi in ordine 0..LANES-1.
+ * Le due implementazioni eseguono le stesse operazioni IEEE nello stesso ordine,
+ * quindi i risultati sono identici bit per bit.
+ */
+public class AudioKernels {
+    private static final String TAG = "AudioKernels";
+
+    /** Accumulatori delle riduzioni in float (= corsie di un vettore a 256 bit) */
+    public static final int LANES = 8;
+
+    private static final String VECTOR_IMPLEMENTATION = "com.example.spotting.VectorAudioKernels";
+    // -Dspotting.kernels=scalar forza l'implementazione scalare
+    private static final String PROPERTY = "spotting.kernels";
+
+    private static volatile AudioKernels instance;
+
+    protected AudioKernels() {
+    }
+
+    public static AudioKernels getInstance() {
+        AudioKernels current = instance;
+        if (current == null) {
+            synchronized (AudioKernels.class) {
+                current = instance;
+                if (current == null) {
+                    current = load();
+                    instance = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Implementazione scalare di riferimento (per confronti e benchmark)
+     */
+    public static AudioKernels scalar() {
+        return new AudioKernels();
+    }
+
+    private static AudioKernels load() {
+        if ("scalar".equals(System.getProperty(PROPERTY))) {
+            return new AudioKernels();
+        }
+        try {
+            AudioKernels vector = (AudioKernels) Class.forName(VECTOR_IMPLEMENTATION)
+                    .getDeclaredConstructor().newInstance();
+            Log.d(TAG, "Kernel audio: " + vector.getName());
+            return vector;
+        } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+            // Classe assente (Android) o modulo jdk.incubator.vector non aggiunto
+            return new AudioKernels();
+        }
+    }
+
+    public String getName() {
+        return "scalare";
+    }
+
+    /**
+     * destination[dstOffset + i] = source[srcOffset + i] / divisor
+     */
+    public void normalize(short[] source, int srcOffset, float[] destination, int dstOffset, int length,
+                          float divisor) {
+        for (int i = 0; i < length; i++) {
+            destination[dstOffset + i] = source[srcOffset + i] / divisor;
+        }
+    }
+
+    /**
+     * Somma dei quadrati in float, nell'ordine a strisce descritto sopra
+     */
+    public float sumOfSquares(float[] data, int offset, int length) {
+        float[] lanes = new float[LANES];
+        for (int i = 0; i < length; i++) {
+            float sample = data[offset + i];
+            lanes[i % LANES] += sample * sample;
+        }
+        return sumLanes(lanes);
+    }
+
+    /**
+     * Somma dei quadrati di campioni int16, esatta (nessun problema di ordine)
+     */
+    public long sumOfSquares(short[] data, int offset, int length) {
+        long energy = 0;
+        for (int i = 0; i < length; i++) {
+            long sample = data[offset + i];
+            energy += sample * sample;
+        }
+        return energy;
+    }
+
+    /**
+     * Statistiche in un passaggio: out = {min, max, somma, somma dei quadrati}
+     */
+    public void statistics(float[] data, int offset, int length, float[] out) {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        float[] sums = new float[LANES];
+        float[] squares = new float[LANES];
+        for (int i = 0; i < length; i++) {
+            float sample = data[offset + i];
+            min = Math.min(min, sample);
+            max = Math.max(max, sample);
+            sums[i % LANES] += sample;
+            squares[i % LANES] += sample * sample;
+        }
+        out[0] = min;
+        out[1] = max;
+        out[2] = sumLanes(sums);
+        out[3] = sumLanes(squares);
+    }
+
+    /**
+     * Indice (relativo a offset) del massimo; a parità vince l'indice più basso
+     */
+    public int argmax(float[] data, int offset, int length) {
+        int best = 0;
+        for (int i = 1; i < length; i++) {
+            if (data[offset + i] > data[offset + best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Prodotti scalari di query con ciascuna delle rows righe (lunghe dim) di matrix:
+     * out[r] = matrix[r * dim ..] · query, nell'ordine a strisce descritto sopra
+     */
+    public void dotProducts(float[] matrix, int rows, int dim, float[] query, float[] out) {
+        float[] lanes = new float[LANES];
+        for (int r = 0; r < rows; r++) {
+            int row = r * dim;
+            java.util.Arrays.fill(lanes, 0f);
+            for (int i = 0; i < dim; i++) {
+                lanes[i % LANES] += matrix[row + i] * query[i];
+            }
+            out[r] = sumLanes(lanes);
+        }
+    }
+
+    protected static float sumLanes(float[] lanes) {
+        float total = 0f;
+        for (float lane : lanes) {
+            total += lane;
+        }
+        return total;
+    }
+}
@@ -2,6 +2,9 @@ package com.example.spotting;
 
 import android.util.Log;
 
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
 public class AudioPreprocessor {
     private static final String TAG = "AudioPreprocessor";
 
@@ -12,6 +15,9 @@ public class AudioPreprocessor {
     // Parametri per la normalizzazione
     private static final float NORMALIZATION_FACTOR = 32768.0f; // Per convertire da int16 a float [-1, 1]
 
+    // Cicli interni: Vector API sulla JVM se disponibile, altrimenti scalari
+    private final AudioKernels kernels = AudioKernels.getInstance();
+
     public AudioPreprocessor() {
         Log.d(TAG, "AudioPreprocessor inizializzato per modello speech_commands.tflite");
         Log.d(TAG, "Input atteso: " + EXPECTED_SAMPLES + " campioni a " + EXPECTED_SAMPLE_RATE + "Hz");
@@ -55,14 +61,37 @@ public class AudioPreprocessor {
     private float[] normalizeAudioBasic(short[] audioData) {
         float[] normalized = new float[audioData.length];
 
-        for (int i = 0; i < audioData.length; i++) {
-            // Converte da int16 [-32768, 32767] a float32 [-1, 1]
-            normalized[i] = audioData[i] / NORMALIZATION_FACTOR;
-        }
+        // Converte da int16 [-32768, 32767] a float32 [-1, 1]
+        kernels.normalize(audioData, 0, normalized, 0, audioData.length, NORMALIZATION_FACTOR);
 
         return normalized;
     }
 
+    /**
+     * Normalizza una finestra letta direttamente da un buffer int16 (es. un file WAV mappato)
+     * nel vettore di destinazione, senza allocazioni.
+     * I campioni oltre la fine del buffer diventano zeri, come il padding di resizeAudio.
+     */
+    public void normalizeInto(ShortBuffer source, int start, float[] destination) {
+        int available = Math.max(0, Math.min(destination.length, source.limit() - start));
+
+        for (int i = 0; i < available; i++) {
+            destination[i] = source.get(start + i) / NORMALIZATION_FACTOR;
+        }
+
+        Arrays.fill(destination, available, destination.length, 0f);
+    }
+
+    /**
+     * Normalizza il contenuto di un buffer circolare int16 in ordine cronologico,
+     * a partire dal campione più vecchio (indice oldest). Nessuna allocazione.
+     */
+    public void normalizeRingInto(short[] ring, int oldest, float[] destination) {
+        int firstPart = ring.length - oldest;
+        kernels.normalize(ring, oldest, destination, 0, firstPart, NORMALIZATION_FACTOR);
+        kernels.normalize(ring, 0, destination, firstPart, oldest, NORMALIZATION_FACTOR);
+    }
+
     /**
      * Ridimensiona l'audio alla lunghezza target (44032 campioni)
      */
@@ -72,23 +101,32 @@ public class AudioPreprocessor {
         }
 
         short[] resized = new short[targetLength];
+        fitWindow(audioData, 0, audioData.length, resized);
 
         if (audioData.length < targetLength) {
-            // Pad con zeri se troppo corto
-            System.arraycopy(audioData, 0, resized, 0, audioData.length);
-            // I rimanenti elementi sono già 0 per default (zero padding)
             Log.d(TAG, "Audio padding: " + audioData.length + " -> " + targetLength +
                     " (aggiunti " + (targetLength - audioData.length) + " zeri)");
         } else {
-            // Tronca se troppo lungo (prende gli ultimi campioni per catturare la fine del comando)
-            int startIndex = audioData.length - targetLength;
-            System.arraycopy(audioData, startIndex, resized, 0, targetLength);
             Log.d(TAG, "Audio troncato: " + audioData.length + " -> " + targetLength);
         }
 
         return resized;
     }
 
+    /**
+     * Adatta length campioni alla lunghezza di window con la semantica di resizeAudio:
+     * se sono pochi vengono copiati all'inizio e il resto è zero (zero padding),
+     * se sono troppi si tengono gli ultimi (per catturare la fine del comando)
+     */
+    public static void fitWindow(short[] audio, int offset, int length, short[] window) {
+        if (length < window.length) {
+            System.arraycopy(audio, offset, window, 0, length);
+            Arrays.fill(window, length, window.length, (short) 0);
+        } else {
+            System.arraycopy(audio, offset + length - window.length, window, 0, window.length);
+        }
+    }
+
     /**
      * Calcola e logga le statistiche dell'audio per debug
      */
@@ -97,17 +135,13 @@ public class AudioPreprocessor {
             return;
         }
 
-        float min = Float.MAX_VALUE;
-        float max = Float.MIN_VALUE;
-        float sum = 0;
-        float energy = 0;
-
-        for (float sample : audioData) {
-            min = Math.min(min, sample);
-            max = Math.max(max, sample);
-            sum += sample;
-            energy += sample * sample;
-        }
+        // Un solo passaggio per min, max, somma ed energia
+        float[] stats = new float[4];
+        kernels.statistics(audioData, 0, audioData.length, stats);
+        float min = stats[0];
+        float max = stats[1];
+        float sum = stats[2];
+        float energy = stats[3];
 
         float mean = sum / audioData.length;
         float rms = (float) Math.sqrt(energy / audioData.length);
@@ -130,10 +164,7 @@ public class AudioPreprocessor {
         }
 
         // Calcola RMS energy
-        float energy = 0;
-        for (float sample : audioData) {
-            energy += sample * sample;
-        }
+        float energy = kernels.sumOfSquares(audioData, 0, audioData.length);
         float rms = (float) Math.sqrt(energy / audioData.length);
 
         boolean hasSpeech = rms > threshold;
@@ -144,7 +175,8 @@ public class AudioPreprocessor {
     }
 
     /**
-     * Converte audio stereo in mono (se necessario)
+     * Converte audio stereo in mono (se necessario).
+     * Alloca un nuovo array: nel percorso di cattura usare stereoToMonoInPlace.
      */
     public short[] stereoToMono(short[] stereoData) {
         if (stereoData == null || stereoData.length % 2 != 0) {
@@ -165,6 +197,52 @@ public class AudioPreprocessor {
         return monoData;
     }
 
+    /**
+     * Downmix a mono nello stesso array: i primi frames campioni diventano la media
+     * dei due canali. Restituisce il numero di frame (campioni mono) prodotti.
+     * Sicuro in-place perché il frame i legge gli indici 2i e 2i+1 >= i.
+     */
+    public static int stereoToMonoInPlace(short[] data, int length) {
+        int frames = length / 2;
+        for (int i = 0; i < frames; i++) {
+            int left = data[i * 2];
+            int right = data[i * 2 + 1];
+            data[i] = (short) ((left + right) / 2);
+        }
+        return frames;
+    }
+
+    /**
+     * Crea il ricampionatore dalla frequenza di cattura a quella del modello
+     */
+    public static PolyphaseResampler createResampler(int inputRate, int maxInputChunk) {
+        PolyphaseResampler resampler = new PolyphaseResampler(inputRate, EXPECTED_SAMPLE_RATE, maxInputChunk);
+        Log.d(TAG, "Ricampionatore " + inputRate + "Hz -> " + EXPECTED_SAMPLE_RATE + "Hz, " +
+                resampler.getTapsPerPhase() + " tap per fase, ritardo " +
+                String.format("%.2f", resampler.getGroupDelayMs()) + "ms");
+        return resampler;
+    }
+
+    /**
+     * Crea il front-end di feature in streaming (log-mel, o MFCC se mfcc è true)
+     * dimensionato su una finestra del modello
+     */
+    public StreamingFeatureExtractor createFeatureExtractor(boolean mfcc) {
+        StreamingFeatureExtractor extractor = new StreamingFeatureExtractor(
+                EXPECTED_SAMPLE_RATE,
+                ModelConfig.FEATURE_FRAME_LENGTH_MS,
+                ModelConfig.FEATURE_FRAME_STEP_MS,
+                ModelConfig.FEATURE_FFT_SIZE,
+                ModelConfig.FEATURE_MEL_BINS,
+                mfcc ? ModelConfig.FEATURE_MFCC_COUNT : 0,
+                ModelConfig.FEATURE_LOWER_HZ,
+                ModelConfig.FEATURE_UPPER_HZ,
+                ModelConfig.FEATURE_FRAMES_PER_WINDOW);
+        Log.d(TAG, "Front-end " + (mfcc ? "MFCC" : "log-mel") + ": " +
+                extractor.getFrameCapacity() + " frame x " + extractor.getFeatureCount() + " feature");
+        return extractor;
+    }
+
     // Getters
     public int getExpectedSamples() {
         return EXPECTED_SAMPLES;
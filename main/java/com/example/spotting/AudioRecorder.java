@@ -1,34 +1,98 @@
 package com.example.spotting;
 
-import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
+import android.os.Process;
 import android.util.Log;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
 
 public class AudioRecorder {
     private static final String TAG = "AudioRecorder";
 
     // Configurazioni audio per il modello speech_commands.tflite aggiornato
     private static final int SAMPLE_RATE = 16000;
-    private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO;
-    private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
 
     // NUOVO: Buffer size aggiornato per 44032 campioni (~2.75 secondi)
     private static final int BUFFER_SIZE_IN_SAMPLES = 44032;
-    private static final int MIN_BUFFER_SIZE = AudioRecord.getMinBufferSize(SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT);
 
-    private AudioRecord audioRecord;
-    private boolean isRecording = false;
+    // Frame letti dalla sorgente per ogni chiamata a read() (al massimo: con le sorgenti a burst, un burst)
+    private static final int READ_CHUNK_FRAMES = 1024;
+    private static final int PROGRESS_LOG_SAMPLES = SAMPLE_RATE / 2;
+    // false fuori da Android (android.os.Process assente)
+    private static volatile boolean threadPriorityAvailable = true;
+
+    private AudioSource audioSource;
+    private volatile boolean isRecording = false;
     private ExecutorService executorService;
     private AudioRecorderListener listener;
 
-    // Buffer circolare per la gestione dell'audio continuo
-    private short[] audioBuffer;
-    private int bufferPosition = 0;
-    private boolean bufferFull = false; // Flag per tracciare se il buffer è stato riempito almeno una volta
+    // Buffer circolare per la gestione dell'audio continuo (lo stesso dello stadio windower
+    // di PipelineStages); passo tra finestre di default adiacenti (hop = buffer)
+    private final SlidingWindowRing ring = new SlidingWindowRing(BUFFER_SIZE_IN_SAMPLES, BUFFER_SIZE_IN_SAMPLES);
+    private static final int MIN_HOP_SAMPLES = SAMPLE_RATE / 10;
+    // Con le finestre disattivate (classificazione per segmenti) resta solo la cadenza dell'hop
+    private volatile boolean windowsEnabled = true;
+
+    // Soglia RMS (int16) tra parlato e silenzio
+    private static final double SPEECH_RMS_THRESHOLD = 500.0;
+
+    // Conversione formato (sorgente a frequenza nativa o stereo → 16 kHz mono)
+    private PolyphaseResampler resampler;
+    private short[] resampleBuffer;
+    private long conversionNanos = 0;
+    private long conversionInputFrames = 0;
+
+    // Front-end di feature opzionale, alimentato con ogni campione a 16 kHz
+    private StreamingFeatureExtractor featureExtractor;
+
+    // Fine dell'ultima finestra nello stream (in campioni) per misurare la latenza sui replay
+    private long lastWindowEndSample = 0;
+
+    // Intervalli tra letture, jitter e xrun delle sorgenti a burst
+    private final CaptureStats captureStats = new CaptureStats();
+
+    // Contabilità della memoria: ring e conversione fissi, buffer di lettura per sessione
+    private final MemoryBudget.Reservation ringMemory;
+    private MemoryBudget.Reservation readMemory;
+    private MemoryBudget.Reservation readDirectMemory;
+
+    /**
+     * Osservatore dei campioni a 16 kHz mono appena catturati.
+     * Viene chiamato sul thread di cattura: deve essere veloce e non bloccare.
+     * streamPosition è la posizione nello stream del primo campione del blocco.
+     */
+    public interface CaptureTap {
+        void onSamplesCaptured(short[] data, int offset, int length, long streamPosition);
+    }
+
+    // Array copy-on-write: nessuna allocazione sul thread di cattura
+    private volatile CaptureTap[] captureTaps = new CaptureTap[0];
+
+    /**
+     * Osservatore delle finestre speculative, chiamato sul thread di cattura.
+     * Prima del primo riempimento del ring la finestra contiene i campioni catturati
+     * seguiti da zeri (come flushBuffer); dopo è la finestra completa, fuori dalla cadenza
+     * dell'hop. newSamples sono i campioni non ancora coperti da una finestra regolare.
+     */
+    public interface PartialWindowListener {
+        void onPartialWindow(short[] window, int newSamples, long windowEnd);
+    }
+
+    // Finestre speculative: ogni partialHopSamples, da partialMinSamples di audio nuovo con parlato,
+    // solo se il listener è pronto a classificarle (partialWindowReady)
+    private volatile PartialWindowListener partialWindowListener;
+    private volatile BooleanSupplier partialWindowReady;
+    private int partialMinSamples;
+    private int partialHopSamples;
+    private int samplesSincePartial = 0;
+    private long partialWindows = 0;
 
     public interface AudioRecorderListener {
         void onAudioDataReceived(short[] audioData);
@@ -39,35 +103,50 @@ public class AudioRecorder {
     }
 
     public AudioRecorder(AudioRecorderListener listener) {
+        this(listener, null);
+    }
+
+    /**
+     * Registratore su una sorgente arbitraria (file, segnale sintetico).
+     * Con audioSource null si usa il microfono.
+     */
+    public AudioRecorder(AudioRecorderListener listener, AudioSource audioSource) {
         this.listener = listener;
         this.executorService = Executors.newSingleThreadExecutor();
-        this.audioBuffer = new short[BUFFER_SIZE_IN_SAMPLES];
-        initAudioRecord();
+        initAudioSource(audioSource);
+        this.ringMemory = MemoryBudget.getInstance().register(TAG, "ring", MemoryBudget.Kind.HEAP,
+                (ring.getWindowSamples() + (resampleBuffer != null ? resampleBuffer.length : 0)) * 2L);
+        this.readMemory = MemoryBudget.getInstance().register(TAG, "lettura", MemoryBudget.Kind.HEAP, 0);
+        this.readDirectMemory = MemoryBudget.getInstance().register(TAG, "lettura", MemoryBudget.Kind.DIRECT, 0);
     }
 
-    private void initAudioRecord() {
+    private void initAudioSource(AudioSource source) {
         try {
-            // Buffer più grande per gestire 44032 campioni
-            int bufferSize = Math.max(MIN_BUFFER_SIZE, BUFFER_SIZE_IN_SAMPLES * 2);
-
-            audioRecord = new AudioRecord(
-                    MediaRecorder.AudioSource.MIC,
-                    SAMPLE_RATE,
-                    CHANNEL_CONFIG,
-                    AUDIO_FORMAT,
-                    bufferSize
-            );
-
-            if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
-                throw new RuntimeException("AudioRecord non inizializzato correttamente");
+            if (source == null) {
+                // La finestra da 44032 campioni è nel buffer circolare; AudioRecord tiene solo
+                // il margine per le emissioni delle finestre sul thread di cattura
+                source = new MicAudioSource(SAMPLE_RATE, 1, MicAudioSource.headroomBytes(SAMPLE_RATE, 1));
             }
 
-            Log.d(TAG, "AudioRecord inizializzato - Sample Rate: " + SAMPLE_RATE + "Hz");
+            if (source.getChannelCount() != 1 && source.getChannelCount() != 2) {
+                throw new IllegalArgumentException("Formato sorgente non supportato: " +
+                        source.getSampleRate() + "Hz, " + source.getChannelCount() + " canali");
+            }
+
+            // Frequenza diversa dal modello: ricampionamento in streaming
+            if (source.getSampleRate() != SAMPLE_RATE) {
+                resampler = AudioPreprocessor.createResampler(source.getSampleRate(), READ_CHUNK_FRAMES);
+                resampleBuffer = new short[resampler.getMaxOutputLength(READ_CHUNK_FRAMES)];
+            }
+
+            audioSource = source;
+
+            Log.d(TAG, "Sorgente audio: " + source.getDescription());
             Log.d(TAG, "Buffer size: " + BUFFER_SIZE_IN_SAMPLES + " campioni (" +
                     (BUFFER_SIZE_IN_SAMPLES / (float) SAMPLE_RATE) + " secondi)");
 
         } catch (Exception e) {
-            Log.e(TAG, "Errore nell'inizializzazione di AudioRecord", e);
+            Log.e(TAG, "Errore nell'inizializzazione della sorgente audio", e);
             if (listener != null) {
                 listener.onError("Errore inizializzazione AudioRecord: " + e.getMessage());
             }
@@ -75,7 +154,7 @@ public class AudioRecorder {
     }
 
     public void startRecording() {
-        if (audioRecord == null) {
+        if (audioSource == null) {
             if (listener != null) {
                 listener.onError("AudioRecord non inizializzato");
             }
@@ -88,10 +167,19 @@ public class AudioRecorder {
         }
 
         try {
-            audioRecord.startRecording();
+            audioSource.start();
             isRecording = true;
-            bufferPosition = 0;
-            bufferFull = false; // Reset del flag
+            ring.reset();
+            samplesSincePartial = 0;
+            partialWindows = 0;
+            conversionNanos = 0;
+            conversionInputFrames = 0;
+            if (resampler != null) {
+                resampler.reset();
+            }
+            if (featureExtractor != null) {
+                featureExtractor.reset();
+            }
 
             executorService.submit(this::recordingLoop);
             Log.d(TAG, "Registrazione avviata");
@@ -112,8 +200,8 @@ public class AudioRecorder {
         isRecording = false;
 
         try {
-            if (audioRecord != null) {
-                audioRecord.stop();
+            if (audioSource != null) {
+                audioSource.stop();
             }
 
             if (listener != null) {
@@ -130,20 +218,74 @@ public class AudioRecorder {
     }
 
     private void recordingLoop() {
-        short[] readBuffer = new short[1024]; // Buffer di lettura più piccolo per lettura continua
+        raiseThreadPriority();
+
+        int channels = audioSource.getChannelCount();
+        BurstAudioSource burstSource = audioSource instanceof BurstAudioSource ? (BurstAudioSource) audioSource : null;
+        int chunkFrames = burstSource != null
+                ? Math.max(1, Math.min(READ_CHUNK_FRAMES, burstSource.getBurstFrames()))
+                : READ_CHUNK_FRAMES;
+
+        // Buffer di lettura (frame interleaved se stereo)
+        short[] readBuffer = new short[chunkFrames * channels];
+
+        // Sorgenti a burst: lettura in un ByteBuffer diretto; se già 16 kHz mono
+        // i campioni vanno con una copia in blocco dal buffer diretto al ring
+        ByteBuffer directBuffer = null;
+        ShortBuffer directSamples = null;
+        if (burstSource != null) {
+            directBuffer = ByteBuffer.allocateDirect(readBuffer.length * 2).order(ByteOrder.nativeOrder());
+            directSamples = directBuffer.asShortBuffer();
+        }
+        readMemory.set(readBuffer.length * 2L);
+        readDirectMemory.set(directBuffer != null ? directBuffer.capacity() : 0);
+        boolean directToRing = burstSource != null && resampler == null && channels == 1;
+        // Replay (file, compresso, sintetico) già a 16 kHz mono: lettura direttamente nel ring
+        boolean readToRing = burstSource == null && resampler == null && channels == 1
+                && audioSource instanceof ReplayAudioSource;
+        captureStats.start(audioSource.getSampleRate(), burstSource != null ? burstSource.getBufferFrames() : 0);
+        if (burstSource != null) {
+            Log.d(TAG, "Cattura a burst: " + chunkFrames + " frame per lettura, buffer " +
+                    burstSource.getBufferFrames() + " frame" + (directToRing ? ", diretta nel ring" : ""));
+        }
 
         while (isRecording) {
             try {
-                int bytesRead = audioRecord.read(readBuffer, 0, readBuffer.length);
+                int bytesRead;
+                if (burstSource != null) {
+                    int result = burstSource.read(directBuffer, directBuffer.capacity());
+                    bytesRead = result > 0 ? result / 2 : result;
+                    if (bytesRead > 0) {
+                        captureStats.onRead(System.nanoTime(), bytesRead / channels);
+                        directSamples.clear();
+                        if (directToRing) {
+                            processAudioData(null, directSamples, bytesRead);
+                            continue;
+                        }
+                        directSamples.get(readBuffer, 0, bytesRead);
+                    }
+                } else if (readToRing) {
+                    bytesRead = readIntoRing(readBuffer.length);
+                    if (bytesRead > 0) {
+                        continue;
+                    }
+                } else {
+                    bytesRead = audioSource.read(readBuffer, 0, readBuffer.length);
+                }
 
                 if (bytesRead > 0) {
-                    processAudioData(readBuffer, bytesRead);
-                } else if (bytesRead == AudioRecord.ERROR_INVALID_OPERATION) {
+                    convertAndProcess(readBuffer, bytesRead);
+                } else if (bytesRead == AudioSource.END_OF_STREAM) {
+                    // Sorgente finita (replay): si ferma come su richiesta dell'utente
+                    Log.d(TAG, "Fine dello stream: " + ring.getTotalSamples() + " campioni elaborati");
+                    stopRecording();
+                    break;
+                } else if (bytesRead == AudioSource.ERROR_INVALID_OPERATION) {
                     if (listener != null) {
                         listener.onError("Operazione AudioRecord non valida");
                     }
                     break;
-                } else if (bytesRead == AudioRecord.ERROR_BAD_VALUE) {
+                } else if (bytesRead == AudioSource.ERROR_BAD_VALUE) {
                     if (listener != null) {
                         listener.onError("Valore AudioRecord non valido");
                     }
@@ -158,55 +300,192 @@ public class AudioRecorder {
                 break;
             }
         }
+        readMemory.set(0);
+        readDirectMemory.set(0);
+    }
+
+    /**
+     * Priorità audio del thread di cattura (solo Android: fuori dal dispositivo non c'è android.os.Process)
+     */
+    private static void raiseThreadPriority() {
+        if (!threadPriorityAvailable) {
+            return;
+        }
+        try {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        } catch (LinkageError e) {
+            // Strumenti headless (shim di Log in jvm/): si segnala una volta sola
+            threadPriorityAvailable = false;
+            Log.d(TAG, "Priorità audio non disponibile fuori da Android: " + e);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Priorità audio non impostata: " + e);
+        }
     }
 
-    private void processAudioData(short[] newData, int length) {
-        for (int i = 0; i < length; i++) {
-            audioBuffer[bufferPosition] = newData[i];
-            bufferPosition++;
+    /**
+     * Porta i campioni letti a 16 kHz mono: downmix in place, poi ricampionamento
+     */
+    private void convertAndProcess(short[] data, int length) {
+        if (resampler == null && audioSource.getChannelCount() == 1) {
+            processAudioData(data, null, length);
+            return;
+        }
 
-            // Quando il buffer è pieno
-            if (bufferPosition >= BUFFER_SIZE_IN_SAMPLES) {
-                bufferFull = true;
-                bufferPosition = 0; // Ricomincia da capo (buffer circolare)
+        long startTime = System.nanoTime();
+        int frames = audioSource.getChannelCount() == 2
+                ? AudioPreprocessor.stereoToMonoInPlace(data, length)
+                : length;
 
-                // Crea una copia del buffer per l'elaborazione
-                short[] bufferCopy = new short[BUFFER_SIZE_IN_SAMPLES];
-                System.arraycopy(audioBuffer, 0, bufferCopy, 0, BUFFER_SIZE_IN_SAMPLES);
+        short[] mono = data;
+        int monoLength = frames;
+        if (resampler != null) {
+            monoLength = resampler.process(data, 0, frames, resampleBuffer, 0);
+            mono = resampleBuffer;
+        }
+        conversionNanos += System.nanoTime() - startTime;
+        conversionInputFrames += frames;
 
-                // Rileva speech/silenzio
-                detectSpeechOrSilence(bufferCopy);
+        processAudioData(mono, null, monoLength);
+    }
 
-                // Invia i dati al listener
-                if (listener != null) {
-                    listener.onAudioDataReceived(bufferCopy);
-                }
+    /**
+     * Scrive length campioni (da newData, o da newSamples se non null) nel buffer circolare
+     * con copie in blocco. Osservatori e feature leggono i campioni direttamente dal ring;
+     * i blocchi si spezzano alla fine del ring e alla prossima finestra.
+     */
+    private void processAudioData(short[] newData, ShortBuffer newSamples, int length) {
+        int positionBefore = ring.getWritePosition();
+        int consumed = 0;
+        while (consumed < length) {
+            int chunk = Math.min(length - consumed, ring.getWritableChunk());
+
+            if (newSamples != null) {
+                newSamples.get(ring.getSamples(), ring.getWritePosition(), chunk);
+            } else {
+                System.arraycopy(newData, consumed, ring.getSamples(), ring.getWritePosition(), chunk);
+            }
+            commitChunk(chunk);
+            consumed += chunk;
+        }
+        logFillProgress(positionBefore);
+    }
 
-                Log.v(TAG, "Buffer completo inviato: " + BUFFER_SIZE_IN_SAMPLES + " campioni");
+    /**
+     * Sorgenti di replay a 16 kHz mono: read() scrive direttamente nel ring
+     * (nessun buffer di lettura intermedio). Restituisce il risultato di read().
+     */
+    private int readIntoRing(int maxSamples) {
+        int positionBefore = ring.getWritePosition();
+        int read = audioSource.read(ring.getSamples(), positionBefore, Math.min(maxSamples, ring.getWritableChunk()));
+        if (read > 0) {
+            commitChunk(read);
+            logFillProgress(positionBefore);
+        }
+        return read;
+    }
+
+    /**
+     * Contabilizza chunk campioni appena scritti nel ring alla posizione corrente
+     */
+    private void commitChunk(int chunk) {
+        short[] samples = ring.getSamples();
+        int start = ring.getWritePosition();
+        CaptureTap[] taps = captureTaps;
+        for (CaptureTap tap : taps) {
+            tap.onSamplesCaptured(samples, start, chunk, ring.getTotalSamples());
+        }
+
+        // Le feature si calcolano per frame mentre arriva l'audio, non per finestra
+        if (featureExtractor != null) {
+            featureExtractor.push(samples, start, chunk);
+        }
+
+        // Una finestra ogni hop campioni, dopo il primo riempimento
+        if (ring.commit(chunk)) {
+            samplesSincePartial = 0;
+            if (windowsEnabled) {
+                emitWindow();
             }
         }
 
-        // Log del progresso del riempimento del buffer (solo per debug)
-        if (!bufferFull && bufferPosition % 8000 == 0) { // Log ogni mezzo secondo circa
-            float progress = (bufferPosition / (float) BUFFER_SIZE_IN_SAMPLES) * 100;
+        // Tra una finestra regolare e l'altra (o prima della prima), finestre speculative
+        if (partialWindowListener != null) {
+            samplesSincePartial += chunk;
+            if (samplesSincePartial >= partialHopSamples) {
+                samplesSincePartial = 0;
+                emitPartialWindow();
+            }
+        }
+    }
+
+    private void logFillProgress(int positionBefore) {
+        // Log del progresso del riempimento del buffer, circa ogni mezzo secondo (solo per debug)
+        int position = ring.getWritePosition();
+        if (!ring.isFull() && positionBefore / PROGRESS_LOG_SAMPLES != position / PROGRESS_LOG_SAMPLES) {
+            float progress = (position / (float) BUFFER_SIZE_IN_SAMPLES) * 100;
             Log.v(TAG, "Buffer riempimento: " + String.format("%.1f%%", progress) +
-                    " (" + bufferPosition + "/" + BUFFER_SIZE_IN_SAMPLES + ")");
+                    " (" + position + "/" + BUFFER_SIZE_IN_SAMPLES + ")");
         }
     }
 
-    private void detectSpeechOrSilence(short[] audioData) {
-        long energy = 0;
-        for (short sample : audioData) {
-            energy += (long) sample * sample;
+    private void emitWindow() {
+        short[] bufferCopy = copyWindow();
+
+        // Rileva speech/silenzio
+        detectSpeechOrSilence(bufferCopy);
+        lastWindowEndSample = ring.getTotalSamples();
+
+        // Invia i dati al listener
+        if (listener != null) {
+            listener.onAudioDataReceived(bufferCopy);
         }
 
-        double rms = Math.sqrt((double) energy / audioData.length);
+        Log.v(TAG, "Buffer completo inviato: " + BUFFER_SIZE_IN_SAMPLES + " campioni");
+    }
+
+    /**
+     * Copia del buffer in ordine cronologico (dal campione più vecchio)
+     */
+    private short[] copyWindow() {
+        short[] bufferCopy = new short[BUFFER_SIZE_IN_SAMPLES];
+        ring.copyWindow(bufferCopy);
+        return bufferCopy;
+    }
 
-        // Soglia adattata per il buffer più lungo
-        double speechThreshold = 500.0; // Ridotta leggermente per buffer più lungo
+    /**
+     * Copia dei campioni del primo riempimento, seguiti da zeri di padding
+     */
+    private short[] copyPaddedWindow() {
+        short[] paddedBuffer = new short[BUFFER_SIZE_IN_SAMPLES];
+        ring.copyPaddedWindow(paddedBuffer);
+        return paddedBuffer;
+    }
+
+    /**
+     * Finestra speculativa sull'audio nuovo, se ce n'è abbastanza, il listener la classificherebbe
+     * e contiene parlato: RMS e copia si pagano solo quando c'è qualcosa da anticipare
+     */
+    private void emitPartialWindow() {
+        int newSamples = ring.getSamplesSinceWindow();
+        PartialWindowListener partialListener = partialWindowListener;
+        BooleanSupplier ready = partialWindowReady;
+        if (newSamples < partialMinSamples || partialListener == null
+                || (ready != null && !ready.getAsBoolean())
+                || ring.recentRms(newSamples) <= SPEECH_RMS_THRESHOLD) {
+            return;
+        }
+        partialWindows++;
+        partialListener.onPartialWindow(ring.isFull() ? copyWindow() : copyPaddedWindow(), newSamples,
+                ring.getTotalSamples());
+    }
+
+    private void detectSpeechOrSilence(short[] audioData) {
+        long energy = AudioKernels.getInstance().sumOfSquares(audioData, 0, audioData.length);
+
+        double rms = Math.sqrt((double) energy / audioData.length);
 
         if (listener != null) {
-            if (rms > speechThreshold) {
+            if (rms > SPEECH_RMS_THRESHOLD) {
                 listener.onSpeechDetected();
                 Log.v(TAG, "Speech detected - RMS: " + String.format("%.1f", rms));
             } else {
@@ -221,11 +500,10 @@ public class AudioRecorder {
      * Utile quando si ferma la registrazione
      */
     public void flushBuffer() {
+        int bufferPosition = ring.getWritePosition();
         if (bufferPosition > 0) {
             // Crea un buffer della dimensione corretta con padding di zeri
-            short[] paddedBuffer = new short[BUFFER_SIZE_IN_SAMPLES];
-            System.arraycopy(audioBuffer, 0, paddedBuffer, 0, bufferPosition);
-            // Il resto rimane a zero (padding automatico)
+            short[] paddedBuffer = copyPaddedWindow();
 
             Log.d(TAG, "Buffer flush: " + bufferPosition + " campioni + " +
                     (BUFFER_SIZE_IN_SAMPLES - bufferPosition) + " zeri di padding");
@@ -236,6 +514,51 @@ public class AudioRecorder {
         }
     }
 
+    /**
+     * Imposta il passo tra finestre (in campioni a 16 kHz), tra 100 ms e la durata del buffer.
+     * Sicuro da chiamare durante la registrazione: vale dalla finestra successiva.
+     */
+    public void setHopSamples(int hopSamples) {
+        ring.setHopSamples(Math.max(MIN_HOP_SAMPLES, Math.min(BUFFER_SIZE_IN_SAMPLES, hopSamples)));
+    }
+
+    public int getHopSamples() {
+        return ring.getHopSamples();
+    }
+
+    /**
+     * Abilita o disabilita le finestre a cadenza fissa: disabilitate, il thread di cattura
+     * non copia la finestra né ne calcola l'RMS (i tap ricevono comunque tutti i campioni)
+     */
+    public void setWindowsEnabled(boolean windowsEnabled) {
+        this.windowsEnabled = windowsEnabled;
+    }
+
+    public boolean isWindowsEnabled() {
+        return windowsEnabled;
+    }
+
+    /**
+     * Abilita (o con null disabilita) le finestre speculative: una ogni hopSamples, quando
+     * ci sono almeno minSamples di audio nuovo con parlato. ready (può essere null) è interpellato
+     * sul thread di cattura prima di RMS e copia: false se la finestra non verrebbe classificata.
+     * Va chiamato a registrazione ferma.
+     */
+    public void setPartialWindowListener(PartialWindowListener listener, BooleanSupplier ready,
+                                         int minSamples, int hopSamples) {
+        this.partialMinSamples = Math.max(MIN_HOP_SAMPLES, Math.min(BUFFER_SIZE_IN_SAMPLES, minSamples));
+        this.partialHopSamples = Math.max(1, hopSamples);
+        this.partialWindowReady = ready;
+        this.partialWindowListener = listener;
+    }
+
+    /**
+     * Finestre speculative inviate nella sessione
+     */
+    public long getPartialWindows() {
+        return partialWindows;
+    }
+
     public void release() {
         stopRecording();
 
@@ -243,15 +566,18 @@ public class AudioRecorder {
             executorService.shutdownNow();
         }
 
-        if (audioRecord != null) {
+        if (audioSource != null) {
             try {
-                audioRecord.release();
-                audioRecord = null;
+                audioSource.release();
+                audioSource = null;
             } catch (Exception e) {
-                Log.e(TAG, "Errore nel rilascio di AudioRecord", e);
+                Log.e(TAG, "Errore nel rilascio della sorgente audio", e);
             }
         }
 
+        ringMemory.release();
+        readMemory.release();
+        readDirectMemory.release();
         Log.d(TAG, "AudioRecorder rilasciato");
     }
 
@@ -269,14 +595,83 @@ public class AudioRecorder {
     }
 
     public boolean isBufferFull() {
-        return bufferFull;
+        return ring.isFull();
     }
 
     public int getCurrentBufferPosition() {
-        return bufferPosition;
+        return ring.getWritePosition();
     }
 
     public float getBufferDurationSeconds() {
         return BUFFER_SIZE_IN_SAMPLES / (float) SAMPLE_RATE;
     }
+
+    public int getCaptureSampleRate() {
+        return audioSource != null ? audioSource.getSampleRate() : SAMPLE_RATE;
+    }
+
+    /**
+     * CPU spesa in downmix/ricampionamento per secondo di audio catturato (ms)
+     */
+    public float getConversionCpuMsPerSecond() {
+        if (conversionInputFrames == 0 || audioSource == null) {
+            return 0f;
+        }
+        double audioSeconds = conversionInputFrames / (double) audioSource.getSampleRate();
+        return (float) (conversionNanos / 1e6 / audioSeconds);
+    }
+
+    /**
+     * Latenza algoritmica aggiunta dalla conversione (ritardo di gruppo del filtro)
+     */
+    public float getConversionLatencyMs() {
+        return resampler != null ? resampler.getGroupDelayMs() : 0f;
+    }
+
+    public synchronized void addCaptureTap(CaptureTap tap) {
+        CaptureTap[] taps = Arrays.copyOf(captureTaps, captureTaps.length + 1);
+        taps[taps.length - 1] = tap;
+        captureTaps = taps;
+    }
+
+    public synchronized void removeCaptureTap(CaptureTap tap) {
+        List<CaptureTap> taps = new ArrayList<>(Arrays.asList(captureTaps));
+        taps.remove(tap);
+        captureTaps = taps.toArray(new CaptureTap[0]);
+    }
+
+    /**
+     * Imposta il front-end di feature (per i modelli su spettrogramma).
+     * Va chiamato a registrazione ferma; il listener può leggere le feature
+     * della finestra corrente con StreamingFeatureExtractor.copyWindow.
+     */
+    public void setFeatureExtractor(StreamingFeatureExtractor featureExtractor) {
+        this.featureExtractor = featureExtractor;
+    }
+
+    public StreamingFeatureExtractor getFeatureExtractor() {
+        return featureExtractor;
+    }
+
+    public AudioSource getAudioSource() {
+        return audioSource;
+    }
+
+    /**
+     * Intervalli tra letture, jitter e xrun della sessione (solo sorgenti a burst)
+     */
+    public CaptureStats getCaptureStats() {
+        return captureStats;
+    }
+
+    public long getTotalSamplesCaptured() {
+        return ring.getTotalSamples();
+    }
+
+    /**
+     * Posizione nello stream (in campioni) della fine dell'ultima finestra inviata al listener
+     */
+    public long getLastWindowEndSample() {
+        return lastWindowEndSample;
+    }
 }
\ No newline at end of file
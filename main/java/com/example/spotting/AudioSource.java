@@ -0,0 +1,44 @@
+package com.example.spotting;
+
+import java.io.IOException;
+
+/**
+ * Sorgente di campioni PCM int16 per AudioRecorder.
+ * Permette di sostituire il microfono con file registrati o segnali generati,
+ * così la stessa pipeline di produzione può girare anche fuori dal dispositivo.
+ */
+public interface AudioSource {
+
+    // Codici di errore allineati a quelli di AudioRecord
+    int ERROR = -1;
+    int ERROR_BAD_VALUE = -2;
+    int ERROR_INVALID_OPERATION = -3;
+
+    // Fine dello stream (solo sorgenti finite: file, segnali con durata)
+    int END_OF_STREAM = -100;
+
+    /**
+     * Avvia la sorgente. Può essere richiamato dopo stop() per riprendere.
+     */
+    void start() throws IOException;
+
+    /**
+     * Legge fino a length campioni in buffer a partire da offset
+     * (interleaved se getChannelCount() > 1, come AudioRecord).
+     * Restituisce il numero di campioni letti, END_OF_STREAM o un codice di errore.
+     */
+    int read(short[] buffer, int offset, int length);
+
+    void stop();
+
+    void release();
+
+    int getSampleRate();
+
+    int getChannelCount();
+
+    /**
+     * Descrizione leggibile della sorgente, usata nei log
+     */
+    String getDescription();
+}
@@ -0,0 +1,332 @@
+package com.example.spotting;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Classificazione offline di archivi audio.
+ * I file WAV vengono mappati in memoria e le finestre sono normalizzate direttamente
+ * dai campioni int16 mappati, senza decodificare il file in array su heap.
+ * I file (e i file lunghi, a segmenti) sono elaborati in parallelo su un ForkJoinPool.
+ * Ogni segmento riclassifica le finestre del precedente che si sovrappongono alla sua prima,
+ * solo per la soppressione dei duplicati: l'uscita è quella di un'unica passata sul file.
+ *
+ * Uso:
+ *   BatchClassifier --model speech_commands.tflite [--threads N] [--hop-ms 500]
+ *                   [--format csv|json] [--out rilevamenti.csv] <file.wav|cartella>...
+ */
+public class BatchClassifier {
+
+    public enum OutputFormat {
+        CSV,
+        JSON
+    }
+
+    // Regione mappata per volta: i MappedByteBuffer sono limitati a 2 GB
+    private static final long REGION_SAMPLES = 64L * 1024 * 1024;
+    // Audio per task: i file lunghi vengono divisi per bilanciare il lavoro tra i thread
+    private static final long SEGMENT_SAMPLES = 10L * 60 * ModelConfig.SAMPLE_RATE;
+    private static final int PROGRESS_INTERVAL_SECONDS = 10;
+
+    private final ClassifierPool classifierPool;
+    private final AudioPreprocessor audioPreprocessor = new AudioPreprocessor();
+    private final int windowSamples;
+    private final int hopSamples;
+    // Finestre precedenti al segmento che si sovrappongono alla sua prima finestra
+    private final int leadInWindows;
+    private final OutputFormat format;
+    private final Writer output;
+
+    // Progresso
+    private final AtomicLong samplesProcessed = new AtomicLong();
+    private final AtomicLong windowsProcessed = new AtomicLong();
+    private final AtomicLong detections = new AtomicLong();
+    private final AtomicInteger filesCompleted = new AtomicInteger();
+    private final AtomicInteger filesFailed = new AtomicInteger();
+    private final ThreadLocal<float[]> windowBuffers;
+
+    public BatchClassifier(ClassifierPool classifierPool, int hopSamples, OutputFormat format, Writer output) {
+        this.classifierPool = classifierPool;
+        this.windowSamples = ModelConfig.INPUT_LENGTH;
+        this.hopSamples = hopSamples;
+        this.leadInWindows = (windowSamples - 1) / hopSamples;
+        this.format = format;
+        this.output = output;
+        this.windowBuffers = ThreadLocal.withInitial(() -> new float[windowSamples]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String modelPath = null;
+        String outPath = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hopMs = 500;
+        OutputFormat format = OutputFormat.CSV;
+        List<File> inputs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--model":
+                    modelPath = args[++i];
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--hop-ms":
+                    hopMs = Integer.parseInt(args[++i]);
+                    break;
+                case "--format":
+                    format = OutputFormat.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                    break;
+                case "--out":
+                    outPath = args[++i];
+                    break;
+                default:
+                    collectWavFiles(new File(args[i]), inputs);
+                    break;
+            }
+        }
+
+        if (modelPath == null || inputs.isEmpty() || hopMs <= 0) {
+            System.err.println("Uso: BatchClassifier --model <file.tflite> [--threads N] [--hop-ms 500] " +
+                    "[--format csv|json] [--out file] <file.wav|cartella>...");
+            System.exit(2);
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                outPath != null ? new FileOutputStream(outPath) : System.out, StandardCharsets.UTF_8));
+
+        int exitCode;
+        try (ClassifierPool pool = new ClassifierPool(new File(modelPath), threads)) {
+            BatchClassifier batch = new BatchClassifier(pool, hopMs * ModelConfig.SAMPLE_RATE / 1000, format, writer);
+            exitCode = batch.run(inputs, threads);
+        } finally {
+            writer.flush();
+            if (outPath != null) {
+                writer.close();
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    private static void collectWavFiles(File file, List<File> files) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    collectWavFiles(child, files);
+                }
+            }
+        } else if (file.getName().toLowerCase(Locale.ROOT).endsWith(".wav")) {
+            files.add(file);
+        }
+    }
+
+    /**
+     * Elabora tutti i file e stampa il riepilogo su stderr.
+     * Restituisce 0 se tutti i file sono stati elaborati, 1 altrimenti.
+     */
+    public int run(List<File> files, int parallelism) throws IOException {
+        writeHeader();
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        long startNanos = System.nanoTime();
+        progress.scheduleAtFixedRate(() -> printProgress(files.size(), startNanos),
+                PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (File file : files) {
+                tasks.add(pool.submit(() -> processFile(file)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            progress.shutdownNow();
+            pool.shutdown();
+        }
+
+        output.flush();
+        printProgress(files.size(), startNanos);
+        return filesFailed.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Divide il file in segmenti e li elabora come sotto-task (work stealing)
+     */
+    private void processFile(File file) {
+        WavHeader header;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            header = WavHeader.read(raf.getChannel());
+        } catch (IOException e) {
+            fail(file, e.getMessage());
+            return;
+        }
+
+        if (header.getSampleRate() != ModelConfig.SAMPLE_RATE || header.getChannelCount() != 1) {
+            fail(file, "formato non supportato (" + header.getSampleRate() + "Hz, " +
+                    header.getChannelCount() + " canali)");
+            return;
+        }
+
+        long frames = header.getFrameCount();
+        long windows = frames <= windowSamples ? 1 : (frames - windowSamples + hopSamples - 1) / hopSamples + 1;
+        long windowsPerSegment = Math.max(1, SEGMENT_SAMPLES / hopSamples);
+
+        List<ForkJoinTask<?>> segments = new ArrayList<>();
+        for (long first = 0; first < windows; first += windowsPerSegment) {
+            long from = first;
+            long to = Math.min(windows, first + windowsPerSegment);
+            segments.add(ForkJoinTask.adapt(() -> processSegment(file, header, from, to, to == windows)).fork());
+        }
+
+        boolean failed = false;
+        for (ForkJoinTask<?> segment : segments) {
+            try {
+                segment.join();
+            } catch (RuntimeException e) {
+                failed = true;
+                fail(file, e.getMessage());
+            }
+        }
+        if (!failed) {
+            filesCompleted.incrementAndGet();
+        }
+    }
+
+    private void processSegment(File file, WavHeader header, long firstWindow, long endWindow, boolean lastSegment) {
+        KeywordClassifier classifier;
+        try {
+            classifier = classifierPool.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrotto");
+        }
+
+        long frames = header.getFrameCount();
+        float[] window = windowBuffers.get();
+        String previousLabel = null;
+        long previousEnd = -1;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            ShortBuffer region = null;
+            long regionStart = 0;
+            long regionEnd = 0;
+
+            // Il rilevamento a cavallo del confine è del segmento precedente: le sue finestre
+            // vengono classificate di nuovo, ma solo per lo stato dei duplicati
+            for (long w = Math.max(0, firstWindow - leadInWindows); w < endWindow; w++) {
+                boolean leadIn = w < firstWindow;
+                long start = w * hopSamples;
+                long end = Math.min(frames, start + windowSamples);
+
+                // Rimappa quando la finestra esce dalla regione corrente
+                if (region == null || start < regionStart || end > regionEnd) {
+                    regionStart = start;
+                    regionEnd = Math.min(frames, start + Math.max(REGION_SAMPLES, windowSamples));
+                    region = channel.map(FileChannel.MapMode.READ_ONLY,
+                                    header.getDataOffset() + regionStart * 2,
+                                    (regionEnd - regionStart) * 2)
+                            .order(ByteOrder.LITTLE_ENDIAN)
+                            .asShortBuffer();
+                }
+
+                audioPreprocessor.normalizeInto(region, (int) (start - regionStart), window);
+                if (!leadIn) {
+                    windowsProcessed.incrementAndGet();
+                }
+
+                if (!audioPreprocessor.containsSpeech(window, SpottingPipeline.SPEECH_RMS_THRESHOLD)) {
+                    continue;
+                }
+
+                ClassificationResult result = classifier.classifyDetailed(window);
+                if (result == null || !result.isAccepted() || !ModelConfig.isCommandSupported(result.getLabel())) {
+                    continue;
+                }
+
+                // Finestre sovrapposte vedono la stessa parola: si scrive una sola riga
+                boolean duplicate = result.getLabel().equals(previousLabel) && start < previousEnd;
+                previousLabel = result.getLabel();
+                previousEnd = start + windowSamples;
+                if (duplicate || leadIn) {
+                    continue;
+                }
+
+                detections.incrementAndGet();
+                writeDetection(file, start, start + windowSamples, result);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        } finally {
+            classifierPool.release(classifier);
+        }
+
+        long segmentStart = firstWindow * hopSamples;
+        long segmentEnd = lastSegment ? frames : Math.min(frames, endWindow * hopSamples);
+        samplesProcessed.addAndGet(Math.max(0, segmentEnd - segmentStart));
+    }
+
+    private void writeHeader() throws IOException {
+        if (format == OutputFormat.CSV) {
+            output.write("file,start_s,end_s,label,confidence,margin\n");
+        }
+    }
+
+    private void writeDetection(File file, long startSample, long endSample, ClassificationResult result)
+            throws IOException {
+        double start = startSample / (double) ModelConfig.SAMPLE_RATE;
+        double end = endSample / (double) ModelConfig.SAMPLE_RATE;
+        String line;
+        if (format == OutputFormat.CSV) {
+            line = String.format(Locale.ROOT, "\"%s\",%.3f,%.3f,%s,%.4f,%.4f\n",
+                    file.getPath().replace("\"", "\"\""), start, end, result.getLabel(),
+                    result.getConfidence(), result.getMargin());
+        } else {
+            line = String.format(Locale.ROOT,
+                    "{\"file\":\"%s\",\"start_s\":%.3f,\"end_s\":%.3f,\"label\":\"%s\",\"confidence\":%.4f,\"margin\":%.4f}\n",
+                    file.getPath().replace("\\", "\\\\").replace("\"", "\\\""), start, end,
+                    result.getLabel(), result.getConfidence(), result.getMargin());
+        }
+        synchronized (output) {
+            output.write(line);
+        }
+    }
+
+    private void fail(File file, String reason) {
+        filesFailed.incrementAndGet();
+        System.err.println("❌ " + file.getPath() + ": " + reason);
+    }
+
+    private void printProgress(int totalFiles, long startNanos) {
+        double audioHours = samplesProcessed.get() / (double) ModelConfig.SAMPLE_RATE / 3600.0;
+        double wallMinutes = (System.nanoTime() - startNanos) / 60e9;
+        System.err.println(String.format(Locale.ROOT,
+                "📊 File %d/%d (errori: %d) - audio %.2f h - finestre %d - rilevamenti %d - %.2f ore audio/min",
+                filesCompleted.get(), totalFiles, filesFailed.get(), audioHours, windowsProcessed.get(),
+                detections.get(), wallMinutes > 0 ? audioHours / wallMinutes : 0));
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.spotting;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool di PipelineBuffer della stessa capacità. Se il pool è vuoto alloca un buffer nuovo
+ * (contato in getAllocations): a regime le allocazioni si fermano al numero di buffer
+ * contemporaneamente in volo. Oltre maxPooled, o se trattenerli sforerebbe il MemoryBudget,
+ * i buffer restituiti sono lasciati al GC.
+ */
+public class BufferPool {
+
+    private final String name;
+    private final int sampleCapacity;
+    private final int valueCapacity;
+    private final int maxPooled;
+
+    private final ConcurrentLinkedQueue<PipelineBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Buffer vivi (in uso o nel pool): il pool cresce solo se il budget lo consente
+    private final long bufferBytes;
+    private final MemoryBudget.Reservation memory;
+
+    public BufferPool(String name, int sampleCapacity, int valueCapacity, int maxPooled) {
+        this.name = name;
+        this.sampleCapacity = sampleCapacity;
+        this.valueCapacity = valueCapacity;
+        this.maxPooled = maxPooled;
+        this.bufferBytes = sampleCapacity * 2L + valueCapacity * 4L;
+        this.memory = MemoryBudget.getInstance().register("BufferPool", name, MemoryBudget.Kind.HEAP, 0);
+    }
+
+    /**
+     * Buffer per campioni int16
+     */
+    public static BufferPool forSamples(String name, int capacity, int maxPooled) {
+        return new BufferPool(name, capacity, 0, maxPooled);
+    }
+
+    /**
+     * Buffer per valori float
+     */
+    public static BufferPool forValues(String name, int capacity, int maxPooled) {
+        return new BufferPool(name, 0, capacity, maxPooled);
+    }
+
+    /**
+     * Buffer con un riferimento (del chiamante)
+     */
+    public PipelineBuffer acquire() {
+        PipelineBuffer buffer = free.poll();
+        if (buffer != null) {
+            pooled.decrementAndGet();
+        } else {
+            buffer = new PipelineBuffer(this, sampleCapacity, valueCapacity);
+            allocations.incrementAndGet();
+            // Il buffer serve comunque al chiamante: si contabilizza anche oltre il budget
+            memory.add(bufferBytes);
+        }
+        acquisitions.incrementAndGet();
+        inUse.incrementAndGet();
+        buffer.acquired();
+        return buffer;
+    }
+
+    void recycle(PipelineBuffer buffer) {
+        inUse.decrementAndGet();
+        if (pooled.incrementAndGet() <= maxPooled && !MemoryBudget.getInstance().isOverLimit()) {
+            free.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+            dropped.incrementAndGet();
+            memory.add(-bufferBytes);
+        }
+    }
+
+    /**
+     * Svuota il pool e chiude la contabilità (i buffer ancora in uso vanno al GC)
+     */
+    public void release() {
+        while (free.poll() != null) {
+            pooled.decrementAndGet();
+        }
+        memory.release();
+    }
+
+    // Getters
+    public String getName() {
+        return name;
+    }
+
+    public int getSampleCapacity() {
+        return sampleCapacity;
+    }
+
+    public int getValueCapacity() {
+        return valueCapacity;
+    }
+
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public String summary() {
+        return String.format("%s: %d acquisizioni, %d allocazioni, %d in uso", name,
+                acquisitions.get(), allocations.get(), inUse.get());
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.spotting;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sorgente che legge a blocchi della dimensione nativa del dispositivo (burst)
+ * in un ByteBuffer diretto: AudioRecorder copia poi in blocco nel buffer circolare,
+ * senza array intermedi nello heap.
+ */
+public interface BurstAudioSource extends AudioSource {
+
+    /**
+     * Legge fino a sizeInBytes byte PCM int16 in ordine nativo, scritti in buffer dalla posizione 0
+     * (la posizione del buffer non cambia). Restituisce i byte letti o un codice di errore.
+     */
+    int read(ByteBuffer buffer, int sizeInBytes);
+
+    /**
+     * Frame per burst alla frequenza della sorgente
+     */
+    int getBurstFrames();
+
+    /**
+     * Capacità del buffer di cattura in frame: un ritardo di lettura oltre questa durata perde audio
+     */
+    int getBufferFrames();
+}
@@ -0,0 +1,76 @@
+package com.example.spotting;
+
+/**
+ * Statistiche del ciclo di cattura: intervallo tra letture successive, jitter rispetto
+ * alla durata dell'audio letto e xrun (letture arrivate più tardi di quanto il buffer
+ * di cattura riesca a contenere, quindi con campioni sovrascritti).
+ */
+public class CaptureStats {
+
+    private final LatencyHistogram intervals = new LatencyHistogram();
+    private final LatencyHistogram jitter = new LatencyHistogram();
+    private int sampleRate = 1;
+    private long bufferNanos = Long.MAX_VALUE;
+    private long lastReadNanos = 0;
+    private long reads = 0;
+    private long frames = 0;
+    private long xruns = 0;
+
+    /**
+     * Nuova sessione; bufferFrames ≤ 0 se la sorgente non ha un buffer in tempo reale
+     */
+    public synchronized void start(int sampleRate, int bufferFrames) {
+        this.sampleRate = sampleRate;
+        this.bufferNanos = bufferFrames > 0 ? bufferFrames * 1_000_000_000L / sampleRate : Long.MAX_VALUE;
+        lastReadNanos = 0;
+        reads = 0;
+        frames = 0;
+        xruns = 0;
+        intervals.reset();
+        jitter.reset();
+    }
+
+    /**
+     * Una lettura completata al tempo nowNanos con framesRead frame
+     */
+    public synchronized void onRead(long nowNanos, int framesRead) {
+        if (lastReadNanos != 0) {
+            long interval = nowNanos - lastReadNanos;
+            long expected = framesRead * 1_000_000_000L / sampleRate;
+            intervals.record(interval / 1000);
+            jitter.record(Math.abs(interval - expected) / 1000);
+            if (interval > bufferNanos) {
+                xruns++;
+            }
+        }
+        lastReadNanos = nowNanos;
+        reads++;
+        frames += framesRead;
+    }
+
+    // Getters
+    public synchronized long getReads() {
+        return reads;
+    }
+
+    public synchronized long getXruns() {
+        return xruns;
+    }
+
+    /**
+     * Jitter al 99° percentile (ms)
+     */
+    public synchronized float getJitterP99Ms() {
+        return jitter.percentile(99) / 1000f;
+    }
+
+    public synchronized String summary() {
+        if (reads == 0) {
+            return "nessuna lettura";
+        }
+        return String.format("%d letture da %.0f frame, intervallo p50 %.2f ms / p99 %.2f ms / max %.2f ms, " +
+                        "jitter p99 %.2f ms, xrun %d",
+                reads, frames / (double) reads, intervals.percentile(50) / 1e3, intervals.percentile(99) / 1e3,
+                intervals.getMax() / 1e3, jitter.percentile(99) / 1e3, xruns);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.spotting;
+
+/**
+ * Esito di una classificazione: classe migliore, seconda classe e confidenze.
+ * Viene prodotto anche quando la soglia non è superata (accepted = false),
+ * così chi valuta il modello può vedere la decisione completa.
+ */
+public class ClassificationResult {
+
+    private final int classIndex;
+    private final String label;
+    private final float confidence;
+    private final int runnerUpIndex;
+    private final float runnerUpConfidence;
+    private final boolean accepted;
+    private final long inferenceTimeNanos;
+
+    public ClassificationResult(int classIndex, String label, float confidence,
+                                int runnerUpIndex, float runnerUpConfidence,
+                                boolean accepted, long inferenceTimeNanos) {
+        this.classIndex = classIndex;
+        this.label = label;
+        this.confidence = confidence;
+        this.runnerUpIndex = runnerUpIndex;
+        this.runnerUpConfidence = runnerUpConfidence;
+        this.accepted = accepted;
+        this.inferenceTimeNanos = inferenceTimeNanos;
+    }
+
+    public int getClassIndex() {
+        return classIndex;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Probabilità della classe migliore [0, 1]
+     */
+    public float getConfidence() {
+        return confidence;
+    }
+
+    public float getConfidencePercent() {
+        return confidence * 100f;
+    }
+
+    public int getRunnerUpIndex() {
+        return runnerUpIndex;
+    }
+
+    public float getRunnerUpConfidence() {
+        return runnerUpConfidence;
+    }
+
+    /**
+     * Margine di confidenza tra la classe migliore e la seconda
+     */
+    public float getMargin() {
+        return confidence - runnerUpConfidence;
+    }
+
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    public long getInferenceTimeNanos() {
+        return inferenceTimeNanos;
+    }
+
+    /**
+     * Stesso formato restituito da KeywordClassifier.classify: "label (xx.x%)"
+     */
+    @Override
+    public String toString() {
+        return String.format("%s (%.1f%%)", label, getConfidencePercent());
+    }
+}
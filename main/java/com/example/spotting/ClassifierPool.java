@@ -0,0 +1,77 @@
+package com.example.spotting;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool di dimensione fissa di KeywordClassifier.
+ * L'Interpreter TFLite non è thread-safe: ogni thread prende in prestito
+ * un classificatore, lo usa in esclusiva e lo restituisce.
+ */
+public class ClassifierPool implements AutoCloseable {
+    private static final String TAG = "ClassifierPool";
+
+    private final List<KeywordClassifier> classifiers = new ArrayList<>();
+    private final BlockingQueue<KeywordClassifier> idle;
+
+    public ClassifierPool(File modelFile, int size) {
+        this(modelFile, size, 1);
+    }
+
+    /**
+     * @param threadsPerClassifier thread dell'Interpreter per ogni classificatore
+     */
+    public ClassifierPool(File modelFile, int size, int threadsPerClassifier) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Dimensione pool non valida: " + size);
+        }
+
+        idle = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            KeywordClassifier classifier = new KeywordClassifier(modelFile, threadsPerClassifier);
+            if (!classifier.isInitialized()) {
+                close();
+                throw new IllegalStateException("Modello non caricato: " + modelFile);
+            }
+            classifiers.add(classifier);
+            idle.add(classifier);
+        }
+
+        Log.d(TAG, "Pool creato con " + size + " classificatori");
+    }
+
+    /**
+     * Prende un classificatore, attendendo se sono tutti in uso
+     */
+    public KeywordClassifier acquire() throws InterruptedException {
+        return idle.take();
+    }
+
+    public void release(KeywordClassifier classifier) {
+        if (classifier != null) {
+            idle.offer(classifier);
+        }
+    }
+
+    public int size() {
+        return classifiers.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    @Override
+    public void close() {
+        for (KeywordClassifier classifier : classifiers) {
+            classifier.close();
+        }
+        classifiers.clear();
+        idle.clear();
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.spotting;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Salva in WAV l'audio intorno a un rilevamento (pre-roll + post-roll) leggendolo
+ * dal PreRollBuffer, su un thread di scrittura dedicato: la richiesta dal thread
+ * di cattura o dell'interfaccia costa solo la pianificazione di un task.
+ * Applica una quota su disco eliminando prima le clip più vecchie.
+ * Le clip possono essere salvate in WAV o compresse senza perdita (.kwpc, LosslessPcmEncoder).
+ */
+public class ClipRecorder implements AutoCloseable {
+    private static final String TAG = "ClipRecorder";
+
+    private static final String CLIP_PREFIX = "clip_";
+    private static final String CLIP_SUFFIX = ".wav";
+    private static final int ENCODE_CHUNK_SAMPLES = LosslessPcmEncoder.DEFAULT_BLOCK_SIZE;
+    private static final long RETRY_DELAY_MS = 100;
+
+    private final PreRollBuffer preRollBuffer;
+    private final File directory;
+    private final long diskQuotaBytes;
+    private final boolean lossless;
+    private final ScheduledExecutorService writer;
+
+    private volatile float preRollSeconds;
+    private volatile float postRollSeconds;
+
+    // Statistiche (aggiornate dal thread di scrittura)
+    private volatile int clipsWritten = 0;
+    private volatile int clipsEvicted = 0;
+    private volatile int clipsFailed = 0;
+
+    public interface Listener {
+        void onClipSaved(File file, float durationSeconds);
+    }
+
+    private volatile Listener listener;
+
+    public ClipRecorder(PreRollBuffer preRollBuffer, File directory, float preRollSeconds,
+                        float postRollSeconds, long diskQuotaBytes) {
+        this(preRollBuffer, directory, preRollSeconds, postRollSeconds, diskQuotaBytes, false);
+    }
+
+    /**
+     * @param lossless clip compresse senza perdita (.kwpc) invece di WAV
+     */
+    public ClipRecorder(PreRollBuffer preRollBuffer, File directory, float preRollSeconds,
+                        float postRollSeconds, long diskQuotaBytes, boolean lossless) {
+        this.lossless = lossless;
+        this.preRollBuffer = preRollBuffer;
+        this.directory = directory;
+        this.diskQuotaBytes = diskQuotaBytes;
+        setRollSeconds(preRollSeconds, postRollSeconds);
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ClipWriter");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Impossibile creare la cartella clip: " + directory);
+        }
+    }
+
+    /**
+     * Imposta pre-roll e post-roll; il pre-roll è limitato alla capacità del ring
+     */
+    public void setRollSeconds(float preRollSeconds, float postRollSeconds) {
+        this.preRollSeconds = Math.max(0f, Math.min(preRollSeconds, preRollBuffer.getCapacitySeconds()));
+        this.postRollSeconds = Math.max(0f, postRollSeconds);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Richiede una clip centrata su triggerPosition (campioni dello stream di cattura
+     * corrente, come AudioRecorder.getLastWindowEndSample()).
+     * Non blocca: la scrittura parte quando il post-roll è stato catturato.
+     */
+    public void requestClip(String reason, long triggerPosition) {
+        scheduleClip(reason, preRollBuffer.toRingPosition(triggerPosition));
+    }
+
+    /**
+     * Clip su richiesta: gli ultimi secondi di pre-roll più il post-roll da adesso
+     */
+    public void requestClipNow(String reason) {
+        scheduleClip(reason, preRollBuffer.getWritePosition());
+    }
+
+    private void scheduleClip(String reason, long triggerPosition) {
+        int rate = preRollBuffer.getSampleRate();
+        long from = Math.max(0, triggerPosition - Math.round(preRollSeconds * rate));
+        long to = triggerPosition + Math.round(postRollSeconds * rate);
+        String name = CLIP_PREFIX + new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.US).format(new Date())
+                + "_" + sanitize(reason) + (lossless ? LosslessPcmEncoder.FILE_EXTENSION : CLIP_SUFFIX);
+
+        try {
+            writer.schedule(() -> writeWhenReady(new File(directory, name), from, to),
+                    (long) (postRollSeconds * 1000), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "ClipRecorder chiuso, clip scartata: " + name);
+        }
+    }
+
+    private void writeWhenReady(File file, long from, long to) {
+        // Il post-roll non è ancora tutto nel ring (cattura in ritardo o ferma da poco)
+        if (preRollBuffer.getWritePosition() < to) {
+            try {
+                writer.schedule(() -> writeWhenReady(file, from, to), RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Chiusura in corso: si salva quello che c'è
+                writeClip(file, from, preRollBuffer.getWritePosition());
+            }
+            return;
+        }
+        writeClip(file, from, to);
+    }
+
+    private void writeClip(File file, long from, long to) {
+        from = Math.max(from, preRollBuffer.getOldestPosition());
+        long samples = to - from;
+        if (samples <= 0) {
+            clipsFailed++;
+            Log.w(TAG, "Intervallo clip non più disponibile: " + file.getName());
+            return;
+        }
+
+        long dataSize = samples * 2;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            if (lossless) {
+                writeLossless(channel, from, to);
+            } else {
+                WavHeader.pcm16(preRollBuffer.getSampleRate(), 1, dataSize).write(channel);
+                long valid = preRollBuffer.writeTo(channel, WavHeader.CANONICAL_SIZE, from, to);
+                if (valid < samples) {
+                    throw new IOException("Audio sovrascritto durante la scrittura (" + valid + "/" + samples + ")");
+                }
+            }
+        } catch (IOException e) {
+            clipsFailed++;
+            Log.e(TAG, "Errore scrittura clip " + file.getName(), e);
+            if (!file.delete()) {
+                Log.w(TAG, "Impossibile eliminare la clip incompleta " + file.getName());
+            }
+            return;
+        }
+
+        clipsWritten++;
+        float duration = samples / (float) preRollBuffer.getSampleRate();
+        Log.i(TAG, String.format("💾 Clip salvata: %s (%.1f s)", file.getName(), duration));
+
+        enforceQuota();
+
+        Listener current = listener;
+        if (current != null) {
+            current.onClipSaved(file, duration);
+        }
+    }
+
+    /**
+     * Codifica [from, to) a blocchi copiati dal ring; ogni copia verifica di non essere stata sovrascritta
+     */
+    private void writeLossless(FileChannel channel, long from, long to) throws IOException {
+        short[] chunk = new short[ENCODE_CHUNK_SAMPLES];
+        try (LosslessPcmEncoder encoder = new LosslessPcmEncoder(channel, preRollBuffer.getSampleRate())) {
+            for (long position = from; position < to; position += chunk.length) {
+                long end = Math.min(to, position + chunk.length);
+                int copied = preRollBuffer.copy(position, end, chunk);
+                if (copied < 0) {
+                    throw new IOException("Audio sovrascritto durante la scrittura (" + (position - from) + "/" +
+                            (to - from) + ")");
+                }
+                encoder.write(chunk, 0, copied);
+            }
+        }
+    }
+
+    /**
+     * Elimina le clip più vecchie finché la cartella non rientra nella quota
+     */
+    private void enforceQuota() {
+        File[] clips = directory.listFiles((dir, name) -> name.startsWith(CLIP_PREFIX)
+                && (name.endsWith(CLIP_SUFFIX) || name.endsWith(LosslessPcmEncoder.FILE_EXTENSION)));
+        if (clips == null) {
+            return;
+        }
+
+        long total = 0;
+        for (File clip : clips) {
+            total += clip.length();
+        }
+        if (total <= diskQuotaBytes) {
+            return;
+        }
+
+        // Il nome contiene il timestamp: l'ordine alfabetico è cronologico
+        Arrays.sort(clips, Comparator.comparing(File::getName));
+        for (File clip : clips) {
+            if (total <= diskQuotaBytes) {
+                break;
+            }
+            long size = clip.length();
+            if (clip.delete()) {
+                total -= size;
+                clipsEvicted++;
+                Log.d(TAG, "Clip eliminata per quota: " + clip.getName());
+            }
+        }
+    }
+
+    private static String sanitize(String reason) {
+        if (reason == null || reason.isEmpty()) {
+            return "manual";
+        }
+        return reason.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
+    /**
+     * Completa le clip in attesa (senza aspettare oltre il post-roll) e ferma il thread di scrittura
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+    }
+
+    // Getters
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getClipsWritten() {
+        return clipsWritten;
+    }
+
+    public int getClipsEvicted() {
+        return clipsEvicted;
+    }
+
+    public int getClipsFailed() {
+        return clipsFailed;
+    }
+
+    public float getPreRollSeconds() {
+        return preRollSeconds;
+    }
+
+    public float getPostRollSeconds() {
+        return postRollSeconds;
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.spotting;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registro delle azioni per comando, indicizzato per indice di classe del modello.
+ * dispatch() costa una ricerca in array e un offer su code limitate: il thread che
+ * ha classificato l'audio non aspetta mai un'azione. Ogni handler ha la sua coda
+ * (i comandi gli arrivano in ordine, uno alla volta), un limite di coda oltre il quale
+ * i comandi vengono scartati e un timeout allo scadere del quale il thread viene interrotto.
+ * Un handler che ignora l'interruzione tiene occupato il suo thread: dopo STUCK_GRACE_MS il
+ * pool riceve un thread in più al suo posto, che viene tolto quando l'handler finalmente
+ * ritorna. I comandi di quell'handler restano in coda (e oltre il limite vengono scartati).
+ */
+public class CommandDispatcher implements AutoCloseable {
+    private static final String TAG = "CommandDispatcher";
+
+    public static final long DEFAULT_TIMEOUT_MS = 2000;
+    public static final int DEFAULT_QUEUE_LIMIT = 4;
+    // Attesa dopo l'interruzione prima di considerare bloccato il thread dell'handler
+    static final long STUCK_GRACE_MS = 500;
+
+    // Stato di un comando in esecuzione, visto dal watchdog
+    private static final int RUNNING = 0;
+    private static final int TIMED_OUT = 1;
+    private static final int STUCK = 2;
+    private static final int DONE = 3;
+
+    private final Registration[][] handlersByClass;
+    private final List<Registration> registrations = new ArrayList<>();
+    private final ThreadPoolExecutor dispatchExecutor;
+    private final ScheduledExecutorService watchdog;
+    private final int threads;
+    // Thread occupati da handler che non hanno rispettato l'interruzione
+    private final AtomicInteger stuckWorkers = new AtomicInteger();
+
+    /**
+     * @param classCount numero di classi del modello
+     * @param threads    thread di dispatch condivisi dagli handler
+     */
+    public CommandDispatcher(int classCount, int threads) {
+        this.handlersByClass = new Registration[classCount][];
+        for (int i = 0; i < classCount; i++) {
+            handlersByClass[i] = new Registration[0];
+        }
+
+        this.threads = threads;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.dispatchExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> new Thread(r, "CommandDispatch-" + threadCount.incrementAndGet()));
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "CommandWatchdog"));
+    }
+
+    public CommandDispatcher() {
+        this(ModelConfig.NUM_CLASSES, 2);
+    }
+
+    /**
+     * Registra un handler per l'indice di classe indicato
+     */
+    public synchronized void register(int classIndex, String name, CommandHandler handler,
+                                      long timeoutMs, int queueLimit) {
+        if (classIndex < 0 || classIndex >= handlersByClass.length) {
+            throw new IllegalArgumentException("Indice di classe non valido: " + classIndex);
+        }
+        Registration registration = new Registration(name, handler, timeoutMs, queueLimit);
+        Registration[] current = handlersByClass[classIndex];
+        Registration[] updated = new Registration[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = registration;
+        // Pubblicazione copy-on-write: dispatch() legge senza lock
+        handlersByClass[classIndex] = updated;
+        registrations.add(registration);
+    }
+
+    /**
+     * Registra un handler per label (risolta una volta sola in indice di classe)
+     */
+    public void register(String label, CommandHandler handler) {
+        int classIndex = ModelConfig.getLabelIndex(label);
+        if (classIndex < 0) {
+            throw new IllegalArgumentException("Label sconosciuta: " + label);
+        }
+        register(classIndex, label, handler, DEFAULT_TIMEOUT_MS, DEFAULT_QUEUE_LIMIT);
+    }
+
+    /**
+     * Inoltra il risultato agli handler della sua classe. Non blocca mai.
+     * Restituisce il numero di handler a cui il comando è stato accodato.
+     */
+    public int dispatch(ClassificationResult result) {
+        int classIndex = result.getClassIndex();
+        if (classIndex < 0 || classIndex >= handlersByClass.length) {
+            return 0;
+        }
+
+        int queued = 0;
+        long now = System.nanoTime();
+        for (Registration registration : handlersByClass[classIndex]) {
+            if (registration.enqueue(new PendingCommand(result, now))) {
+                queued++;
+            }
+        }
+        return queued;
+    }
+
+    @Override
+    public void close() {
+        dispatchExecutor.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * Riepilogo per handler: latenza di dispatch, durata, scarti, timeout, errori
+     */
+    public synchronized String summary() {
+        StringBuilder builder = new StringBuilder();
+        for (Registration registration : registrations) {
+            builder.append(registration.summary()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    public synchronized List<Registration> getRegistrations() {
+        return new ArrayList<>(registrations);
+    }
+
+    public int getStuckWorkers() {
+        return stuckWorkers.get();
+    }
+
+    /**
+     * Dimensione del pool: i thread configurati più uno per ogni handler bloccato
+     */
+    private void resizePool(int delta) {
+        synchronized (dispatchExecutor) {
+            int size = threads + stuckWorkers.addAndGet(delta);
+            // Il massimo non può scendere sotto il core né il core superare il massimo
+            if (delta > 0) {
+                dispatchExecutor.setMaximumPoolSize(size);
+                dispatchExecutor.setCorePoolSize(size);
+            } else {
+                dispatchExecutor.setCorePoolSize(size);
+                dispatchExecutor.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    private static final class PendingCommand {
+        final ClassificationResult result;
+        final long enqueuedNanos;
+
+        PendingCommand(ClassificationResult result, long enqueuedNanos) {
+            this.result = result;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    /**
+     * Un handler registrato con la sua coda e le sue statistiche
+     */
+    public final class Registration {
+        private final String name;
+        private final CommandHandler handler;
+        private final long timeoutMs;
+        private final BlockingQueue<PendingCommand> queue;
+        // true mentre un task di svuotamento è in esecuzione o pianificato
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+
+        private final LatencyStats dispatchLatency;
+        private final LatencyStats runTime;
+        private final AtomicInteger dropped = new AtomicInteger();
+        private final AtomicInteger timeouts = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger stalls = new AtomicInteger();
+
+        Registration(String name, CommandHandler handler, long timeoutMs, int queueLimit) {
+            this.name = name;
+            this.handler = handler;
+            this.timeoutMs = timeoutMs;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, queueLimit));
+            this.dispatchLatency = new LatencyStats(name + " dispatch");
+            this.runTime = new LatencyStats(name + " esecuzione");
+        }
+
+        boolean enqueue(PendingCommand command) {
+            if (!queue.offer(command)) {
+                dropped.incrementAndGet();
+                Log.w(TAG, "Coda piena, comando scartato per " + name);
+                return false;
+            }
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    dispatchExecutor.execute(this::drain);
+                } catch (RuntimeException e) {
+                    draining.set(false);
+                    Log.w(TAG, "Dispatcher chiuso, comando non eseguito: " + name);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void drain() {
+            PendingCommand command;
+            while ((command = queue.poll()) != null) {
+                run(command);
+            }
+            draining.set(false);
+            // Un comando arrivato tra l'ultimo poll e il reset del flag
+            if (!queue.isEmpty() && draining.compareAndSet(false, true)) {
+                dispatchExecutor.execute(this::drain);
+            }
+        }
+
+        private void run(PendingCommand command) {
+            long start = System.nanoTime();
+            dispatchLatency.record(start - command.enqueuedNanos);
+
+            Thread worker = Thread.currentThread();
+            AtomicInteger state = new AtomicInteger(RUNNING);
+            ScheduledFuture<?> timer = watchdog.schedule(() -> {
+                synchronized (state) {
+                    if (state.compareAndSet(RUNNING, TIMED_OUT)) {
+                        timeouts.incrementAndGet();
+                        Log.w(TAG, "⏱️ Timeout handler " + name + " dopo " + timeoutMs + "ms");
+                        worker.interrupt();
+                        watchdog.schedule(() -> replaceIfStuck(state), STUCK_GRACE_MS, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+
+            try {
+                handler.onCommand(command.result);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Handler " + name + " interrotto");
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                Log.e(TAG, "Errore handler " + name, e);
+            } finally {
+                timer.cancel(false);
+                synchronized (state) {
+                    int previous = state.getAndSet(DONE);
+                    if (previous != RUNNING) {
+                        // Il watchdog ha già interrotto: si consuma il flag prima del prossimo comando
+                        Thread.interrupted();
+                    }
+                    if (previous == STUCK) {
+                        // Il thread torna disponibile: il sostituto non serve più
+                        resizePool(-1);
+                        Log.i(TAG, "Handler " + name + " sbloccato");
+                    }
+                }
+                runTime.record(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Thread del watchdog: l'handler non ha rispettato l'interruzione, il suo thread
+         * viene sostituito nel pool finché non ritorna
+         */
+        private void replaceIfStuck(AtomicInteger state) {
+            synchronized (state) {
+                if (state.compareAndSet(TIMED_OUT, STUCK)) {
+                    stalls.incrementAndGet();
+                    resizePool(1);
+                    Log.w(TAG, "🧱 Handler " + name + " bloccato oltre l'interruzione: thread di dispatch sostituito");
+                }
+            }
+        }
+
+        String summary() {
+            return String.format("%s: scartati=%d, timeout=%d, bloccati=%d, errori=%d\n  %s\n  %s",
+                    name, dropped.get(), timeouts.get(), stalls.get(), failures.get(),
+                    dispatchLatency.summary(), runTime.summary());
+        }
+
+        // Getters
+        public String getName() {
+            return name;
+        }
+
+        public LatencyStats getDispatchLatency() {
+            return dispatchLatency;
+        }
+
+        public LatencyStats getRunTime() {
+            return runTime;
+        }
+
+        public int getDropped() {
+            return dropped.get();
+        }
+
+        public int getTimeouts() {
+            return timeouts.get();
+        }
+
+        public int getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * Volte in cui l'handler ha ignorato l'interruzione e il suo thread è stato sostituito
+         */
+        public int getStalls() {
+            return stalls.get();
+        }
+
+        public int getQueueDepth() {
+            return queue.size();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.spotting;
+
+/**
+ * Azione eseguita quando viene riconosciuto un comando.
+ * Gira sul thread di dispatch, mai sul thread di riconoscimento;
+ * deve rispondere all'interruzione se può superare il proprio timeout.
+ */
+public interface CommandHandler {
+    void onCommand(ClassificationResult result) throws Exception;
+}
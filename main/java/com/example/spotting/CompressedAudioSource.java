@@ -0,0 +1,55 @@
+package com.example.spotting;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Riproduce un file .kwpc (LosslessPcmEncoder) come sorgente audio: i campioni vengono
+ * decodificati direttamente nel vettore passato a read(), che per AudioRecorder
+ * a 16 kHz mono è il buffer circolare stesso.
+ */
+public class CompressedAudioSource extends ReplayAudioSource {
+
+    private final File file;
+    private final LosslessPcmDecoder decoder;
+    private final int loops;
+    private int completedLoops = 0;
+
+    /**
+     * @param loops numero di ripetizioni del file (0 = infinite)
+     */
+    public CompressedAudioSource(File file, boolean realTime, int loops) throws IOException {
+        this(file, LosslessPcmDecoder.open(file), realTime, loops);
+    }
+
+    private CompressedAudioSource(File file, LosslessPcmDecoder decoder, boolean realTime, int loops) {
+        super(decoder.getSampleRate(), 1, realTime);
+        this.file = file;
+        this.decoder = decoder;
+        this.loops = loops;
+    }
+
+    @Override
+    protected int readSamples(short[] buffer, int offset, int length) throws IOException {
+        int decoded = decoder.decode(buffer, offset, length);
+        if (decoded == 0 && decoder.getTotalSamples() > 0) {
+            completedLoops++;
+            if (loops > 0 && completedLoops >= loops) {
+                return END_OF_STREAM;
+            }
+            decoder.rewind();
+            decoded = decoder.decode(buffer, offset, length);
+        }
+        return decoded;
+    }
+
+    public LosslessPcmDecoder getDecoder() {
+        return decoder;
+    }
+
+    @Override
+    public String getDescription() {
+        return "File " + file.getName() + " (" + decoder.getSampleRate() + "Hz, compresso senza perdita" +
+                (isRealTime() ? ", tempo reale)" : ", max velocità)");
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.spotting;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Misura il tempo CPU del processo per minuto di ascolto,
+ * per confrontare le modalità (ascolto continuo vs. duty cycle).
+ */
+public class CpuUsageMeter {
+
+    private final String mode;
+    private long startCpuMs;
+    private long startWallMs;
+    private boolean running = false;
+
+    public CpuUsageMeter(String mode) {
+        this.mode = mode;
+    }
+
+    public void start() {
+        startCpuMs = Process.getElapsedCpuTime();
+        startWallMs = SystemClock.elapsedRealtime();
+        running = true;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public float getElapsedMinutes() {
+        return (SystemClock.elapsedRealtime() - startWallMs) / 60000f;
+    }
+
+    /**
+     * Millisecondi di CPU consumati per minuto di ascolto dall'avvio
+     */
+    public float getCpuMsPerMinute() {
+        float minutes = getElapsedMinutes();
+        if (minutes <= 0) {
+            return 0f;
+        }
+        return (Process.getElapsedCpuTime() - startCpuMs) / minutes;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public String summary() {
+        return String.format("CPU %s: %.0f ms/min su %.1f min di ascolto",
+                mode, getCpuMsPerMinute(), getElapsedMinutes());
+    }
+}
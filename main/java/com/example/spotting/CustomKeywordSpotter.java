@@ -0,0 +1,176 @@
+package com.example.spotting;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Parole chiave personalizzate: l'utente pronuncia alcune volte una parola nuova,
+ * ogni ripetizione diventa un modello nell'EmbeddingIndex; in ascolto, l'embedding
+ * di ogni finestra viene confrontato con tutti i modelli.
+ * Va usato da un solo thread (quello di inferenza).
+ */
+public class CustomKeywordSpotter {
+    private static final String TAG = "CustomKeywordSpotter";
+
+    /** Indice di classe dei risultati: le parole personalizzate non sono classi del modello */
+    public static final int CUSTOM_CLASS_INDEX = -1;
+
+    public interface Listener {
+        void onEnrollmentProgress(String label, int recorded, int total);
+    }
+
+    private final KeywordEmbedder embedder;
+    private final File indexFile;
+    private final EmbeddingIndex index;
+    private final float[] embedding;
+    private Listener listener;
+
+    // Registrazione in corso: una ripetizione per finestra, distanziate di una finestra intera
+    private String enrollLabel;
+    private int enrollTotal;
+    private int enrollRecorded;
+    private long lastEnrollNanos;
+
+    public CustomKeywordSpotter(KeywordEmbedder embedder, File indexFile) {
+        this.embedder = embedder;
+        this.indexFile = indexFile;
+        this.embedding = new float[embedder.getDimension()];
+        this.index = loadIndex(indexFile, embedder.getDimension());
+    }
+
+    private static EmbeddingIndex loadIndex(File file, int dimension) {
+        if (file.exists()) {
+            try {
+                EmbeddingIndex loaded = EmbeddingIndex.load(file);
+                if (loaded.getDimension() == dimension) {
+                    Log.d(TAG, "Indice caricato: " + loaded.size() + " modelli");
+                    return loaded;
+                }
+                Log.w(TAG, "Indice con dimensione " + loaded.getDimension() + " (modello: " + dimension + "), ignorato");
+                loaded.release();
+            } catch (IOException e) {
+                Log.w(TAG, "Indice non leggibile, ne creo uno nuovo", e);
+            }
+        }
+        return new EmbeddingIndex(dimension);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Le prossime utterances finestre con parlato diventano modelli di label
+     * (sostituendo quelli esistenti con la stessa etichetta)
+     */
+    public synchronized void startEnrollment(String label, int utterances) {
+        index.remove(label);
+        enrollLabel = label;
+        enrollTotal = utterances;
+        enrollRecorded = 0;
+        lastEnrollNanos = 0;
+        Log.i(TAG, "Registrazione di '" + label + "': " + utterances + " ripetizioni");
+    }
+
+    public synchronized void cancelEnrollment() {
+        enrollLabel = null;
+    }
+
+    public synchronized boolean isEnrolling() {
+        return enrollLabel != null;
+    }
+
+    /**
+     * Usa una finestra preprocessata (con parlato) come ripetizione della parola in registrazione.
+     * Restituisce true se la finestra è stata usata.
+     */
+    public boolean enroll(float[] audioData) {
+        String label;
+        int recorded;
+        int total;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // Finestre sovrapposte della stessa ripetizione non contano due volte
+            if (enrollLabel == null || (lastEnrollNanos != 0
+                    && now - lastEnrollNanos < (long) (ModelConfig.AUDIO_DURATION_SECONDS * 1e9))) {
+                return false;
+            }
+            if (!embedder.embed(audioData, embedding)) {
+                return false;
+            }
+            index.add(enrollLabel, embedding);
+            lastEnrollNanos = now;
+            label = enrollLabel;
+            recorded = ++enrollRecorded;
+            total = enrollTotal;
+            if (recorded >= total) {
+                enrollLabel = null;
+                save();
+            }
+        }
+        if (listener != null) {
+            listener.onEnrollmentProgress(label, recorded, total);
+        }
+        return true;
+    }
+
+    /**
+     * Confronta la finestra con le parole registrate. null se l'indice è vuoto o in caso di errore;
+     * il risultato è accettato se la similarità supera la soglia con margine sulla seconda parola.
+     */
+    public ClassificationResult match(float[] audioData) {
+        if (index.size() == 0) {
+            return null;
+        }
+        long startTime = System.nanoTime();
+        if (!embedder.embed(audioData, embedding)) {
+            return null;
+        }
+        EmbeddingIndex.Match match = index.search(embedding);
+        if (match == null) {
+            return null;
+        }
+
+        float similarity = match.getSimilarity();
+        float runnerUp = Math.max(0f, match.getRunnerUpSimilarity());
+        boolean accepted = similarity >= ModelConfig.CUSTOM_KEYWORD_THRESHOLD
+                && similarity - runnerUp >= ModelConfig.CUSTOM_KEYWORD_MARGIN;
+        return new ClassificationResult(CUSTOM_CLASS_INDEX, match.getLabel(), Math.max(0f, similarity),
+                CUSTOM_CLASS_INDEX, runnerUp, accepted, System.nanoTime() - startTime);
+    }
+
+    public synchronized int remove(String label) {
+        int removed = index.remove(label);
+        if (removed > 0) {
+            save();
+        }
+        return removed;
+    }
+
+    private void save() {
+        try {
+            index.save(indexFile);
+            Log.d(TAG, "Indice salvato: " + index.size() + " modelli");
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Errore salvataggio indice", e);
+        }
+    }
+
+    /**
+     * Chiude la contabilità dell'indice (l'embedder appartiene al chiamante)
+     */
+    public void release() {
+        index.release();
+    }
+
+    // Getters
+    public EmbeddingIndex getIndex() {
+        return index;
+    }
+
+    public String[] getKeywords() {
+        return index.getLabels();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.spotting;
+
+/**
+ * Soppressione dei duplicati: la stessa etichetta accettata di nuovo entro il periodo
+ * refrattario è lo stesso comando ascoltato da finestre sovrapposte. Le distanze sono in
+ * campioni di stream, quindi valgono anche per replay più veloci del tempo reale.
+ * È il decoder di SpottingEngine, di RecognitionServer e dello stadio decoder di PipelineStages.
+ */
+public class DetectionDecoder {
+
+    // Periodi del motore dell'app: più brevi per i rilevamenti ad alta confidenza
+    public static final long ENGINE_REFRACTORY_MS = 1500;
+    public static final long ENGINE_CONFIDENT_REFRACTORY_MS = 1000;
+    public static final float ENGINE_CONFIDENT_THRESHOLD = 0.8f;
+
+    private final long refractorySamples;
+    private final long confidentRefractorySamples;
+    private final float confidentThreshold;
+
+    private String lastLabel = null;
+    private long lastPosition = Long.MIN_VALUE / 2;
+    private long duplicates = 0;
+
+    /**
+     * Stesso periodo refrattario per ogni confidenza
+     */
+    public DetectionDecoder(long refractoryMs) {
+        this(refractoryMs, refractoryMs, 1f);
+    }
+
+    /**
+     * @param confidentRefractoryMs periodo per i rilevamenti con confidenza oltre confidentThreshold
+     */
+    public DetectionDecoder(long refractoryMs, long confidentRefractoryMs, float confidentThreshold) {
+        this.refractorySamples = refractoryMs * ModelConfig.SAMPLE_RATE / 1000;
+        this.confidentRefractorySamples = confidentRefractoryMs * ModelConfig.SAMPLE_RATE / 1000;
+        this.confidentThreshold = confidentThreshold;
+    }
+
+    /**
+     * Decoder con i periodi del motore dell'app (1,5 s, 1 s oltre l'80% di confidenza)
+     */
+    public static DetectionDecoder forEngine() {
+        return new DetectionDecoder(ENGINE_REFRACTORY_MS, ENGINE_CONFIDENT_REFRACTORY_MS, ENGINE_CONFIDENT_THRESHOLD);
+    }
+
+    /**
+     * true se il rilevamento (già accettato dal classificatore) che termina in position
+     * è un comando nuovo, e lo registra; false se è un duplicato
+     */
+    public synchronized boolean accept(ClassificationResult result, long position) {
+        long refractory = result.getConfidence() > confidentThreshold ? confidentRefractorySamples : refractorySamples;
+        if (result.getLabel().equals(lastLabel) && position - lastPosition < refractory) {
+            duplicates++;
+            return false;
+        }
+        lastLabel = result.getLabel();
+        lastPosition = position;
+        return true;
+    }
+
+    public synchronized void reset() {
+        lastLabel = null;
+        lastPosition = Long.MIN_VALUE / 2;
+        duplicates = 0;
+    }
+
+    // Getters
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Campioni tra position e l'ultimo rilevamento accettato
+     */
+    public synchronized long getSamplesSinceLast(long position) {
+        return position - lastPosition;
+    }
+}
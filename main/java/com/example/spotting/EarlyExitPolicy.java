@@ -0,0 +1,152 @@
+package com.example.spotting;
+
+import java.util.Locale;
+
+/**
+ * Decide quando un esito su una finestra speculativa (parziale, con zeri di padding,
+ * o fuori dalla cadenza dell'hop) può essere emesso subito invece di aspettare
+ * la finestra regolare successiva.
+ *
+ * Si anticipa solo un esito accettato con margine ampio sulla seconda classe: la soglia
+ * è più severa di quella delle finestre regolari, così l'anticipo non aggiunge falsi positivi.
+ * Dopo un rilevamento anticipato (o un suo duplicato) le speculazioni si fermano fino alla
+ * prossima finestra regolare, e la finestra regolare che ricopre lo stesso enunciato non lo ripete;
+ * allo stesso modo una finestra speculativa non ripete un rilevamento regolare.
+ * L'enunciato si riconosce dall'inizio del parlato segnato dal VAD (utteranceStart): una
+ * ripetizione della parola iniziata dopo quella anticipata è un nuovo rilevamento, anche se
+ * cade nella stessa finestra.
+ *
+ * Usata dal thread di cattura (shouldSpeculate, onRegularWindow) e da quello di inferenza.
+ */
+public class EarlyExitPolicy {
+
+    private final float minMargin;
+    private final int windowSamples;
+
+    // Ultimo rilevamento emesso: classe, fine della finestra e inizio dell'enunciato
+    // (posizioni nello stream; utteranceStart -1 se il VAD non l'ha segnato), e se era anticipato
+    private int committedClass = -1;
+    private long committedEnd = Long.MIN_VALUE;
+    private long committedUtteranceStart = -1;
+    private boolean committedEarly = false;
+    private boolean paused = false;
+
+    // Statistiche
+    private long speculated = 0;
+    private long committed = 0;
+    private long deferred = 0;
+    private long duplicatesSuppressed = 0;
+
+    public EarlyExitPolicy(float minMargin, int windowSamples) {
+        this.minMargin = minMargin;
+        this.windowSamples = windowSamples;
+    }
+
+    /**
+     * true se vale la pena classificare una finestra speculativa adesso
+     */
+    public synchronized boolean shouldSpeculate() {
+        return !paused;
+    }
+
+    /**
+     * Finestra regolare emessa (thread di cattura): le speculazioni ripartono
+     */
+    public synchronized void onRegularWindow() {
+        paused = false;
+    }
+
+    /**
+     * Esito di una finestra speculativa: true se va emesso subito come rilevamento.
+     * utteranceStart è l'inizio del parlato più recente secondo il VAD (-1 se sconosciuto).
+     */
+    public synchronized boolean commitSpeculative(ClassificationResult result, long windowEnd, long utteranceStart) {
+        speculated++;
+        if (result == null || !result.isAccepted() || result.getMargin() < minMargin) {
+            // Non abbastanza sicuro: si aspetta altro audio
+            deferred++;
+            return false;
+        }
+        if (isSameDetection(result, windowEnd, utteranceStart)) {
+            // Parola già emessa: inutile ripetere l'inferenza fino alla finestra regolare
+            duplicatesSuppressed++;
+            paused = true;
+            return false;
+        }
+        remember(result, windowEnd, utteranceStart, true);
+        committed++;
+        paused = true;
+        return true;
+    }
+
+    /**
+     * Esito accettato di una finestra regolare (o di un segmento): false se ripete un
+     * rilevamento già anticipato sullo stesso enunciato
+     */
+    public synchronized boolean acceptRegular(ClassificationResult result, long windowEnd, long utteranceStart) {
+        if (result == null || !result.isAccepted()) {
+            return true;
+        }
+        if (committedEarly && isSameDetection(result, windowEnd, utteranceStart)) {
+            duplicatesSuppressed++;
+            return false;
+        }
+        // Le ripetizioni tra finestre regolari restano a chi le gestiva già (soglia sul tempo)
+        remember(result, windowEnd, utteranceStart, false);
+        return true;
+    }
+
+    private void remember(ClassificationResult result, long windowEnd, long utteranceStart, boolean early) {
+        committedClass = result.getClassIndex();
+        committedEnd = windowEnd;
+        committedUtteranceStart = utteranceStart;
+        committedEarly = early;
+    }
+
+    private boolean isSameDetection(ClassificationResult result, long windowEnd, long utteranceStart) {
+        if (result.getClassIndex() != committedClass || windowEnd - windowSamples >= committedEnd) {
+            return false;
+        }
+        // Parlato iniziato dopo quello anticipato: è un altro enunciato. Senza il VAD resta
+        // solo la sovrapposizione con la finestra anticipata
+        return utteranceStart < 0 || committedUtteranceStart < 0 || utteranceStart <= committedUtteranceStart;
+    }
+
+    public synchronized void reset() {
+        committedClass = -1;
+        committedEnd = Long.MIN_VALUE;
+        committedUtteranceStart = -1;
+        committedEarly = false;
+        paused = false;
+        speculated = 0;
+        committed = 0;
+        deferred = 0;
+        duplicatesSuppressed = 0;
+    }
+
+    public synchronized String summary() {
+        return String.format(Locale.ROOT, "Finestre speculative %d: anticipate %d, rimandate %d, duplicati soppressi %d",
+                speculated, committed, deferred, duplicatesSuppressed);
+    }
+
+    // Getters
+    public float getMinMargin() {
+        return minMargin;
+    }
+
+    public synchronized long getSpeculated() {
+        return speculated;
+    }
+
+    public synchronized long getCommitted() {
+        return committed;
+    }
+
+    public synchronized long getDeferred() {
+        return deferred;
+    }
+
+    public synchronized long getDuplicatesSuppressed() {
+        return duplicatesSuppressed;
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.spotting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Indice degli embedding delle parole chiave registrate dall'utente.
+ * Ogni modello (template) è una riga di una matrice float contigua, normalizzata L2:
+ * la similarità coseno con una finestra è un prodotto scalare, calcolato su tutte
+ * le righe in un solo passaggio da AudioKernels.dotProducts.
+ *
+ * Formato su file (little endian, mappabile):
+ *   int magic "KWEI", int versione, int dimensione, int numero di modelli
+ *   float[numero * dimensione] matrice (inizia a offset 16, allineata a 4 byte)
+ *   per ogni modello: short lunghezza + etichetta UTF-8
+ *
+ * La copia nello heap (matrice, punteggi, etichette) è contabilizzata nel MemoryBudget;
+ * release() chiude la voce quando l'indice non serve più.
+ */
+public class EmbeddingIndex {
+
+    private static final int MAGIC = 0x4945574B; // "KWEI" letto in little endian
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Miglior modello per una finestra e miglior modello di un'altra parola chiave
+     */
+    public static final class Match {
+        private final String label;
+        private final float similarity;
+        private final String runnerUpLabel;
+        private final float runnerUpSimilarity;
+
+        Match(String label, float similarity, String runnerUpLabel, float runnerUpSimilarity) {
+            this.label = label;
+            this.similarity = similarity;
+            this.runnerUpLabel = runnerUpLabel;
+            this.runnerUpSimilarity = runnerUpSimilarity;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Similarità coseno [-1, 1]
+         */
+        public float getSimilarity() {
+            return similarity;
+        }
+
+        /**
+         * null se l'indice contiene una sola parola chiave
+         */
+        public String getRunnerUpLabel() {
+            return runnerUpLabel;
+        }
+
+        public float getRunnerUpSimilarity() {
+            return runnerUpSimilarity;
+        }
+    }
+
+    private final int dimension;
+    private final AudioKernels kernels = AudioKernels.getInstance();
+    private final MemoryBudget.Reservation memory;
+
+    private float[] matrix;
+    private String[] labels;
+    private float[] scores;
+    private int size = 0;
+
+    public EmbeddingIndex(int dimension) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Dimensione non valida: " + dimension);
+        }
+        this.dimension = dimension;
+        this.matrix = new float[INITIAL_CAPACITY * dimension];
+        this.labels = new String[INITIAL_CAPACITY];
+        this.scores = new float[INITIAL_CAPACITY];
+        this.memory = MemoryBudget.getInstance().register("EmbeddingIndex", "matrice", MemoryBudget.Kind.HEAP,
+                heapBytes(INITIAL_CAPACITY, dimension));
+    }
+
+    /**
+     * Matrice e punteggi, più i riferimenti alle etichette (il testo è trascurabile)
+     */
+    private static long heapBytes(int capacity, int dimension) {
+        return (long) capacity * (dimension * 4L + 4 + 4);
+    }
+
+    public void release() {
+        memory.release();
+    }
+
+    /**
+     * Aggiunge un modello; l'embedding viene copiato e normalizzato
+     */
+    public synchronized void add(String label, float[] embedding) {
+        if (embedding.length != dimension) {
+            throw new IllegalArgumentException("Embedding di " + embedding.length + " valori (attesi " + dimension + ")");
+        }
+        ensureCapacity(size + 1);
+        int row = size * dimension;
+        System.arraycopy(embedding, 0, matrix, row, dimension);
+        normalize(matrix, row, dimension);
+        labels[size] = label;
+        size++;
+    }
+
+    /**
+     * Rimuove tutti i modelli di una parola chiave; restituisce quanti ne ha rimossi
+     */
+    public synchronized int remove(String label) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!labels[i].equals(label)) {
+                if (kept != i) {
+                    System.arraycopy(matrix, i * dimension, matrix, kept * dimension, dimension);
+                    labels[kept] = labels[i];
+                }
+                kept++;
+            }
+        }
+        int removed = size - kept;
+        Arrays.fill(labels, kept, size, null);
+        size = kept;
+        return removed;
+    }
+
+    /**
+     * Confronta query (normalizzata L2) con tutti i modelli. null se l'indice è vuoto.
+     */
+    public synchronized Match search(float[] query) {
+        if (size == 0) {
+            return null;
+        }
+        kernels.dotProducts(matrix, size, dimension, query, scores);
+
+        int best = kernels.argmax(scores, 0, size);
+        int runnerUp = -1;
+        for (int i = 0; i < size; i++) {
+            if (!labels[i].equals(labels[best]) && (runnerUp < 0 || scores[i] > scores[runnerUp])) {
+                runnerUp = i;
+            }
+        }
+        return new Match(labels[best], scores[best],
+                runnerUp >= 0 ? labels[runnerUp] : null, runnerUp >= 0 ? scores[runnerUp] : -1f);
+    }
+
+    /**
+     * Scrive l'indice su un file temporaneo e lo rinomina: il file esistente resta valido fino alla fine
+     */
+    public synchronized void save(File file) throws IOException {
+        byte[][] encoded = new byte[size][];
+        int labelBytes = 0;
+        for (int i = 0; i < size; i++) {
+            encoded[i] = labels[i].getBytes(StandardCharsets.UTF_8);
+            labelBytes += 2 + encoded[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + size * dimension * 4 + labelBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(size);
+        buffer.asFloatBuffer().put(matrix, 0, size * dimension);
+        buffer.position(HEADER_BYTES + size * dimension * 4);
+        for (byte[] label : encoded) {
+            buffer.putShort((short) label.length).put(label);
+        }
+        buffer.flip();
+
+        File temporary = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile output = new RandomAccessFile(temporary, "rw");
+             FileChannel channel = output.getChannel()) {
+            channel.truncate(0);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Impossibile sostituire " + file);
+        }
+    }
+
+    /**
+     * Carica un indice salvato con save(), mappando il file in memoria
+     */
+    public static EmbeddingIndex load(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("File indice troppo corto: " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (mapped.getInt() != MAGIC) {
+                throw new IOException("Non è un indice di embedding: " + file);
+            }
+            int version = mapped.getInt();
+            if (version != VERSION) {
+                throw new IOException("Versione indice non supportata: " + version);
+            }
+            int dimension = mapped.getInt();
+            int count = mapped.getInt();
+            if (dimension <= 0 || count < 0 || HEADER_BYTES + (long) count * dimension * 4 > channel.size()) {
+                throw new IOException("Intestazione indice non valida: " + dimension + " x " + count);
+            }
+
+            EmbeddingIndex index = new EmbeddingIndex(dimension);
+            try {
+                index.ensureCapacity(count);
+                mapped.asFloatBuffer().get(index.matrix, 0, count * dimension);
+                mapped.position(HEADER_BYTES + count * dimension * 4);
+                for (int i = 0; i < count; i++) {
+                    byte[] label = new byte[mapped.getShort() & 0xFFFF];
+                    mapped.get(label);
+                    index.labels[i] = new String(label, StandardCharsets.UTF_8);
+                }
+            } catch (RuntimeException e) {
+                index.release();
+                throw e;
+            }
+            index.size = count;
+            return index;
+        } catch (java.nio.BufferUnderflowException e) {
+            throw new IOException("File indice troncato: " + file, e);
+        }
+    }
+
+    /**
+     * Normalizza L2 in place (un vettore nullo resta nullo)
+     */
+    public static void normalize(float[] vector, int offset, int length) {
+        float norm = (float) Math.sqrt(AudioKernels.getInstance().sumOfSquares(vector, offset, length));
+        if (norm > 0f) {
+            for (int i = 0; i < length; i++) {
+                vector[offset + i] /= norm;
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= labels.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, labels.length * 2);
+        matrix = Arrays.copyOf(matrix, newCapacity * dimension);
+        labels = Arrays.copyOf(labels, newCapacity);
+        scores = new float[newCapacity];
+        memory.set(heapBytes(newCapacity, dimension));
+    }
+
+    // Getters
+    public int getDimension() {
+        return dimension;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Numero di modelli registrati per una parola chiave
+     */
+    public synchronized int count(String label) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (labels[i].equals(label)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Parole chiave distinte, in ordine di registrazione
+     */
+    public synchronized String[] getLabels() {
+        Set<String> distinct = new LinkedHashSet<>(Arrays.asList(labels).subList(0, size));
+        return distinct.toArray(new String[0]);
+    }
+}
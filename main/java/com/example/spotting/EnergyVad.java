@@ -0,0 +1,156 @@
+package com.example.spotting;
+
+/**
+ * Rilevatore di attività vocale (VAD) a energia, pensato per girare sempre
+ * sul thread di cattura: per ogni frame da 10 ms calcola l'RMS intero e lo confronta
+ * con una stima adattiva del rumore di fondo.
+ * L'inizio del parlato richiede alcuni frame attivi consecutivi,
+ * la fine arriva dopo un periodo di "hangover" senza attività.
+ */
+public class EnergyVad {
+
+    public interface Listener {
+        /** Inizio del parlato; position è il campione di inizio del primo frame attivo */
+        void onSpeechStart(long position);
+
+        /** Fine del parlato; position è il campione di fine dell'ultimo frame attivo */
+        void onSpeechEnd(long position);
+    }
+
+    private static final int FRAME_MS = 10;
+    private static final int ONSET_FRAMES = 3;      // 30 ms di attività per dichiarare l'inizio
+    private static final int HANGOVER_FRAMES = 30;  // 300 ms di silenzio per dichiarare la fine
+    private static final double MIN_SPEECH_RMS = 300.0;
+    private static final double INITIAL_NOISE_RMS = 100.0;
+    // Il rumore di fondo scende in fretta e sale lentamente
+    private static final double NOISE_FALL = 0.2;
+    private static final double NOISE_RISE = 0.005;
+
+    private final int frameSamples;
+    private Listener listener;
+
+    // Moltiplicatore sul rumore di fondo: più alto = meno sensibile
+    private volatile float aggressiveness = 3.0f;
+
+    private long frameEnergy = 0;
+    private int frameFill = 0;
+    private long position = 0;
+
+    private double noiseRms = INITIAL_NOISE_RMS;
+    private double lastFrameRms = 0;
+    private int activeFrames = 0;
+    private int quietFrames = 0;
+    private boolean speechActive = false;
+    private long speechStart = -1;
+    private long lastActiveEnd = -1;
+
+    public EnergyVad(int sampleRate) {
+        this.frameSamples = sampleRate * FRAME_MS / 1000;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Elabora un blocco di campioni mono. Restituisce true se alla fine
+     * del blocco il parlato è attivo.
+     */
+    public boolean process(short[] data, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            int sample = data[offset + i];
+            frameEnergy += sample * sample;
+            frameFill++;
+            position++;
+
+            if (frameFill == frameSamples) {
+                processFrame(Math.sqrt((double) frameEnergy / frameSamples));
+                frameEnergy = 0;
+                frameFill = 0;
+            }
+        }
+        return speechActive;
+    }
+
+    private void processFrame(double rms) {
+        lastFrameRms = rms;
+        double threshold = Math.max(MIN_SPEECH_RMS, noiseRms * aggressiveness);
+        boolean active = rms > threshold;
+
+        if (active) {
+            activeFrames++;
+            quietFrames = 0;
+            lastActiveEnd = position;
+        } else {
+            activeFrames = 0;
+            quietFrames++;
+            // Aggiorna il rumore di fondo solo sui frame non attivi
+            double rate = rms < noiseRms ? NOISE_FALL : NOISE_RISE;
+            noiseRms += (rms - noiseRms) * rate;
+        }
+
+        if (!speechActive && activeFrames >= ONSET_FRAMES) {
+            speechActive = true;
+            speechStart = position - (long) ONSET_FRAMES * frameSamples;
+            if (listener != null) {
+                listener.onSpeechStart(speechStart);
+            }
+        } else if (speechActive && quietFrames >= HANGOVER_FRAMES) {
+            speechActive = false;
+            if (listener != null) {
+                listener.onSpeechEnd(lastActiveEnd);
+            }
+        }
+    }
+
+    public void reset() {
+        frameEnergy = 0;
+        frameFill = 0;
+        position = 0;
+        noiseRms = INITIAL_NOISE_RMS;
+        activeFrames = 0;
+        quietFrames = 0;
+        speechActive = false;
+        speechStart = -1;
+        lastActiveEnd = -1;
+    }
+
+    /**
+     * Imposta la sensibilità: moltiplicatore della soglia sul rumore di fondo (1.5 - 8)
+     */
+    public void setAggressiveness(float aggressiveness) {
+        this.aggressiveness = Math.max(1.5f, Math.min(8f, aggressiveness));
+    }
+
+    // Getters
+    public float getAggressiveness() {
+        return aggressiveness;
+    }
+
+    public boolean isSpeechActive() {
+        return speechActive;
+    }
+
+    /**
+     * Campione di fine dell'ultimo frame attivo (-1 se mai attivo)
+     */
+    public long getLastActivityPosition() {
+        return lastActiveEnd;
+    }
+
+    public long getSpeechStartPosition() {
+        return speechStart;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public double getNoiseRms() {
+        return noiseRms;
+    }
+
+    public double getLastFrameRms() {
+        return lastFrameRms;
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.spotting;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metriche del motore nel formato di esposizione testuale di Prometheus.
+ * Contatori e istogrammi sono LongAdder (celle per thread): i thread di cattura e
+ * di inferenza non si contendono una stessa variabile e lo scrape legge le somme
+ * senza lock. I gauge sono letti solo allo scrape, tramite un LongSupplier.
+ */
+public class EngineMetrics {
+
+    public static final String PREFIX = "spotting_";
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // Limiti superiori degli istogrammi di latenza, in secondi
+    private static final double[] LATENCY_BUCKETS_SECONDS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5
+    };
+
+    public static final class Counter {
+        private final String name;
+        private final String help;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long delta) {
+            value.add(delta);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Istogramma a intervalli fissi; record() scrive un solo intervallo (non cumulativo),
+     * le somme cumulative "le" si calcolano allo scrape
+     */
+    public static final class Histogram {
+        private final String name;
+        private final String help;
+        private final String labels;
+        private final long[] boundsNanos = new long[LATENCY_BUCKETS_SECONDS.length];
+        private final LongAdder[] buckets = new LongAdder[LATENCY_BUCKETS_SECONDS.length + 1];
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram(String name, String help, String labels) {
+            this.name = name;
+            this.help = help;
+            this.labels = labels;
+            for (int i = 0; i < boundsNanos.length; i++) {
+                boundsNanos[i] = Math.round(LATENCY_BUCKETS_SECONDS[i] * 1e9);
+            }
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void recordNanos(long nanos) {
+            int index = 0;
+            while (index < boundsNanos.length && nanos > boundsNanos[index]) {
+                index++;
+            }
+            buckets[index].increment();
+            sumNanos.add(Math.max(0, nanos));
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+    }
+
+    private static final class Gauge {
+        final String name;
+        final String help;
+        final LongSupplier supplier;
+
+        Gauge(String name, String help, LongSupplier supplier) {
+            this.name = name;
+            this.help = help;
+            this.supplier = supplier;
+        }
+    }
+
+    // Finestre e inferenze
+    public final Counter windowsProcessed = new Counter("windows_processed_total",
+            "Finestre classificate dal modello");
+    public final Counter windowsSkippedVad = new Counter("windows_skipped_vad_total",
+            "Finestre non inviate al modello perché senza parlato");
+    public final Counter windowsReplaced = new Counter("windows_replaced_total",
+            "Finestre scartate perché sostituite da una più recente prima dell'inferenza");
+    public final Counter windowsExpired = new Counter("windows_expired_total",
+            "Finestre scartate perché oltre la deadline dello stream");
+    public final Counter inferences = new Counter("inferences_total",
+            "Esecuzioni dell'interprete (un batch conta una volta)");
+    public final Counter interpreterBusyNanos = new Counter("interpreter_busy_nanoseconds_total",
+            "Tempo cumulativo con un interprete occupato, in nanosecondi");
+
+    // Stream ed eventi
+    public final Counter streamsOpened = new Counter("streams_opened_total",
+            "Connessioni audio accettate dall'avvio");
+    public final Counter samplesReceived = new Counter("samples_received_total",
+            "Campioni audio ricevuti dagli stream");
+    public final Counter eventsSent = new Counter("events_sent_total",
+            "Rilevamenti consegnati ai client");
+    public final Counter eventsDropped = new Counter("events_dropped_total",
+            "Rilevamenti scartati per coda eventi piena");
+
+    // Latenze per stadio
+    public final Histogram queueLatency = new Histogram("stage_latency_seconds",
+            "Latenza per stadio della pipeline", "stage=\"queue\"");
+    public final Histogram preprocessLatency = new Histogram("stage_latency_seconds",
+            "Latenza per stadio della pipeline", "stage=\"preprocess\"");
+    public final Histogram inferenceLatency = new Histogram("stage_latency_seconds",
+            "Latenza per stadio della pipeline", "stage=\"inference\"");
+
+    // Rilevamenti per etichetta del modello; l'ultima cella raccoglie le parole personalizzate
+    private final String[] labels = ModelConfig.getAllLabels();
+    private final LongAdder[] detections = new LongAdder[labels.length + 1];
+
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+
+    public EngineMetrics() {
+        for (int i = 0; i < detections.length; i++) {
+            detections[i] = new LongAdder();
+        }
+    }
+
+    public void recordDetection(int classIndex) {
+        detections[classIndex >= 0 && classIndex < labels.length ? classIndex : labels.length].increment();
+    }
+
+    public long getDetections(int classIndex) {
+        return detections[classIndex >= 0 && classIndex < labels.length ? classIndex : labels.length].sum();
+    }
+
+    /**
+     * Gauge letto allo scrape (profondità di coda, stream attivi, interpreti occupati...).
+     * Un nome registrato di nuovo sostituisce il precedente: ogni famiglia compare una volta sola.
+     */
+    public synchronized void registerGauge(String name, String help, LongSupplier supplier) {
+        unregisterGauge(name);
+        gauges.add(new Gauge(name, help, supplier));
+    }
+
+    /**
+     * Rimuove un gauge alla chiusura del componente che lo aveva registrato; se nel frattempo
+     * un altro componente lo ha sostituito (stesso nome, altro supplier) resta quello
+     */
+    public synchronized void unregisterGauge(String name, LongSupplier supplier) {
+        gauges.removeIf(gauge -> gauge.name.equals(name) && gauge.supplier == supplier);
+    }
+
+    private synchronized void unregisterGauge(String name) {
+        gauges.removeIf(gauge -> gauge.name.equals(name));
+    }
+
+    /**
+     * Scrive tutte le metriche nel formato testuale di Prometheus 0.0.4
+     */
+    public void writePrometheus(StringBuilder out) {
+        for (Counter counter : new Counter[]{windowsProcessed, windowsSkippedVad, windowsReplaced, windowsExpired,
+                inferences, interpreterBusyNanos, streamsOpened, samplesReceived, eventsSent, eventsDropped}) {
+            writeHeader(out, counter.name, counter.help, "counter");
+            out.append(PREFIX).append(counter.name).append(' ').append(counter.get()).append('\n');
+        }
+
+        writeHeader(out, "detections_total", "Rilevamenti accettati per etichetta", "counter");
+        for (int i = 0; i < detections.length; i++) {
+            out.append(PREFIX).append("detections_total{label=\"")
+                    .append(i < labels.length ? labels[i] : "custom").append("\"} ")
+                    .append(detections[i].sum()).append('\n');
+        }
+
+        Histogram[] histograms = {queueLatency, preprocessLatency, inferenceLatency};
+        writeHeader(out, histograms[0].name, histograms[0].help, "histogram");
+        for (Histogram histogram : histograms) {
+            writeHistogram(out, histogram);
+        }
+
+        for (Gauge gauge : gauges) {
+            writeHeader(out, gauge.name, gauge.help, "gauge");
+            out.append(PREFIX).append(gauge.name).append(' ').append(gauge.supplier.getAsLong()).append('\n');
+        }
+    }
+
+    private static void writeHistogram(StringBuilder out, Histogram histogram) {
+        String series = PREFIX + histogram.name;
+        long cumulative = 0;
+        for (int i = 0; i < histogram.buckets.length; i++) {
+            cumulative += histogram.buckets[i].sum();
+            out.append(series).append("_bucket{").append(histogram.labels).append(",le=\"")
+                    .append(i < LATENCY_BUCKETS_SECONDS.length ? formatBound(LATENCY_BUCKETS_SECONDS[i]) : "+Inf")
+                    .append("\"} ").append(cumulative).append('\n');
+        }
+        out.append(series).append("_sum{").append(histogram.labels).append("} ")
+                .append(String.format(Locale.ROOT, "%.6f", histogram.sumNanos.sum() / 1e9)).append('\n');
+        out.append(series).append("_count{").append(histogram.labels).append("} ").append(cumulative).append('\n');
+    }
+
+    private static void writeHeader(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String formatBound(double seconds) {
+        String text = String.format(Locale.ROOT, "%.4f", seconds);
+        // 0.0500 → 0.05, 1.0000 → 1
+        text = text.replaceAll("0+$", "");
+        return text.endsWith(".") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        writePrometheus(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,397 @@
+package com.example.spotting;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Scheduler di inferenza per molti stream audio su un insieme fisso di interpreti.
+ *
+ * Ogni stream ha al più una finestra in attesa: se ne arriva una nuova prima che
+ * la precedente sia servita, la vecchia viene sostituita e lo stream allarga il
+ * proprio hop (degrado invece di code senza limite). Gli stream con una finestra
+ * pronta stanno in una coda FIFO in cui compaiono una volta sola: i worker (uno per
+ * interprete) li servono a turno, fino a maxBatch stream per inferenza se il modello
+ * ha batch dinamico. Le finestre scadute (oltre la deadline dello stream) vengono scartate.
+ * I contatori stanno in EngineMetrics (LongAdder): worker e produttori non si contendono
+ * una stessa variabile e lo scrape delle metriche non li rallenta.
+ */
+public final class InferenceScheduler implements AutoCloseable {
+    private static final String TAG = "InferenceScheduler";
+
+    // Allargamento massimo dell'hop sotto carico
+    private static final int MAX_HOP_MULTIPLIER = 8;
+    // Finestre servite in tempo di fila prima di restringere di nuovo l'hop
+    private static final int RECOVERY_WINDOWS = 8;
+    private static final double SPEECH_RMS_INT16 = SpottingPipeline.SPEECH_RMS_THRESHOLD * 32768.0;
+
+    public interface ResultListener {
+        /**
+         * Chiamato sul thread del worker; deve restituire subito
+         */
+        void onResult(Stream stream, ClassificationResult result, long windowEndPosition);
+    }
+
+    private final ClassifierPool classifierPool;
+    private final AudioPreprocessor audioPreprocessor = new AudioPreprocessor();
+    private final int windowSamples = ModelConfig.INPUT_LENGTH;
+    private final int maxBatch;
+    private final LinkedBlockingQueue<Stream> readyStreams = new LinkedBlockingQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    // Statistiche
+    private final EngineMetrics metrics;
+    private final LongSupplier interpretersGauge;
+    private final LongSupplier interpretersBusyGauge;
+    private final LatencyStats queueLatency = new LatencyStats("attesa in coda");
+    private final LatencyStats batchLatency = new LatencyStats("inferenza batch");
+
+    public InferenceScheduler(ClassifierPool classifierPool, int maxBatch) {
+        this(classifierPool, maxBatch, new EngineMetrics());
+    }
+
+    public InferenceScheduler(ClassifierPool classifierPool, int maxBatch, EngineMetrics metrics) {
+        this.classifierPool = classifierPool;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.metrics = metrics;
+        this.interpretersGauge = classifierPool::size;
+        this.interpretersBusyGauge = () -> classifierPool.size() - classifierPool.getIdleCount();
+        metrics.registerGauge("interpreters", "Interpreti nel pool", interpretersGauge);
+        metrics.registerGauge("interpreters_busy", "Interpreti in uso in questo momento", interpretersBusyGauge);
+
+        for (int i = 0; i < classifierPool.size(); i++) {
+            Thread worker = new Thread(this::workerLoop, "inference-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        Log.d(TAG, "Scheduler avviato: " + workers.size() + " interpreti, batch massimo " + this.maxBatch);
+    }
+
+    /**
+     * Apre uno stream con hop e deadline propri
+     */
+    public Stream openStream(String name, int hopSamples, long deadlineMs, ResultListener listener) {
+        return new Stream(name, hopSamples, deadlineMs, listener);
+    }
+
+    private void workerLoop() {
+        // Buffer di lavoro del worker: memoria proporzionale agli interpreti, non agli stream
+        float[][] inputs = new float[maxBatch][windowSamples];
+        Stream[] batchStreams = new Stream[maxBatch];
+        long[] batchEnds = new long[maxBatch];
+        ClassificationResult[] results = new ClassificationResult[maxBatch];
+        List<Stream> drained = new ArrayList<>(maxBatch);
+
+        while (running) {
+            try {
+                Stream first = readyStreams.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                drained.clear();
+                drained.add(first);
+                readyStreams.drainTo(drained, maxBatch - 1);
+
+                int count = 0;
+                for (Stream stream : drained) {
+                    long end = stream.takePending(inputs[count]);
+                    if (end >= 0) {
+                        batchStreams[count] = stream;
+                        batchEnds[count] = end;
+                        count++;
+                    }
+                }
+                if (count == 0) {
+                    continue;
+                }
+
+                try {
+                    KeywordClassifier classifier = classifierPool.acquire();
+                    long start = System.nanoTime();
+                    try {
+                        classifier.classifyBatch(inputs, count, results);
+                    } finally {
+                        classifierPool.release(classifier);
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    batchLatency.record(elapsed);
+                    metrics.inferenceLatency.recordNanos(elapsed);
+                    metrics.interpreterBusyNanos.add(elapsed);
+                    metrics.inferences.increment();
+                    metrics.windowsProcessed.add(count);
+
+                    for (int i = 0; i < count; i++) {
+                        Stream stream = batchStreams[i];
+                        batchStreams[i] = null;
+                        stream.deliver(results[i], batchEnds[i]);
+                        results[i] = null;
+                    }
+                } finally {
+                    // Inferenza fallita (o interrotta): gli stream presi tornano inattivi senza
+                    // risultato, altrimenti awaitIdle li aspetterebbe per sempre
+                    for (int i = 0; i < count; i++) {
+                        if (batchStreams[i] != null) {
+                            batchStreams[i].deliver(null, batchEnds[i]);
+                            batchStreams[i] = null;
+                        }
+                        results[i] = null;
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Errore nel worker di inferenza", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        metrics.unregisterGauge("interpreters", interpretersGauge);
+        metrics.unregisterGauge("interpreters_busy", interpretersBusyGauge);
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    public String summary() {
+        long served = metrics.windowsProcessed.get();
+        long batches = metrics.inferences.get();
+        return String.format("servite %d, sostituite %d, scadute %d, senza parlato %d, batch %d (media %.1f finestre)\n  %s\n  %s",
+                served, metrics.windowsReplaced.get(), metrics.windowsExpired.get(), metrics.windowsSkippedVad.get(),
+                batches, batches > 0 ? served / (double) batches : 0,
+                queueLatency.summary(), batchLatency.summary());
+    }
+
+    /**
+     * Azzera le latenze (le statistiche cumulative restano)
+     */
+    public void resetLatencies() {
+        queueLatency.reset();
+        batchLatency.reset();
+    }
+
+    // Getters
+    public long getWindowsServed() {
+        return metrics.windowsProcessed.get();
+    }
+
+    public long getWindowsReplaced() {
+        return metrics.windowsReplaced.get();
+    }
+
+    public long getWindowsExpired() {
+        return metrics.windowsExpired.get();
+    }
+
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getReadyStreams() {
+        return readyStreams.size();
+    }
+
+    /**
+     * Stream audio registrato: push() dal thread del produttore, il resto dai worker
+     */
+    public final class Stream implements AutoCloseable {
+        private final String name;
+        private final int baseHopSamples;
+        private final long deadlineNanos;
+        private final ResultListener listener;
+
+        // Stato del produttore
+        private final short[] window = new short[windowSamples];
+        private int writeIndex = 0;
+        private long samplesPushed = 0;
+        private int sinceLastWindow = 0;
+        private long energy = 0;
+
+        // Finestra in attesa, protetta dal lock dello stream
+        private final short[] pending = new short[windowSamples];
+        private boolean pendingReady = false;
+        private long pendingEnd;
+        private long pendingReadyNanos;
+        private boolean queued = false;
+        // Finestra presa da un worker e non ancora consegnata
+        private boolean inFlight = false;
+        private volatile boolean closed = false;
+
+        // Degrado sotto carico
+        private volatile int hopMultiplier = 1;
+        private int onTimeStreak = 0;
+
+        Stream(String name, int hopSamples, long deadlineMs, ResultListener listener) {
+            this.name = name;
+            this.baseHopSamples = hopSamples;
+            this.deadlineNanos = deadlineMs * 1_000_000L;
+            this.listener = listener;
+        }
+
+        /**
+         * Aggiunge campioni int16 a 16 kHz; non blocca mai sull'inferenza
+         */
+        public void push(short[] data, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                short sample = data[offset + i];
+                short old = window[writeIndex];
+                energy += sample * sample - old * old;
+                window[writeIndex] = sample;
+                writeIndex = writeIndex + 1 == windowSamples ? 0 : writeIndex + 1;
+                samplesPushed++;
+                sinceLastWindow++;
+
+                if (samplesPushed >= windowSamples && sinceLastWindow >= getHopSamples()) {
+                    sinceLastWindow = 0;
+                    if (Math.sqrt((double) energy / windowSamples) > SPEECH_RMS_INT16) {
+                        submitWindow();
+                    } else {
+                        metrics.windowsSkippedVad.increment();
+                    }
+                }
+            }
+        }
+
+        private void submitWindow() {
+            boolean enqueue;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (pendingReady) {
+                    // La finestra precedente non è stata servita: sovraccarico
+                    metrics.windowsReplaced.increment();
+                    widenHop();
+                }
+                // Copia srotolata in ordine cronologico
+                int firstPart = windowSamples - writeIndex;
+                System.arraycopy(window, writeIndex, pending, 0, firstPart);
+                System.arraycopy(window, 0, pending, firstPart, writeIndex);
+                pendingReady = true;
+                pendingEnd = samplesPushed;
+                pendingReadyNanos = System.nanoTime();
+                enqueue = !queued;
+                queued = true;
+            }
+            if (enqueue) {
+                readyStreams.offer(this);
+            }
+        }
+
+        /**
+         * Normalizza la finestra in attesa in destination; restituisce la posizione
+         * di fine finestra, o -1 se non c'è nulla da servire (scaduta o stream chiuso)
+         */
+        long takePending(float[] destination) {
+            synchronized (this) {
+                queued = false;
+                if (!pendingReady || closed) {
+                    return -1;
+                }
+                pendingReady = false;
+                // Se la finestra viene scartata lo stream torna inattivo subito
+                notifyAll();
+
+                // Orologio letto sotto il lock: submitWindow non può averlo superato
+                long waited = System.nanoTime() - pendingReadyNanos;
+                queueLatency.record(waited);
+                metrics.queueLatency.recordNanos(waited);
+                if (waited > deadlineNanos) {
+                    metrics.windowsExpired.increment();
+                    widenHop();
+                    return -1;
+                }
+
+                if (++onTimeStreak >= RECOVERY_WINDOWS && hopMultiplier > 1) {
+                    hopMultiplier = hopMultiplier / 2;
+                    onTimeStreak = 0;
+                }
+
+                long preprocessStart = System.nanoTime();
+                audioPreprocessor.normalizeRingInto(pending, 0, destination);
+                metrics.preprocessLatency.recordNanos(System.nanoTime() - preprocessStart);
+                inFlight = true;
+                return pendingEnd;
+            }
+        }
+
+        private void widenHop() {
+            onTimeStreak = 0;
+            if (hopMultiplier < MAX_HOP_MULTIPLIER) {
+                hopMultiplier = hopMultiplier * 2;
+                Log.d(TAG, "Stream " + name + " sovraccarico: hop ×" + hopMultiplier);
+            }
+        }
+
+        void deliver(ClassificationResult result, long windowEnd) {
+            try {
+                if (result != null && !closed) {
+                    listener.onResult(this, result, windowEnd);
+                }
+            } finally {
+                synchronized (this) {
+                    inFlight = false;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * true se non ci sono finestre in attesa né in inferenza
+         */
+        public synchronized boolean isIdle() {
+            return !pendingReady && !inFlight;
+        }
+
+        /**
+         * Attende (senza polling) che l'ultima finestra sia consegnata o scartata;
+         * false se scade il timeout
+         */
+        public synchronized boolean awaitIdle(long timeoutMs) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+            while (pendingReady || inFlight) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            pendingReady = false;
+            notifyAll();
+        }
+
+        // Getters
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Hop effettivo, allargato sotto carico (mai oltre la finestra)
+         */
+        public int getHopSamples() {
+            return Math.min(windowSamples, baseHopSamples * hopMultiplier);
+        }
+
+        public int getHopMultiplier() {
+            return hopMultiplier;
+        }
+
+        public long getSamplesPushed() {
+            return samplesPushed;
+        }
+    }
+}
@@ -6,7 +6,12 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+import java.io.File;
 import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
@@ -17,12 +22,41 @@ public class KeywordClassifier {
     // NUOVO: Configurazione aggiornata per il modello con input 44032
     private static final int EXPECTED_INPUT_SIZE = 44032;
     private static final float CONFIDENCE_THRESHOLD = 0.6f;
+    private static final int DEFAULT_NUM_THREADS = 2;
 
     private Interpreter tflite;
+    private MappedByteBuffer modelBuffer;
+    private boolean parked = false;
     private int inputSize;
     private int outputSize;
+    private int numThreads = DEFAULT_NUM_THREADS;
     private boolean isInitialized = false;
 
+    // Buffer di input/output riusati a ogni inferenza (nessuna allocazione per finestra)
+    private ByteBuffer inputBuffer;
+    private FloatBuffer inputFloats;
+    private float[][] outputBuffer;
+
+    // Batch su più finestre, solo per modelli con dimensione batch dinamica: un interprete
+    // dedicato con forma fissa, così né questo né quello a batch 1 vengono mai ridimensionati
+    private int[] inputShape;
+    private boolean batchingSupported = false;
+    private Interpreter batchInterpreter;
+    private int batchShapeSize = 0;
+    private int batchRowsFilled = 0;
+    // Interpreti batch creati (cioè ridimensionamenti dei tensori): uno per forma, più i rientri da park()
+    private int batchInterpretersCreated = 0;
+    private ByteBuffer batchInputBuffer;
+    private float[][] batchOutputBuffer;
+    private float[] zeroRow;
+
+    // Contabilità della memoria: modello mappato, arena dell'interprete, buffer di input
+    private MemoryBudget.Reservation modelMemory;
+    private MemoryBudget.Reservation interpreterMemory;
+    private MemoryBudget.Reservation bufferMemory;
+    private MemoryBudget.Reservation batchMemory;
+    private MemoryBudget.Reservation batchInterpreterMemory;
+
     // Labels per il modello Google Speech Commands v2
     private static final String[] LABELS = {
             "silence", "unknown", "yes", "no", "up", "down",
@@ -31,7 +65,7 @@ public class KeywordClassifier {
 
     public KeywordClassifier(Context context) {
         try {
-            initializeModel(context);
+            initializeModel(loadModelFile(context));
             isInitialized = true;
             Log.d(TAG, "✅ KeywordClassifier inizializzato correttamente");
             Log.d(TAG, "Modello richiede: " + inputSize + " campioni in input");
@@ -41,21 +75,59 @@ public class KeywordClassifier {
         }
     }
 
-    private void initializeModel(Context context) throws Exception {
-        MappedByteBuffer tfliteModel = loadModelFile(context);
+    /**
+     * Costruttore per l'uso fuori da Android (replay, batch): il modello è letto da file
+     */
+    public KeywordClassifier(File modelFile) {
+        this(modelFile, DEFAULT_NUM_THREADS);
+    }
 
-        Interpreter.Options options = new Interpreter.Options();
-        options.setNumThreads(2);
-        tflite = new Interpreter(tfliteModel, options);
+    /**
+     * Come sopra, con il numero di thread dell'Interpreter esplicito.
+     * Con più classificatori in parallelo conviene 1 thread ciascuno per non sovraccaricare i core.
+     */
+    public KeywordClassifier(File modelFile, int numThreads) {
+        this.numThreads = numThreads;
+        try {
+            initializeModel(loadModelFile(modelFile));
+            isInitialized = true;
+            Log.d(TAG, "✅ KeywordClassifier inizializzato correttamente");
+            Log.d(TAG, "Modello richiede: " + inputSize + " campioni in input");
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Errore nell'inizializzazione del KeywordClassifier", e);
+            isInitialized = false;
+        }
+    }
+
+    private void initializeModel(MappedByteBuffer tfliteModel) throws Exception {
+        modelBuffer = tfliteModel;
+        MemoryBudget budget = MemoryBudget.getInstance();
+        modelMemory = budget.register(TAG, "modello", MemoryBudget.Kind.MAPPED, tfliteModel.capacity());
+        interpreterMemory = budget.register(TAG, "interprete", MemoryBudget.Kind.NATIVE, 0);
+        tflite = createInterpreter();
 
         // Ottieni le dimensioni del modello
         int[] inputShape = tflite.getInputTensor(0).shape();
         int[] outputShape = tflite.getOutputTensor(0).shape();
-
-        // Il modello dovrebbe avere shape [1, 44032]
-        inputSize = inputShape.length >= 2 ? inputShape[1] : inputShape[0];
+        int[] inputSignature = tflite.getInputTensor(0).shapeSignature();
+        this.inputShape = inputShape;
+        batchingSupported = inputShape.length >= 2 && inputSignature != null
+                && inputSignature.length == inputShape.length && inputSignature[0] == -1;
+
+        // Il modello dovrebbe avere shape [1, 44032]; i modelli su feature [1, frame, bin]
+        inputSize = 1;
+        for (int i = inputShape.length >= 2 ? 1 : 0; i < inputShape.length; i++) {
+            inputSize *= inputShape[i];
+        }
         outputSize = outputShape.length >= 2 ? outputShape[1] : outputShape[0];
 
+        // Input come ByteBuffer diretto: vale per qualsiasi rango del tensore
+        inputBuffer = ByteBuffer.allocateDirect(inputSize * 4).order(ByteOrder.nativeOrder());
+        inputFloats = inputBuffer.asFloatBuffer();
+        outputBuffer = new float[1][outputSize];
+        bufferMemory = MemoryBudget.getInstance().register(TAG, "input/output", MemoryBudget.Kind.DIRECT,
+                inputBuffer.capacity() + outputSize * 4L);
+
         Log.d(TAG, "Input shape: " + java.util.Arrays.toString(inputShape));
         Log.d(TAG, "Output shape: " + java.util.Arrays.toString(outputShape));
         Log.d(TAG, "Modello configurato - Input: " + inputSize + ", Output: " + outputSize);
@@ -66,6 +138,111 @@ public class KeywordClassifier {
         }
     }
 
+    private Interpreter createInterpreter() {
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(numThreads);
+        long nativeBefore = MemoryBudget.nativeHeapBytes();
+        Interpreter interpreter = new Interpreter(modelBuffer, options);
+        interpreterMemory.set(MemoryBudget.interpreterBytes(nativeBefore, tensorBytes(interpreter)));
+        return interpreter;
+    }
+
+    /**
+     * Interprete per batch di batchSize finestre: l'input viene ridimensionato una volta sola
+     */
+    private Interpreter createBatchInterpreter(int batchSize) {
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(numThreads);
+        long nativeBefore = MemoryBudget.nativeHeapBytes();
+        Interpreter interpreter = new Interpreter(modelBuffer, options);
+        int[] shape = inputShape.clone();
+        shape[0] = batchSize;
+        interpreter.resizeInput(0, shape);
+        interpreter.allocateTensors();
+        batchInterpretersCreated++;
+        if (batchInterpreterMemory == null) {
+            batchInterpreterMemory = MemoryBudget.getInstance().register(TAG, "interprete batch",
+                    MemoryBudget.Kind.NATIVE, 0);
+        }
+        batchInterpreterMemory.set(MemoryBudget.interpreterBytes(nativeBefore, tensorBytes(interpreter)));
+        Log.d(TAG, "Interprete batch creato: " + batchSize + " finestre");
+        return interpreter;
+    }
+
+    private void closeBatchInterpreter() {
+        if (batchInterpreter != null) {
+            batchInterpreter.close();
+            batchInterpreter = null;
+            batchShapeSize = 0;
+            batchInterpreterMemory.set(0);
+        }
+    }
+
+    /**
+     * Byte dei tensori di input e output (stima minima dell'arena dell'interprete)
+     */
+    static long tensorBytes(Interpreter interpreter) {
+        long bytes = 0;
+        for (int i = 0; i < interpreter.getInputTensorCount(); i++) {
+            Tensor tensor = interpreter.getInputTensor(i);
+            bytes += tensor != null ? tensor.numBytes() : 0;
+        }
+        for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+            Tensor tensor = interpreter.getOutputTensor(i);
+            bytes += tensor != null ? tensor.numBytes() : 0;
+        }
+        return bytes;
+    }
+
+    /**
+     * Parcheggia il classificatore: chiude l'Interpreter (e i suoi thread)
+     * mantenendo il modello mappato. La prossima classificazione lo ricrea.
+     */
+    public void park() {
+        if (tflite != null && isInitialized) {
+            tflite.close();
+            tflite = null;
+            interpreterMemory.set(0);
+            closeBatchInterpreter();
+            parked = true;
+            Log.d(TAG, "Interpreter parcheggiato");
+        }
+    }
+
+    /**
+     * Ricrea l'Interpreter se parcheggiato (es. all'inizio di un'attività vocale,
+     * per non pagare la creazione sulla prima finestra)
+     */
+    public void unpark() {
+        if (parked && isInitialized) {
+            tflite = createInterpreter();
+            parked = false;
+            Log.d(TAG, "Interpreter riattivato");
+        }
+    }
+
+    /**
+     * Cambia il numero di thread dell'Interpreter ricreandolo (il modello resta mappato).
+     * Va chiamato dal thread che esegue le inferenze.
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads == this.numThreads || numThreads <= 0) {
+            return;
+        }
+        this.numThreads = numThreads;
+        if (tflite != null && isInitialized) {
+            tflite.close();
+            tflite = createInterpreter();
+            // Quello di batch si ricrea alla prossima richiesta, con i nuovi thread
+            closeBatchInterpreter();
+            Log.d(TAG, "Interpreter ricreato con " + numThreads + " thread");
+        }
+    }
+
+    public boolean isParked() {
+        return parked;
+    }
+
     private MappedByteBuffer loadModelFile(Context context) throws Exception {
         AssetFileDescriptor fileDescriptor = context.getAssets().openFd(MODEL_PATH);
         FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
@@ -77,11 +254,28 @@ public class KeywordClassifier {
         return buffer;
     }
 
+    private MappedByteBuffer loadModelFile(File modelFile) throws Exception {
+        try (FileInputStream inputStream = new FileInputStream(modelFile)) {
+            FileChannel fileChannel = inputStream.getChannel();
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        }
+    }
+
     /**
      * NUOVO: Classificazione semplificata - il modello riceve direttamente i 44032 campioni
      * Non serve più un buffer circolare complesso, ogni chiamata è indipendente
      */
     public String classify(float[] audioData) {
+        ClassificationResult result = classifyDetailed(audioData);
+        return result != null && result.isAccepted() ? result.toString() : null;
+    }
+
+    /**
+     * Come classify, ma restituisce l'esito completo (anche sotto soglia).
+     * Restituisce null solo in caso di errore.
+     */
+    public ClassificationResult classifyDetailed(float[] audioData) {
+        unpark();
         if (!isInitialized || tflite == null || audioData == null) {
             Log.e(TAG, "❌ Classificatore non inizializzato o dati audio null");
             return null;
@@ -101,23 +295,104 @@ public class KeywordClassifier {
         }
     }
 
-    private String performClassification(float[] audioData) {
+    /**
+     * Classifica count finestre. Con un modello a batch dinamico esegue una sola
+     * inferenza, altrimenti una inferenza per finestra.
+     * La forma del batch è fissa e vale inputs.length (la capacità del chiamante): un batch
+     * parziale viene completato con righe di zeri invece di ridimensionare i tensori.
+     * results[i] è null in caso di errore sulla finestra i.
+     */
+    public void classifyBatch(float[][] inputs, int count, ClassificationResult[] results) {
+        if (count <= 1 || !batchingSupported) {
+            for (int i = 0; i < count; i++) {
+                results[i] = classifyDetailed(inputs[i]);
+            }
+            return;
+        }
+
+        unpark();
+        if (!isInitialized || tflite == null) {
+            Log.e(TAG, "❌ Classificatore non inizializzato");
+            java.util.Arrays.fill(results, 0, count, null);
+            return;
+        }
+
+        // Il buffer di batch è facoltativo: oltre il budget si classifica una finestra alla volta
+        int batchSize = inputs.length;
+        long batchBytes = (long) batchSize * inputSize * 4;
+        if (batchInputBuffer == null || batchInputBuffer.capacity() < batchBytes) {
+            if (batchMemory == null) {
+                batchMemory = MemoryBudget.getInstance().tryRegister(TAG, "batch", MemoryBudget.Kind.DIRECT, batchBytes);
+            }
+            if (batchMemory == null || !batchMemory.trySet(batchBytes)) {
+                for (int i = 0; i < count; i++) {
+                    results[i] = classifyDetailed(inputs[i]);
+                }
+                return;
+            }
+        }
+
         try {
-            // Prepara input per TensorFlow Lite: shape [1, 44032]
-            float[][] input = new float[1][inputSize];
-            System.arraycopy(audioData, 0, input[0], 0, inputSize);
+            if (batchInterpreter == null || batchShapeSize != batchSize) {
+                closeBatchInterpreter();
+                batchInterpreter = createBatchInterpreter(batchSize);
+                batchShapeSize = batchSize;
+            }
+            if (batchInputBuffer == null || batchInputBuffer.capacity() < batchBytes) {
+                // allocateDirect azzera il buffer: nessuna riga da ripulire
+                batchInputBuffer = ByteBuffer.allocateDirect((int) batchBytes).order(ByteOrder.nativeOrder());
+                batchRowsFilled = 0;
+            }
+            if (batchOutputBuffer == null || batchOutputBuffer.length != batchSize) {
+                batchOutputBuffer = new float[batchSize][outputSize];
+            }
+
+            batchInputBuffer.clear();
+            FloatBuffer floats = batchInputBuffer.asFloatBuffer();
+            for (int i = 0; i < count; i++) {
+                floats.put(inputs[i], 0, inputSize);
+            }
+            // Padding: si azzerano solo le righe rimaste dal batch precedente
+            int staleRows = Math.min(batchRowsFilled, batchSize);
+            if (staleRows > count) {
+                if (zeroRow == null) {
+                    zeroRow = new float[inputSize];
+                }
+                for (int i = count; i < staleRows; i++) {
+                    floats.put(zeroRow, 0, inputSize);
+                }
+            }
+            batchRowsFilled = count;
+            batchInputBuffer.limit((int) batchBytes);
 
-            // Prepara output
-            float[][] output = new float[1][outputSize];
+            long startTime = System.nanoTime();
+            batchInterpreter.run(batchInputBuffer, batchOutputBuffer);
+            long inferenceTime = System.nanoTime() - startTime;
+
+            for (int i = 0; i < count; i++) {
+                results[i] = interpretOutput(batchOutputBuffer[i], inferenceTime / count);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Errore durante l'inferenza batch", e);
+            java.util.Arrays.fill(results, 0, count, null);
+        }
+    }
+
+    private ClassificationResult performClassification(float[] audioData) {
+        try {
+            // Prepara input per TensorFlow Lite: shape [1, 44032] (o [1, frame, bin])
+            inputFloats.clear();
+            inputFloats.put(audioData, 0, inputSize);
+            inputBuffer.rewind();
 
             // Esegui l'inferenza
-            long startTime = System.currentTimeMillis();
-            tflite.run(input, output);
-            long inferenceTime = System.currentTimeMillis() - startTime;
+            long startTime = System.nanoTime();
+            tflite.run(inputBuffer, outputBuffer);
+            long inferenceTime = System.nanoTime() - startTime;
 
-            Log.v(TAG, "Inferenza completata in " + inferenceTime + "ms");
+            Log.v(TAG, "Inferenza completata in " + (inferenceTime / 1_000_000) + "ms");
 
-            return interpretOutput(output[0]);
+            return interpretOutput(outputBuffer[0], inferenceTime);
 
         } catch (Exception e) {
             Log.e(TAG, "❌ Errore durante l'inferenza", e);
@@ -125,19 +400,23 @@ public class KeywordClassifier {
         }
     }
 
-    private String interpretOutput(float[] probabilities) {
+    private ClassificationResult interpretOutput(float[] probabilities, long inferenceTime) {
         if (probabilities == null || probabilities.length == 0) {
             Log.w(TAG, "Output del modello vuoto");
             return null;
         }
 
         // Trova l'indice con la probabilità più alta
-        int maxIndex = 0;
-        float maxProb = probabilities[0];
-        for (int i = 1; i < probabilities.length; i++) {
-            if (probabilities[i] > maxProb) {
-                maxProb = probabilities[i];
-                maxIndex = i;
+        int maxIndex = AudioKernels.getInstance().argmax(probabilities, 0, probabilities.length);
+        float maxProb = probabilities[maxIndex];
+
+        // Seconda classe, per il margine di confidenza
+        int runnerUpIndex = -1;
+        float runnerUpProb = 0f;
+        for (int i = 0; i < probabilities.length; i++) {
+            if (i != maxIndex && (runnerUpIndex < 0 || probabilities[i] > runnerUpProb)) {
+                runnerUpProb = probabilities[i];
+                runnerUpIndex = i;
             }
         }
 
@@ -162,30 +441,30 @@ public class KeywordClassifier {
         }
         Log.v(TAG, probsLog.toString());
 
-        // Verifica soglia di confidenza
-        if (maxProb < CONFIDENCE_THRESHOLD) {
-            Log.d(TAG, "Confidenza troppo bassa: " + String.format("%.1f%% (soglia: %.1f%%)",
-                    confidence, CONFIDENCE_THRESHOLD * 100));
+        if (maxIndex >= LABELS.length) {
+            Log.w(TAG, "Indice label non valido: " + maxIndex);
             return null;
         }
 
-        // Restituisci il risultato se valido
-        if (maxIndex < LABELS.length) {
-            String label = LABELS[maxIndex];
+        String label = LABELS[maxIndex];
+        boolean accepted = true;
 
+        // Verifica soglia di confidenza
+        if (maxProb < CONFIDENCE_THRESHOLD) {
+            Log.d(TAG, "Confidenza troppo bassa: " + String.format("%.1f%% (soglia: %.1f%%)",
+                    confidence, CONFIDENCE_THRESHOLD * 100));
+            accepted = false;
+        } else if ((label.equals("silence") || label.equals("unknown")) && confidence < 75f) {
             // Filtra silence e unknown con soglia più alta
-            if ((label.equals("silence") || label.equals("unknown")) && confidence < 75f) {
-                Log.d(TAG, "Filtrato " + label + " con confidenza bassa: " + String.format("%.1f%%", confidence));
-                return null;
-            }
-
+            Log.d(TAG, "Filtrato " + label + " con confidenza bassa: " + String.format("%.1f%%", confidence));
+            accepted = false;
+        } else {
             // Log del risultato finale
             Log.i(TAG, "🎯 COMANDO RICONOSCIUTO: " + label + " (" + String.format("%.1f%%)", confidence));
-            return String.format("%s (%.1f%%)", label, confidence);
         }
 
-        Log.w(TAG, "Indice label non valido: " + maxIndex);
-        return null;
+        return new ClassificationResult(maxIndex, label, maxProb, runnerUpIndex, runnerUpProb,
+                accepted, inferenceTime);
     }
 
     /**
@@ -271,13 +550,39 @@ public class KeywordClassifier {
         return CONFIDENCE_THRESHOLD;
     }
 
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * true se il modello ha dimensione batch dinamica (classifyBatch fa una sola inferenza)
+     */
+    public boolean supportsBatching() {
+        return batchingSupported;
+    }
+
+    public int getBatchInterpretersCreated() {
+        return batchInterpretersCreated;
+    }
+
     public void close() {
         if (tflite != null) {
             tflite.close();
             tflite = null;
         }
+        closeBatchInterpreter();
 
+        modelBuffer = null;
+        parked = false;
         isInitialized = false;
+        for (MemoryBudget.Reservation reservation : new MemoryBudget.Reservation[]{
+                modelMemory, interpreterMemory, bufferMemory, batchMemory, batchInterpreterMemory}) {
+            if (reservation != null) {
+                reservation.release();
+            }
+        }
+        batchMemory = null;
+        batchInterpreterMemory = null;
         Log.d(TAG, "KeywordClassifier chiuso");
     }
 }
\ No newline at end of file
@@ -0,0 +1,144 @@
+package com.example.spotting;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+import org.tensorflow.lite.Interpreter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Calcola l'embedding di una finestra audio (stesso input del classificatore, 44032 float).
+ * L'embedding è l'ultimo output del modello: un modello dedicato, oppure il classificatore
+ * esportato con il penultimo strato come output aggiuntivo. L'output deve avere shape [1, dim].
+ */
+public class KeywordEmbedder {
+    private static final String TAG = "KeywordEmbedder";
+
+    private Interpreter tflite;
+    private int inputSize;
+    private int dimension;
+    private int outputIndex;
+    private boolean isInitialized = false;
+
+    // Buffer riusati a ogni inferenza
+    private ByteBuffer inputBuffer;
+    private FloatBuffer inputFloats;
+    private float[][] outputBuffer;
+    private final Map<Integer, Object> outputs = new HashMap<>();
+    private final Object[] inputs = new Object[1];
+    private MemoryBudget.Reservation modelMemory;
+    private MemoryBudget.Reservation interpreterMemory;
+    private MemoryBudget.Reservation inputMemory;
+
+    public KeywordEmbedder(Context context) {
+        try {
+            AssetFileDescriptor fileDescriptor = context.getAssets().openFd(ModelConfig.EMBEDDING_MODEL_FILE);
+            try (FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+                initialize(inputStream.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        fileDescriptor.getStartOffset(), fileDescriptor.getDeclaredLength()));
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Modello di embedding non disponibile: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Costruttore per l'uso fuori da Android: il modello è letto da file
+     */
+    public KeywordEmbedder(File modelFile) {
+        try (RandomAccessFile input = new RandomAccessFile(modelFile, "r")) {
+            initialize(input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length()));
+        } catch (Exception e) {
+            Log.w(TAG, "Modello di embedding non disponibile: " + e.getMessage());
+        }
+    }
+
+    private void initialize(MappedByteBuffer model) {
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(1);
+        long nativeBefore = MemoryBudget.nativeHeapBytes();
+        tflite = new Interpreter(model, options);
+        MemoryBudget budget = MemoryBudget.getInstance();
+        modelMemory = budget.register(TAG, "modello", MemoryBudget.Kind.MAPPED, model.capacity());
+        interpreterMemory = budget.register(TAG, "interprete", MemoryBudget.Kind.NATIVE,
+                MemoryBudget.interpreterBytes(nativeBefore, KeywordClassifier.tensorBytes(tflite)));
+
+        int[] inputShape = tflite.getInputTensor(0).shape();
+        inputSize = 1;
+        for (int i = inputShape.length >= 2 ? 1 : 0; i < inputShape.length; i++) {
+            inputSize *= inputShape[i];
+        }
+        outputIndex = tflite.getOutputTensorCount() - 1;
+        int[] outputShape = tflite.getOutputTensor(outputIndex).shape();
+        dimension = outputShape[outputShape.length - 1];
+
+        inputBuffer = ByteBuffer.allocateDirect(inputSize * 4).order(ByteOrder.nativeOrder());
+        inputFloats = inputBuffer.asFloatBuffer();
+        outputBuffer = new float[1][dimension];
+        inputs[0] = inputBuffer;
+        outputs.put(outputIndex, outputBuffer);
+        inputMemory = budget.register(TAG, "input", MemoryBudget.Kind.DIRECT, inputBuffer.capacity());
+
+        isInitialized = true;
+        Log.d(TAG, "Embedding: output " + outputIndex + ", " + dimension + " dimensioni");
+    }
+
+    /**
+     * Calcola l'embedding normalizzato L2 di una finestra preprocessata in embedding
+     * (dimension valori). Restituisce false in caso di errore.
+     */
+    public boolean embed(float[] audioData, float[] embedding) {
+        if (!isInitialized || audioData == null || audioData.length != inputSize) {
+            return false;
+        }
+        try {
+            inputFloats.clear();
+            inputFloats.put(audioData);
+            inputBuffer.rewind();
+            tflite.runForMultipleInputsOutputs(inputs, outputs);
+            System.arraycopy(outputBuffer[0], 0, embedding, 0, dimension);
+            EmbeddingIndex.normalize(embedding, 0, dimension);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Errore durante il calcolo dell'embedding", e);
+            return false;
+        }
+    }
+
+    public void close() {
+        if (tflite != null) {
+            tflite.close();
+            tflite = null;
+        }
+        if (modelMemory != null) {
+            modelMemory.release();
+            interpreterMemory.release();
+            inputMemory.release();
+            modelMemory = null;
+        }
+        isInitialized = false;
+    }
+
+    // Getters
+    public boolean isInitialized() {
+        return isInitialized;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+}
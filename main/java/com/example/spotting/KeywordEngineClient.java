@@ -0,0 +1,129 @@
+package com.example.spotting;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+/**
+ * Client del motore condiviso: si collega a ListeningService, si iscrive alle etichette
+ * richieste e riceve i rilevamenti sul main thread. Al posto di un AudioRecorder e di un
+ * KeywordClassifier propri, ogni client costa un Messenger e una voce nel registro del servizio.
+ *
+ * Uso:
+ *   client = new KeywordEngineClient(context, KeywordSubscriptions.maskOf("yes", "no"), 0.7f, listener);
+ *   client.connect();   ...   client.disconnect();
+ */
+public final class KeywordEngineClient implements ServiceConnection {
+    private static final String TAG = "KeywordEngineClient";
+
+    public interface Listener {
+        void onKeyword(String label, float confidence);
+
+        void onEngineStopped();
+    }
+
+    private final Context context;
+    private final int labelMask;
+    private final float minConfidence;
+    private final Listener listener;
+    private final Messenger events;
+    private final String[] labels = ModelConfig.getAllLabels();
+
+    private Messenger service;
+    private boolean bound = false;
+
+    /**
+     * @param labelMask     etichette richieste (KeywordSubscriptions.maskOf), 0 per tutti i comandi
+     * @param minConfidence confidenza minima per ricevere l'evento (0 = soglia del motore)
+     */
+    public KeywordEngineClient(Context context, int labelMask, float minConfidence, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.labelMask = labelMask;
+        this.minConfidence = minConfidence;
+        this.listener = listener;
+        this.events = new Messenger(new Handler(Looper.getMainLooper(), this::handleEvent));
+    }
+
+    /**
+     * Si collega al servizio (avviandolo se necessario); l'iscrizione parte alla connessione
+     */
+    public void connect() {
+        if (bound) {
+            return;
+        }
+        bound = context.bindService(new Intent(context, ListeningService.class), this, Context.BIND_AUTO_CREATE);
+        if (!bound) {
+            Log.e(TAG, "Impossibile collegarsi al motore condiviso");
+        }
+    }
+
+    public void disconnect() {
+        if (!bound) {
+            return;
+        }
+        send(Message.obtain(null, ListeningService.MSG_UNSUBSCRIBE));
+        context.unbindService(this);
+        bound = false;
+        service = null;
+    }
+
+    @Override
+    public void onServiceConnected(ComponentName name, IBinder binder) {
+        if (binder == null) {
+            Log.e(TAG, "Motore condiviso non disponibile");
+            return;
+        }
+        service = new Messenger(binder);
+        send(Message.obtain(null, ListeningService.MSG_SUBSCRIBE,
+                labelMask, Math.round(minConfidence * ListeningService.CONFIDENCE_SCALE)));
+        Log.i(TAG, "🔗 Collegato al motore condiviso");
+    }
+
+    @Override
+    public void onServiceDisconnected(ComponentName name) {
+        // Processo del servizio terminato: il sistema ricollega e onServiceConnected reiscrive
+        service = null;
+        listener.onEngineStopped();
+    }
+
+    private boolean handleEvent(Message message) {
+        switch (message.what) {
+            case ListeningService.MSG_KEYWORD:
+                if (message.arg1 >= 0 && message.arg1 < labels.length) {
+                    listener.onKeyword(labels[message.arg1], Float.intBitsToFloat(message.arg2));
+                }
+                return true;
+            case ListeningService.MSG_ENGINE_STOPPED:
+                listener.onEngineStopped();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void send(Message message) {
+        if (service == null) {
+            return;
+        }
+        message.replyTo = events;
+        try {
+            service.send(message);
+        } catch (RemoteException e) {
+            Log.w(TAG, "Motore condiviso non raggiungibile", e);
+            service = null;
+        }
+    }
+
+    // Getters
+    public boolean isConnected() {
+        return service != null;
+    }
+}
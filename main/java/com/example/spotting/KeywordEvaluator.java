@@ -0,0 +1,300 @@
+package com.example.spotting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Valutazione del modello su un dataset in stile Speech Commands:
+ * ogni cartella è un'etichetta e contiene clip WAV da 1 secondo.
+ * Le clip sono adattate all'input del modello con la stessa semantica di
+ * AudioPreprocessor.resizeAudio (padding con zeri / ultimi campioni) e classificate
+ * in parallelo con fork/join, un Interpreter per thread.
+ *
+ * Uso:
+ *   KeywordEvaluator --model speech_commands.tflite [--threads N] [--raw] <cartella test>
+ *
+ * Le cartelle che non corrispondono a un'etichetta del modello contano come "unknown";
+ * _background_noise_ viene ignorata. Senza --raw una classificazione sotto soglia
+ * conta come "unknown", come accade nell'app.
+ */
+public class KeywordEvaluator {
+
+    private static final int UNKNOWN_INDEX = 1;
+    private static final int SILENCE_INDEX = 0;
+    private static final int LEAF_SIZE = 16;
+
+    private final ClassifierPool classifierPool;
+    private final AudioPreprocessor audioPreprocessor = new AudioPreprocessor();
+    private final String[] labels = ModelConfig.getAllLabels();
+    private final boolean rawArgmax;
+
+    private final LatencyStats latencyStats = new LatencyStats("Latenza per clip");
+
+    public KeywordEvaluator(ClassifierPool classifierPool, boolean rawArgmax) {
+        this.classifierPool = classifierPool;
+        this.rawArgmax = rawArgmax;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String modelPath = null;
+        String datasetPath = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean raw = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--model":
+                    modelPath = args[++i];
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--raw":
+                    raw = true;
+                    break;
+                default:
+                    datasetPath = args[i];
+                    break;
+            }
+        }
+
+        if (modelPath == null || datasetPath == null) {
+            System.err.println("Uso: KeywordEvaluator --model <file.tflite> [--threads N] [--raw] <cartella>");
+            System.exit(2);
+        }
+
+        try (ClassifierPool pool = new ClassifierPool(new File(modelPath), threads)) {
+            KeywordEvaluator evaluator = new KeywordEvaluator(pool, raw);
+            evaluator.evaluate(new File(datasetPath), threads);
+        }
+    }
+
+    /**
+     * Classifica tutte le clip del dataset e stampa metriche e matrice di confusione
+     */
+    public void evaluate(File datasetDir, int parallelism) {
+        List<File> clips = new ArrayList<>();
+        List<Integer> expected = new ArrayList<>();
+        collectClips(datasetDir, clips, expected);
+
+        if (clips.isEmpty()) {
+            System.err.println("❌ Nessuna clip trovata in " + datasetDir);
+            return;
+        }
+
+        int[] expectedIndex = new int[clips.size()];
+        for (int i = 0; i < expectedIndex.length; i++) {
+            expectedIndex[i] = expected.get(i);
+        }
+        int[] predictedIndex = new int[clips.size()];
+        Arrays.fill(predictedIndex, -1);
+
+        System.out.println("▶️ Valutazione di " + clips.size() + " clip su " + parallelism + " thread");
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long startNanos = System.nanoTime();
+        try {
+            pool.invoke(new ClassifyRange(clips, predictedIndex, 0, clips.size()));
+        } finally {
+            pool.shutdown();
+        }
+        long wallNanos = System.nanoTime() - startNanos;
+
+        printReport(expectedIndex, predictedIndex, wallNanos);
+    }
+
+    private void collectClips(File datasetDir, List<File> clips, List<Integer> expected) {
+        File[] labelDirs = datasetDir.listFiles(File::isDirectory);
+        if (labelDirs == null) {
+            return;
+        }
+        Arrays.sort(labelDirs);
+
+        for (File labelDir : labelDirs) {
+            String name = labelDir.getName();
+            if (name.equals("_background_noise_")) {
+                continue;
+            }
+            int index = labelIndex(name);
+
+            File[] files = labelDir.listFiles((dir, file) -> file.toLowerCase(Locale.ROOT).endsWith(".wav"));
+            if (files == null) {
+                continue;
+            }
+            Arrays.sort(files);
+            for (File file : files) {
+                clips.add(file);
+                expected.add(index);
+            }
+        }
+    }
+
+    private int labelIndex(String folder) {
+        if (folder.equals("_silence_")) {
+            return SILENCE_INDEX;
+        }
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i].equals(folder)) {
+                return i;
+            }
+        }
+        return UNKNOWN_INDEX;
+    }
+
+    /**
+     * Task fork/join: divide l'intervallo di clip fino a LEAF_SIZE,
+     * poi classifica le foglie con un classificatore preso dal pool
+     */
+    private class ClassifyRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<File> clips;
+        private final int[] predicted;
+        private final int from;
+        private final int to;
+
+        ClassifyRange(List<File> clips, int[] predicted, int from, int to) {
+            this.clips = clips;
+            this.predicted = predicted;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ClassifyRange(clips, predicted, from, middle),
+                        new ClassifyRange(clips, predicted, middle, to));
+                return;
+            }
+
+            KeywordClassifier classifier;
+            try {
+                classifier = classifierPool.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                for (int i = from; i < to; i++) {
+                    predicted[i] = classifyClip(classifier, clips.get(i));
+                }
+            } finally {
+                classifierPool.release(classifier);
+            }
+        }
+    }
+
+    private int classifyClip(KeywordClassifier classifier, File clip) {
+        short[] samples;
+        try {
+            samples = readClip(clip);
+        } catch (IOException e) {
+            System.err.println("⚠️ " + clip.getPath() + ": " + e.getMessage());
+            return -1;
+        }
+
+        long startTime = System.nanoTime();
+        // preprocessAudio applica resizeAudio quando la clip non ha la lunghezza del modello
+        float[] input = audioPreprocessor.preprocessAudio(samples);
+        ClassificationResult result = input != null ? classifier.classifyDetailed(input) : null;
+        latencyStats.record(System.nanoTime() - startTime);
+
+        if (result == null) {
+            return -1;
+        }
+        return rawArgmax || result.isAccepted() ? result.getClassIndex() : UNKNOWN_INDEX;
+    }
+
+    private static short[] readClip(File clip) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(clip, "r")) {
+            FileChannel channel = raf.getChannel();
+            WavHeader header = WavHeader.read(channel);
+            if (header.getSampleRate() != ModelConfig.SAMPLE_RATE || header.getChannelCount() != 1) {
+                throw new IOException("formato non supportato (" + header.getSampleRate() + "Hz, " +
+                        header.getChannelCount() + " canali)");
+            }
+
+            ByteBuffer data = ByteBuffer.allocate((int) header.getDataSize()).order(ByteOrder.LITTLE_ENDIAN);
+            while (data.hasRemaining()) {
+                if (channel.read(data, header.getDataOffset() + data.position()) < 0) {
+                    break;
+                }
+            }
+            data.flip();
+
+            short[] samples = new short[data.remaining() / 2];
+            data.asShortBuffer().get(samples);
+            return samples;
+        }
+    }
+
+    private void printReport(int[] expected, int[] predicted, long wallNanos) {
+        int classes = labels.length;
+        long[][] confusion = new long[classes][classes];
+        int failed = 0;
+        int correct = 0;
+
+        for (int i = 0; i < expected.length; i++) {
+            if (predicted[i] < 0) {
+                failed++;
+                continue;
+            }
+            confusion[expected[i]][predicted[i]]++;
+            if (expected[i] == predicted[i]) {
+                correct++;
+            }
+        }
+
+        int evaluated = expected.length - failed;
+        System.out.println("=== RISULTATI VALUTAZIONE ===");
+        System.out.println(String.format(Locale.ROOT, "Clip: %d valutate, %d errori - accuratezza %.2f%%",
+                evaluated, failed, evaluated > 0 ? correct * 100.0 / evaluated : 0));
+        System.out.println(String.format(Locale.ROOT, "Tempo: %.1f s - %.1f clip/s",
+                wallNanos / 1e9, evaluated / (wallNanos / 1e9)));
+        System.out.println(latencyStats.summary());
+
+        System.out.println("=== METRICHE PER CLASSE ===");
+        System.out.println(String.format(Locale.ROOT, "%-8s %9s %9s %9s %7s", "classe", "precision", "recall", "f1", "clip"));
+        for (int c = 0; c < classes; c++) {
+            long truePositives = confusion[c][c];
+            long predictedTotal = 0;
+            long actualTotal = 0;
+            for (int k = 0; k < classes; k++) {
+                predictedTotal += confusion[k][c];
+                actualTotal += confusion[c][k];
+            }
+            double precision = predictedTotal > 0 ? truePositives / (double) predictedTotal : 0;
+            double recall = actualTotal > 0 ? truePositives / (double) actualTotal : 0;
+            double f1 = precision + recall > 0 ? 2 * precision * recall / (precision + recall) : 0;
+            System.out.println(String.format(Locale.ROOT, "%-8s %9.3f %9.3f %9.3f %7d",
+                    labels[c], precision, recall, f1, actualTotal));
+        }
+
+        System.out.println("=== MATRICE DI CONFUSIONE (righe: attesa, colonne: predetta) ===");
+        StringBuilder header = new StringBuilder(String.format("%-8s", ""));
+        for (String label : labels) {
+            header.append(String.format("%8s", label));
+        }
+        System.out.println(header);
+        for (int c = 0; c < classes; c++) {
+            StringBuilder row = new StringBuilder(String.format("%-8s", labels[c]));
+            for (int k = 0; k < classes; k++) {
+                row.append(String.format("%8d", confusion[c][k]));
+            }
+            System.out.println(row);
+        }
+    }
+}
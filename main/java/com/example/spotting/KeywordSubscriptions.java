@@ -0,0 +1,184 @@
+package com.example.spotting;
+
+import android.os.DeadObjectException;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+/**
+ * Registro dei client iscritti agli eventi del motore condiviso (ListeningService).
+ * Ogni iscrizione è un Messenger con la maschera di bit delle etichette richieste
+ * (indici di ModelConfig.getAllLabels()) e una confidenza minima: l'evento viaggia
+ * in arg1/arg2 di un Message, senza Bundle né serializzazione.
+ *
+ * Copy-on-write: subscribe/unsubscribe avvengono sul main thread, dispatch sul thread
+ * di inferenza legge l'array corrente senza lock. I client morti vengono rimossi.
+ */
+public class KeywordSubscriptions {
+    private static final String TAG = "KeywordSubscriptions";
+
+    private static final Subscriber[] EMPTY = new Subscriber[0];
+
+    private static final class Subscriber {
+        final Messenger messenger;
+        final int labelMask;
+        final float minConfidence;
+
+        Subscriber(Messenger messenger, int labelMask, float minConfidence) {
+            this.messenger = messenger;
+            this.labelMask = labelMask;
+            this.minConfidence = minConfidence;
+        }
+    }
+
+    private volatile Subscriber[] subscribers = EMPTY;
+    // Unione delle maschere: dispatch esce subito se nessuno ascolta l'etichetta
+    private volatile int combinedMask = 0;
+
+    private long eventsDelivered = 0;
+    private long clientsDropped = 0;
+
+    /**
+     * Maschera con tutte le etichette dei comandi supportati
+     */
+    public static int commandMask() {
+        String[] labels = ModelConfig.getAllLabels();
+        int mask = 0;
+        for (int i = 0; i < labels.length && i < Integer.SIZE; i++) {
+            if (ModelConfig.isCommandSupported(labels[i])) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Maschera per le etichette indicate (quelle sconosciute al modello vengono ignorate)
+     */
+    public static int maskOf(String... labels) {
+        int mask = 0;
+        for (String label : labels) {
+            int index = ModelConfig.getLabelIndex(label);
+            if (index >= 0 && index < Integer.SIZE) {
+                mask |= 1 << index;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Iscrive (o aggiorna) un client; labelMask 0 equivale a tutti i comandi supportati
+     */
+    public synchronized void subscribe(Messenger messenger, int labelMask, float minConfidence) {
+        Subscriber subscriber = new Subscriber(messenger, labelMask != 0 ? labelMask : commandMask(), minConfidence);
+        Subscriber[] current = subscribers;
+        int existing = indexOf(current, messenger);
+        Subscriber[] updated;
+        if (existing >= 0) {
+            updated = current.clone();
+            updated[existing] = subscriber;
+        } else {
+            updated = new Subscriber[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = subscriber;
+        }
+        publish(updated);
+        Log.d(TAG, "Client iscritto (maschera 0x" + Integer.toHexString(subscriber.labelMask)
+                + "), client attivi: " + updated.length);
+    }
+
+    public synchronized void unsubscribe(Messenger messenger) {
+        Subscriber[] current = subscribers;
+        int index = indexOf(current, messenger);
+        if (index < 0) {
+            return;
+        }
+        Subscriber[] updated = new Subscriber[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        publish(updated);
+        Log.d(TAG, "Client disiscritto, client attivi: " + updated.length);
+    }
+
+    public boolean isSubscribed(int classIndex) {
+        return classIndex >= 0 && classIndex < Integer.SIZE && (combinedMask & (1 << classIndex)) != 0;
+    }
+
+    /**
+     * Consegna il rilevamento ai client iscritti all'etichetta (thread di inferenza)
+     */
+    public void dispatch(int what, int classIndex, float confidence) {
+        if (!isSubscribed(classIndex)) {
+            return;
+        }
+        int bit = 1 << classIndex;
+        int confidenceBits = Float.floatToIntBits(confidence);
+        for (Subscriber subscriber : subscribers) {
+            if ((subscriber.labelMask & bit) == 0 || confidence < subscriber.minConfidence) {
+                continue;
+            }
+            if (send(subscriber, Message.obtain(null, what, classIndex, confidenceBits))) {
+                eventsDelivered++;
+            }
+        }
+    }
+
+    /**
+     * Invia lo stesso messaggio a tutti i client (es. motore fermato)
+     */
+    public void broadcast(int what) {
+        for (Subscriber subscriber : subscribers) {
+            send(subscriber, Message.obtain(null, what));
+        }
+    }
+
+    public synchronized void clear() {
+        publish(EMPTY);
+    }
+
+    private boolean send(Subscriber subscriber, Message message) {
+        try {
+            subscriber.messenger.send(message);
+            return true;
+        } catch (DeadObjectException e) {
+            Log.w(TAG, "Client non più raggiungibile, rimosso");
+        } catch (RemoteException e) {
+            Log.w(TAG, "Consegna evento fallita, client rimosso", e);
+        }
+        clientsDropped++;
+        unsubscribe(subscriber.messenger);
+        return false;
+    }
+
+    private void publish(Subscriber[] updated) {
+        int mask = 0;
+        for (Subscriber subscriber : updated) {
+            mask |= subscriber.labelMask;
+        }
+        subscribers = updated;
+        combinedMask = mask;
+    }
+
+    private static int indexOf(Subscriber[] array, Messenger messenger) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i].messenger.equals(messenger)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Getters
+    public int getClientCount() {
+        return subscribers.length;
+    }
+
+    public long getEventsDelivered() {
+        return eventsDelivered;
+    }
+
+    public long getClientsDropped() {
+        return clientsDropped;
+    }
+}
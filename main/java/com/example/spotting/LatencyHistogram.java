@@ -0,0 +1,101 @@
+package com.example.spotting;
+
+import java.util.Arrays;
+
+/**
+ * Istogramma di latenze in microsecondi a memoria fissa (log-lineare: 16 sotto-intervalli
+ * per ogni potenza di due, errore relativo ≤ 6.25%). Non conserva i campioni, quindi va bene
+ * per aggregare milioni di eventi da TelemetryStore; LatencyStats lo usa in nanosecondi.
+ * Non thread-safe.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts[bucketIndex(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    /**
+     * Percentile p in [0, 100], in microsecondi: limite superiore del sotto-intervallo (0 se vuoto)
+     */
+    public long percentile(double p) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, bucketUpperBound(i));
+            }
+        }
+        return max;
+    }
+
+    // I valori < 16 hanno un intervallo ciascuno; poi 16 intervalli per potenza di due
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> (exponent - 1)) & (SUB_BUCKETS - 1);
+        return exponent * SUB_BUCKETS + subBucket;
+    }
+
+    private static long bucketUpperBound(int index) {
+        int exponent = index / SUB_BUCKETS;
+        int subBucket = index % SUB_BUCKETS;
+        if (exponent == 0) {
+            return subBucket;
+        }
+        long width = 1L << (exponent - 1);
+        return ((long) (SUB_BUCKETS + subBucket) << (exponent - 1)) + width - 1;
+    }
+
+    // Getters
+    public long getCount() {
+        return count;
+    }
+
+    public long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public String summary() {
+        return String.format("n=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms", count,
+                percentile(50) / 1e3, percentile(95) / 1e3, percentile(99) / 1e3, max / 1e3);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.spotting;
+
+/**
+ * Raccolta di latenze (in nanosecondi) con percentili.
+ * Thread-safe e a memoria fissa: i campioni finiscono in un LatencyHistogram (errore relativo
+ * dei percentili ≤ 6.25%), quindi un'istanza può restare viva per tutta la sessione, per
+ * ogni handler di CommandDispatcher o per ogni clip di una valutazione.
+ */
+public class LatencyStats {
+
+    private final String name;
+    // LatencyHistogram non dipende dall'unità: qui conta nanosecondi
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    public LatencyStats(String name) {
+        this.name = name;
+    }
+
+    public synchronized void record(long nanos) {
+        histogram.record(nanos);
+    }
+
+    public synchronized void reset() {
+        histogram.reset();
+    }
+
+    /**
+     * Percentile p in [0, 100], in nanosecondi (0 se vuoto)
+     */
+    public synchronized long percentile(double p) {
+        return histogram.percentile(p);
+    }
+
+    public synchronized int getCount() {
+        return (int) Math.min(Integer.MAX_VALUE, histogram.getCount());
+    }
+
+    public synchronized long getMean() {
+        return histogram.getMean();
+    }
+
+    public synchronized long getMax() {
+        return histogram.getMax();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Riepilogo in millisecondi: n, media, p50, p90, p99, max
+     */
+    public String summary() {
+        return String.format("%s - n=%d, media=%.2fms, p50=%.2fms, p90=%.2fms, p99=%.2fms, max=%.2fms",
+                name, getCount(), getMean() / 1e6, percentile(50) / 1e6, percentile(90) / 1e6,
+                percentile(99) / 1e6, getMax() / 1e6);
+    }
+}
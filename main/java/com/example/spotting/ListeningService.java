@@ -0,0 +1,492 @@
+package com.example.spotting;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ascolto sempre attivo in un foreground service con duty cycle:
+ * sul thread di cattura gira solo l'EnergyVad; il KeywordClassifier viene
+ * usato solo per le finestre che contengono attività vocale.
+ * Dopo PARK_AFTER_MS di silenzio l'interprete viene parcheggiato
+ * (thread rilasciati) e viene riattivato all'inizio del parlato successivo.
+ *
+ * È anche il motore condiviso tra i client: chi si collega con bindService riceve un
+ * Messenger e si iscrive alle etichette che gli interessano (KeywordEngineClient).
+ * Una sola cattura e un solo interprete servono tutti i client; il servizio resta
+ * attivo finché è avviato con start() o ha almeno un client collegato.
+ *
+ * Mentre l'activity registra in primo piano la cattura è sua (setAppCaptureActive):
+ * le iscrizioni sono dell'intero processo e SpottingEngine consegna i propri rilevamenti
+ * con publishDetection, così non esistono mai due AudioRecord e i client non perdono
+ * eventi. release() cede il microfono all'activity senza toccare le iscrizioni e, quando
+ * l'activity smette di registrare, resumeForClients() riprende la cattura per i client.
+ * Solo stop() e l'azione della notifica chiudono il motore per tutti (MSG_ENGINE_STOPPED);
+ * in entrambi i casi il microfono è libero alla ricezione di ACTION_ENGINE_STOPPED.
+ */
+public class ListeningService extends Service implements AudioRecorder.AudioRecorderListener {
+    private static final String TAG = "ListeningService";
+
+    public static final String ACTION_STOP = "com.example.spotting.action.STOP_LISTENING";
+    public static final String ACTION_RELEASE = "com.example.spotting.action.RELEASE_CAPTURE";
+    public static final String ACTION_RESUME_FOR_CLIENTS = "com.example.spotting.action.RESUME_FOR_CLIENTS";
+    public static final String ACTION_KEYWORD_DETECTED = "com.example.spotting.action.KEYWORD_DETECTED";
+    public static final String ACTION_ENGINE_STOPPED = "com.example.spotting.action.ENGINE_STOPPED";
+    public static final String EXTRA_LABEL = "label";
+    public static final String EXTRA_CONFIDENCE = "confidence";
+
+    // Protocollo Messenger. Client → servizio: MSG_SUBSCRIBE (arg1 maschera etichette,
+    // arg2 confidenza minima × CONFIDENCE_SCALE, replyTo), MSG_UNSUBSCRIBE (replyTo).
+    // Servizio → client: MSG_KEYWORD (arg1 indice di classe, arg2 bit float della confidenza)
+    public static final int MSG_SUBSCRIBE = 1;
+    public static final int MSG_UNSUBSCRIBE = 2;
+    public static final int MSG_KEYWORD = 3;
+    public static final int MSG_ENGINE_STOPPED = 4;
+    public static final int CONFIDENCE_SCALE = 1000;
+
+    private static final String CHANNEL_ID = "listening";
+    private static final int NOTIFICATION_ID = 1;
+    private static final long PARK_AFTER_MS = 10000;
+
+    // Stato visibile all'activity (stesso processo)
+    private static volatile boolean running = false;
+    private static volatile String lastSessionReport = null;
+    private static volatile boolean appCaptureActive = false;
+
+    // Iscrizioni del processo: sopravvivono al passaggio della cattura tra servizio e activity
+    private static final KeywordSubscriptions subscriptions = new KeywordSubscriptions();
+
+    private KeywordClassifier keywordClassifier;
+    private SpottingPipeline spottingPipeline;
+    private AudioRecorder audioRecorder;
+    private EnergyVad energyVad;
+    private ExecutorService inferenceExecutor;
+    private CpuUsageMeter cpuUsageMeter;
+    private volatile boolean listening = false;
+    // Cattura ripresa solo per i client: si ferma quando l'ultimo si disiscrive
+    private boolean clientsOnly = false;
+
+    private Messenger messenger;
+
+    // Statistiche di sessione
+    private long windowsGated = 0;
+    private long windowsClassified = 0;
+    private int parkCount = 0;
+    // Letto e scritto solo dal thread di cattura
+    private boolean parkRequested = false;
+
+    /**
+     * Avvia il servizio in foreground (il chiamante deve avere RECORD_AUDIO)
+     */
+    public static void start(Context context) {
+        ContextCompat.startForegroundService(context, new Intent(context, ListeningService.class));
+    }
+
+    /**
+     * Ferma la cattura del servizio anche se ci sono client collegati (stopService da solo
+     * non la fermerebbe); il microfono è libero alla ricezione di ACTION_ENGINE_STOPPED
+     */
+    public static void stop(Context context) {
+        if (running) {
+            context.startService(new Intent(context, ListeningService.class).setAction(ACTION_STOP));
+        } else {
+            context.stopService(new Intent(context, ListeningService.class));
+        }
+    }
+
+    /**
+     * Cede il microfono all'activity: la cattura si ferma, le iscrizioni dei client restano
+     * e ricevono i rilevamenti dell'activity (publishDetection). Segue ACTION_ENGINE_STOPPED
+     */
+    public static void release(Context context) {
+        if (running) {
+            context.startService(new Intent(context, ListeningService.class).setAction(ACTION_RELEASE));
+        }
+    }
+
+    /**
+     * Riprende la cattura del servizio per i client iscritti, se ce ne sono (l'activity ha
+     * appena smesso di registrare). La cattura si ferma con l'ultima disiscrizione
+     */
+    public static void resumeForClients(Context context) {
+        if (running || subscriptions.getClientCount() == 0) {
+            return;
+        }
+        try {
+            ContextCompat.startForegroundService(context,
+                    new Intent(context, ListeningService.class).setAction(ACTION_RESUME_FOR_CLIENTS));
+        } catch (RuntimeException e) {
+            // Da Android 12 non si avvia un foreground service dal background
+            Log.w(TAG, "Ripresa della cattura per i client non consentita", e);
+        }
+    }
+
+    /**
+     * Chiamato dal motore dell'activity: mentre registra in primo piano, un client che si
+     * collega non apre una seconda cattura
+     */
+    public static void setAppCaptureActive(boolean active) {
+        appCaptureActive = active;
+    }
+
+    /**
+     * Consegna ai client iscritti un rilevamento della cattura dell'activity (thread di inferenza)
+     */
+    public static void publishDetection(ClassificationResult result) {
+        subscriptions.dispatch(MSG_KEYWORD, result.getClassIndex(), result.getConfidence());
+    }
+
+    public static boolean hasClients() {
+        return subscriptions.getClientCount() > 0;
+    }
+
+    public static boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Riepilogo CPU e duty cycle dell'ultima sessione in background (null se nessuna)
+     */
+    public static String getLastSessionReport() {
+        return lastSessionReport;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_STOP.equals(action) || ACTION_RELEASE.equals(action)) {
+            // Con client collegati stopSelf non distrugge il servizio: la cattura si ferma qui.
+            // Solo lo stop dell'utente chiude il motore anche per i client
+            stopListening(ACTION_STOP.equals(action));
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        boolean forClients = ACTION_RESUME_FOR_CLIENTS.equals(action);
+        if (forClients && !hasClients()) {
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        if (!ensureListening()) {
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        // Un avvio esplicito tiene la cattura anche senza client
+        clientsOnly = forClients && clientsOnly;
+        return START_STICKY;
+    }
+
+    /**
+     * Avvia cattura e interprete se non sono già attivi (avvio esplicito o primo client).
+     * Se la cattura è dell'activity non apre nulla: i client restano iscritti in attesa
+     */
+    private boolean ensureListening() {
+        if (running) {
+            return true;
+        }
+        clientsOnly = true;
+        if (appCaptureActive) {
+            Log.i(TAG, "🔗 Cattura in uso dall'app: i client riceveranno eventi dal passaggio al servizio");
+            return true;
+        }
+        try {
+            // Da Android 12 startForeground da un client in background lancia
+            // ForegroundServiceStartNotAllowedException: il bind fallisce, il servizio no
+            startInForeground();
+            startListening();
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Errore avvio ascolto in background", e);
+            stopListening(false);
+            return false;
+        }
+    }
+
+    private void startInForeground() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                    "Ascolto comandi vocali", NotificationManager.IMPORTANCE_LOW);
+            channel.setDescription("Rilevamento parole chiave in background");
+            getNotificationManager().createNotificationChannel(channel);
+        }
+
+        Notification notification = buildNotification("🎧 In ascolto in background");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_MICROPHONE);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+    }
+
+    private void startListening() {
+        keywordClassifier = new KeywordClassifier(this);
+        if (!keywordClassifier.isInitialized()) {
+            throw new IllegalStateException("KeywordClassifier non inizializzato");
+        }
+        spottingPipeline = new SpottingPipeline(new AudioPreprocessor(), keywordClassifier);
+        inferenceExecutor = Executors.newSingleThreadExecutor();
+
+        energyVad = new EnergyVad(ModelConfig.SAMPLE_RATE);
+        energyVad.setListener(new EnergyVad.Listener() {
+            @Override
+            public void onSpeechStart(long position) {
+                // Riattiva l'interprete mentre la finestra si riempie
+                parkRequested = false;
+                KeywordClassifier classifier = keywordClassifier;
+                if (listening && classifier != null) {
+                    // Il campo può essere azzerato da stopListening prima che il task giri
+                    inferenceExecutor.execute(classifier::unpark);
+                }
+            }
+
+            @Override
+            public void onSpeechEnd(long position) {
+                Log.v(TAG, "Fine parlato a " + position);
+            }
+        });
+
+        AudioSource source = null;
+        if (ModelConfig.CAPTURE_AT_NATIVE_RATE) {
+            try {
+                source = MicAudioSource.lowLatency(this, MicAudioSource.getNativeSampleRate(this), 1);
+            } catch (Exception e) {
+                Log.w(TAG, "Cattura a frequenza nativa non disponibile, uso 16 kHz", e);
+            }
+        }
+        audioRecorder = new AudioRecorder(this, source);
+        audioRecorder.addCaptureTap((data, offset, length, streamPosition) ->
+                energyVad.process(data, offset, length));
+
+        windowsGated = 0;
+        windowsClassified = 0;
+        parkCount = 0;
+        parkRequested = false;
+        cpuUsageMeter = new CpuUsageMeter("background");
+        cpuUsageMeter.start();
+
+        listening = true;
+        audioRecorder.startRecording();
+        running = audioRecorder.isRecording();
+        Log.i(TAG, "🎧 Ascolto in background avviato");
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        stopListening(true);
+    }
+
+    /**
+     * Ferma cattura e interprete e toglie il foreground; il servizio può restare vivo per
+     * i client collegati. Con closeClients avvisa i client e ne cancella le iscrizioni,
+     * altrimenti (passaggio all'activity) le iscrizioni restano. Main thread, idempotente
+     */
+    private void stopListening(boolean closeClients) {
+        boolean wasStarted = listening || audioRecorder != null || keywordClassifier != null;
+        listening = false;
+
+        if (audioRecorder != null) {
+            audioRecorder.stopRecording();
+            audioRecorder.release();
+            audioRecorder = null;
+        }
+
+        KeywordClassifier classifier = keywordClassifier;
+        keywordClassifier = null;
+        if (inferenceExecutor != null) {
+            // La chiusura dell'interprete avviene sul thread di inferenza, dopo l'ultima finestra
+            inferenceExecutor.execute(classifier::close);
+            inferenceExecutor.shutdown();
+            inferenceExecutor = null;
+        } else if (classifier != null) {
+            classifier.close();
+        }
+
+        if (closeClients) {
+            subscriptions.broadcast(MSG_ENGINE_STOPPED);
+            subscriptions.clear();
+        }
+
+        if (cpuUsageMeter != null && cpuUsageMeter.isRunning()) {
+            cpuUsageMeter.stop();
+            lastSessionReport = String.format("%s (finestre classificate %d, scartate dal VAD %d, parcheggi %d, eventi ai client %d)",
+                    cpuUsageMeter.summary(), windowsClassified, windowsGated, parkCount,
+                    subscriptions.getEventsDelivered());
+            Log.i(TAG, "📊 " + lastSessionReport);
+        }
+
+        running = false;
+        stopForeground(STOP_FOREGROUND_REMOVE);
+
+        if (wasStarted) {
+            // Il microfono è già rilasciato: l'activity può aprire la propria cattura
+            Intent stopped = new Intent(ACTION_ENGINE_STOPPED);
+            stopped.setPackage(getPackageName());
+            sendBroadcast(stopped);
+        }
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        if (!ensureListening()) {
+            return null;
+        }
+        if (messenger == null) {
+            messenger = new Messenger(new Handler(Looper.getMainLooper(), this::handleClientMessage));
+        }
+        return messenger.getBinder();
+    }
+
+    /**
+     * Messaggi dei client (main thread)
+     */
+    private boolean handleClientMessage(Message message) {
+        if (message.replyTo == null) {
+            Log.w(TAG, "Messaggio senza replyTo ignorato: " + message.what);
+            return true;
+        }
+        switch (message.what) {
+            case MSG_SUBSCRIBE:
+                // Dopo uno stop il binder resta valido: la nuova iscrizione riavvia la cattura
+                if (!ensureListening()) {
+                    try {
+                        message.replyTo.send(Message.obtain(null, MSG_ENGINE_STOPPED));
+                    } catch (RemoteException e) {
+                        Log.w(TAG, "Client non raggiungibile", e);
+                    }
+                    return true;
+                }
+                subscriptions.subscribe(message.replyTo, message.arg1, message.arg2 / (float) CONFIDENCE_SCALE);
+                return true;
+            case MSG_UNSUBSCRIBE:
+                subscriptions.unsubscribe(message.replyTo);
+                if (clientsOnly && running && !hasClients()) {
+                    Log.i(TAG, "Nessun client iscritto: cattura fermata");
+                    stopListening(false);
+                    stopSelf();
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // ========== IMPLEMENTAZIONE AudioRecorderListener ==========
+
+    @Override
+    public void onAudioDataReceived(short[] audioData) {
+        // Thread di cattura: decide se la finestra merita il classificatore
+        if (!listening) {
+            return;
+        }
+        long windowEnd = audioRecorder.getLastWindowEndSample();
+        long windowStart = windowEnd - audioData.length;
+        boolean active = energyVad.isSpeechActive() || energyVad.getLastActivityPosition() > windowStart;
+
+        if (!active) {
+            windowsGated++;
+            long quietSamples = energyVad.getPosition() - Math.max(0, energyVad.getLastActivityPosition());
+            if (quietSamples * 1000L / ModelConfig.SAMPLE_RATE > PARK_AFTER_MS && !parkRequested) {
+                parkRequested = true;
+                parkCount++;
+                KeywordClassifier classifier = keywordClassifier;
+                if (classifier != null) {
+                    inferenceExecutor.execute(classifier::park);
+                }
+            }
+            return;
+        }
+
+        windowsClassified++;
+        inferenceExecutor.execute(() -> classifyWindow(audioData));
+    }
+
+    private void classifyWindow(short[] audioData) {
+        try {
+            ClassificationResult result = spottingPipeline.process(audioData);
+            if (result == null || !result.isAccepted() || !ModelConfig.isCommandSupported(result.getLabel())) {
+                return;
+            }
+
+            Log.i(TAG, "✅ Comando riconosciuto in background: " + result);
+            getNotificationManager().notify(NOTIFICATION_ID,
+                    buildNotification("🎯 Ultimo comando: " + result));
+
+            Intent broadcast = new Intent(ACTION_KEYWORD_DETECTED);
+            broadcast.setPackage(getPackageName());
+            broadcast.putExtra(EXTRA_LABEL, result.getLabel());
+            broadcast.putExtra(EXTRA_CONFIDENCE, result.getConfidence());
+            sendBroadcast(broadcast);
+
+            subscriptions.dispatch(MSG_KEYWORD, result.getClassIndex(), result.getConfidence());
+
+        } catch (Exception e) {
+            Log.e(TAG, "Errore classificazione in background", e);
+        }
+    }
+
+    @Override
+    public void onRecordingStopped() {
+        Log.d(TAG, "Cattura fermata");
+    }
+
+    @Override
+    public void onSilenceDetected() {
+    }
+
+    @Override
+    public void onSpeechDetected() {
+    }
+
+    @Override
+    public void onError(String error) {
+        Log.e(TAG, "Errore AudioRecorder: " + error);
+        // Può arrivare dal thread di cattura: lo stop (che lo attende) gira sul main thread
+        new Handler(Looper.getMainLooper()).post(() -> {
+            stopListening(true);
+            stopSelf();
+        });
+    }
+
+    // ========== NOTIFICA ==========
+
+    private Notification buildNotification(String text) {
+        Intent openIntent = new Intent(this, MainActivity.class);
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0, openIntent, PendingIntent.FLAG_IMMUTABLE);
+
+        Intent stopIntent = new Intent(this, ListeningService.class).setAction(ACTION_STOP);
+        PendingIntent stopPendingIntent = PendingIntent.getService(this, 1, stopIntent, PendingIntent.FLAG_IMMUTABLE);
+
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setContentTitle("Speech Command Spotting")
+                .setContentText(text)
+                .setSmallIcon(android.R.drawable.ic_btn_speak_now)
+                .setContentIntent(contentIntent)
+                .addAction(0, "Stop", stopPendingIntent)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .build();
+    }
+
+    private NotificationManager getNotificationManager() {
+        return (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+    }
+}
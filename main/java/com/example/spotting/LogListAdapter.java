@@ -0,0 +1,177 @@
+package com.example.spotting;
+
+import android.view.Choreographer;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import java.util.Calendar;
+
+/**
+ * Adapter del log a schermo su un LogRingBuffer.
+ * I messaggi si accumulano nel ring da qualsiasi thread; al massimo una volta
+ * per frame (Choreographer) il contenuto viene copiato in una fotografia letta
+ * solo dal thread UI e la ListView viene aggiornata riciclando le righe.
+ * Memoria e costo per frame restano costanti per tutta la sessione.
+ */
+public final class LogListAdapter extends BaseAdapter implements Choreographer.FrameCallback {
+
+    private final LogRingBuffer ring;
+    private final ListView listView;
+    private final Choreographer choreographer;
+
+    // Fotografia del ring usata dal thread UI
+    private final String[] messages;
+    private final long[] timestamps;
+    private final int[] repeatCounts;
+    private int count = 0;
+    private long shownVersion = -1;
+
+    // Un solo frame callback in attesa alla volta
+    private boolean flushScheduled = false;
+
+    // Formattazione timestamp senza DateFormat per riga
+    private final Calendar calendar = Calendar.getInstance();
+    private final StringBuilder lineBuilder = new StringBuilder(128);
+
+    /**
+     * Va creato sul thread UI
+     */
+    public LogListAdapter(ListView listView, int capacity) {
+        this(listView, new LogRingBuffer(capacity));
+    }
+
+    /**
+     * Adapter su un ring esistente (es. quello di SpottingEngine, che sopravvive
+     * alla ricreazione dell'activity); va creato sul thread UI
+     */
+    public LogListAdapter(ListView listView, LogRingBuffer ring) {
+        this.ring = ring;
+        this.listView = listView;
+        this.choreographer = Choreographer.getInstance();
+        int capacity = ring.getCapacity();
+        this.messages = new String[capacity];
+        this.timestamps = new long[capacity];
+        this.repeatCounts = new int[capacity];
+        listView.setAdapter(this);
+        if (ring.size() > 0) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Aggiunge un messaggio; chiamabile da qualsiasi thread
+     */
+    public void log(String message) {
+        ring.add(message, System.currentTimeMillis());
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        synchronized (this) {
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        // postFrameCallback è thread-safe
+        choreographer.postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        synchronized (this) {
+            flushScheduled = false;
+        }
+
+        long version = ring.getVersion();
+        if (version == shownVersion) {
+            return;
+        }
+
+        // Segue la coda solo se l'utente era già in fondo alla lista
+        boolean atBottom = count == 0 || listView.getLastVisiblePosition() >= count - 1;
+
+        count = ring.copyTo(messages, timestamps, repeatCounts);
+        shownVersion = version;
+        notifyDataSetChanged();
+
+        if (atBottom && count > 0) {
+            listView.setSelection(count - 1);
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return messages[position];
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View row = convertView;
+        if (row == null) {
+            row = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_log, parent, false);
+        }
+        TextView text = row instanceof TextView ? (TextView) row : row.findViewById(R.id.tvLogEntry);
+        text.setText(formatLine(position));
+        return row;
+    }
+
+    private CharSequence formatLine(int position) {
+        calendar.setTimeInMillis(timestamps[position]);
+        lineBuilder.setLength(0);
+        lineBuilder.append('[');
+        appendTwoDigits(calendar.get(Calendar.HOUR_OF_DAY)).append(':');
+        appendTwoDigits(calendar.get(Calendar.MINUTE)).append(':');
+        appendTwoDigits(calendar.get(Calendar.SECOND)).append("] ");
+        lineBuilder.append(messages[position]);
+        if (repeatCounts[position] > 1) {
+            lineBuilder.append("  (×").append(repeatCounts[position]).append(')');
+        }
+        return lineBuilder.toString();
+    }
+
+    private StringBuilder appendTwoDigits(int value) {
+        if (value < 10) {
+            lineBuilder.append('0');
+        }
+        return lineBuilder.append(value);
+    }
+
+    /**
+     * Da chiamare in onDestroy
+     */
+    public void stop() {
+        choreographer.removeFrameCallback(this);
+    }
+
+    /**
+     * Il ring è stato aggiornato da altri (chiamabile da qualsiasi thread)
+     */
+    public void refresh() {
+        scheduleFlush();
+    }
+
+    public void clear() {
+        ring.clear();
+        scheduleFlush();
+    }
+
+    // Getters
+    public LogRingBuffer getRing() {
+        return ring;
+    }
+}
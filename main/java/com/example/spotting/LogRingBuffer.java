@@ -0,0 +1,123 @@
+package com.example.spotting;
+
+/**
+ * Ring di capacità fissa per i messaggi di log a schermo.
+ * Un messaggio uguale all'ultimo non occupa una nuova voce: ne incrementa
+ * il contatore di ripetizioni. Nessuna allocazione dopo la costruzione,
+ * a parte le stringhe dei messaggi stessi.
+ * add() è thread-safe; copyTo() fotografa il contenuto per il thread UI.
+ * Il testo trattenuto va nel MemoryBudget a scatti di ACCOUNTING_STEP_BYTES, non a ogni
+ * messaggio: il monitor del budget, condiviso da tutto il processo, resta fuori dal log.
+ */
+public class LogRingBuffer {
+
+    private final int capacity;
+    private final String[] messages;
+    private final long[] timestamps;
+    private final int[] repeatCounts;
+
+    private int head = 0;   // indice della voce più vecchia
+    private int size = 0;
+    private long version = 0;
+    private long totalAdded = 0;
+
+    // Testo trattenuto (stima: intestazione della stringa più 2 byte per carattere)
+    private static final int STRING_OVERHEAD_BYTES = 40;
+    private static final long ACCOUNTING_STEP_BYTES = 16 * 1024;
+    private final long arrayBytes;
+    private long textBytes = 0;
+    private long accountedTextBytes = 0;
+    private final MemoryBudget.Reservation reservation;
+
+    public LogRingBuffer(int capacity) {
+        this.capacity = capacity;
+        this.messages = new String[capacity];
+        this.timestamps = new long[capacity];
+        this.repeatCounts = new int[capacity];
+        this.arrayBytes = capacity * (4L + 8 + 4);
+        this.reservation = MemoryBudget.getInstance().register("Log", "messaggi", MemoryBudget.Kind.HEAP, arrayBytes);
+    }
+
+    public synchronized void add(String message, long timestampMillis) {
+        totalAdded++;
+        version++;
+
+        if (size > 0) {
+            int last = (head + size - 1) % capacity;
+            if (messages[last].equals(message)) {
+                repeatCounts[last]++;
+                timestamps[last] = timestampMillis;
+                return;
+            }
+        }
+
+        int index;
+        if (size < capacity) {
+            index = (head + size) % capacity;
+            size++;
+        } else {
+            // Pieno: sovrascrive la voce più vecchia
+            index = head;
+            head = (head + 1) % capacity;
+            textBytes -= textBytes(messages[index]);
+        }
+        textBytes += textBytes(message);
+        if (Math.abs(textBytes - accountedTextBytes) >= ACCOUNTING_STEP_BYTES) {
+            accountedTextBytes = textBytes;
+            reservation.set(arrayBytes + textBytes);
+        }
+        messages[index] = message;
+        timestamps[index] = timestampMillis;
+        repeatCounts[index] = 1;
+    }
+
+    /**
+     * Copia le voci in ordine cronologico negli array di destinazione
+     * (lunghi almeno capacity). Restituisce il numero di voci copiate.
+     */
+    public synchronized int copyTo(String[] messagesOut, long[] timestampsOut, int[] repeatCountsOut) {
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % capacity;
+            messagesOut[i] = messages[index];
+            timestampsOut[i] = timestamps[index];
+            repeatCountsOut[i] = repeatCounts[index];
+        }
+        return size;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < capacity; i++) {
+            messages[i] = null;
+        }
+        head = 0;
+        size = 0;
+        version++;
+        textBytes = 0;
+        accountedTextBytes = 0;
+        reservation.set(arrayBytes);
+    }
+
+    private static long textBytes(String message) {
+        return message != null ? STRING_OVERHEAD_BYTES + 2L * message.length() : 0;
+    }
+
+    // Getters
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Cambia a ogni modifica: permette di saltare gli aggiornamenti inutili
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized long getTotalAdded() {
+        return totalAdded;
+    }
+}
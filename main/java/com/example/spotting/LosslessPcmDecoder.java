@@ -0,0 +1,340 @@
+package com.example.spotting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Decodifica in streaming del formato di LosslessPcmEncoder.
+ * decode() scrive i campioni direttamente nel vettore del chiamante (anche a metà di un blocco,
+ * riprendendo alla chiamata successiva), quindi si può decodificare dentro un buffer
+ * circolare senza array intermedi. Il checksum viene verificato alla fine dello stream.
+ */
+public class LosslessPcmDecoder {
+
+    private final ByteBuffer data;
+    private final int dataStart;
+    private final int sampleRate;
+    private final int blockSize;
+    private final long totalSamples;
+    private final int expectedChecksum;
+
+    // Lettore di bit MSB-first: i bit validi sono in cima a cache
+    private long cache = 0;
+    private int cacheBits = 0;
+
+    // Stato del blocco corrente
+    private final int[] coefficients = new int[LosslessPcmEncoder.MAX_LPC_ORDER];
+    private final int[] history = new int[LosslessPcmEncoder.MAX_LPC_ORDER];
+    private int blockRemaining = 0;
+    private int blockLength;
+    private int blockType;
+    private int order;
+    private int shift;
+    private int warmupRemaining;
+    private int constantValue;
+
+    // Stato della partizione di residui corrente
+    private int partitionsRemaining;
+    private int partitionSize;
+    private int partitionRemaining;
+    private int riceParameter;
+    private int escapeWidth;
+
+    private long samplesDecoded = 0;
+    private int checksum = 0;
+
+    /**
+     * @param file contenuto completo del file (es. mappato in memoria)
+     */
+    public LosslessPcmDecoder(ByteBuffer file) throws IOException {
+        ByteBuffer header = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (header.remaining() < LosslessPcmEncoder.HEADER_SIZE) {
+            throw new IOException("File troppo corto per l'header");
+        }
+        int start = header.position();
+        if (header.getInt() != LosslessPcmEncoder.MAGIC) {
+            throw new IOException("Formato non riconosciuto");
+        }
+        int version = header.getShort();
+        int channels = header.getShort();
+        if (version != LosslessPcmEncoder.VERSION || channels != 1) {
+            throw new IOException("Versione " + version + " o canali " + channels + " non supportati");
+        }
+        this.sampleRate = header.getInt();
+        this.blockSize = header.getInt();
+        this.totalSamples = header.getLong();
+        this.expectedChecksum = header.getInt();
+        if (blockSize <= 0 || totalSamples < 0) {
+            throw new IOException("Header non valido");
+        }
+
+        // Il flusso di bit si legge a parole big-endian
+        this.data = file.duplicate().order(ByteOrder.BIG_ENDIAN);
+        this.dataStart = start + LosslessPcmEncoder.HEADER_SIZE;
+        rewind();
+    }
+
+    /**
+     * Mappa il file in memoria (sola lettura)
+     */
+    public static LosslessPcmDecoder open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            return new LosslessPcmDecoder(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Torna all'inizio dello stream
+     */
+    public void rewind() {
+        data.position(dataStart);
+        cache = 0;
+        cacheBits = 0;
+        blockRemaining = 0;
+        samplesDecoded = 0;
+        checksum = 0;
+    }
+
+    /**
+     * Decodifica fino a length campioni in destination[offset..]; restituisce i campioni
+     * scritti, 0 a fine stream
+     */
+    public int decode(short[] destination, int offset, int length) throws IOException {
+        int produced = 0;
+        while (produced < length) {
+            if (blockRemaining == 0) {
+                if (samplesDecoded == totalSamples) {
+                    break;
+                }
+                startBlock();
+            }
+
+            int count = Math.min(length - produced, blockRemaining);
+            int end = offset + produced + count;
+            int hash = checksum;
+            for (int i = offset + produced; i < end; i++) {
+                int sample = nextSample();
+                destination[i] = (short) sample;
+                hash = hash * 31 + sample;
+            }
+            checksum = hash;
+            produced += count;
+            blockRemaining -= count;
+            samplesDecoded += count;
+
+            if (blockRemaining == 0) {
+                alignToByte();
+            }
+        }
+
+        if (produced > 0 && samplesDecoded == totalSamples && checksum != expectedChecksum) {
+            throw new IOException("Checksum non valido: dati corrotti");
+        }
+        return produced;
+    }
+
+    private void startBlock() throws IOException {
+        blockRemaining = (int) Math.min(blockSize, totalSamples - samplesDecoded);
+        blockLength = blockRemaining;
+        blockType = readBits(4);
+
+        if (blockType == LosslessPcmEncoder.TYPE_CONSTANT) {
+            constantValue = (short) readBits(16);
+            return;
+        }
+        if (blockType == LosslessPcmEncoder.TYPE_VERBATIM) {
+            return;
+        }
+
+        if (blockType == LosslessPcmEncoder.TYPE_LPC) {
+            order = readBits(4) + 1;
+            int precision = readBits(4) + 1;
+            shift = readBits(5);
+            for (int j = 0; j < order; j++) {
+                coefficients[j] = (readBits(precision) << (32 - precision)) >> (32 - precision);
+            }
+        } else if (blockType <= LosslessPcmEncoder.MAX_FIXED_ORDER) {
+            order = blockType;
+            shift = 0;
+            System.arraycopy(LosslessPcmEncoder.FIXED_COEFFICIENTS[order], 0, coefficients, 0, order);
+        } else {
+            throw new IOException("Tipo di blocco sconosciuto: " + blockType);
+        }
+        if (order >= blockRemaining) {
+            throw new IOException("Ordine " + order + " oltre la lunghezza del blocco");
+        }
+
+        warmupRemaining = order;
+        // L'ordine di partizione segue i campioni di avvio: si legge al primo residuo
+        partitionsRemaining = -1;
+        // La prima partizione non contiene i campioni di avvio
+        partitionRemaining = -order;
+    }
+
+    private int nextSample() throws IOException {
+        switch (blockType) {
+            case LosslessPcmEncoder.TYPE_CONSTANT:
+                return constantValue;
+            case LosslessPcmEncoder.TYPE_VERBATIM:
+                return (short) readBits(16);
+            default:
+                break;
+        }
+
+        int sample;
+        if (warmupRemaining > 0) {
+            warmupRemaining--;
+            sample = (short) readBits(16);
+        } else {
+            if (partitionRemaining <= 0) {
+                startPartition();
+            }
+            partitionRemaining--;
+            int residual;
+            if (escapeWidth > 0) {
+                residual = (readBits(escapeWidth) << (32 - escapeWidth)) >> (32 - escapeWidth);
+            } else {
+                int value = readRice(riceParameter);
+                residual = (value >>> 1) ^ -(value & 1);
+            }
+
+            long prediction = 0;
+            for (int j = 0; j < order; j++) {
+                prediction += (long) coefficients[j] * history[j];
+            }
+            long value = (prediction >> shift) + residual;
+            if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+                throw new IOException("Campione fuori scala: dati corrotti");
+            }
+            sample = (int) value;
+        }
+
+        // history[0] è il campione più recente
+        for (int j = order - 1; j > 0; j--) {
+            history[j] = history[j - 1];
+        }
+        if (order > 0) {
+            history[0] = sample;
+        }
+        return sample;
+    }
+
+    private void startPartition() throws IOException {
+        if (partitionsRemaining < 0) {
+            int partitionOrder = readBits(4);
+            partitionsRemaining = 1 << partitionOrder;
+            partitionSize = blockLength >> partitionOrder;
+        }
+        if (partitionsRemaining == 0) {
+            throw new IOException("Residui oltre le partizioni dichiarate");
+        }
+        partitionsRemaining--;
+        partitionRemaining += partitionSize;
+        int parameter = readBits(5);
+        if (parameter == LosslessPcmEncoder.RICE_ESCAPE) {
+            escapeWidth = readBits(5);
+            if (escapeWidth == 0) {
+                throw new IOException("Larghezza escape nulla");
+            }
+        } else {
+            escapeWidth = 0;
+            riceParameter = parameter;
+        }
+    }
+
+    // ========== LETTURA DI BIT ==========
+
+    private void refill() throws IOException {
+        if (cacheBits == 0 && data.remaining() >= 8) {
+            cache = data.getLong();
+            cacheBits = 64;
+            return;
+        }
+        while (cacheBits <= 56 && data.hasRemaining()) {
+            cache |= (data.get() & 0xFFL) << (56 - cacheBits);
+            cacheBits += 8;
+        }
+        if (cacheBits == 0) {
+            throw new IOException("Fine inattesa dei dati");
+        }
+    }
+
+    /**
+     * Legge count bit (1-32) senza segno
+     */
+    private int readBits(int count) throws IOException {
+        if (cacheBits < count) {
+            if (cacheBits == 0) {
+                refill();
+            }
+            if (cacheBits < count) {
+                // Valore a cavallo della cache: parte alta ora, parte bassa dopo il riempimento
+                int high = cacheBits;
+                int value = (int) (cache >>> (64 - high));
+                cache = 0;
+                cacheBits = 0;
+                refill();
+                if (cacheBits < count - high) {
+                    throw new IOException("Fine inattesa dei dati");
+                }
+                return (value << (count - high)) | readBits(count - high);
+            }
+        }
+        int value = (int) (cache >>> (64 - count));
+        cache <<= count;
+        cacheBits -= count;
+        return value;
+    }
+
+    private int readRice(int parameter) throws IOException {
+        int quotient = 0;
+        while (true) {
+            if (cacheBits == 0) {
+                refill();
+            }
+            int zeros = Long.numberOfLeadingZeros(cache);
+            if (zeros < cacheBits) {
+                quotient += zeros;
+                cache = (cache << zeros) << 1;
+                cacheBits -= zeros + 1;
+                break;
+            }
+            quotient += cacheBits;
+            cache = 0;
+            cacheBits = 0;
+        }
+        return parameter == 0 ? quotient : (quotient << parameter) | readBits(parameter);
+    }
+
+    private void alignToByte() {
+        int drop = cacheBits & 7;
+        cache <<= drop;
+        cacheBits -= drop;
+    }
+
+    // Getters
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getTotalSamples() {
+        return totalSamples;
+    }
+
+    public long getSamplesDecoded() {
+        return samplesDecoded;
+    }
+
+    public float getDurationSeconds() {
+        return totalSamples / (float) sampleRate;
+    }
+}
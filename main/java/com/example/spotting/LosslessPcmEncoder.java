@@ -0,0 +1,536 @@
+package com.example.spotting;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Codec senza perdita per PCM int16 mono (clip e corpora di replay), nello stile di FLAC:
+ * predizione lineare per blocco e residui in codice di Rice partizionato.
+ *
+ * Formato (.kwpc): header little-endian di HEADER_SIZE byte
+ *   "KWPC", versione (u16), canali (u16), sample rate (i32), campioni per blocco (i32),
+ *   campioni totali (i64), checksum dei campioni (i32), riservato (i32)
+ * seguito dai blocchi, ciascuno allineato al byte, in un flusso di bit MSB-first:
+ *   tipo (4 bit): 0-4 predittore fisso di quell'ordine, LPC, costante o verbatim
+ *   LPC: ordine-1 (4 bit), precisione-1 (4 bit), shift (5 bit), coefficienti con segno
+ *   campioni di avvio (ordine × 16 bit), poi i residui: ordine di partizione (4 bit) e
+ *   per ogni partizione il parametro di Rice (5 bit; 31 = escape con larghezza a 5 bit e valori grezzi)
+ * La prima partizione contiene (dimensione partizione - ordine) residui, come in FLAC.
+ */
+public class LosslessPcmEncoder implements Closeable {
+
+    public static final String FILE_EXTENSION = ".kwpc";
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    static final int MAGIC = 0x4350574B; // "KWPC" letto come int little-endian
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    static final int TYPE_LPC = 5;
+    static final int TYPE_CONSTANT = 6;
+    static final int TYPE_VERBATIM = 7;
+    static final int MAX_FIXED_ORDER = 4;
+    static final int MAX_LPC_ORDER = 12;
+    static final int RICE_ESCAPE = 31;
+    static final int MAX_PARTITION_ORDER = 6;
+
+    // Coefficienti dei predittori fissi (shift 0), ordine 1-4
+    static final int[][] FIXED_COEFFICIENTS = {
+            {}, {1}, {2, -1}, {3, -3, 1}, {4, -6, 4, -1}
+    };
+
+    private static final int LPC_PRECISION = 14;
+    private static final int[] LPC_ORDERS = {4, 8, 12};
+    // Residui oltre questo valore renderebbero il codice zigzag più largo di 31 bit
+    private static final int MAX_RESIDUAL = 1 << 29;
+
+    private final FileChannel channel;
+    private final int sampleRate;
+    private final int blockSize;
+
+    private final int[] block;
+    private final int[] residual;
+    private final int[] bestResidual;
+    private final int[] quantized = new int[MAX_LPC_ORDER];
+    private final int[] bestCoefficients = new int[MAX_LPC_ORDER];
+    private final double[] windowed;
+    private final double[] autocorrelation = new double[MAX_LPC_ORDER + 1];
+    private final double[][] lpc = new double[MAX_LPC_ORDER + 1][MAX_LPC_ORDER + 1];
+    private final double[] previous = new double[MAX_LPC_ORDER + 1];
+    private final double[] current = new double[MAX_LPC_ORDER + 1];
+    private final long[] partitionSums = new long[1 << MAX_PARTITION_ORDER];
+    private final int[] partitionMax = new int[1 << MAX_PARTITION_ORDER];
+    private final int[] partitionParams = new int[1 << MAX_PARTITION_ORDER];
+    private final BitWriter writer;
+
+    private int blockFill = 0;
+    private long samplesWritten = 0;
+    private long bytesWritten = 0;
+    private int checksum = 0;
+    private boolean closed = false;
+
+    // Scelta per il blocco corrente
+    private int bestType;
+    private int bestOrder;
+    private int bestShift;
+
+    public LosslessPcmEncoder(FileChannel channel, int sampleRate) throws IOException {
+        this(channel, sampleRate, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Scrive dall'inizio del canale; l'header definitivo arriva con close()
+     */
+    public LosslessPcmEncoder(FileChannel channel, int sampleRate, int blockSize) throws IOException {
+        if (blockSize < 16 || blockSize > (1 << 20)) {
+            throw new IllegalArgumentException("Dimensione blocco non valida: " + blockSize);
+        }
+        this.channel = channel;
+        this.sampleRate = sampleRate;
+        this.blockSize = blockSize;
+        this.block = new int[blockSize];
+        this.residual = new int[blockSize];
+        this.bestResidual = new int[blockSize];
+        this.windowed = new double[blockSize];
+        // Caso peggiore: blocco verbatim più intestazioni
+        this.writer = new BitWriter(blockSize * 2 + 64);
+
+        channel.truncate(0);
+        channel.position(HEADER_SIZE);
+        bytesWritten = HEADER_SIZE;
+    }
+
+    /**
+     * Accoda campioni; i blocchi pieni vengono codificati e scritti subito
+     */
+    public void write(short[] data, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Encoder chiuso");
+        }
+        for (int i = 0; i < length; i++) {
+            int sample = data[offset + i];
+            block[blockFill++] = sample;
+            checksum = checksum * 31 + sample;
+            if (blockFill == blockSize) {
+                flushBlock();
+            }
+        }
+        samplesWritten += length;
+    }
+
+    /**
+     * Codifica il blocco parziale e scrive l'header con totali e checksum
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (blockFill > 0) {
+            flushBlock();
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putShort((short) VERSION);
+        header.putShort((short) 1);
+        header.putInt(sampleRate);
+        header.putInt(blockSize);
+        header.putLong(samplesWritten);
+        header.putInt(checksum);
+        header.putInt(0);
+        header.flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+
+    // ========== CODIFICA DI UN BLOCCO ==========
+
+    private void flushBlock() throws IOException {
+        int n = blockFill;
+        blockFill = 0;
+        writer.reset();
+        encodeBlock(n);
+
+        ByteBuffer bytes = writer.toByteBuffer();
+        while (bytes.hasRemaining()) {
+            bytesWritten += channel.write(bytes);
+        }
+    }
+
+    private void encodeBlock(int n) {
+        boolean constant = true;
+        for (int i = 1; i < n && constant; i++) {
+            constant = block[i] == block[0];
+        }
+        if (constant) {
+            writer.write(TYPE_CONSTANT, 4);
+            writer.write(block[0] & 0xFFFF, 16);
+            writer.alignToByte();
+            return;
+        }
+
+        // Candidati: verbatim, predittori fissi, LPC; vince la stima in bit più bassa
+        long bestBits = 4 + 16L * n;
+        bestType = TYPE_VERBATIM;
+
+        for (int order = 0; order <= MAX_FIXED_ORDER && order < n; order++) {
+            long bits = 4 + 16L * order + predict(n, FIXED_COEFFICIENTS[order], order, 0);
+            if (bits < bestBits) {
+                keepCandidate(n, order, order, FIXED_COEFFICIENTS[order], 0);
+                bestBits = bits;
+            }
+        }
+
+        int maxOrder = computeLpc(n);
+        for (int order : LPC_ORDERS) {
+            if (order > maxOrder || order * 2 >= n) {
+                continue;
+            }
+            int shift = quantize(order);
+            if (shift < 0) {
+                continue;
+            }
+            long bits = 4 + 13 + (long) order * (LPC_PRECISION + 16) + predict(n, quantized, order, shift);
+            if (bits < bestBits) {
+                keepCandidate(n, TYPE_LPC, order, quantized, shift);
+                bestBits = bits;
+            }
+        }
+
+        writeBlock(n);
+    }
+
+    private void keepCandidate(int n, int type, int order, int[] coefficients, int shift) {
+        bestType = type;
+        bestOrder = order;
+        bestShift = shift;
+        System.arraycopy(coefficients, 0, bestCoefficients, 0, order);
+        System.arraycopy(residual, 0, bestResidual, 0, n);
+    }
+
+    /**
+     * Residui del predittore in residual[order..n); restituisce la stima in bit
+     * dei residui codificati, o Long.MAX_VALUE se un residuo è fuori scala
+     */
+    private long predict(int n, int[] coefficients, int order, int shift) {
+        for (int i = order; i < n; i++) {
+            long prediction = 0;
+            for (int j = 0; j < order; j++) {
+                prediction += (long) coefficients[j] * block[i - 1 - j];
+            }
+            long value = block[i] - (prediction >> shift);
+            if (value > MAX_RESIDUAL || value < -MAX_RESIDUAL) {
+                return Long.MAX_VALUE / 2;
+            }
+            residual[i] = (int) value;
+        }
+        return residualBits(residual, n, order, false);
+    }
+
+    /**
+     * Sceglie l'ordine di partizione e i parametri di Rice; la stima Σ(u >> k) ≤ (Σu) >> k
+     * è un limite superiore della lunghezza reale. Con write=true scrive anche i residui.
+     */
+    private long residualBits(int[] values, int n, int order, boolean write) {
+        int finest = 0;
+        while (finest < MAX_PARTITION_ORDER && (n & (1 << (finest + 1)) - 1) == 0
+                && (n >> (finest + 1)) > order) {
+            finest++;
+        }
+
+        // Somme e massimi sulla partizione più fine, poi fusione a coppie
+        int partitions = 1 << finest;
+        int size = n >> finest;
+        for (int p = 0; p < partitions; p++) {
+            long sum = 0;
+            int max = 0;
+            for (int i = Math.max(order, p * size); i < (p + 1) * size; i++) {
+                int u = zigzag(values[i]);
+                sum += u;
+                max = Math.max(max, Math.abs(values[i]));
+            }
+            partitionSums[p] = sum;
+            partitionMax[p] = max;
+        }
+
+        long bestBits = Long.MAX_VALUE;
+        int bestPartitionOrder = 0;
+        for (int level = finest; level >= 0; level--) {
+            int count = 1 << level;
+            if (level < finest) {
+                for (int p = 0; p < count; p++) {
+                    partitionSums[p] = partitionSums[2 * p] + partitionSums[2 * p + 1];
+                    partitionMax[p] = Math.max(partitionMax[2 * p], partitionMax[2 * p + 1]);
+                }
+            }
+            long bits = 4;
+            int levelSize = n >> level;
+            for (int p = 0; p < count; p++) {
+                int samples = p == 0 ? levelSize - order : levelSize;
+                bits += 5 + partitionBits(partitionSums[p], partitionMax[p], samples, null, 0);
+            }
+            if (bits < bestBits) {
+                bestBits = bits;
+                bestPartitionOrder = level;
+            }
+        }
+
+        if (write) {
+            writePartitions(values, n, order, bestPartitionOrder);
+        }
+        return bestBits;
+    }
+
+    /**
+     * Bit della partizione con il parametro migliore (escape incluso); se params non è null
+     * vi salva il parametro scelto (RICE_ESCAPE + larghezza × 32 per l'escape)
+     */
+    private static long partitionBits(long sum, int max, int samples, int[] params, int index) {
+        if (samples <= 0) {
+            if (params != null) {
+                params[index] = 0;
+            }
+            return 0;
+        }
+        int width = 33 - Integer.numberOfLeadingZeros(max); // bit con segno
+        long best = 5 + (long) width * samples;
+        int bestParam = RICE_ESCAPE + width * 32;
+
+        long mean = sum / samples;
+        int estimate = mean > 0 ? 63 - Long.numberOfLeadingZeros(mean) : 0;
+        for (int k = Math.max(0, estimate - 1); k <= Math.min(30, estimate + 1); k++) {
+            long bits = (long) samples * (k + 1) + (sum >> k);
+            if (bits < best) {
+                best = bits;
+                bestParam = k;
+            }
+        }
+        if (params != null) {
+            params[index] = bestParam;
+        }
+        return best;
+    }
+
+    private void writePartitions(int[] values, int n, int order, int partitionOrder) {
+        writer.write(partitionOrder, 4);
+        int count = 1 << partitionOrder;
+        int size = n >> partitionOrder;
+        int index = order;
+        for (int p = 0; p < count; p++) {
+            int end = (p + 1) * size;
+            long sum = 0;
+            int max = 0;
+            for (int i = index; i < end; i++) {
+                sum += zigzag(values[i]);
+                max = Math.max(max, Math.abs(values[i]));
+            }
+            partitionBits(sum, max, end - index, partitionParams, p);
+            int param = partitionParams[p];
+
+            if (param >= RICE_ESCAPE) {
+                int width = param / 32;
+                writer.write(RICE_ESCAPE, 5);
+                writer.write(width, 5);
+                for (int i = index; i < end; i++) {
+                    writer.write(values[i] & (int) ((1L << width) - 1), width);
+                }
+            } else {
+                writer.write(param, 5);
+                for (int i = index; i < end; i++) {
+                    writer.writeRice(zigzag(values[i]), param);
+                }
+            }
+            index = end;
+        }
+    }
+
+    private void writeBlock(int n) {
+        if (bestType == TYPE_VERBATIM) {
+            writer.write(TYPE_VERBATIM, 4);
+            for (int i = 0; i < n; i++) {
+                writer.write(block[i] & 0xFFFF, 16);
+            }
+            writer.alignToByte();
+            return;
+        }
+
+        writer.write(bestType, 4);
+        if (bestType == TYPE_LPC) {
+            writer.write(bestOrder - 1, 4);
+            writer.write(LPC_PRECISION - 1, 4);
+            writer.write(bestShift, 5);
+            for (int j = 0; j < bestOrder; j++) {
+                writer.write(bestCoefficients[j] & ((1 << LPC_PRECISION) - 1), LPC_PRECISION);
+            }
+        }
+        for (int i = 0; i < bestOrder; i++) {
+            writer.write(block[i] & 0xFFFF, 16);
+        }
+        residualBits(bestResidual, n, bestOrder, true);
+        writer.alignToByte();
+    }
+
+    // ========== LPC ==========
+
+    /**
+     * Autocorrelazione con finestra di Welch e Levinson-Durbin fino a MAX_LPC_ORDER;
+     * lpc[m] contiene i coefficienti dell'ordine m. Restituisce l'ordine massimo stabile.
+     */
+    private int computeLpc(int n) {
+        for (int i = 0; i < n; i++) {
+            double x = (2.0 * i - (n - 1)) / (n + 1);
+            windowed[i] = block[i] * (1.0 - x * x);
+        }
+        for (int lag = 0; lag <= MAX_LPC_ORDER; lag++) {
+            double sum = 0;
+            for (int i = lag; i < n; i++) {
+                sum += windowed[i] * windowed[i - lag];
+            }
+            autocorrelation[lag] = sum;
+        }
+        if (autocorrelation[0] <= 0) {
+            return 0;
+        }
+
+        double error = autocorrelation[0];
+        for (int m = 1; m <= MAX_LPC_ORDER; m++) {
+            double acc = autocorrelation[m];
+            for (int j = 1; j < m; j++) {
+                acc -= previous[j] * autocorrelation[m - j];
+            }
+            double reflection = acc / error;
+            current[m] = reflection;
+            for (int j = 1; j < m; j++) {
+                current[j] = previous[j] - reflection * previous[m - j];
+            }
+            error *= 1 - reflection * reflection;
+            System.arraycopy(current, 0, lpc[m], 0, m + 1);
+            System.arraycopy(current, 0, previous, 0, m + 1);
+            if (error <= 0) {
+                return m;
+            }
+        }
+        return MAX_LPC_ORDER;
+    }
+
+    /**
+     * Quantizza lpc[order] in quantized con LPC_PRECISION bit e propagazione dell'errore;
+     * restituisce lo shift, o -1 se i coefficienti non sono rappresentabili
+     */
+    private int quantize(int order) {
+        double max = 0;
+        for (int j = 1; j <= order; j++) {
+            max = Math.max(max, Math.abs(lpc[order][j]));
+        }
+        if (max <= 0 || Double.isNaN(max) || Double.isInfinite(max)) {
+            return -1;
+        }
+        int shift = (LPC_PRECISION - 1) - (Math.getExponent(max) + 1);
+        if (shift < 0) {
+            return -1;
+        }
+        shift = Math.min(shift, 31);
+
+        int limit = (1 << (LPC_PRECISION - 1)) - 1;
+        double error = 0;
+        for (int j = 0; j < order; j++) {
+            error += lpc[order][j + 1] * (1 << shift);
+            long q = Math.round(error);
+            q = Math.max(-limit - 1, Math.min(limit, q));
+            quantized[j] = (int) q;
+            error -= q;
+        }
+        return shift;
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    // Getters
+    public long getSamplesWritten() {
+        return samplesWritten;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Rapporto tra dimensione PCM int16 e dimensione codificata
+     */
+    public float getCompressionRatio() {
+        return bytesWritten > 0 ? samplesWritten * 2f / bytesWritten : 0f;
+    }
+
+    /**
+     * Flusso di bit MSB-first in un array di byte
+     */
+    private static final class BitWriter {
+        private byte[] bytes;
+        private int length = 0;
+        private long accumulator = 0;
+        private int accumulatorBits = 0;
+
+        BitWriter(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void reset() {
+            length = 0;
+            accumulator = 0;
+            accumulatorBits = 0;
+        }
+
+        /**
+         * Scrive i bit meno significativi di value (count ≤ 32)
+         */
+        void write(int value, int count) {
+            if (count == 0) {
+                return;
+            }
+            accumulator = (accumulator << count) | (value & ((1L << count) - 1));
+            accumulatorBits += count;
+            while (accumulatorBits >= 8) {
+                accumulatorBits -= 8;
+                put((byte) (accumulator >>> accumulatorBits));
+            }
+        }
+
+        void writeRice(int value, int parameter) {
+            int quotient = value >>> parameter;
+            while (quotient >= 32) {
+                write(0, 32);
+                quotient -= 32;
+            }
+            write(1, quotient + 1);
+            write(value, parameter);
+        }
+
+        void alignToByte() {
+            if (accumulatorBits > 0) {
+                write(0, 8 - accumulatorBits);
+            }
+        }
+
+        private void put(byte value) {
+            if (length == bytes.length) {
+                byte[] grown = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+            bytes[length++] = value;
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(bytes, 0, length);
+        }
+    }
+}
@@ -1,49 +1,66 @@
 package com.example.spotting;
 
 import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Button;
-import android.widget.ScrollView;
-import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.ViewModelProvider;
 
-public class MainActivity extends AppCompatActivity implements AudioRecorder.AudioRecorderListener {
+/**
+ * Solo interfaccia: il motore di riconoscimento vive in SpottingEngine e sopravvive
+ * alla ricreazione dell'activity (rotazione, cambi di configurazione).
+ */
+public class MainActivity extends AppCompatActivity implements SpottingEngine.UiListener {
 
     private static final int RECORD_AUDIO_PERMISSION_CODE = 1;
     private static final String TAG = "MainActivity";
 
     private Button btnRecord;
-    private TextView tvLog;
-    private ScrollView scrollViewLog;
+    private Button btnBackground;
+    private LogListAdapter logAdapter;
 
-    private KeywordClassifier keywordClassifier;
-    private AudioRecorder audioRecorder;
-    private AudioPreprocessor audioPreprocessor;
+    private SpottingEngine engine;
 
-    private boolean isRecording = false;
-
-    // Contatori per statistiche
-    private int totalClassifications = 0;
-    private int successfulClassifications = 0;
-    private long lastCommandTime = 0;
-    private String lastCommand = "";
-
-    // Handler per elaborazione audio in background
-    private Handler audioProcessingHandler;
+    // Il microfono passa dal servizio all'activity solo quando il servizio lo ha rilasciato
+    private BroadcastReceiver serviceStoppedReceiver;
+    private boolean startAfterServiceStop = false;
+    private boolean reportAfterServiceStop = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long startedAt = SystemClock.elapsedRealtime();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        engine = new ViewModelProvider(this).get(SpottingEngine.class);
+
+        serviceStoppedReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onServiceStopped();
+            }
+        };
+        ContextCompat.registerReceiver(this, serviceStoppedReceiver,
+                new IntentFilter(ListeningService.ACTION_ENGINE_STOPPED), ContextCompat.RECEIVER_NOT_EXPORTED);
+
         initViews();
-        initComponents();
+        if (engine.attach(this)) {
+            // Activity ricreata: cattura, interprete e stato sono quelli di prima
+            logMessage("🔄 Interfaccia ricollegata al motore in " +
+                    (SystemClock.elapsedRealtime() - startedAt) + " ms" +
+                    (engine.isRecording() ? " (registrazione in corso)" : ""));
+            updateUI();
+            return;
+        }
         checkPermissions();
 
         logMessage("🎤 App Keyword Spotting pronta");
@@ -54,48 +71,22 @@ public class MainActivity extends AppCompatActivity implements AudioRecorder.Aud
 
     private void initViews() {
         btnRecord = findViewById(R.id.btnRecord);
-        tvLog = findViewById(R.id.tvLog);
-        scrollViewLog = findViewById(R.id.scrollViewLog);
+        logAdapter = new LogListAdapter(findViewById(R.id.lvLog), engine.getLogRing());
+        if (engine.getLogRing().size() == 0) {
+            logMessage("🚀 Inizializzazione applicazione...");
+        }
+
+        btnBackground = findViewById(R.id.btnBackground);
 
         btnRecord.setOnClickListener(v -> toggleRecording());
+        btnRecord.setOnLongClickListener(v -> {
+            engine.saveClipNow();
+            return true;
+        });
+        btnBackground.setOnClickListener(v -> engine.toggleBackgroundMode());
         updateUI();
     }
 
-    private void initComponents() {
-        try {
-            // Handler per elaborazione audio in background
-            audioProcessingHandler = new Handler(Looper.getMainLooper());
-
-            // Inizializza KeywordClassifier
-            keywordClassifier = new KeywordClassifier(this);
-            if (keywordClassifier.isInitialized()) {
-                logMessage("✅ KeywordClassifier inizializzato");
-                logMessage("📊 Input: " + keywordClassifier.getInputSize() +
-                        " campioni, Output: " + keywordClassifier.getOutputSize() + " classi");
-                logMessage("🎯 Soglia confidenza: " + (keywordClassifier.getConfidenceThreshold() * 100) + "%");
-            } else {
-                logMessage("❌ KeywordClassifier non inizializzato");
-                return;
-            }
-
-            // Inizializza AudioPreprocessor
-            audioPreprocessor = new AudioPreprocessor();
-            logMessage("✅ AudioPreprocessor inizializzato");
-            logMessage("📊 Samples attesi: " + audioPreprocessor.getExpectedSamples());
-
-            // Inizializza AudioRecorder
-            audioRecorder = new AudioRecorder(this);
-            logMessage("✅ AudioRecorder inizializzato");
-            logMessage("🔧 Sample Rate: " + audioRecorder.getSampleRate() + "Hz");
-            logMessage("🔧 Buffer Size: " + audioRecorder.getBufferSizeInSamples() + " campioni");
-            logMessage("⏱️ Durata buffer: " + String.format("%.2f", audioRecorder.getBufferDurationSeconds()) + " secondi");
-
-        } catch (Exception e) {
-            logMessage("❌ Errore inizializzazione: " + e.getMessage());
-            Log.e(TAG, "Errore inizializzazione", e);
-        }
-    }
-
     private void checkPermissions() {
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO)
                 != PackageManager.PERMISSION_GRANTED) {
@@ -121,7 +112,7 @@ public class MainActivity extends AppCompatActivity implements AudioRecorder.Aud
     }
 
     private void toggleRecording() {
-        if (!hasRequiredComponents()) {
+        if (!engine.hasRequiredComponents()) {
             logMessage("❌ Componenti non inizializzati correttamente");
             return;
         }
@@ -132,327 +123,142 @@ public class MainActivity extends AppCompatActivity implements AudioRecorder.Aud
             return;
         }
 
-        if (isRecording) {
-            stopRecording();
+        if (engine.isRecording()) {
+            engine.stopRecording();
         } else {
-            startRecording();
+            startRecordingAfterService();
         }
     }
 
-    private void startRecording() {
-        try {
-            audioRecorder.startRecording();
-            isRecording = true;
-
-            // Reset statistiche
-            totalClassifications = 0;
-            successfulClassifications = 0;
-            lastCommandTime = System.currentTimeMillis();
-
-            logMessage("🎙️ Registrazione AVVIATA - Parlare ora...");
-            logMessage("🎯 In ascolto per i comandi vocali...");
-            logMessage("⏳ Il primo buffer completo sarà pronto tra " +
-                    String.format("%.1f", audioRecorder.getBufferDurationSeconds()) + " secondi");
-
-            updateUI();
-
-        } catch (Exception e) {
-            logMessage("❌ Errore avvio registrazione: " + e.getMessage());
-            Log.e(TAG, "Errore avvio registrazione", e);
+    /**
+     * Avvia la cattura dell'activity; se il servizio sta ascoltando (anche per altri client)
+     * prima gli fa rilasciare il microfono e riparte alla sua notifica, mai con due AudioRecord
+     * aperti. Le iscrizioni dei client restano: da qui ricevono i rilevamenti dell'activity
+     */
+    private void startRecordingAfterService() {
+        if (!ListeningService.isRunning()) {
+            engine.startRecording();
+            return;
         }
+        startAfterServiceStop = true;
+        ListeningService.release(this);
+        logMessage("🔄 Ascolto in passaggio dal servizio di background...");
     }
 
-    private void stopRecording() {
-        try {
-            if (audioRecorder != null) {
-                audioRecorder.stopRecording();
+    /**
+     * Il servizio ha rilasciato microfono e interprete (main thread)
+     */
+    private void onServiceStopped() {
+        if (reportAfterServiceStop) {
+            // Il report è scritto prima della notifica: è quello della sessione appena chiusa
+            reportAfterServiceStop = false;
+            String report = ListeningService.getLastSessionReport();
+            if (report != null) {
+                logMessage("🌙 Sessione in background: " + report);
             }
-            isRecording = false;
-
-            logMessage("⏹️ Registrazione FERMATA");
-            logMessage("📊 Statistiche sessione:");
-            logMessage("   • Classificazioni totali: " + totalClassifications);
-            logMessage("   • Comandi riconosciuti: " + successfulClassifications);
-            if (totalClassifications > 0) {
-                int successRate = (successfulClassifications * 100) / totalClassifications;
-                logMessage("   • Tasso successo: " + successRate + "%");
-            }
-
-            updateUI();
-
-        } catch (Exception e) {
-            logMessage("❌ Errore stop registrazione: " + e.getMessage());
-            Log.e(TAG, "Errore stop registrazione", e);
+        }
+        if (!startAfterServiceStop) {
+            return;
+        }
+        startAfterServiceStop = false;
+        if (engine.hasRequiredComponents() && !engine.isRecording()) {
+            engine.startRecording();
         }
     }
 
     private void updateUI() {
         runOnUiThread(() -> {
-            if (isRecording) {
+            if (engine.isRecording()) {
                 btnRecord.setText("⏹️ STOP RECORDING");
                 btnRecord.setBackgroundResource(android.R.drawable.btn_default);
             } else {
                 btnRecord.setText("🎙️ START RECORDING");
                 btnRecord.setBackgroundResource(R.drawable.button_background);
             }
+            btnBackground.setText(engine.isBackgroundMode() ? "🌙 BACKGROUND: ON" : "🌙 BACKGROUND: OFF");
         });
     }
 
-    private boolean hasRequiredComponents() {
-        return keywordClassifier != null && keywordClassifier.isInitialized() &&
-                audioRecorder != null &&
-                audioPreprocessor != null;
-    }
-
-    // ========== IMPLEMENTAZIONE AudioRecorderListener ==========
+    // ========== IMPLEMENTAZIONE SpottingEngine.UiListener ==========
 
     @Override
-    public void onAudioDataReceived(short[] audioData) {
-        // Questo metodo viene chiamato ogni volta che il buffer circolare è completo (44032 campioni)
-        // Elaborazione asincrona per non bloccare il thread audio
-        if (audioProcessingHandler != null) {
-            audioProcessingHandler.post(() -> processAudioData(audioData));
-        } else {
-            processAudioData(audioData);
-        }
-    }
-
-    @Override
-    public void onRecordingStopped() {
-        logMessage("🔄 Registrazione fermata dal sistema");
-        Log.d(TAG, "AudioRecorder fermato dal sistema");
+    public void onLogUpdated() {
+        logAdapter.refresh();
     }
 
     @Override
-    public void onSilenceDetected() {
-        // Log del silenzio solo per debug verbose
-        Log.v(TAG, "Silenzio rilevato");
-    }
-
-    @Override
-    public void onSpeechDetected() {
-        logMessage("🗣️ Parlato rilevato - Elaborazione in corso...");
-        Log.d(TAG, "Speech rilevato");
-    }
-
-    @Override
-    public void onError(String error) {
-        logMessage("❌ Errore AudioRecorder: " + error);
-        Log.e(TAG, "Errore AudioRecorder: " + error);
-
-        // In caso di errore, ferma la registrazione
-        if (isRecording) {
-            stopRecording();
-        }
-    }
-
-    // ========== ELABORAZIONE AUDIO ==========
-
-    private void processAudioData(short[] rawAudioData) {
-        try {
-            if (rawAudioData == null || rawAudioData.length == 0) {
-                Log.w(TAG, "Dati audio vuoti ricevuti");
-                return;
-            }
-
-            Log.v(TAG, "Elaborazione audio: " + rawAudioData.length + " campioni");
-
-            // 1. Preprocessa l'audio (normalizzazione di base)
-            float[] processedAudio = audioPreprocessor.preprocessAudio(rawAudioData);
-
-            if (processedAudio == null) {
-                logMessage("⚠️ Errore nel preprocessing audio");
-                return;
-            }
-
-            // 2. Verifica se contiene parlato (evita classificazioni inutili su silenzio)
-            boolean containsSpeech = audioPreprocessor.containsSpeech(processedAudio, 0.01f);
-
-            if (!containsSpeech) {
-                // Silenzio - non classifichiamo per risparmiare risorse
-                Log.v(TAG, "Silenzio rilevato - classificazione saltata");
-                return;
-            }
-
-            // 3. Valida i dati audio prima della classificazione
-            if (!keywordClassifier.validateAudioData(processedAudio)) {
-                logMessage("⚠️ Dati audio non validi per la classificazione");
-                return;
-            }
-
-            // 4. Classifica l'audio
-            totalClassifications++;
-            String result = keywordClassifier.classify(processedAudio);
-
-            if (result != null && !result.isEmpty()) {
-                handleClassificationResult(result);
-            } else {
-                // Log occasionale per l'utente
-                if (totalClassifications % 3 == 0) {
-                    logMessage("🔍 Analizzando audio... (tentativo " + totalClassifications + ")");
-                }
-                Log.d(TAG, "Classificazione #" + totalClassifications + " - Nessun comando riconosciuto");
-            }
-
-        } catch (Exception e) {
-            logMessage("❌ Errore elaborazione audio: " + e.getMessage());
-            Log.e(TAG, "Errore elaborazione audio", e);
-        }
-    }
-
-    private void handleClassificationResult(String result) {
-        try {
-            // Estrae il comando e la confidenza dal risultato
-            String[] parts = result.split("[()%]");
-            String command = parts[0].trim();
-            float confidence = 0f;
-
-            if (parts.length > 1) {
-                try {
-                    confidence = Float.parseFloat(parts[1].trim().replace(',', '.'));
-                } catch (NumberFormatException e) {
-                    Log.w(TAG, "Errore parsing confidenza: " + parts[1]);
-                }
-            }
-
-            // Verifica se è un comando supportato
-            if (!ModelConfig.isCommandSupported(command)) {
-                Log.d(TAG, "Comando non supportato: " + command);
-                return;
-            }
-
-            // Evita duplicati con soglia dinamica basata sulla confidenza
-            long currentTime = System.currentTimeMillis();
-            long timeSinceLastCommand = currentTime - lastCommandTime;
-
-            // Soglia più bassa per comandi ad alta confidenza
-            long duplicateThreshold = confidence > 80f ? 1000 : 1500; // 1-1.5 secondi
-
-            if (command.equals(lastCommand) && timeSinceLastCommand < duplicateThreshold) {
-                Log.d(TAG, "Comando duplicato ignorato: " + command + " (dopo " + timeSinceLastCommand + "ms)");
-                return;
-            }
-
-            // Aggiorna statistiche
-            successfulClassifications++;
-            lastCommand = command;
-            lastCommandTime = currentTime;
-
-            // Ottieni descrizione del comando
-            String description = ModelConfig.getCommandDescription(command);
-
-            // Log del risultato
-            logMessage("✅ COMANDO RICONOSCIUTO: " + command.toUpperCase());
-            logMessage("   📝 " + description);
-            logMessage("   🎯 Confidenza: " + String.format("%.1f%%", confidence));
-
-            Log.i(TAG, "Comando riconosciuto: " + command + " (confidenza: " + confidence + "%)");
-
-            // Esegui azione associata al comando
-            executeCommand(command, confidence);
-
-        } catch (Exception e) {
-            logMessage("❌ Errore gestione risultato: " + e.getMessage());
-            Log.e(TAG, "Errore gestione risultato", e);
-        }
-    }
-
-    private void executeCommand(String command, float confidence) {
-        // Implementa azioni specifiche per ogni comando
-        switch (command.toLowerCase()) {
-            case "yes":
-                logMessage("   ➡️ Azione: Conferma affermativa");
-                break;
-            case "no":
-                logMessage("   ➡️ Azione: Negazione");
-                break;
-            case "stop":
-                logMessage("   ➡️ Azione: Arresto operazione");
-                break;
-            case "go":
-                logMessage("   ➡️ Azione: Avvio operazione");
-                break;
-            case "up":
-            case "down":
-            case "left":
-            case "right":
-                logMessage("   ➡️ Azione: Movimento " + command);
-                break;
-            case "on":
-                logMessage("   ➡️ Azione: Attivazione");
-                break;
-            case "off":
-                logMessage("   ➡️ Azione: Disattivazione");
-                break;
-            default:
-                logMessage("   ➡️ Comando riconosciuto ma nessuna azione definita");
-                break;
-        }
+    public void onStateChanged() {
+        updateUI();
     }
 
     // ========== METODI PUBBLICI PER CONTROLLO ESTERNO ==========
 
     public void startListening() {
-        if (audioRecorder != null && !isRecording) {
-            startRecording();
+        if (engine.hasRequiredComponents() && !engine.isRecording()) {
+            startRecordingAfterService();
         }
     }
 
     public void stopListening() {
-        if (audioRecorder != null && isRecording) {
-            stopRecording();
+        if (engine.isRecording()) {
+            engine.stopRecording();
         }
     }
 
+    /**
+     * Registra una parola personalizzata dalle prossime ripetizioni pronunciate in ascolto
+     */
+    public void enrollCustomKeyword(String label) {
+        engine.enrollCustomKeyword(label);
+    }
+
     // ========== UTILITY ==========
 
     private void logMessage(String message) {
-        runOnUiThread(() -> {
-            String timestamp = java.text.DateFormat.getTimeInstance().format(new java.util.Date());
-            String logEntry = "[" + timestamp + "] " + message + "\n";
-            tvLog.append(logEntry);
-
-            // Auto-scroll verso il basso
-            scrollViewLog.post(() -> scrollViewLog.fullScroll(ScrollView.FOCUS_DOWN));
-        });
+        // Accodato nel ring del motore; la lista si aggiorna al massimo una volta per frame
+        engine.logMessage(message);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
 
-        // Cleanup
-        if (isRecording) {
-            stopRecording();
-        }
-
-        // Rilascia le risorse
-        if (audioRecorder != null) {
-            audioRecorder.release();
-            audioRecorder = null;
-        }
+        // Il motore resta vivo: lo rilascia onCleared solo se l'activity non viene ricreata
+        engine.detach(this);
 
-        if (keywordClassifier != null) {
-            keywordClassifier.close();
-            keywordClassifier = null;
+        if (serviceStoppedReceiver != null) {
+            unregisterReceiver(serviceStoppedReceiver);
+            serviceStoppedReceiver = null;
         }
 
-        // Cleanup handler
-        if (audioProcessingHandler != null) {
-            audioProcessingHandler.removeCallbacksAndMessages(null);
-            audioProcessingHandler = null;
+        if (logAdapter != null) {
+            logAdapter.stop();
         }
-
-        logMessage("🔄 Risorse rilasciate");
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        // Ferma la registrazione quando l'app va in background
-        if (isRecording) {
+        // Rotazione o cambio di configurazione: la cattura continua senza interruzioni
+        if (isChangingConfigurations()) {
+            return;
+        }
+        // Una ripresa ancora in attesa dello stop del servizio non deve partire in background
+        startAfterServiceStop = false;
+
+        // In modalità background la cattura passa al foreground service
+        if (engine.isRecording() && engine.isBackgroundMode()) {
+            engine.stopRecording();
+            ListeningService.start(this);
+            engine.setResumeAfterBackground(true);
+            logMessage("🌙 App in background - Ascolto passato al servizio");
+            return;
+        }
+
+        // Altrimenti ferma la registrazione quando l'app va in background
+        if (engine.isRecording()) {
             logMessage("⏸️ App in background - Registrazione fermata");
-            stopRecording();
+            engine.stopRecording();
         }
     }
 
@@ -460,5 +266,17 @@ public class MainActivity extends AppCompatActivity implements AudioRecorder.Aud
     protected void onResume() {
         super.onResume();
         Log.d(TAG, "App resumed");
+
+        // Riprende la cattura passata al servizio in onPause: il rilascio è asincrono, si
+        // riparte solo alla notifica di stop, quando il microfono è già libero. Un servizio
+        // che ascolta per altri client resta com'è
+        if (engine.isResumeAfterBackground()) {
+            engine.setResumeAfterBackground(false);
+            if (ListeningService.isRunning()) {
+                startAfterServiceStop = true;
+                reportAfterServiceStop = true;
+                ListeningService.release(this);
+            }
+        }
     }
-}
\ No newline at end of file
+}
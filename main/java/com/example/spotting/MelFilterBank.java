@@ -0,0 +1,77 @@
+package com.example.spotting;
+
+/**
+ * Banco di filtri triangolari su scala mel (formula HTK).
+ * I pesi sono memorizzati in forma sparsa: per ogni filtro solo i bin
+ * dello spettro in cui il peso è diverso da zero.
+ */
+public class MelFilterBank {
+
+    private final int filterCount;
+    private final int[] firstBin;
+    private final float[][] weights;
+
+    public MelFilterBank(int filterCount, int fftSize, int sampleRate, float lowerHz, float upperHz) {
+        this.filterCount = filterCount;
+        this.firstBin = new int[filterCount];
+        this.weights = new float[filterCount][];
+
+        int binCount = fftSize / 2 + 1;
+        double lowerMel = hzToMel(lowerHz);
+        double upperMel = hzToMel(upperHz);
+        double melStep = (upperMel - lowerMel) / (filterCount + 1);
+
+        for (int m = 0; m < filterCount; m++) {
+            double left = melToHz(lowerMel + m * melStep);
+            double center = melToHz(lowerMel + (m + 1) * melStep);
+            double right = melToHz(lowerMel + (m + 2) * melStep);
+
+            int start = Math.max(0, (int) Math.ceil(left * fftSize / sampleRate));
+            int end = Math.min(binCount - 1, (int) Math.floor(right * fftSize / sampleRate));
+            if (end < start) {
+                end = start;
+            }
+
+            firstBin[m] = start;
+            weights[m] = new float[end - start + 1];
+            for (int bin = start; bin <= end; bin++) {
+                double hz = bin * (double) sampleRate / fftSize;
+                double weight;
+                if (hz <= center) {
+                    weight = (hz - left) / (center - left);
+                } else {
+                    weight = (right - hz) / (right - center);
+                }
+                weights[m][bin - start] = (float) Math.max(0.0, weight);
+            }
+        }
+    }
+
+    private static double hzToMel(double hz) {
+        return 1127.0 * Math.log(1.0 + hz / 700.0);
+    }
+
+    private static double melToHz(double mel) {
+        return 700.0 * (Math.exp(mel / 1127.0) - 1.0);
+    }
+
+    /**
+     * Applica i filtri allo spettro di potenza e scrive log(energia + floor)
+     * in output[offset .. offset + filterCount)
+     */
+    public void applyLog(float[] powerSpectrum, float[] output, int offset, float floor) {
+        for (int m = 0; m < filterCount; m++) {
+            float[] w = weights[m];
+            int start = firstBin[m];
+            float energy = 0f;
+            for (int i = 0; i < w.length; i++) {
+                energy += w[i] * powerSpectrum[start + i];
+            }
+            output[offset + m] = (float) Math.log(energy + floor);
+        }
+    }
+
+    public int getFilterCount() {
+        return filterCount;
+    }
+}
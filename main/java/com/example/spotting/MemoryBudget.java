@@ -0,0 +1,298 @@
+package com.example.spotting;
+
+import android.os.Debug;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Contabilità della memoria del motore: ogni buffer grande, modello mappato e interprete
+ * registra la propria dimensione con una Reservation, per componente e tipo
+ * (heap Java, buffer diretti, heap nativo, file mappati).
+ *
+ * Le allocazioni indispensabili (register, set) sono sempre contabilizzate, anche oltre
+ * il limite; cache e pool che possono farne a meno usano tryRegister/trySet e vengono
+ * rifiutati se sforerebbero il budget, così il motore resta in un involucro fisso.
+ */
+public class MemoryBudget {
+    private static final String TAG = "MemoryBudget";
+
+    public enum Kind {
+        HEAP("heap"), DIRECT("diretta"), NATIVE("nativa"), MAPPED("mappata");
+
+        private final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final MemoryBudget INSTANCE = new MemoryBudget(ModelConfig.MEMORY_BUDGET_BYTES);
+
+    /**
+     * Una voce di memoria; il proprietario ne aggiorna la dimensione e la rilascia alla chiusura
+     */
+    public final class Reservation {
+        private final String component;
+        private final String name;
+        private final Kind kind;
+        private long bytes;
+
+        private Reservation(String component, String name, Kind kind) {
+            this.component = component;
+            this.name = name;
+            this.kind = kind;
+        }
+
+        /**
+         * Nuova dimensione di un'allocazione indispensabile (contabilizzata comunque)
+         */
+        public void set(long newBytes) {
+            synchronized (MemoryBudget.this) {
+                boolean wasOver = getTotal() > limitBytes;
+                apply(this, newBytes);
+                // Si segnala solo il passaggio oltre il limite, non ogni aggiornamento successivo
+                if (!wasOver && getTotal() > limitBytes) {
+                    overLimitEvents++;
+                    Log.w(TAG, "⚠️ Budget superato da " + component + "/" + name + ": " + summary());
+                }
+            }
+        }
+
+        /**
+         * Nuova dimensione di un'allocazione facoltativa: la crescita oltre il budget
+         * viene rifiutata (false) e la dimensione resta quella di prima
+         */
+        public boolean trySet(long newBytes) {
+            synchronized (MemoryBudget.this) {
+                if (newBytes > bytes && getTotal() + newBytes - bytes > limitBytes) {
+                    refusals++;
+                    Log.d(TAG, "Crescita rifiutata per " + component + "/" + name + ": " +
+                            formatMegabytes(newBytes - bytes) + " MB oltre il budget");
+                    return false;
+                }
+                apply(this, newBytes);
+                return true;
+            }
+        }
+
+        public void add(long deltaBytes) {
+            synchronized (MemoryBudget.this) {
+                set(bytes + deltaBytes);
+            }
+        }
+
+        public boolean tryAdd(long deltaBytes) {
+            synchronized (MemoryBudget.this) {
+                return trySet(bytes + deltaBytes);
+            }
+        }
+
+        public void release() {
+            synchronized (MemoryBudget.this) {
+                apply(this, 0);
+                reservations.remove(this);
+            }
+        }
+
+        // Getters
+        public String getComponent() {
+            return component;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public long getBytes() {
+            synchronized (MemoryBudget.this) {
+                return bytes;
+            }
+        }
+    }
+
+    private final List<Reservation> reservations = new ArrayList<>();
+    private final long[] totals = new long[Kind.values().length];
+    private long limitBytes;
+    private long peakBytes = 0;
+    private long refusals = 0;
+    private long overLimitEvents = 0;
+
+    public MemoryBudget(long limitBytes) {
+        this.limitBytes = limitBytes;
+    }
+
+    /**
+     * Budget condiviso da tutti i componenti del processo
+     */
+    public static MemoryBudget getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registra un'allocazione indispensabile
+     */
+    public synchronized Reservation register(String component, String name, Kind kind, long bytes) {
+        Reservation reservation = new Reservation(component, name, kind);
+        reservations.add(reservation);
+        reservation.set(bytes);
+        return reservation;
+    }
+
+    /**
+     * Registra un'allocazione facoltativa; null se sforerebbe il budget
+     */
+    public synchronized Reservation tryRegister(String component, String name, Kind kind, long bytes) {
+        Reservation reservation = new Reservation(component, name, kind);
+        if (!reservation.trySet(bytes)) {
+            return null;
+        }
+        reservations.add(reservation);
+        return reservation;
+    }
+
+    /**
+     * True se altri bytes facoltativi starebbero nel budget (senza riservarli)
+     */
+    public synchronized boolean canGrow(long bytes) {
+        return getTotal() + bytes <= limitBytes;
+    }
+
+    private void apply(Reservation reservation, long newBytes) {
+        newBytes = Math.max(0, newBytes);
+        totals[reservation.kind.ordinal()] += newBytes - reservation.bytes;
+        reservation.bytes = newBytes;
+        peakBytes = Math.max(peakBytes, getTotal());
+    }
+
+    /**
+     * Heap nativo allocato dal processo (Android); -1 fuori da Android
+     */
+    public static long nativeHeapBytes() {
+        try {
+            return Debug.getNativeHeapAllocatedSize();
+        } catch (RuntimeException | LinkageError e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Memoria nativa di un interprete appena creato: crescita dell'heap nativo rispetto a
+     * nativeBefore (letto con nativeHeapBytes() prima della creazione); fuori da Android,
+     * o se la misura non è attendibile, la stima dei tensori di input e output
+     */
+    public static long interpreterBytes(long nativeBefore, long tensorBytes) {
+        long after = nativeHeapBytes();
+        if (nativeBefore >= 0 && after > nativeBefore) {
+            return after - nativeBefore;
+        }
+        return tensorBytes;
+    }
+
+    /**
+     * Totali per componente: componente → byte per tipo (indice Kind.ordinal())
+     */
+    public synchronized Map<String, long[]> byComponent() {
+        Map<String, long[]> result = new TreeMap<>();
+        for (Reservation reservation : reservations) {
+            long[] bytes = result.get(reservation.component);
+            if (bytes == null) {
+                bytes = new long[totals.length];
+                result.put(reservation.component, bytes);
+            }
+            bytes[reservation.kind.ordinal()] += reservation.bytes;
+        }
+        return result;
+    }
+
+    public synchronized String summary() {
+        StringBuilder builder = new StringBuilder(String.format(Locale.ROOT, "Memoria %s/%s MB (",
+                formatMegabytes(getTotal()), formatMegabytes(limitBytes)));
+        for (Kind kind : Kind.values()) {
+            builder.append(kind.ordinal() > 0 ? ", " : "").append(kind.getLabel()).append(' ')
+                    .append(formatMegabytes(totals[kind.ordinal()]));
+        }
+        return builder.append("), picco ").append(formatMegabytes(peakBytes)).append(" MB, crescite rifiutate ")
+                .append(refusals).toString();
+    }
+
+    /**
+     * Riepilogo con una riga per componente
+     */
+    public synchronized String report() {
+        StringBuilder builder = new StringBuilder(summary());
+        for (Map.Entry<String, long[]> entry : byComponent().entrySet()) {
+            long[] bytes = entry.getValue();
+            long total = 0;
+            builder.append("\n   • ").append(entry.getKey()).append(':');
+            for (Kind kind : Kind.values()) {
+                if (bytes[kind.ordinal()] > 0) {
+                    builder.append(' ').append(kind.getLabel()).append(' ')
+                            .append(formatKilobytes(bytes[kind.ordinal()]));
+                    total += bytes[kind.ordinal()];
+                }
+            }
+            if (total == 0) {
+                builder.append(" 0 KB");
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String formatMegabytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1f", bytes / (1024.0 * 1024.0));
+    }
+
+    private static String formatKilobytes(long bytes) {
+        return String.format(Locale.ROOT, "%d KB", (bytes + 1023) / 1024);
+    }
+
+    public synchronized void setLimit(long limitBytes) {
+        this.limitBytes = limitBytes;
+    }
+
+    // Getters
+    public synchronized long getTotal() {
+        long total = 0;
+        for (long bytes : totals) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    public synchronized long getTotal(Kind kind) {
+        return totals[kind.ordinal()];
+    }
+
+    public synchronized long getLimit() {
+        return limitBytes;
+    }
+
+    public synchronized long getPeak() {
+        return peakBytes;
+    }
+
+    public synchronized long getRefusals() {
+        return refusals;
+    }
+
+    public synchronized long getOverLimitEvents() {
+        return overLimitEvents;
+    }
+
+    public synchronized boolean isOverLimit() {
+        return getTotal() > limitBytes;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.spotting;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Sorgente audio basata sul microfono del dispositivo (AudioRecord).
+ * Può catturare alla frequenza nativa del dispositivo (44.1/48 kHz, mono o stereo):
+ * la conversione a 16 kHz avviene poi in AudioRecorder con PolyphaseResampler,
+ * evitando il ricampionatore di sistema, spesso di bassa qualità e a latenza maggiore.
+ * Con lowLatency() le letture sono di un burst nativo; il buffer di AudioRecord copre
+ * CAPTURE_HEADROOM_MS invece di secondi di audio.
+ */
+public class MicAudioSource implements BurstAudioSource {
+    private static final String TAG = "MicAudioSource";
+
+    private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
+    private static final int FALLBACK_NATIVE_RATE = 48000;
+    private static final int FALLBACK_BURST_MS = 10;
+    // Burst contenuti nel buffer di cattura: margine per i ritardi del thread di cattura
+    private static final int CAPTURE_BUFFER_BURSTS = 4;
+    // Audio minimo nel buffer di cattura. Il thread di cattura emette anche le finestre
+    // (ricampionamento, copia di 44032 campioni, RMS, listener, copie speculative): un burst
+    // letto prima non riduce la latenza, ma un buffer di soli 4 burst (~20 ms) va in overrun
+    // alla prima emissione lenta o pausa del GC
+    public static final int CAPTURE_HEADROOM_MS = 300;
+
+    private final int sampleRate;
+    private final int channelCount;
+    private final int bufferSizeInBytes;
+    private final int burstFrames;
+    private AudioRecord audioRecord;
+
+    public MicAudioSource(int sampleRate, int requestedBufferSizeInBytes) {
+        this(sampleRate, 1, requestedBufferSizeInBytes);
+    }
+
+    public MicAudioSource(int sampleRate, int channelCount, int requestedBufferSizeInBytes) {
+        this(sampleRate, channelCount, requestedBufferSizeInBytes, 0);
+    }
+
+    /**
+     * burstFrames ≤ 0: burst stimato (10 ms, al massimo metà del buffer)
+     */
+    public MicAudioSource(int sampleRate, int channelCount, int requestedBufferSizeInBytes, int burstFrames) {
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        int channelConfig = channelCount == 2 ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+        int minBufferSize = AudioRecord.getMinBufferSize(sampleRate, channelConfig, AUDIO_FORMAT);
+        this.bufferSizeInBytes = Math.max(minBufferSize, requestedBufferSizeInBytes);
+
+        audioRecord = new AudioRecord(
+                MediaRecorder.AudioSource.MIC,
+                sampleRate,
+                channelConfig,
+                AUDIO_FORMAT,
+                bufferSizeInBytes
+        );
+
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            throw new RuntimeException("AudioRecord non inizializzato correttamente");
+        }
+
+        int bufferFrames = getBufferFrames();
+        this.burstFrames = burstFrames > 0
+                ? Math.min(burstFrames, bufferFrames)
+                : Math.max(1, Math.min(bufferFrames / 2, sampleRate * FALLBACK_BURST_MS / 1000));
+
+        Log.d(TAG, "AudioRecord inizializzato - Sample Rate: " + sampleRate +
+                "Hz, canali: " + channelCount + ", buffer: " + bufferSizeInBytes + " byte (" +
+                String.format("%.1f", bufferFrames * 1000f / sampleRate) + " ms), burst: " + this.burstFrames + " frame");
+    }
+
+    /**
+     * Microfono a bassa latenza: letture di un burst nativo (scalato a sampleRate) e buffer
+     * di cattura di CAPTURE_BUFFER_BURSTS burst, almeno CAPTURE_HEADROOM_MS (o il minimo di AudioRecord)
+     */
+    public static MicAudioSource lowLatency(Context context, int sampleRate, int channelCount) {
+        int nativeRate = getNativeSampleRate(context);
+        int burst = Math.max(1, (int) ((long) getNativeBurstFrames(context) * sampleRate / nativeRate));
+        int bufferBytes = Math.max(burst * CAPTURE_BUFFER_BURSTS * channelCount * 2, headroomBytes(sampleRate, channelCount));
+        return new MicAudioSource(sampleRate, channelCount, bufferBytes, burst);
+    }
+
+    /**
+     * Byte di buffer per CAPTURE_HEADROOM_MS di audio PCM a 16 bit
+     */
+    public static int headroomBytes(int sampleRate, int channelCount) {
+        return sampleRate * CAPTURE_HEADROOM_MS / 1000 * channelCount * 2;
+    }
+
+    /**
+     * Microfono alla frequenza nativa del dispositivo (quella del mixer audio)
+     */
+    public static MicAudioSource atNativeRate(Context context, int channelCount, int requestedBufferSizeInBytes) {
+        return new MicAudioSource(getNativeSampleRate(context), channelCount, requestedBufferSizeInBytes);
+    }
+
+    /**
+     * Frame per burst del mixer audio alla frequenza nativa (PROPERTY_OUTPUT_FRAMES_PER_BUFFER)
+     */
+    public static int getNativeBurstFrames(Context context) {
+        try {
+            AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+            String frames = audioManager != null
+                    ? audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER) : null;
+            if (frames != null && Integer.parseInt(frames) > 0) {
+                return Integer.parseInt(frames);
+            }
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Burst nativo non valido, uso " + FALLBACK_BURST_MS + " ms");
+        }
+        return getNativeSampleRate(context) * FALLBACK_BURST_MS / 1000;
+    }
+
+    public static int getNativeSampleRate(Context context) {
+        try {
+            AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+            String rate = audioManager != null
+                    ? audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE) : null;
+            if (rate != null) {
+                return Integer.parseInt(rate);
+            }
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Frequenza nativa non valida, uso " + FALLBACK_NATIVE_RATE + "Hz");
+        }
+        return FALLBACK_NATIVE_RATE;
+    }
+
+    @Override
+    public void start() throws IOException {
+        if (audioRecord == null) {
+            throw new IOException("AudioRecord già rilasciato");
+        }
+        audioRecord.startRecording();
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) {
+        if (audioRecord == null) {
+            return ERROR_INVALID_OPERATION;
+        }
+        // I codici di errore di AudioRecord coincidono con quelli di AudioSource
+        return audioRecord.read(buffer, offset, length);
+    }
+
+    @Override
+    public int read(ByteBuffer buffer, int sizeInBytes) {
+        if (audioRecord == null) {
+            return ERROR_INVALID_OPERATION;
+        }
+        return audioRecord.read(buffer, sizeInBytes);
+    }
+
+    @Override
+    public void stop() {
+        if (audioRecord != null) {
+            audioRecord.stop();
+        }
+    }
+
+    @Override
+    public void release() {
+        if (audioRecord != null) {
+            audioRecord.release();
+            audioRecord = null;
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    @Override
+    public int getBurstFrames() {
+        return burstFrames;
+    }
+
+    @Override
+    public int getBufferFrames() {
+        return bufferSizeInBytes / (2 * channelCount);
+    }
+
+    @Override
+    public String getDescription() {
+        return "Microfono " + sampleRate + "Hz " + (channelCount == 2 ? "stereo" : "mono");
+    }
+}
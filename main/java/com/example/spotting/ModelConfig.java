@@ -16,6 +16,63 @@ public class ModelConfig {
     public static final int NUM_CLASSES = 12;
     public static final float DEFAULT_CONFIDENCE_THRESHOLD = 0.6f; // Soglia aggiornata
 
+    // Cattura alla frequenza nativa del dispositivo con ricampionamento polifase in app
+    public static final boolean CAPTURE_AT_NATIVE_RATE = true;
+
+    // Front-end di feature (modelli su spettrogramma): frame 25 ms, passo 10 ms
+    public static final int FEATURE_FRAME_LENGTH_MS = 25;
+    public static final int FEATURE_FRAME_STEP_MS = 10;
+    public static final int FEATURE_FFT_SIZE = 512;
+    public static final int FEATURE_MEL_BINS = 40;
+    public static final int FEATURE_MFCC_COUNT = 13;
+    public static final float FEATURE_LOWER_HZ = 20f;
+    public static final float FEATURE_UPPER_HZ = 7600f;
+    // Frame contenuti in una finestra del modello: 1 + (44032 - 400) / 160 = 273
+    public static final int FEATURE_FRAMES_PER_WINDOW = 1 +
+            (INPUT_LENGTH - SAMPLE_RATE * FEATURE_FRAME_LENGTH_MS / 1000) / (SAMPLE_RATE * FEATURE_FRAME_STEP_MS / 1000);
+
+    // Clip audio intorno ai rilevamenti (debug di falsi positivi/negativi sul campo)
+    public static final float PREROLL_HISTORY_SECONDS = 30f;
+    public static final float CLIP_PREROLL_SECONDS = 5f;
+    public static final float CLIP_POSTROLL_SECONDS = 2f;
+    public static final long CLIP_DISK_QUOTA_BYTES = 50L * 1024 * 1024;
+    // Clip compresse senza perdita (.kwpc) invece di WAV: circa metà dello spazio, ma si
+    // ascoltano solo dopo la conversione (PcmCodecTool decode clip.kwpc clip.wav)
+    public static final boolean CLIP_LOSSLESS = false;
+
+    // Latenza di rilevamento target (attesa in coda + inferenza) per il controllo adattivo
+    public static final long ADAPTIVE_TARGET_LATENCY_MS = 400;
+
+    // Classificazione per segmenti VAD: una finestra per parola invece di una per hop.
+    // Disattivata di default: sostituisce le finestre a cadenza fissa, quindi anche la cascata
+    // VAD, il controllo adattivo dell'hop e la telemetria per finestra
+    public static final boolean SEGMENT_CLASSIFICATION = false;
+    public static final int SEGMENT_MIN_MS = 150;
+    public static final int SEGMENT_MAX_MS = 2000;
+
+    // Classificazione speculativa su finestre parziali (ring non ancora pieno, o tra due finestre
+    // regolari): da 1 s di audio nuovo, ogni 250 ms; il rilevamento si anticipa solo se il margine
+    // sulla seconda classe è ampio, altrimenti si aspetta altro audio
+    public static final boolean EARLY_EXIT_ENABLED = true;
+    public static final int EARLY_EXIT_MIN_MS = 1000;
+    public static final int EARLY_EXIT_HOP_MS = 250;
+    public static final float EARLY_EXIT_MARGIN = 0.5f;
+
+    // Storico di telemetria: segmenti da 1 MB, finestre conservate 7 giorni (poi solo rilevamenti)
+    public static final int TELEMETRY_SEGMENT_BYTES = 1024 * 1024;
+    public static final int TELEMETRY_RAW_RETENTION_DAYS = 7;
+    public static final long TELEMETRY_DISK_QUOTA_BYTES = 32L * 1024 * 1024;
+
+    // Parole chiave personalizzate: modello di embedding, soglia di similarità coseno e margine
+    public static final String EMBEDDING_MODEL_FILE = "keyword_embedding.tflite";
+    public static final String CUSTOM_KEYWORD_INDEX_FILE = "custom_keywords.idx";
+    public static final int CUSTOM_KEYWORD_UTTERANCES = 3;
+    public static final float CUSTOM_KEYWORD_THRESHOLD = 0.8f;
+    public static final float CUSTOM_KEYWORD_MARGIN = 0.05f;
+
+    // Budget di memoria del motore (heap, diretta, nativa, mappata): oltre, cache e pool non crescono
+    public static final long MEMORY_BUDGET_BYTES = 48L * 1024 * 1024;
+
     // Durata audio in secondi
     public static final float AUDIO_DURATION_SECONDS = INPUT_LENGTH / (float) SAMPLE_RATE;
 
@@ -83,6 +140,18 @@ public class ModelConfig {
         return MODEL_LABELS.clone();
     }
 
+    /**
+     * Indice di classe di una label nell'output del modello (-1 se sconosciuta)
+     */
+    public static int getLabelIndex(String label) {
+        for (int i = 0; i < MODEL_LABELS.length; i++) {
+            if (MODEL_LABELS[i].equals(label)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Restituisce solo i comandi vocali riconosciuti (senza silence/unknown)
      */
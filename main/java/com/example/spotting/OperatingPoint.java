@@ -0,0 +1,79 @@
+package com.example.spotting;
+
+/**
+ * Punto di lavoro della pipeline: quanto spesso si classifica, con quanti thread,
+ * se il classificatore è preceduto dal VAD (cascata) e con quale sensibilità.
+ * I livelli vanno dal più costoso (0) al più leggero.
+ */
+public final class OperatingPoint {
+
+    public static final OperatingPoint[] LEVELS = {
+            new OperatingPoint(0, "massima", 500, 2, false, 3.0f),
+            new OperatingPoint(1, "bilanciata", 1000, 2, true, 3.0f),
+            new OperatingPoint(2, "risparmio", 1500, 1, true, 4.5f),
+            new OperatingPoint(3, "minima", 2750, 1, true, 6.0f),
+    };
+
+    /**
+     * Livello di partenza ("bilanciata"): una finestra ogni secondo, con la cascata VAD davanti
+     * al classificatore. Non è la cadenza storica (una finestra per buffer pieno, 2.75 s, senza
+     * cascata), che corrisponde a "minima" senza VAD; il controllo adattivo poi si sposta tra i
+     * livelli in base alla latenza misurata e allo stato termico.
+     */
+    public static final int DEFAULT_LEVEL = 1;
+
+    private final int level;
+    private final String name;
+    private final int hopMs;
+    private final int numThreads;
+    private final boolean cascade;
+    private final float vadAggressiveness;
+
+    private OperatingPoint(int level, String name, int hopMs, int numThreads, boolean cascade,
+                           float vadAggressiveness) {
+        this.level = level;
+        this.name = name;
+        this.hopMs = hopMs;
+        this.numThreads = numThreads;
+        this.cascade = cascade;
+        this.vadAggressiveness = vadAggressiveness;
+    }
+
+    // Getters
+    public int getLevel() {
+        return level;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getHopMs() {
+        return hopMs;
+    }
+
+    public int getHopSamples() {
+        return hopMs * ModelConfig.SAMPLE_RATE / 1000;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * true se le finestre senza attività VAD recente non arrivano al classificatore
+     */
+    public boolean isCascade() {
+        return cascade;
+    }
+
+    public float getVadAggressiveness() {
+        return vadAggressiveness;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (hop %d ms, %d thread, cascata %s, VAD %.1f)",
+                name, hopMs, numThreads, cascade ? "on" : "off", vadAggressiveness);
+    }
+}
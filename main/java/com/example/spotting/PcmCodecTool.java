@@ -0,0 +1,186 @@
+package com.example.spotting;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Conversione dei corpora di replay tra WAV e .kwpc e misura del codec senza perdita.
+ *
+ * Uso:
+ *   PcmCodecTool encode sessione.wav sessione.kwpc
+ *   PcmCodecTool decode sessione.kwpc sessione.wav
+ *   PcmCodecTool bench [sessione.wav | sessione.kwpc]   (senza file: 10 minuti sintetici)
+ *
+ * bench verifica che la decodifica riproduca i campioni bit per bit e riporta rapporto
+ * di compressione e velocità di codifica e decodifica (in multipli del tempo reale, un core),
+ * decodificando a blocchi dentro un buffer circolare come fa AudioRecorder.
+ */
+public class PcmCodecTool {
+
+    private static final int CHUNK_SAMPLES = 1024;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 3 && args[0].equals("encode")) {
+            encode(new File(args[1]), new File(args[2]));
+        } else if (args.length >= 3 && args[0].equals("decode")) {
+            decode(new File(args[1]), new File(args[2]));
+        } else if (args.length >= 1 && args[0].equals("bench")) {
+            System.exit(bench(args.length > 1 ? new File(args[1]) : null) ? 0 : 1);
+        } else {
+            System.err.println("Uso: PcmCodecTool (encode <in.wav> <out.kwpc> | decode <in.kwpc> <out.wav> | bench [file])");
+            System.exit(2);
+        }
+    }
+
+    private static void encode(File input, File output) throws IOException {
+        ReplayAudioSource source = ReplayAudioSource.open(input, false, 1);
+        if (source.getChannelCount() != 1) {
+            throw new IOException("Solo audio mono: " + input.getName());
+        }
+        long startNanos = System.nanoTime();
+        LosslessPcmEncoder encoder;
+        try (FileChannel channel = openForWriting(output)) {
+            encoder = new LosslessPcmEncoder(channel, source.getSampleRate());
+            copy(source, encoder);
+            encoder.close();
+        } finally {
+            source.release();
+        }
+        System.out.println(String.format(Locale.ROOT, "✅ %s → %s: %.1f s di audio, rapporto %.2f:1, %.0f ms",
+                input.getName(), output.getName(), encoder.getSamplesWritten() / (double) source.getSampleRate(),
+                encoder.getCompressionRatio(), (System.nanoTime() - startNanos) / 1e6));
+    }
+
+    private static void decode(File input, File output) throws IOException {
+        LosslessPcmDecoder decoder = LosslessPcmDecoder.open(input);
+        short[] chunk = new short[CHUNK_SAMPLES];
+        ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SAMPLES * 2).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = openForWriting(output)) {
+            WavHeader.pcm16(decoder.getSampleRate(), 1, decoder.getTotalSamples() * 2).write(channel);
+            channel.position(WavHeader.CANONICAL_SIZE);
+            int count;
+            while ((count = decoder.decode(chunk, 0, chunk.length)) > 0) {
+                bytes.clear();
+                bytes.asShortBuffer().put(chunk, 0, count);
+                bytes.limit(count * 2);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "✅ %s → %s: %.1f s di audio",
+                input.getName(), output.getName(), decoder.getDurationSeconds()));
+    }
+
+    /**
+     * Codifica in un file temporaneo, decodifica verificando i campioni e misura i tempi
+     */
+    private static boolean bench(File input) throws IOException {
+        short[] pcm = readAll(input);
+        int sampleRate = ModelConfig.SAMPLE_RATE;
+        File encoded = File.createTempFile("bench", LosslessPcmEncoder.FILE_EXTENSION);
+        encoded.deleteOnExit();
+
+        long encodeNanos = System.nanoTime();
+        LosslessPcmEncoder encoder;
+        try (FileChannel channel = openForWriting(encoded)) {
+            encoder = new LosslessPcmEncoder(channel, sampleRate);
+            for (int i = 0; i < pcm.length; i += CHUNK_SAMPLES) {
+                encoder.write(pcm, i, Math.min(CHUNK_SAMPLES, pcm.length - i));
+            }
+            encoder.close();
+        }
+        encodeNanos = System.nanoTime() - encodeNanos;
+
+        // Decodifica dentro un ring della dimensione di quello di AudioRecorder
+        LosslessPcmDecoder decoder = LosslessPcmDecoder.open(encoded);
+        short[] ring = new short[ModelConfig.INPUT_LENGTH];
+        long mismatches = 0;
+        long decodeNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            decoder.rewind();
+            int position = 0;
+            long decoded = 0;
+            long start = System.nanoTime();
+            while (true) {
+                int count = decoder.decode(ring, position, Math.min(CHUNK_SAMPLES, ring.length - position));
+                if (count == 0) {
+                    break;
+                }
+                if (round == 0) {
+                    for (int i = 0; i < count; i++) {
+                        if (ring[position + i] != pcm[(int) decoded + i]) {
+                            mismatches++;
+                        }
+                    }
+                }
+                decoded += count;
+                position = (position + count) % ring.length;
+            }
+            if (round > 0) {
+                decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+            }
+            if (decoded != pcm.length) {
+                mismatches += Math.abs(pcm.length - decoded);
+            }
+        }
+
+        double audioSeconds = pcm.length / (double) sampleRate;
+        System.out.println("=== CODEC SENZA PERDITA (" + (input != null ? input.getName() : "sintetico") + ") ===");
+        System.out.println(String.format(Locale.ROOT, "Audio: %.1f s, PCM %d KB, compresso %d KB, rapporto %.2f:1 (%.2f bit/campione)",
+                audioSeconds, pcm.length * 2 / 1024, encoder.getBytesWritten() / 1024, encoder.getCompressionRatio(),
+                encoder.getBytesWritten() * 8.0 / Math.max(1, pcm.length)));
+        System.out.println(String.format(Locale.ROOT, "Codifica: %.0fx tempo reale, decodifica: %.0fx tempo reale (%.1f ns/campione)",
+                audioSeconds / (encodeNanos / 1e9), audioSeconds / (decodeNanos / 1e9), decodeNanos / (double) pcm.length));
+        System.out.println(mismatches == 0 ? "✅ Decodifica identica bit per bit" : "❌ Campioni diversi: " + mismatches);
+        return mismatches == 0;
+    }
+
+    private static short[] readAll(File input) throws IOException {
+        ReplayAudioSource source = input != null
+                ? ReplayAudioSource.open(input, false, 1)
+                : new SyntheticAudioSource(SyntheticAudioSource.Signal.TONE_BURSTS, 600, false,
+                440.0, 8000.0, 100.0, 600, 2000, 1);
+        if (source.getChannelCount() != 1) {
+            throw new IOException("Solo audio mono");
+        }
+        short[] pcm = new short[1 << 16];
+        int length = 0;
+        source.start();
+        while (true) {
+            if (length + CHUNK_SAMPLES > pcm.length) {
+                short[] grown = new short[pcm.length * 2];
+                System.arraycopy(pcm, 0, grown, 0, length);
+                pcm = grown;
+            }
+            int count = source.read(pcm, length, CHUNK_SAMPLES);
+            if (count <= 0) {
+                break;
+            }
+            length += count;
+        }
+        source.release();
+        short[] result = new short[length];
+        System.arraycopy(pcm, 0, result, 0, length);
+        return result;
+    }
+
+    private static void copy(ReplayAudioSource source, LosslessPcmEncoder encoder) throws IOException {
+        short[] chunk = new short[CHUNK_SAMPLES];
+        source.start();
+        int count;
+        while ((count = source.read(chunk, 0, chunk.length)) > 0) {
+            encoder.write(chunk, 0, count);
+        }
+    }
+
+    private static FileChannel openForWriting(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE, StandardOpenOption.READ);
+    }
+}
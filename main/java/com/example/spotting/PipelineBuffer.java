@@ -0,0 +1,70 @@
+package com.example.spotting;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Buffer scambiato tra gli stadi di un PipelineGraph: campioni int16 o valori float
+ * (finestre normalizzate, feature), con posizione nello stream e un eventuale esito.
+ * Proviene da un BufferPool e ha un contatore di riferimenti: chi lo trattiene oltre
+ * la chiamata chiama retain(), ogni riferimento va chiuso con release(); all'ultimo
+ * release() il buffer torna al pool.
+ */
+public final class PipelineBuffer {
+
+    /** Parlato attivo (annotato dallo stadio VAD) */
+    public static final int FLAG_SPEECH = 1;
+
+    private final BufferPool pool;
+    private final AtomicInteger references = new AtomicInteger();
+
+    public final short[] samples;
+    public final float[] values;
+
+    /** Elementi validi in samples o values */
+    public int length;
+    /** Posizione nello stream (campioni a 16 kHz): inizio del blocco, o fine della finestra */
+    public long position;
+    public int flags;
+    /** Risultato associato (es. ClassificationResult dopo lo stadio del modello) */
+    public Object payload;
+
+    PipelineBuffer(BufferPool pool, int sampleCapacity, int valueCapacity) {
+        this.pool = pool;
+        this.samples = sampleCapacity > 0 ? new short[sampleCapacity] : null;
+        this.values = valueCapacity > 0 ? new float[valueCapacity] : null;
+    }
+
+    void acquired() {
+        references.set(1);
+        length = 0;
+        position = 0;
+        flags = 0;
+        payload = null;
+    }
+
+    public PipelineBuffer retain() {
+        if (references.getAndIncrement() <= 0) {
+            throw new IllegalStateException("retain() su un buffer già rilasciato");
+        }
+        return this;
+    }
+
+    public void release() {
+        int remaining = references.decrementAndGet();
+        if (remaining == 0) {
+            if (pool != null) {
+                pool.recycle(this);
+            }
+        } else if (remaining < 0) {
+            throw new IllegalStateException("release() di troppo su un buffer");
+        }
+    }
+
+    public boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    int getReferenceCount() {
+        return references.get();
+    }
+}
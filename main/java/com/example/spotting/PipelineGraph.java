@@ -0,0 +1,415 @@
+package com.example.spotting;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Grafo di stadi audio: sorgenti → trasformazioni → modello → decoder → sink.
+ *
+ * Ogni stadio è "fuso" (gira sul thread di chi gli consegna il buffer, nessuna coda)
+ * oppure ha un thread e una coda limitata: in tempo reale la coda scarta il buffer più
+ * vecchio, in batch blocca il produttore (nessuna perdita). La stessa catena si configura
+ * così per il dispositivo (cattura e modello su thread separati), per il batch (tutto fuso
+ * sul thread chiamante) e per il server (uno o più grafi per stream).
+ *
+ * I buffer sono PipelineBuffer a conteggio di riferimenti: un buffer inoltrato a più stadi
+ * non viene copiato. Per ogni stadio si misurano tempo di elaborazione, buffer in ingresso
+ * e in uscita, scarti e profondità della coda.
+ */
+public class PipelineGraph {
+    private static final String TAG = "PipelineGraph";
+
+    // Marcatore di fine stream nelle code (mai scartato, mai restituito a un pool)
+    private static final PipelineBuffer END = new PipelineBuffer(null, 0, 0);
+
+    public final class Node implements PipelineStage.Emitter {
+        private final String name;
+        private final PipelineStage stage;
+        private final PipelineSource source;
+        private final List<Node> downstream = new ArrayList<>();
+        private final AtomicInteger pendingUpstreams = new AtomicInteger();
+
+        // Thread dedicato (null se fuso)
+        private final BlockingQueue<PipelineBuffer> queue;
+        private final boolean dropOldest;
+        private Thread thread;
+
+        // Statistiche
+        private final LatencyHistogram timing = new LatencyHistogram();
+        private final AtomicLong received = new AtomicLong();
+        private final AtomicLong emitted = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile int maxQueueDepth = 0;
+
+        private Node(String name, PipelineStage stage, PipelineSource source, int queueCapacity, boolean dropOldest) {
+            this.name = name;
+            this.stage = stage;
+            this.source = source;
+            this.queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : null;
+            this.dropOldest = dropOldest;
+        }
+
+        @Override
+        public void emit(PipelineBuffer buffer) {
+            emitted.incrementAndGet();
+            try {
+                for (Node node : downstream) {
+                    node.deliver(buffer);
+                }
+            } finally {
+                buffer.release();
+            }
+        }
+
+        private void deliver(PipelineBuffer buffer) {
+            received.incrementAndGet();
+            if (queue == null) {
+                processNow(buffer);
+                return;
+            }
+
+            if (discarding) {
+                dropped.incrementAndGet();
+                return;
+            }
+            buffer.retain();
+            if (dropOldest) {
+                synchronized (queue) {
+                    while (!queue.offer(buffer)) {
+                        PipelineBuffer oldest = queue.poll();
+                        if (oldest != null && oldest != END) {
+                            oldest.release();
+                            dropped.incrementAndGet();
+                        }
+                    }
+                }
+            } else {
+                try {
+                    queue.put(buffer);
+                } catch (InterruptedException e) {
+                    buffer.release();
+                    dropped.incrementAndGet();
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            int depth = queue.size();
+            if (depth > maxQueueDepth) {
+                maxQueueDepth = depth;
+            }
+        }
+
+        private void processNow(PipelineBuffer buffer) {
+            long start = System.nanoTime();
+            // Uno stadio fuso può avere più monte su thread diversi: una chiamata alla volta
+            synchronized (this) {
+                stage.process(buffer, this);
+                timing.record((System.nanoTime() - start) / 1000);
+            }
+        }
+
+        private void upstreamFinished() {
+            if (pendingUpstreams.decrementAndGet() > 0) {
+                return;
+            }
+            if (queue == null) {
+                complete();
+            } else if (discarding) {
+                // Il thread può essere già terminato: nessuna attesa su una coda piena
+                queue.offer(END);
+            } else {
+                try {
+                    queue.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void complete() {
+            if (stage != null) {
+                synchronized (this) {
+                    stage.finish(this);
+                }
+            }
+            for (Node node : downstream) {
+                node.upstreamFinished();
+            }
+            completed.countDown();
+        }
+
+        private void runQueue() {
+            try {
+                while (true) {
+                    PipelineBuffer buffer = queue.take();
+                    if (buffer == END) {
+                        complete();
+                        return;
+                    }
+                    try {
+                        processNow(buffer);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Errore nello stadio " + name, e);
+                    } finally {
+                        buffer.release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // stop(true): i buffer ancora in coda tornano ai pool, la fine si propaga subito
+                PipelineBuffer buffer;
+                while ((buffer = queue.poll()) != null) {
+                    if (buffer != END) {
+                        buffer.release();
+                    }
+                }
+                complete();
+            }
+        }
+
+        private void runSource() {
+            try {
+                while (running && source.produce(this)) {
+                    // Produce fino a fine stream o stop()
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Errore nella sorgente " + name, e);
+            }
+            complete();
+        }
+
+        // Getters
+        public String getName() {
+            return name;
+        }
+
+        public boolean isThreaded() {
+            return queue != null;
+        }
+
+        public int getQueueDepth() {
+            return queue != null ? queue.size() : 0;
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public long getReceived() {
+            return received.get();
+        }
+
+        public long getEmitted() {
+            return emitted.get();
+        }
+
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        /**
+         * Copia dell'istogramma dei tempi di elaborazione (µs); per gli stadi fusi
+         * include gli stadi fusi a valle, che girano dentro emit()
+         */
+        public LatencyHistogram getTiming() {
+            LatencyHistogram copy = new LatencyHistogram();
+            synchronized (this) {
+                copy.merge(timing);
+            }
+            return copy;
+        }
+
+        public String summary() {
+            String mode = source != null ? "sorgente" : queue != null ? "thread" : "fuso";
+            LatencyHistogram times = getTiming();
+            return String.format("%-12s %-8s in %d, out %d, scarti %d, coda %d/%d (max %d), tempo p50 %d µs p99 %d µs",
+                    name, mode, received.get(), emitted.get(), dropped.get(), getQueueDepth(),
+                    queue != null ? queue.size() + queue.remainingCapacity() : 0, maxQueueDepth,
+                    times.percentile(50), times.percentile(99));
+        }
+    }
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final List<BufferPool> pools = new ArrayList<>();
+    private volatile boolean running = false;
+    private volatile boolean discarding = false;
+    private CountDownLatch completed;
+
+    /**
+     * Sorgente; start() la fa girare su un thread proprio, run() sul thread chiamante
+     */
+    public Node source(String name, PipelineSource source) {
+        return add(new Node(name, null, source, 0, false));
+    }
+
+    /**
+     * Stadio fuso: gira sul thread dello stadio a monte
+     */
+    public Node stage(String name, PipelineStage stage) {
+        return add(new Node(name, stage, null, 0, false));
+    }
+
+    /**
+     * Stadio su un thread proprio con coda di queueCapacity buffer; dropOldest per il tempo reale
+     */
+    public Node stage(String name, PipelineStage stage, int queueCapacity, boolean dropOldest) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Coda non valida: " + queueCapacity);
+        }
+        return add(new Node(name, stage, null, queueCapacity, dropOldest));
+    }
+
+    private synchronized Node add(Node node) {
+        if (completed != null) {
+            throw new IllegalStateException("Grafo già avviato");
+        }
+        nodes.add(node);
+        return node;
+    }
+
+    public synchronized PipelineGraph connect(Node from, Node to) {
+        if (completed != null) {
+            throw new IllegalStateException("Grafo già avviato");
+        }
+        if (to.source != null) {
+            throw new IllegalArgumentException("Una sorgente non ha stadi a monte: " + to.name);
+        }
+        from.downstream.add(to);
+        to.pendingUpstreams.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Collega in catena: a → b → c ...
+     */
+    public PipelineGraph chain(Node... chain) {
+        for (int i = 1; i < chain.length; i++) {
+            connect(chain[i - 1], chain[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Registra un pool perché compaia nel riepilogo
+     */
+    public BufferPool register(BufferPool pool) {
+        synchronized (pools) {
+            pools.add(pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Avvia i thread degli stadi e delle sorgenti e ritorna subito
+     */
+    public synchronized void start() {
+        startStages();
+        for (Node node : nodes) {
+            if (node.source != null) {
+                node.thread = new Thread(node::runSource, "pipeline-" + node.name);
+                node.thread.start();
+            }
+        }
+    }
+
+    /**
+     * Esegue le sorgenti sul thread chiamante, una dopo l'altra, e attende la fine
+     * di tutti gli stadi (modalità batch)
+     */
+    public void run() throws InterruptedException {
+        List<Node> sources = new ArrayList<>();
+        synchronized (this) {
+            startStages();
+            for (Node node : nodes) {
+                if (node.source != null) {
+                    sources.add(node);
+                }
+            }
+        }
+        for (Node node : sources) {
+            node.runSource();
+        }
+        awaitCompletion(Long.MAX_VALUE);
+    }
+
+    private void startStages() {
+        if (completed != null) {
+            throw new IllegalStateException("Grafo già avviato");
+        }
+        completed = new CountDownLatch(nodes.size());
+        running = true;
+        for (Node node : nodes) {
+            if (node.source == null && node.pendingUpstreams.get() == 0) {
+                throw new IllegalStateException("Stadio senza monte: " + node.name);
+            }
+            if (node.queue != null) {
+                node.thread = new Thread(node::runQueue, "pipeline-" + node.name);
+                node.thread.start();
+            }
+        }
+    }
+
+    /**
+     * Attende che tutti gli stadi abbiano elaborato la fine dello stream
+     */
+    public boolean awaitCompletion(long timeoutMillis) throws InterruptedException {
+        CountDownLatch latch;
+        synchronized (this) {
+            latch = completed;
+        }
+        return latch == null || latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ferma le sorgenti: gli stadi elaborano quanto è in coda e terminano.
+     * Con discard i thread vengono interrotti e le code svuotate.
+     */
+    public void stop(boolean discard) {
+        running = false;
+        List<Node> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(nodes);
+        }
+        for (Node node : snapshot) {
+            if (node.source != null) {
+                node.source.stop();
+            }
+        }
+        if (discard) {
+            discarding = true;
+            for (Node node : snapshot) {
+                if (node.queue != null && node.thread != null) {
+                    node.thread.interrupt();
+                }
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public synchronized List<Node> getNodes() {
+        return new ArrayList<>(nodes);
+    }
+
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (Node node : getNodes()) {
+            summary.append(node.summary()).append('\n');
+        }
+        synchronized (pools) {
+            for (BufferPool pool : pools) {
+                summary.append(pool.summary()).append('\n');
+            }
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.spotting;
+
+/**
+ * Sorgente di un PipelineGraph (microfono, file, segnale sintetico)
+ */
+public interface PipelineSource {
+
+    /**
+     * Produce il prossimo blocco con output.emit; false a fine stream o dopo stop()
+     */
+    boolean produce(PipelineStage.Emitter output);
+
+    /**
+     * Sblocca produce() e ferma la sorgente; chiamato da un altro thread
+     */
+    void stop();
+}
@@ -0,0 +1,25 @@
+package com.example.spotting;
+
+/**
+ * Stadio di un PipelineGraph: trasformazione (ricampionamento, VAD, finestre, feature),
+ * modello, decoder o sink (uno stadio che non emette nulla).
+ */
+public interface PipelineStage {
+
+    interface Emitter {
+        /** Inoltra agli stadi a valle; l'emettitore prende in carico un riferimento di buffer */
+        void emit(PipelineBuffer buffer);
+    }
+
+    /**
+     * Elabora input. Il riferimento resta del chiamante: per inoltrarlo o trattenerlo
+     * usare input.retain(). Uno stadio è sempre chiamato da un thread alla volta.
+     */
+    void process(PipelineBuffer input, Emitter output);
+
+    /**
+     * Fine dello stream: emette quanto eventualmente trattenuto
+     */
+    default void finish(Emitter output) {
+    }
+}
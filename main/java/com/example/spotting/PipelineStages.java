@@ -0,0 +1,261 @@
+package com.example.spotting;
+
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Stadi pronti per PipelineGraph, costruiti sui componenti esistenti
+ * (AudioSource, PolyphaseResampler, EnergyVad, SlidingWindowRing, StreamingFeatureExtractor,
+ * SpottingPipeline, DetectionDecoder), e la catena di keyword spotting standard.
+ * Gli stadi non reimplementano nulla: finestre, gate di silenzio, classificazione e
+ * soppressione dei duplicati sono gli stessi oggetti di AudioRecorder e SpottingEngine.
+ */
+public final class PipelineStages {
+    private static final String TAG = "PipelineStages";
+
+    private static final float NORMALIZATION_FACTOR = 32768.0f;
+
+    private PipelineStages() {
+    }
+
+    // ========== SORGENTE ==========
+
+    /**
+     * Legge blocchi di chunkFrames frame (interleaved) da un AudioSource in buffer del pool;
+     * position è il primo frame del blocco
+     */
+    public static PipelineSource audioSource(AudioSource source, BufferPool pool, int chunkFrames) {
+        return new PipelineSource() {
+            private final int chunkSamples = Math.min(pool.getSampleCapacity(), chunkFrames * source.getChannelCount());
+            private volatile boolean stopped = false;
+            private boolean started = false;
+            private long framesRead = 0;
+
+            @Override
+            public boolean produce(PipelineStage.Emitter output) {
+                if (stopped) {
+                    return false;
+                }
+                if (!started) {
+                    try {
+                        source.start();
+                    } catch (IOException e) {
+                        Log.e(TAG, "Avvio sorgente fallito: " + source.getDescription(), e);
+                        return false;
+                    }
+                    started = true;
+                }
+
+                PipelineBuffer buffer = pool.acquire();
+                int read = source.read(buffer.samples, 0, chunkSamples);
+                if (read <= 0) {
+                    buffer.release();
+                    if (read != AudioSource.END_OF_STREAM && !stopped) {
+                        Log.e(TAG, "Errore di lettura " + read + " da " + source.getDescription());
+                    }
+                    return false;
+                }
+                buffer.length = read;
+                buffer.position = framesRead;
+                framesRead += read / source.getChannelCount();
+                output.emit(buffer);
+                return true;
+            }
+
+            @Override
+            public void stop() {
+                stopped = true;
+                source.stop();
+            }
+        };
+    }
+
+    // ========== TRASFORMAZIONI ==========
+
+    /**
+     * Downmix a mono e ricampionamento a 16 kHz. Se la sorgente è già 16 kHz mono
+     * il buffer passa senza copie.
+     */
+    public static PipelineStage toMono16k(int inputRate, int channelCount, int maxInputFrames, BufferPool pool) {
+        if (inputRate == ModelConfig.SAMPLE_RATE && channelCount == 1) {
+            return (input, output) -> output.emit(input.retain());
+        }
+        PolyphaseResampler resampler = inputRate != ModelConfig.SAMPLE_RATE
+                ? AudioPreprocessor.createResampler(inputRate, maxInputFrames) : null;
+        short[] mono = new short[maxInputFrames];
+        long[] outputPosition = {0};
+
+        return (input, output) -> {
+            int frames = input.length / channelCount;
+            short[] monoData = input.samples;
+            if (channelCount == 2) {
+                // Il buffer d'ingresso può essere condiviso: downmix in un array di lavoro
+                for (int i = 0; i < frames; i++) {
+                    mono[i] = (short) ((input.samples[i * 2] + input.samples[i * 2 + 1]) / 2);
+                }
+                monoData = mono;
+            }
+
+            PipelineBuffer buffer = pool.acquire();
+            if (resampler != null) {
+                buffer.length = resampler.process(monoData, 0, frames, buffer.samples, 0);
+            } else {
+                System.arraycopy(monoData, 0, buffer.samples, 0, frames);
+                buffer.length = frames;
+            }
+            buffer.position = outputPosition[0];
+            buffer.flags = input.flags;
+            outputPosition[0] += buffer.length;
+            output.emit(buffer);
+        };
+    }
+
+    /**
+     * VAD a energia: annota FLAG_SPEECH sul blocco e lo inoltra senza copie
+     */
+    public static PipelineStage vad(EnergyVad vad) {
+        return (input, output) -> {
+            if (vad.process(input.samples, 0, input.length)) {
+                input.flags |= PipelineBuffer.FLAG_SPEECH;
+            }
+            output.emit(input.retain());
+        };
+    }
+
+    /**
+     * Ring di windowSamples campioni (SlidingWindowRing, lo stesso di AudioRecorder): ogni
+     * hopSamples emette la finestra normalizzata in [-1, 1] (buffer del pool di valori),
+     * copiata una sola volta dal ring.
+     * position è la fine della finestra; FLAG_SPEECH se c'è stato parlato nella finestra.
+     */
+    public static PipelineStage windower(int windowSamples, int hopSamples, BufferPool pool) {
+        return new PipelineStage() {
+            private final SlidingWindowRing ring = new SlidingWindowRing(windowSamples, hopSamples);
+            private long lastSpeech = Long.MIN_VALUE;
+
+            @Override
+            public void process(PipelineBuffer input, Emitter output) {
+                if (input.hasFlag(PipelineBuffer.FLAG_SPEECH)) {
+                    lastSpeech = input.position + input.length;
+                }
+                int consumed = 0;
+                while (consumed < input.length) {
+                    int chunk = Math.min(input.length - consumed, ring.getWritableChunk());
+                    System.arraycopy(input.samples, consumed, ring.getSamples(), ring.getWritePosition(), chunk);
+                    consumed += chunk;
+
+                    if (ring.commit(chunk)) {
+                        long total = ring.getTotalSamples();
+                        PipelineBuffer window = pool.acquire();
+                        ring.normalizeWindow(window.values, NORMALIZATION_FACTOR);
+                        window.length = windowSamples;
+                        window.position = total;
+                        if (lastSpeech > total - windowSamples) {
+                            window.flags |= PipelineBuffer.FLAG_SPEECH;
+                        }
+                        output.emit(window);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Front-end di feature in streaming: ogni hopFrames nuovi frame emette la finestra
+     * di feature (frameCapacity × featureCount valori)
+     */
+    public static PipelineStage features(StreamingFeatureExtractor extractor, int hopFrames, BufferPool pool) {
+        return new PipelineStage() {
+            private long position = 0;
+            private int framesSinceWindow = 0;
+
+            @Override
+            public void process(PipelineBuffer input, Emitter output) {
+                framesSinceWindow += extractor.push(input.samples, 0, input.length);
+                position = input.position + input.length;
+                if (extractor.getFramesComputed() >= extractor.getFrameCapacity() && framesSinceWindow >= hopFrames) {
+                    framesSinceWindow = 0;
+                    PipelineBuffer window = pool.acquire();
+                    extractor.copyWindow(window.values);
+                    window.length = extractor.getWindowSize();
+                    window.position = position;
+                    window.flags = input.flags;
+                    output.emit(window);
+                }
+            }
+        };
+    }
+
+    // ========== MODELLO E DECODER ==========
+
+    /**
+     * Classifica le finestre float con SpottingPipeline.processNormalized: stesso gate di
+     * silenzio, validazione e parole personalizzate della produzione. L'esito va in payload.
+     */
+    public static PipelineStage classifier(SpottingPipeline pipeline) {
+        return (input, output) -> {
+            ClassificationResult result = pipeline.processNormalized(input.values);
+            if (result != null) {
+                input.payload = result;
+                output.emit(input.retain());
+            }
+        };
+    }
+
+    /**
+     * Decoder: inoltra solo i comandi accettati (supportati o parole personalizzate, come in
+     * SpottingEngine) che il DetectionDecoder non considera duplicati
+     */
+    public static PipelineStage decoder(DetectionDecoder decoder) {
+        return (input, output) -> {
+            if (!(input.payload instanceof ClassificationResult)) {
+                return;
+            }
+            ClassificationResult result = (ClassificationResult) input.payload;
+            if (!result.isAccepted()) {
+                return;
+            }
+            if (result.getClassIndex() != CustomKeywordSpotter.CUSTOM_CLASS_INDEX
+                    && !ModelConfig.isCommandSupported(result.getLabel())) {
+                return;
+            }
+            if (decoder.accept(result, input.position)) {
+                output.emit(input.retain());
+            }
+        };
+    }
+
+    // ========== CATENA STANDARD ==========
+
+    /**
+     * Sorgente → 16 kHz mono → VAD → finestre → modello → decoder → sink.
+     * Con threadedModel il modello ha un thread e una coda di 2 finestre che scarta la più vecchia
+     * (dispositivo, server); altrimenti tutto è fuso sul thread della sorgente (batch, nessuna perdita).
+     */
+    public static PipelineGraph keywordSpotting(AudioSource source, SpottingPipeline pipeline, EnergyVad vad,
+                                                int hopSamples, boolean threadedModel, PipelineStage sink) {
+        int chunkFrames = Math.max(1, source.getSampleRate() / 100) * 4; // 40 ms
+        int monoCapacity = chunkFrames * ModelConfig.SAMPLE_RATE / source.getSampleRate() + 64;
+
+        PipelineGraph graph = new PipelineGraph();
+        BufferPool capturePool = graph.register(
+                BufferPool.forSamples("cattura", chunkFrames * source.getChannelCount(), 8));
+        BufferPool monoPool = graph.register(BufferPool.forSamples("16k mono", monoCapacity, 8));
+        BufferPool windowPool = graph.register(BufferPool.forValues("finestre", ModelConfig.INPUT_LENGTH, 4));
+
+        PipelineGraph.Node capture = graph.source("cattura", audioSource(source, capturePool, chunkFrames));
+        PipelineGraph.Node convert = graph.stage("16k mono",
+                toMono16k(source.getSampleRate(), source.getChannelCount(), chunkFrames, monoPool));
+        PipelineGraph.Node activity = graph.stage("vad", vad(vad));
+        PipelineGraph.Node windows = graph.stage("finestre", windower(ModelConfig.INPUT_LENGTH, hopSamples, windowPool));
+        PipelineGraph.Node model = threadedModel
+                ? graph.stage("modello", classifier(pipeline), 2, true)
+                : graph.stage("modello", classifier(pipeline));
+        PipelineGraph.Node decode = graph.stage("decoder", decoder(DetectionDecoder.forEngine()));
+        PipelineGraph.Node output = graph.stage("sink", sink);
+
+        graph.chain(capture, convert, activity, windows, model, decode, output);
+        return graph;
+    }
+}
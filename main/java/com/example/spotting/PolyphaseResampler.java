@@ -0,0 +1,173 @@
+package com.example.spotting;
+
+import java.util.Arrays;
+
+/**
+ * Ricampionatore polifase in streaming con rapporto razionale L/M
+ * (es. 48000 → 16000: L=1, M=3; 44100 → 16000: L=160, M=441).
+ * Il filtro passa-basso è una sinc finestrata di Kaiser, scomposta in L fasi:
+ * per ogni campione di uscita si calcola una sola fase (taps moltiplicazioni).
+ * Dopo la costruzione non alloca più memoria, se i blocchi in ingresso
+ * non superano la capacità iniziale.
+ */
+public class PolyphaseResampler {
+
+    // Passaggi per lo zero per lato della sinc: qualità vs. costo
+    private static final int ZERO_CROSSINGS = 8;
+    // Frequenza di taglio relativa alla Nyquist di uscita (banda di transizione)
+    private static final double ROLLOFF = 0.9;
+    private static final double KAISER_BETA = 8.0;
+
+    private final int inputRate;
+    private final int outputRate;
+    private final int upFactor;   // L
+    private final int downFactor; // M
+    private final int taps;       // coefficienti per fase
+    private final float[] coefficients; // [fase][tap] appiattito
+
+    // Storia + blocco corrente in float
+    private float[] history;
+    private int historyCount;
+    private int baseIndex; // indice in history del campione più recente usato dalla prossima uscita
+    private int phase;
+
+    public PolyphaseResampler(int inputRate, int outputRate, int maxInputChunk) {
+        int gcd = gcd(inputRate, outputRate);
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.upFactor = outputRate / gcd;
+        this.downFactor = inputRate / gcd;
+
+        // Più lungo quando si decima, per mantenere la stessa ripidità alla frequenza di uscita
+        double ratio = Math.max(1.0, downFactor / (double) upFactor);
+        this.taps = (int) Math.ceil(2 * ZERO_CROSSINGS * ratio);
+        this.coefficients = designFilter();
+
+        this.history = new float[taps - 1 + Math.max(1, maxInputChunk)];
+        reset();
+    }
+
+    private float[] designFilter() {
+        int length = taps * upFactor;
+        double cutoff = ROLLOFF * 0.5 / Math.max(upFactor, downFactor); // cicli/campione a L*inputRate
+        double center = (length - 1) / 2.0;
+        double[] prototype = new double[length];
+
+        for (int i = 0; i < length; i++) {
+            double x = i - center;
+            double sinc = x == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+            double r = 2.0 * i / (length - 1) - 1.0;
+            double window = besselI0(KAISER_BETA * Math.sqrt(Math.max(0, 1 - r * r))) / besselI0(KAISER_BETA);
+            // Guadagno L per compensare gli zeri inseriti dall'interpolazione
+            prototype[i] = sinc * window * upFactor;
+        }
+
+        float[] polyphase = new float[upFactor * taps];
+        for (int p = 0; p < upFactor; p++) {
+            for (int k = 0; k < taps; k++) {
+                polyphase[p * taps + k] = (float) prototype[p + k * upFactor];
+            }
+        }
+        return polyphase;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        double half = x / 2.0;
+        for (int k = 1; k < 50; k++) {
+            term *= (half / k) * (half / k);
+            sum += term;
+            if (term < 1e-12 * sum) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Azzera lo stato (storia a zero), da usare tra due stream distinti
+     */
+    public void reset() {
+        Arrays.fill(history, 0f);
+        historyCount = taps - 1;
+        baseIndex = taps - 1;
+        phase = 0;
+    }
+
+    /**
+     * Numero massimo di campioni prodotti da un blocco di inputLength campioni
+     */
+    public int getMaxOutputLength(int inputLength) {
+        return (int) (((long) inputLength * upFactor + downFactor - 1) / downFactor) + 1;
+    }
+
+    /**
+     * Ricampiona un blocco mono. Restituisce il numero di campioni scritti in output.
+     */
+    public int process(short[] input, int inputOffset, int inputLength, short[] output, int outputOffset) {
+        if (historyCount + inputLength > history.length) {
+            // Blocco più grande del previsto: unica allocazione possibile
+            history = Arrays.copyOf(history, historyCount + inputLength);
+        }
+
+        for (int i = 0; i < inputLength; i++) {
+            history[historyCount + i] = input[inputOffset + i];
+        }
+        historyCount += inputLength;
+
+        int produced = 0;
+        while (baseIndex < historyCount) {
+            int coefficientBase = phase * taps;
+            float acc = 0f;
+            for (int k = 0; k < taps; k++) {
+                acc += coefficients[coefficientBase + k] * history[baseIndex - k];
+            }
+            int value = Math.round(acc);
+            output[outputOffset + produced++] = (short) Math.max(-32768, Math.min(32767, value));
+
+            phase += downFactor;
+            baseIndex += phase / upFactor;
+            phase %= upFactor;
+        }
+
+        // Conserva solo gli ultimi taps-1 campioni necessari alle prossime uscite
+        int discard = Math.min(baseIndex, historyCount) - (taps - 1);
+        if (discard > 0) {
+            System.arraycopy(history, discard, history, 0, historyCount - discard);
+            historyCount -= discard;
+            baseIndex -= discard;
+        }
+
+        return produced;
+    }
+
+    /**
+     * Ritardo di gruppo del filtro in millisecondi (latenza algoritmica aggiunta)
+     */
+    public float getGroupDelayMs() {
+        double delayUpsampled = (taps * upFactor - 1) / 2.0;
+        return (float) (delayUpsampled / ((double) upFactor * inputRate) * 1000.0);
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    public int getTapsPerPhase() {
+        return taps;
+    }
+}
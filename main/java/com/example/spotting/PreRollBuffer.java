@@ -0,0 +1,196 @@
+package com.example.spotting;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Storico audio degli ultimi N secondi (int16 mono) in un ring fuori heap
+ * (ByteBuffer diretto), alimentato dal thread di cattura come CaptureTap.
+ *
+ * Il thread di cattura scrive senza lock; i lettori copiano un intervallo e poi
+ * verificano che nel frattempo non sia stato sovrascritto (schema seqlock):
+ * la cattura non aspetta mai chi legge.
+ *
+ * Le posizioni del ring crescono sempre, anche tra una sessione di cattura e l'altra;
+ * le posizioni dello stream (che ripartono da 0 a ogni startRecording) si convertono
+ * con toRingPosition().
+ */
+public class PreRollBuffer implements AudioRecorder.CaptureTap {
+
+    private final int sampleRate;
+    private final int capacity;
+    private final ByteBuffer ring;
+    private final ShortBuffer ringShorts;
+    private final MemoryBudget.Reservation reservation;
+
+    // Campioni scritti dalla creazione; pubblicato dopo ogni copia
+    private volatile long writePosition = 0;
+    // Fine del blocco in scrittura; pubblicato prima della copia, così i lettori
+    // vedono anche la sovrascrittura ancora in corso
+    private volatile long writeClaim = 0;
+
+    // Differenza tra posizioni del ring e dello stream di cattura corrente
+    private volatile long streamOffset = 0;
+    // Posizione dello stream attesa per il prossimo blocco (solo thread di cattura)
+    private long nextStreamPosition = 0;
+
+    public PreRollBuffer(int sampleRate, float seconds) {
+        this(sampleRate, capacityFor(sampleRate, seconds), null);
+    }
+
+    private PreRollBuffer(int sampleRate, int capacity, MemoryBudget.Reservation reservation) {
+        this.sampleRate = sampleRate;
+        this.capacity = capacity;
+        this.ring = ByteBuffer.allocateDirect(capacity * 2).order(ByteOrder.LITTLE_ENDIAN);
+        this.ringShorts = ring.asShortBuffer();
+        this.reservation = reservation != null ? reservation : MemoryBudget.getInstance().register("PreRollBuffer",
+                "ring", MemoryBudget.Kind.DIRECT, capacity * 2L);
+    }
+
+    /**
+     * Storico facoltativo: null (senza allocare nulla) se il ring sforerebbe il MemoryBudget
+     */
+    public static PreRollBuffer tryCreate(int sampleRate, float seconds) {
+        int capacity = capacityFor(sampleRate, seconds);
+        MemoryBudget.Reservation reservation = MemoryBudget.getInstance().tryRegister("PreRollBuffer", "ring",
+                MemoryBudget.Kind.DIRECT, capacity * 2L);
+        return reservation != null ? new PreRollBuffer(sampleRate, capacity, reservation) : null;
+    }
+
+    private static int capacityFor(int sampleRate, float seconds) {
+        return Math.max(1, Math.round(sampleRate * seconds));
+    }
+
+    /**
+     * Il ring diretto torna al GC quando non è più referenziato: qui si chiude solo la contabilità
+     */
+    public void release() {
+        reservation.release();
+    }
+
+    @Override
+    public void onSamplesCaptured(short[] data, int offset, int length, long streamPosition) {
+        // Nuova sessione (lo stream è ripartito): si riallinea la base senza toccare il ring
+        if (streamPosition != nextStreamPosition) {
+            streamOffset = writePosition - streamPosition;
+        }
+        nextStreamPosition = streamPosition + length;
+        write(data, offset, length);
+    }
+
+    /**
+     * Converte una posizione dello stream di cattura corrente in posizione del ring
+     */
+    public long toRingPosition(long streamPosition) {
+        return streamPosition + streamOffset;
+    }
+
+    /**
+     * Aggiunge campioni al ring (un solo scrittore: il thread di cattura)
+     */
+    public void write(short[] data, int offset, int length) {
+        long position = writePosition;
+        // Se il blocco è più lungo del ring conta solo la coda
+        if (length > capacity) {
+            position += length - capacity;
+            offset += length - capacity;
+            length = capacity;
+        }
+
+        writeClaim = position + length;
+        int index = (int) (position % capacity);
+        int firstPart = Math.min(length, capacity - index);
+        ringShorts.position(index);
+        ringShorts.put(data, offset, firstPart);
+        if (firstPart < length) {
+            ringShorts.position(0);
+            ringShorts.put(data, offset + firstPart, length - firstPart);
+        }
+
+        writePosition = position + length;
+    }
+
+    /**
+     * Posizione più vecchia ancora presente nel ring
+     */
+    public long getOldestPosition() {
+        return Math.max(0, writePosition - capacity);
+    }
+
+    /**
+     * Scrive i campioni [from, to) come PCM little-endian nel canale a partire da channelPosition,
+     * direttamente dalla memoria del ring. Restituisce il numero di campioni scritti
+     * che sono ancora validi, contati dalla fine: è minore del totale solo se la cattura
+     * ha sovrascritto l'inizio dell'intervallo mentre lo si scriveva.
+     */
+    public long writeTo(FileChannel channel, long channelPosition, long from, long to) throws IOException {
+        from = Math.max(from, getOldestPosition());
+        to = Math.min(to, writePosition);
+        if (to <= from) {
+            return 0;
+        }
+
+        // Vista indipendente: posizione e limite non interferiscono con lo scrittore
+        ByteBuffer view = ring.duplicate();
+        long position = from;
+        long written = 0;
+        while (position < to) {
+            int index = (int) (position % capacity);
+            int count = (int) Math.min(to - position, capacity - index);
+            view.limit((index + count) * 2);
+            view.position(index * 2);
+            while (view.hasRemaining()) {
+                written += channel.write(view, channelPosition + written);
+            }
+            position += count;
+        }
+
+        // Validazione: quanto dell'intervallo è stato (o è in corso di essere) sovrascritto
+        long overwrittenUpTo = writeClaim - capacity;
+        if (overwrittenUpTo > from) {
+            return Math.max(0, to - overwrittenUpTo);
+        }
+        return to - from;
+    }
+
+    /**
+     * Copia i campioni [from, to) in output; restituisce quanti campioni validi
+     * sono stati copiati a partire da output[0], o -1 se l'intervallo non è più nel ring
+     */
+    public int copy(long from, long to, short[] output) {
+        if (from < getOldestPosition() || to > writePosition) {
+            return -1;
+        }
+        ShortBuffer view = ringShorts.duplicate();
+        int length = (int) (to - from);
+        int index = (int) (from % capacity);
+        int firstPart = Math.min(length, capacity - index);
+        view.position(index);
+        view.get(output, 0, firstPart);
+        if (firstPart < length) {
+            view.position(0);
+            view.get(output, firstPart, length - firstPart);
+        }
+        return from < writeClaim - capacity ? -1 : length;
+    }
+
+    // Getters
+    public long getWritePosition() {
+        return writePosition;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public float getCapacitySeconds() {
+        return capacity / (float) sampleRate;
+    }
+}
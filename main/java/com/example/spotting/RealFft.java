@@ -0,0 +1,125 @@
+package com.example.spotting;
+
+/**
+ * FFT reale di dimensione N (potenza di 2) con tabelle precalcolate.
+ * Usa una FFT complessa di N/2 punti sui campioni pari/dispari impacchettati
+ * e una fase di post-elaborazione per ricavare lo spettro reale.
+ * Tutti i buffer sono allocati nel costruttore: powerSpectrum() non alloca.
+ */
+public class RealFft {
+
+    private final int size;
+    private final int half;
+    private final int[] bitReverse;
+    // Twiddle della FFT complessa di N/2 punti
+    private final float[] cosTable;
+    private final float[] sinTable;
+    // Twiddle della post-elaborazione reale (N punti)
+    private final float[] postCos;
+    private final float[] postSin;
+    // Buffer di lavoro
+    private final float[] re;
+    private final float[] im;
+
+    public RealFft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("La dimensione FFT deve essere una potenza di 2: " + size);
+        }
+        this.size = size;
+        this.half = size / 2;
+
+        bitReverse = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+
+        cosTable = new float[half / 2];
+        sinTable = new float[half / 2];
+        for (int i = 0; i < half / 2; i++) {
+            double angle = -2.0 * Math.PI * i / half;
+            cosTable[i] = (float) Math.cos(angle);
+            sinTable[i] = (float) Math.sin(angle);
+        }
+
+        postCos = new float[half + 1];
+        postSin = new float[half + 1];
+        for (int k = 0; k <= half; k++) {
+            double angle = -2.0 * Math.PI * k / size;
+            postCos[k] = (float) Math.cos(angle);
+            postSin[k] = (float) Math.sin(angle);
+        }
+
+        re = new float[half];
+        im = new float[half];
+    }
+
+    /**
+     * Spettro di potenza |X[k]|^2, k = 0..N/2, di input[0..N).
+     * output deve avere almeno N/2 + 1 elementi.
+     */
+    public void powerSpectrum(float[] input, float[] output) {
+        // Impacchetta i campioni pari nella parte reale e i dispari nell'immaginaria
+        for (int i = 0; i < half; i++) {
+            int j = bitReverse[i];
+            re[j] = input[2 * i];
+            im[j] = input[2 * i + 1];
+        }
+
+        transform();
+
+        // Separazione delle due FFT reali e ricombinazione
+        for (int k = 0; k <= half; k++) {
+            int a = k % half;
+            int b = (half - k) % half;
+            float zr = re[a];
+            float zi = im[a];
+            float cr = re[b];
+            float ci = -im[b];
+
+            // Even = (Z[k] + conj(Z[N/2-k])) / 2, Odd = (Z[k] - conj(Z[N/2-k])) / 2i
+            float evenRe = 0.5f * (zr + cr);
+            float evenIm = 0.5f * (zi + ci);
+            float oddRe = 0.5f * (zi - ci);
+            float oddIm = -0.5f * (zr - cr);
+
+            float wr = postCos[k];
+            float wi = postSin[k];
+            float xr = evenRe + wr * oddRe - wi * oddIm;
+            float xi = evenIm + wr * oddIm + wi * oddRe;
+            output[k] = xr * xr + xi * xi;
+        }
+    }
+
+    /**
+     * FFT complessa radix-2 in place su re/im già in ordine bit-reversed
+     */
+    private void transform() {
+        for (int length = 2; length <= half; length <<= 1) {
+            int halfLength = length >> 1;
+            int tableStep = half / length;
+            for (int start = 0; start < half; start += length) {
+                for (int j = 0; j < halfLength; j++) {
+                    float wr = cosTable[j * tableStep];
+                    float wi = sinTable[j * tableStep];
+                    int even = start + j;
+                    int odd = even + halfLength;
+                    float tr = wr * re[odd] - wi * im[odd];
+                    float ti = wr * im[odd] + wi * re[odd];
+                    re[odd] = re[even] - tr;
+                    im[odd] = im[even] - ti;
+                    re[even] += tr;
+                    im[even] += ti;
+                }
+            }
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getBinCount() {
+        return half + 1;
+    }
+}
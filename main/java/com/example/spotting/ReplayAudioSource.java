@@ -0,0 +1,137 @@
+package com.example.spotting;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Base per le sorgenti non-microfono (file, segnali sintetici).
+ * Gestisce la cadenza di consegna dei campioni:
+ * - tempo reale: read() si blocca fino a quando i campioni "esisterebbero" davvero
+ * - massima velocità: nessuna attesa, il tempo avanza solo con i campioni consegnati
+ * In entrambi i casi espone un clock simulato basato sui campioni consegnati,
+ * utile per misurare la latenza di rilevamento in tempo-stream.
+ */
+public abstract class ReplayAudioSource implements AudioSource {
+
+    private final int sampleRate;
+    private final int channelCount;
+    private final boolean realTime;
+
+    private volatile boolean started = false;
+    private long framesDelivered = 0;
+    private long startNanos = 0;
+
+    protected ReplayAudioSource(int sampleRate, int channelCount, boolean realTime) {
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        this.realTime = realTime;
+    }
+
+    /**
+     * Sorgente per un file di replay secondo l'estensione: .kwpc compresso, altrimenti WAV o PCM grezzo
+     *
+     * @param loops numero di ripetizioni del file (0 = infinite)
+     */
+    public static ReplayAudioSource open(File file, boolean realTime, int loops) throws IOException {
+        if (file.getName().toLowerCase().endsWith(LosslessPcmEncoder.FILE_EXTENSION)) {
+            return new CompressedAudioSource(file, realTime, loops);
+        }
+        return new WavFileAudioSource(file, realTime, loops);
+    }
+
+    /**
+     * Legge i prossimi campioni dalla sorgente sottostante.
+     * Restituisce i campioni letti (multiplo di channelCount) o END_OF_STREAM.
+     */
+    protected abstract int readSamples(short[] buffer, int offset, int length) throws IOException;
+
+    @Override
+    public void start() throws IOException {
+        // Riallinea il clock in modo che una ripresa dopo stop() non recuperi il tempo perso
+        startNanos = System.nanoTime() - framesToNanos(framesDelivered);
+        started = true;
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) {
+        if (!started) {
+            return ERROR_INVALID_OPERATION;
+        }
+
+        // Legge solo frame completi
+        int alignedLength = length - (length % channelCount);
+        if (alignedLength <= 0) {
+            return ERROR_BAD_VALUE;
+        }
+
+        int samplesRead;
+        try {
+            samplesRead = readSamples(buffer, offset, alignedLength);
+        } catch (IOException e) {
+            return ERROR;
+        }
+
+        if (samplesRead <= 0) {
+            return samplesRead == 0 ? END_OF_STREAM : samplesRead;
+        }
+
+        long frames = samplesRead / channelCount;
+        if (realTime) {
+            waitUntil(startNanos + framesToNanos(framesDelivered + frames));
+        }
+        framesDelivered += frames;
+
+        return samplesRead;
+    }
+
+    private void waitUntil(long deadlineNanos) {
+        long remaining = deadlineNanos - System.nanoTime();
+        if (remaining <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void stop() {
+        started = false;
+    }
+
+    @Override
+    public void release() {
+        stop();
+    }
+
+    private long framesToNanos(long frames) {
+        return frames * 1_000_000_000L / sampleRate;
+    }
+
+    /**
+     * Clock simulato: tempo-stream corrispondente ai frame già consegnati
+     */
+    public long getStreamTimeNanos() {
+        return framesToNanos(framesDelivered);
+    }
+
+    public long getFramesDelivered() {
+        return framesDelivered;
+    }
+
+    public boolean isRealTime() {
+        return realTime;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return channelCount;
+    }
+}
@@ -0,0 +1,400 @@
+package com.example.spotting;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Riproduce audio registrato o sintetico attraverso la pipeline di produzione
+ * (AudioRecorder → AudioPreprocessor → KeywordClassifier) e misura throughput e latenze.
+ *
+ * Uso:
+ *   ReplayBenchmark --model speech_commands.tflite --wav sessione.wav (o .kwpc) [--loops N] [--realtime]
+ *   ReplayBenchmark --model speech_commands.tflite --synthetic 3600 [--realtime]
+ *   ReplayBenchmark --model speech_commands.tflite --synthetic 3600 --graph
+ *   ReplayBenchmark --model speech_commands.tflite --synthetic 3600 --segments
+ *   ReplayBenchmark --model speech_commands.tflite --synthetic 3600 [--segments] --early
+ *
+ * Con --synthetic si generano raffiche di tono a posizione nota, quindi viene misurata
+ * anche la latenza di rilevamento (fine raffica → esito della classificazione) sul clock simulato.
+ * Con --graph lo stesso audio passa per PipelineStages.keywordSpotting (stadi fusi, modalità batch)
+ * e si stampano le statistiche per stadio del grafo. Con --segments si classifica una finestra
+ * per segmento VAD (SegmentSpotter) invece delle finestre a cadenza fissa. Con --early si
+ * classificano anche le finestre speculative (parziali a inizio sessione, fuori cadenza dopo)
+ * e si anticipano i rilevamenti con margine ampio (EarlyExitPolicy): il confronto con lo stesso
+ * replay senza --early misura il guadagno su primo rilevamento e latenza.
+ * Con --synthetic ogni rilevamento è confrontato con le raffiche etichettate: un rilevamento
+ * senza raffica nella finestra, o una seconda volta sulla stessa raffica, è un falso positivo;
+ * il confronto con e senza --early misura quindi anche i falsi positivi aggiunti dall'anticipo.
+ *
+ * Fuori dal dispositivo si compila con i sorgenti di jvm/ (android.util.Log è lo shim di
+ * jvm/java/android/util/Log) e si esegue con la libreria TFLite per desktop nel classpath.
+ */
+public final class ReplayBenchmark implements AudioRecorder.AudioRecorderListener {
+
+    private final SpottingPipeline pipeline;
+    private final AudioRecorder recorder;
+    private final ReplayAudioSource source;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private final LatencyStats processingStats = new LatencyStats("Elaborazione finestra");
+    private final LatencyStats inferenceStats = new LatencyStats("Inferenza");
+    private final LatencyStats detectionStats = new LatencyStats("Latenza rilevamento");
+
+    private EnergyVad vad;
+    private SegmentSpotter segmentSpotter;
+    private EarlyExitPolicy earlyExit;
+
+    private long windows = 0;
+    private long detections = 0;
+    private long earlyDetections = 0;
+    private long firstDetectionEnd = -1;
+
+    // Rilevamenti confrontati con le raffiche etichettate (sorgente sintetica)
+    private long burstsDetected = 0;
+    private long falseAccepts = 0;
+    private long earlyFalseAccepts = 0;
+    private long lastDetectedBurst = -1;
+    private String lastError = null;
+
+    public ReplayBenchmark(SpottingPipeline pipeline, ReplayAudioSource source) {
+        this.pipeline = pipeline;
+        this.source = source;
+        this.recorder = new AudioRecorder(this, source);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String modelPath = null;
+        String wavPath = null;
+        float syntheticSeconds = 0;
+        int loops = 1;
+        boolean realTime = false;
+        boolean useGraph = false;
+        boolean useSegments = false;
+        boolean useEarlyExit = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--model":
+                    modelPath = args[++i];
+                    break;
+                case "--wav":
+                    wavPath = args[++i];
+                    break;
+                case "--synthetic":
+                    syntheticSeconds = Float.parseFloat(args[++i]);
+                    break;
+                case "--loops":
+                    loops = Integer.parseInt(args[++i]);
+                    break;
+                case "--realtime":
+                    realTime = true;
+                    break;
+                case "--graph":
+                    useGraph = true;
+                    break;
+                case "--segments":
+                    useSegments = true;
+                    break;
+                case "--early":
+                    useEarlyExit = true;
+                    break;
+                default:
+                    System.err.println("Argomento sconosciuto: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        if (modelPath == null || (wavPath == null && syntheticSeconds <= 0)) {
+            System.err.println("Uso: ReplayBenchmark --model <file.tflite> (--wav <file> [--loops N] | --synthetic <secondi>) [--realtime] [--graph | [--segments] [--early]]");
+            System.exit(2);
+        }
+
+        KeywordClassifier classifier = new KeywordClassifier(new File(modelPath));
+        if (!classifier.isInitialized()) {
+            System.err.println("❌ Modello non caricato: " + modelPath);
+            System.exit(1);
+        }
+
+        ReplayAudioSource source = wavPath != null
+                ? ReplayAudioSource.open(new File(wavPath), realTime, loops)
+                : SyntheticAudioSource.toneBursts(syntheticSeconds, realTime, 600, 4000);
+
+        if (useGraph) {
+            int exitCode = runGraph(source, classifier);
+            classifier.close();
+            System.exit(exitCode);
+        }
+
+        ReplayBenchmark benchmark = new ReplayBenchmark(
+                new SpottingPipeline(new AudioPreprocessor(), classifier), source);
+        if (useSegments) {
+            benchmark.enableSegments();
+        }
+        if (useEarlyExit) {
+            benchmark.enableEarlyExit();
+        }
+        int exitCode = benchmark.run();
+        classifier.close();
+        System.exit(exitCode);
+    }
+
+    /**
+     * Classifica i segmenti delimitati dal VAD invece delle finestre a cadenza fissa
+     */
+    public void enableSegments() {
+        ensureVad();
+        segmentSpotter = new SegmentSpotter(ModelConfig.INPUT_LENGTH,
+                recorder.getSampleRate() * ModelConfig.SEGMENT_MIN_MS / 1000,
+                recorder.getSampleRate() * ModelConfig.SEGMENT_MAX_MS / 1000,
+                (window, start, end, streamPosition, truncated) -> classify(window, streamPosition, start));
+        vad.setListener(segmentSpotter);
+        recorder.addCaptureTap(segmentSpotter);
+        recorder.setWindowsEnabled(false);
+    }
+
+    /**
+     * Classifica anche le finestre speculative e anticipa i rilevamenti con margine ampio
+     */
+    public void enableEarlyExit() {
+        ensureVad();
+        earlyExit = new EarlyExitPolicy(ModelConfig.EARLY_EXIT_MARGIN, ModelConfig.INPUT_LENGTH);
+        recorder.setPartialWindowListener((window, newSamples, windowEnd) -> classifySpeculative(window, windowEnd),
+                earlyExit::shouldSpeculate,
+                recorder.getSampleRate() * ModelConfig.EARLY_EXIT_MIN_MS / 1000,
+                recorder.getSampleRate() * ModelConfig.EARLY_EXIT_HOP_MS / 1000);
+    }
+
+    /**
+     * VAD sul thread di cattura: delimita i segmenti e gli enunciati dei rilevamenti anticipati
+     */
+    private void ensureVad() {
+        if (vad == null) {
+            EnergyVad energyVad = new EnergyVad(recorder.getSampleRate());
+            recorder.addCaptureTap((data, offset, length, streamPosition) -> energyVad.process(data, offset, length));
+            vad = energyVad;
+        }
+    }
+
+    /**
+     * Esegue il replay fino a fine stream e stampa il riepilogo
+     */
+    public int run() throws InterruptedException {
+        System.out.println("▶️ Replay: " + source.getDescription());
+
+        long startNanos = System.nanoTime();
+        recorder.startRecording();
+        finished.await();
+        long wallNanos = System.nanoTime() - startNanos;
+
+        recorder.release();
+        printSummary(wallNanos);
+        return lastError == null ? 0 : 1;
+    }
+
+    /**
+     * Replay attraverso il grafo di stadi: sorgente, conversione, VAD, finestre, modello
+     * e decoder fusi sul thread chiamante, quindi nessuna finestra scartata
+     */
+    static int runGraph(ReplayAudioSource source, KeywordClassifier classifier) throws InterruptedException {
+        System.out.println("▶️ Replay (grafo): " + source.getDescription());
+        long[] detections = {0};
+        SpottingPipeline pipeline = new SpottingPipeline(new AudioPreprocessor(), classifier);
+        PipelineGraph graph = PipelineStages.keywordSpotting(source, pipeline,
+                new EnergyVad(ModelConfig.SAMPLE_RATE), ModelConfig.SAMPLE_RATE, false,
+                (input, output) -> detections[0]++);
+
+        long startNanos = System.nanoTime();
+        graph.run();
+        double wallSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        System.out.println("=== RISULTATI REPLAY (GRAFO) ===");
+        System.out.println(String.format("Tempo reale: %.1f s, rilevamenti: %d", wallSeconds, detections[0]));
+        System.out.println("Finestre classificate: " + pipeline.getClassifications() +
+                ", saltate (silenzio): " + pipeline.getWindowsSkipped());
+        System.out.println(graph.summary());
+        System.out.println(MemoryBudget.getInstance().report());
+        return 0;
+    }
+
+    private void printSummary(long wallNanos) {
+        double audioSeconds = recorder.getTotalSamplesCaptured() / (double) recorder.getSampleRate();
+        double wallSeconds = wallNanos / 1e9;
+
+        System.out.println("=== RISULTATI REPLAY ===");
+        System.out.println(String.format("Audio elaborato: %.1f s (%.2f ore)", audioSeconds, audioSeconds / 3600));
+        System.out.println(String.format("Tempo reale: %.1f s - fattore %.1fx tempo reale", wallSeconds,
+                wallSeconds > 0 ? audioSeconds / wallSeconds : 0));
+        System.out.println("Finestre: " + windows + ", classificate: " + pipeline.getClassifications() +
+                ", saltate (silenzio): " + pipeline.getWindowsSkipped() + ", rilevamenti: " + detections);
+        if (firstDetectionEnd >= 0) {
+            System.out.println(String.format("Primo rilevamento: %.2f s dall'inizio dello stream",
+                    firstDetectionEnd / (double) recorder.getSampleRate()));
+        }
+        if (earlyExit != null) {
+            System.out.println(earlyExit.summary() + " (rilevamenti anticipati: " + earlyDetections + ")");
+        }
+        if (source instanceof SyntheticAudioSource) {
+            long bursts = ((SyntheticAudioSource) source).getBurstCount(recorder.getTotalSamplesCaptured());
+            System.out.println(String.format("Raffiche etichettate: %d, rilevate: %d, falsi positivi: %d (di cui anticipati: %d)",
+                    bursts, burstsDetected, falseAccepts, earlyFalseAccepts));
+        }
+        if (segmentSpotter != null) {
+            System.out.println("Segmenti: " + segmentSpotter.getSegments() + " (troncati: " +
+                    segmentSpotter.getSegmentsTruncated() + ", troppo brevi: " + segmentSpotter.getSegmentsTooShort() + ")");
+        }
+        System.out.println(processingStats.summary());
+        System.out.println(inferenceStats.summary());
+        if (detectionStats.getCount() > 0) {
+            System.out.println(detectionStats.summary());
+        }
+        System.out.println(MemoryBudget.getInstance().report());
+        if (lastError != null) {
+            System.out.println("❌ Ultimo errore: " + lastError);
+        }
+    }
+
+    // ========== IMPLEMENTAZIONE AudioRecorderListener ==========
+
+    @Override
+    public void onAudioDataReceived(short[] audioData) {
+        if (segmentSpotter == null) {
+            classify(audioData, recorder.getLastWindowEndSample(), vad != null ? vad.getSpeechStartPosition() : -1);
+        }
+    }
+
+    /**
+     * Finestra regolare o segmento; utteranceStart è l'inizio del parlato secondo il VAD (-1 se assente)
+     */
+    private void classify(short[] audioData, long windowEnd, long utteranceStart) {
+        if (earlyExit != null) {
+            earlyExit.onRegularWindow();
+        }
+        // Elaborazione sincrona sul thread di cattura: in modalità max velocità
+        // il tempo di elaborazione frena la lettura, come un dispositivo sovraccarico
+        long startTime = System.nanoTime();
+        ClassificationResult result = pipeline.process(audioData);
+        long processingTime = System.nanoTime() - startTime;
+
+        windows++;
+        processingStats.record(processingTime);
+        if (result == null) {
+            return;
+        }
+
+        inferenceStats.record(result.getInferenceTimeNanos());
+        if (!result.isAccepted()) {
+            return;
+        }
+        // Già emesso in anticipo da una finestra speculativa sullo stesso audio
+        if (earlyExit != null && !earlyExit.acceptRegular(result, windowEnd, utteranceStart)) {
+            return;
+        }
+        recordDetection(windowEnd, processingTime, false);
+    }
+
+    /**
+     * Finestra speculativa (thread di cattura): conta solo se il rilevamento viene anticipato
+     */
+    private void classifySpeculative(short[] window, long windowEnd) {
+        long startTime = System.nanoTime();
+        ClassificationResult result = pipeline.process(window);
+        long processingTime = System.nanoTime() - startTime;
+
+        processingStats.record(processingTime);
+        if (result != null) {
+            inferenceStats.record(result.getInferenceTimeNanos());
+        }
+        if (earlyExit.commitSpeculative(result, windowEnd, vad.getSpeechStartPosition())) {
+            earlyDetections++;
+            recordDetection(windowEnd, processingTime, true);
+        }
+    }
+
+    private void recordDetection(long windowEnd, long processingTime, boolean early) {
+        detections++;
+        if (firstDetectionEnd < 0) {
+            firstDetectionEnd = windowEnd;
+        }
+        if (source instanceof SyntheticAudioSource) {
+            SyntheticAudioSource synthetic = (SyntheticAudioSource) source;
+            labelDetection(synthetic, windowEnd, early);
+            if (synthetic.isInBurst(windowEnd)) {
+                // Rilevato prima della fine della raffica: resta solo l'elaborazione
+                detectionStats.record(processingTime);
+                return;
+            }
+            long burstEnd = synthetic.getLastBurstEnd(windowEnd);
+            if (burstEnd >= 0) {
+                long bufferingNanos = (windowEnd - burstEnd) * 1_000_000_000L / recorder.getSampleRate();
+                detectionStats.record(bufferingNanos + processingTime);
+            }
+        }
+    }
+
+    /**
+     * Corretto se la finestra contiene una raffica non ancora rilevata; altrimenti (nessuna
+     * raffica nella finestra, o la stessa rilevata di nuovo) è un falso positivo
+     */
+    private void labelDetection(SyntheticAudioSource synthetic, long windowEnd, boolean early) {
+        long burstStart = synthetic.getLastBurstStart(windowEnd);
+        boolean burstInWindow = burstStart >= 0
+                && burstStart + synthetic.getBurstFrames() > windowEnd - ModelConfig.INPUT_LENGTH;
+        if (burstInWindow && burstStart != lastDetectedBurst) {
+            lastDetectedBurst = burstStart;
+            burstsDetected++;
+            return;
+        }
+        falseAccepts++;
+        if (early) {
+            earlyFalseAccepts++;
+        }
+    }
+
+    @Override
+    public void onSilenceDetected() {
+    }
+
+    @Override
+    public void onSpeechDetected() {
+    }
+
+    @Override
+    public void onError(String error) {
+        lastError = error;
+        System.err.println("❌ " + error);
+        finished.countDown();
+    }
+
+    @Override
+    public void onRecordingStopped() {
+        finished.countDown();
+    }
+
+    // Getters
+    public long getDetections() {
+        return detections;
+    }
+
+    public long getEarlyDetections() {
+        return earlyDetections;
+    }
+
+    /**
+     * Fine della finestra del primo rilevamento, in campioni (-1 se nessuno)
+     */
+    public long getFirstDetectionEnd() {
+        return firstDetectionEnd;
+    }
+
+    public long getBurstsDetected() {
+        return burstsDetected;
+    }
+
+    public long getFalseAccepts() {
+        return falseAccepts;
+    }
+
+    public long getEarlyFalseAccepts() {
+        return earlyFalseAccepts;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.spotting;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Misura CPU e latenza algoritmica della conversione di formato in cattura:
+ * percorso attuale (AudioRecord a 16 kHz mono, nessuna conversione in app)
+ * contro cattura nativa 44.1/48 kHz mono o stereo con downmix e PolyphaseResampler.
+ *
+ * Uso: ResamplerBenchmark [secondi audio per configurazione, default 600]
+ *
+ * La latenza del ricampionatore di sistema usato dal percorso attuale non è visibile
+ * dall'app: sul dispositivo va confrontata con i valori registrati da MainActivity.
+ */
+public class ResamplerBenchmark {
+
+    private static final int CHUNK_FRAMES = 1024;
+
+    public static void main(String[] args) {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+
+        System.out.println("=== CONVERSIONE IN CATTURA (" + seconds + " s di audio per configurazione) ===");
+        // Riscaldamento JIT
+        run(48000, 2, 30, false);
+
+        run(ModelConfig.SAMPLE_RATE, 1, seconds, true);
+        run(44100, 1, seconds, true);
+        run(44100, 2, seconds, true);
+        run(48000, 1, seconds, true);
+        run(48000, 2, seconds, true);
+    }
+
+    private static void run(int rate, int channels, int seconds, boolean print) {
+        short[] source = new short[CHUNK_FRAMES * channels * 64];
+        Random random = new Random(1);
+        for (int i = 0; i < source.length; i++) {
+            source[i] = (short) (random.nextGaussian() * 3000);
+        }
+
+        PolyphaseResampler resampler = rate != ModelConfig.SAMPLE_RATE
+                ? new PolyphaseResampler(rate, ModelConfig.SAMPLE_RATE, CHUNK_FRAMES)
+                : null;
+        short[] chunk = new short[CHUNK_FRAMES * channels];
+        short[] output = new short[resampler != null ? resampler.getMaxOutputLength(CHUNK_FRAMES) : CHUNK_FRAMES];
+
+        long totalFrames = (long) rate * seconds;
+        long produced = 0;
+        int sourcePosition = 0;
+        long startNanos = System.nanoTime();
+
+        for (long frame = 0; frame < totalFrames; frame += CHUNK_FRAMES) {
+            // Simula la read(): copia del blocco nel buffer di lettura
+            System.arraycopy(source, sourcePosition, chunk, 0, chunk.length);
+            sourcePosition = (sourcePosition + chunk.length) % source.length;
+
+            int frames = channels == 2 ? AudioPreprocessor.stereoToMonoInPlace(chunk, chunk.length) : CHUNK_FRAMES;
+            if (resampler != null) {
+                produced += resampler.process(chunk, 0, frames, output, 0);
+            } else {
+                System.arraycopy(chunk, 0, output, 0, frames);
+                produced += frames;
+            }
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        if (!print) {
+            return;
+        }
+
+        double cpuMsPerSecond = elapsedNanos / 1e6 / seconds;
+        float delayMs = resampler != null ? resampler.getGroupDelayMs() : 0f;
+        float chunkMs = CHUNK_FRAMES * 1000f / rate;
+        System.out.println(String.format(Locale.ROOT,
+                "%5d Hz %-6s: CPU %.3f ms/s (%.3f%% di un core), ritardo filtro %.2f ms, blocco %.1f ms, uscita %d campioni",
+                rate, channels == 2 ? "stereo" : "mono", cpuMsPerSecond, cpuMsPerSecond / 10.0,
+                delayMs, chunkMs, produced));
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.spotting;
+
+import android.util.Log;
+
+/**
+ * Classificazione guidata dagli eventi del VAD invece che da finestre a cadenza fissa:
+ * inizio e fine del parlato delimitano un segmento, e alla sua fine (o quando raggiunge
+ * la durata massima) si costruisce dallo storico una sola finestra centrata sul segmento.
+ * La latenza di rilevamento diventa circa fine della parola + hangover del VAD + inferenza,
+ * con un'inferenza per parola invece di una per hop.
+ *
+ * Va registrato come CaptureTap e come listener dell'EnergyVad alimentato dallo stesso
+ * stream: tutto gira sul thread di cattura, senza sincronizzazione.
+ */
+public class SegmentSpotter implements AudioRecorder.CaptureTap, EnergyVad.Listener {
+    private static final String TAG = "SegmentSpotter";
+
+    public interface Listener {
+        /**
+         * Finestra pronta (windowSamples campioni, già con padding) per il segmento [start, end);
+         * streamPosition è la posizione della cattura al momento dell'emissione
+         */
+        void onSegment(short[] window, long start, long end, long streamPosition, boolean truncated);
+    }
+
+    private final int windowSamples;
+    private final int minSegmentSamples;
+    private final int maxSegmentSamples;
+    private final short[] ring;
+    private final short[] scratch;
+    private final Listener listener;
+    private final MemoryBudget.Reservation reservation;
+
+    private long writePosition = 0;
+    private boolean speechActive = false;
+    private long segmentStart = -1;
+    private long pendingEnd = -1;
+
+    // Statistiche
+    private long segments = 0;
+    private long segmentsTruncated = 0;
+    private long segmentsTooShort = 0;
+
+    public SegmentSpotter(int windowSamples, int minSegmentSamples, int maxSegmentSamples, Listener listener) {
+        this.windowSamples = windowSamples;
+        this.minSegmentSamples = minSegmentSamples;
+        this.maxSegmentSamples = Math.min(maxSegmentSamples, windowSamples);
+        // Serve tutto il contesto prima del segmento più lungo, più il margine di hangover dopo
+        this.ring = new short[windowSamples * 2];
+        this.scratch = new short[windowSamples];
+        this.listener = listener;
+        this.reservation = MemoryBudget.getInstance().register("SegmentSpotter", "ring",
+                MemoryBudget.Kind.HEAP, (ring.length + scratch.length) * 2L);
+    }
+
+    public void release() {
+        reservation.release();
+    }
+
+    // ========== EVENTI VAD ==========
+
+    @Override
+    public void onSpeechStart(long position) {
+        speechActive = true;
+        segmentStart = position;
+        pendingEnd = -1;
+    }
+
+    @Override
+    public void onSpeechEnd(long position) {
+        speechActive = false;
+        // L'emissione avviene dopo la scrittura nel ring: l'ordine dei tap non conta
+        pendingEnd = position;
+    }
+
+    // ========== CATTURA ==========
+
+    @Override
+    public void onSamplesCaptured(short[] data, int offset, int length, long streamPosition) {
+        write(data, offset, length);
+
+        if (pendingEnd >= 0 && writePosition >= pendingEnd) {
+            long end = pendingEnd;
+            pendingEnd = -1;
+            if (segmentStart >= 0 && end - segmentStart >= minSegmentSamples) {
+                emit(segmentStart, end, false);
+            } else {
+                segmentsTooShort++;
+            }
+            segmentStart = -1;
+        } else if (speechActive && segmentStart >= 0 && writePosition - segmentStart >= maxSegmentSamples) {
+            // Parlato continuo: si classifica il tratto e se ne apre un altro
+            emit(segmentStart, writePosition, true);
+            segmentStart = writePosition;
+        }
+    }
+
+    private void write(short[] data, int offset, int length) {
+        if (length > ring.length) {
+            offset += length - ring.length;
+            writePosition += length - ring.length;
+            length = ring.length;
+        }
+        int index = (int) (writePosition % ring.length);
+        int firstPart = Math.min(length, ring.length - index);
+        System.arraycopy(data, offset, ring, index, firstPart);
+        System.arraycopy(data, offset + firstPart, ring, 0, length - firstPart);
+        writePosition += length;
+    }
+
+    /**
+     * Finestra per il segmento [start, end): centrata sul segmento con il contesto
+     * già catturato; ciò che manca dopo diventa zero padding come in resizeAudio
+     */
+    private void emit(long start, long end, boolean truncated) {
+        long oldest = Math.max(0, writePosition - ring.length);
+        long from = Math.max(oldest, (start + end) / 2 - windowSamples / 2);
+        long to = Math.min(writePosition, from + windowSamples);
+
+        int length = (int) (to - from);
+        int index = (int) (from % ring.length);
+        int firstPart = Math.min(length, ring.length - index);
+        System.arraycopy(ring, index, scratch, 0, firstPart);
+        System.arraycopy(ring, 0, scratch, firstPart, length - firstPart);
+
+        short[] window = new short[windowSamples];
+        AudioPreprocessor.fitWindow(scratch, 0, length, window);
+
+        segments++;
+        if (truncated) {
+            segmentsTruncated++;
+        }
+        Log.d(TAG, "Segmento " + start + "-" + end + " (" + (end - start) * 1000 / ModelConfig.SAMPLE_RATE +
+                " ms), finestra " + from + "-" + to + (truncated ? ", troncato" : ""));
+        listener.onSegment(window, start, end, writePosition, truncated);
+    }
+
+    public void reset() {
+        writePosition = 0;
+        speechActive = false;
+        segmentStart = -1;
+        pendingEnd = -1;
+    }
+
+    // Getters
+    public long getSegments() {
+        return segments;
+    }
+
+    public long getSegmentsTruncated() {
+        return segmentsTruncated;
+    }
+
+    public long getSegmentsTooShort() {
+        return segmentsTooShort;
+    }
+}
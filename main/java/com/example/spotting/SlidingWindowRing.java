@@ -0,0 +1,139 @@
+package com.example.spotting;
+
+import java.util.Arrays;
+
+/**
+ * Buffer circolare di una finestra di campioni int16 che scorre di hopSamples alla volta.
+ * È il ring di AudioRecorder e dello stadio windower di PipelineStages: i campioni si
+ * scrivono in place (getSamples() da getWritePosition(), al massimo getWritableChunk()
+ * alla volta) e commit() dice quando è dovuta una finestra. Un solo thread scrittore.
+ */
+public class SlidingWindowRing {
+
+    private final short[] samples;
+    private int writePosition = 0;
+    // Il ring è stato riempito almeno una volta
+    private boolean full = false;
+    private volatile int hopSamples;
+    private int samplesSinceWindow = 0;
+    private long totalSamples = 0;
+
+    public SlidingWindowRing(int windowSamples, int hopSamples) {
+        this.samples = new short[windowSamples];
+        this.hopSamples = hopSamples;
+    }
+
+    public void reset() {
+        writePosition = 0;
+        full = false;
+        samplesSinceWindow = 0;
+        totalSamples = 0;
+    }
+
+    /**
+     * Campioni scrivibili in un blocco dalla posizione corrente: fino alla fine del ring
+     * e, a ring pieno, fino alla prossima finestra
+     */
+    public int getWritableChunk() {
+        int chunk = samples.length - writePosition;
+        if (full) {
+            chunk = Math.min(chunk, Math.max(1, hopSamples - samplesSinceWindow));
+        }
+        return chunk;
+    }
+
+    /**
+     * Contabilizza chunk campioni appena scritti da getWritePosition().
+     * Restituisce true se è dovuta una finestra (ring pieno e hop raggiunto)
+     */
+    public boolean commit(int chunk) {
+        writePosition += chunk;
+        totalSamples += chunk;
+        samplesSinceWindow += chunk;
+        if (writePosition == samples.length) {
+            full = true;
+            writePosition = 0;
+        }
+        if (full && samplesSinceWindow >= hopSamples) {
+            samplesSinceWindow = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Copia la finestra in ordine cronologico (dal campione più vecchio)
+     */
+    public void copyWindow(short[] destination) {
+        int firstPart = samples.length - writePosition;
+        System.arraycopy(samples, writePosition, destination, 0, firstPart);
+        System.arraycopy(samples, 0, destination, firstPart, writePosition);
+    }
+
+    /**
+     * Finestra in ordine cronologico normalizzata (campione / factor), in una sola passata sul ring
+     */
+    public void normalizeWindow(float[] destination, float factor) {
+        AudioKernels kernels = AudioKernels.getInstance();
+        int firstPart = samples.length - writePosition;
+        kernels.normalize(samples, writePosition, destination, 0, firstPart, factor);
+        kernels.normalize(samples, 0, destination, firstPart, writePosition, factor);
+    }
+
+    /**
+     * Campioni del primo riempimento seguiti da zeri di padding
+     */
+    public void copyPaddedWindow(short[] destination) {
+        System.arraycopy(samples, 0, destination, 0, writePosition);
+        Arrays.fill(destination, writePosition, samples.length, (short) 0);
+    }
+
+    /**
+     * RMS degli ultimi length campioni scritti (length <= dimensione del ring)
+     */
+    public double recentRms(int length) {
+        AudioKernels kernels = AudioKernels.getInstance();
+        int start = writePosition - length;
+        long energy = start >= 0
+                ? kernels.sumOfSquares(samples, start, length)
+                : kernels.sumOfSquares(samples, start + samples.length, -start)
+                + kernels.sumOfSquares(samples, 0, writePosition);
+        return Math.sqrt((double) energy / length);
+    }
+
+    /**
+     * Passo tra finestre; vale dalla finestra successiva (sicuro da un altro thread)
+     */
+    public void setHopSamples(int hopSamples) {
+        this.hopSamples = hopSamples;
+    }
+
+    // Getters
+    public short[] getSamples() {
+        return samples;
+    }
+
+    public int getWindowSamples() {
+        return samples.length;
+    }
+
+    public int getWritePosition() {
+        return writePosition;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public int getHopSamples() {
+        return hopSamples;
+    }
+
+    public int getSamplesSinceWindow() {
+        return samplesSinceWindow;
+    }
+
+    public long getTotalSamples() {
+        return totalSamples;
+    }
+}
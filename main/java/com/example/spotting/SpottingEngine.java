@@ -0,0 +1,918 @@
+package com.example.spotting;
+
+import android.app.Application;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+import androidx.lifecycle.AndroidViewModel;
+
+import java.io.File;
+import java.util.SortedMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Motore di riconoscimento in primo piano, indipendente dal ciclo di vita di MainActivity.
+ * Registratore e buffer circolare, interprete, VAD, controllo adattivo, pre-roll, telemetria,
+ * stato delle decisioni e log sopravvivono a rotazioni e cambi di configurazione:
+ * la nuova activity si ricollega con attach() senza reinizializzare nulla né perdere audio.
+ * Le risorse vengono rilasciate solo in onCleared, quando l'activity termina davvero.
+ *
+ * Tutti i riferimenti sono all'Application: la UI è raggiungibile solo tramite UiListener.
+ */
+public class SpottingEngine extends AndroidViewModel implements AudioRecorder.AudioRecorderListener {
+    private static final String TAG = "SpottingEngine";
+    private static final int LOG_CAPACITY = 500;
+    // Finestre in attesa di inferenza: oltre, si scarta la più vecchia
+    private static final int MAX_INFERENCE_BACKLOG = 2;
+    // Cadenza con cui il thread di telemetria scrive i record in coda
+    private static final long TELEMETRY_DRAIN_MS = 1000;
+
+    /**
+     * Notifiche verso l'activity collegata (da qualsiasi thread)
+     */
+    public interface UiListener {
+        void onLogUpdated();
+
+        void onStateChanged();
+    }
+
+    private final Application application;
+    // Il log vive col motore: dopo la rotazione la lista mostra anche i messaggi precedenti
+    private final LogRingBuffer logRing = new LogRingBuffer(LOG_CAPACITY);
+    private volatile UiListener uiListener;
+    private boolean initialized = false;
+
+    private KeywordClassifier keywordClassifier;
+    private AudioRecorder audioRecorder;
+    private AudioPreprocessor audioPreprocessor;
+    private SpottingPipeline spottingPipeline;
+    private PreRollBuffer preRollBuffer;
+    private ClipRecorder clipRecorder;
+    private CommandDispatcher commandDispatcher;
+    private KeywordEmbedder keywordEmbedder;
+    private CustomKeywordSpotter customKeywordSpotter;
+
+    // Storico persistente di finestre e rilevamenti; compattazione e query sul proprio thread
+    private TelemetryStore telemetryStore;
+    // Unico thread che scrive lo storico: drain periodico della coda, force, compattazione
+    private ScheduledExecutorService telemetryExecutor;
+
+    private volatile boolean isRecording = false;
+
+    // Ascolto in background: in onPause dell'activity la cattura passa a ListeningService
+    private boolean backgroundMode = false;
+    private boolean resumeAfterBackground = false;
+    private CpuUsageMeter cpuUsageMeter;
+
+    // Contatori per statistiche: scritti dal thread di inferenza, letti dal main thread
+    private final AtomicInteger totalClassifications = new AtomicInteger();
+    private final AtomicInteger successfulClassifications = new AtomicInteger();
+    // Duplicati dello stesso comando da finestre sovrapposte, per posizione nello stream
+    private final DetectionDecoder detectionDecoder = DetectionDecoder.forEngine();
+
+    // Inferenza su un thread dedicato con coda limitata
+    private ThreadPoolExecutor inferenceExecutor;
+
+    // Punto di lavoro adattivo (hop, thread, cascata VAD) secondo latenza e temperatura
+    private AdaptiveController adaptiveController;
+    private EnergyVad energyVad;
+    private SegmentSpotter segmentSpotter;
+    // Rilevamento anticipato su finestre speculative (tra finestre regolari o segmenti)
+    private EarlyExitPolicy earlyExit;
+    private volatile boolean cascadeEnabled = false;
+    private volatile int pendingNumThreads = 0;
+    // Scritti dai thread di cattura e di inferenza, letti dal thread principale
+    private final LongAdder windowsGated = new LongAdder();
+    private final LongAdder windowsDropped = new LongAdder();
+    private PowerManager powerManager;
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+
+    // Copie per finestra (int16 dal ring + float preprocessati): al massimo la coda più
+    // quella in inferenza e quella appena emessa dal thread di cattura
+    private MemoryBudget.Reservation windowMemory;
+
+    public SpottingEngine(Application application) {
+        super(application);
+        this.application = application;
+    }
+
+    /**
+     * Collega la UI; restituisce true se il motore era già inizializzato (activity ricreata)
+     */
+    public boolean attach(UiListener listener) {
+        uiListener = listener;
+        if (initialized) {
+            return true;
+        }
+        initialized = true;
+        initComponents();
+        return false;
+    }
+
+    /**
+     * Scollega la UI (onDestroy dell'activity): il motore continua a girare
+     */
+    public void detach(UiListener listener) {
+        if (uiListener == listener) {
+            uiListener = null;
+        }
+    }
+
+    private void initComponents() {
+        try {
+            // Un solo thread di inferenza; se resta indietro si scarta la finestra più vecchia
+            inferenceExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(MAX_INFERENCE_BACKLOG),
+                    (task, executor) -> {
+                        if (!executor.isShutdown()) {
+                            executor.getQueue().poll();
+                            windowsDropped.increment();
+                            executor.execute(task);
+                        }
+                    });
+
+            // Inizializza KeywordClassifier
+            keywordClassifier = new KeywordClassifier(application);
+            if (keywordClassifier.isInitialized()) {
+                logMessage("✅ KeywordClassifier inizializzato");
+                logMessage("📊 Input: " + keywordClassifier.getInputSize() +
+                        " campioni, Output: " + keywordClassifier.getOutputSize() + " classi");
+                logMessage("🎯 Soglia confidenza: " + (keywordClassifier.getConfidenceThreshold() * 100) + "%");
+            } else {
+                logMessage("❌ KeywordClassifier non inizializzato");
+                return;
+            }
+
+            // Inizializza AudioPreprocessor
+            audioPreprocessor = new AudioPreprocessor();
+            logMessage("✅ AudioPreprocessor inizializzato");
+            logMessage("📊 Samples attesi: " + audioPreprocessor.getExpectedSamples());
+
+            spottingPipeline = new SpottingPipeline(audioPreprocessor, keywordClassifier);
+            windowMemory = MemoryBudget.getInstance().register(TAG, "copie per finestra", MemoryBudget.Kind.HEAP,
+                    (MAX_INFERENCE_BACKLOG + 2) * (long) ModelConfig.INPUT_LENGTH * (2 + 4));
+            initCustomKeywords();
+            initTelemetry();
+
+            // Azioni dei comandi, eseguite fuori dal thread di riconoscimento
+            commandDispatcher = new CommandDispatcher();
+            registerCommandHandlers();
+
+            // Inizializza AudioRecorder
+            audioRecorder = new AudioRecorder(this, createCaptureSource());
+            logMessage("✅ AudioRecorder inizializzato");
+            logMessage("🔧 Sample Rate: " + audioRecorder.getSampleRate() + "Hz (cattura: " +
+                    audioRecorder.getCaptureSampleRate() + "Hz)");
+            logMessage("🔧 Buffer Size: " + audioRecorder.getBufferSizeInSamples() + " campioni");
+            logMessage("⏱️ Durata buffer: " + String.format("%.2f", audioRecorder.getBufferDurationSeconds()) + " secondi");
+
+            // VAD sul thread di cattura: cancello davanti al classificatore quando la cascata è attiva
+            energyVad = new EnergyVad(audioRecorder.getSampleRate());
+            audioRecorder.addCaptureTap((data, offset, length, streamPosition) ->
+                    energyVad.process(data, offset, length));
+            if (ModelConfig.SEGMENT_CLASSIFICATION) {
+                // Gli eventi del VAD delimitano i segmenti da classificare
+                segmentSpotter = new SegmentSpotter(ModelConfig.INPUT_LENGTH,
+                        audioRecorder.getSampleRate() * ModelConfig.SEGMENT_MIN_MS / 1000,
+                        audioRecorder.getSampleRate() * ModelConfig.SEGMENT_MAX_MS / 1000,
+                        this::onSpeechSegment);
+                energyVad.setListener(segmentSpotter);
+                audioRecorder.addCaptureTap(segmentSpotter);
+                // Le finestre a cadenza fissa non servono: niente copia né RMS per hop
+                audioRecorder.setWindowsEnabled(false);
+                logMessage("✅ Classificazione per segmenti VAD attiva");
+            }
+            if (ModelConfig.EARLY_EXIT_ENABLED) {
+                // Finestre parziali a inizio sessione e fuori cadenza tra una finestra (o un segmento)
+                // e l'altra, copiate solo con il thread di inferenza libero
+                earlyExit = new EarlyExitPolicy(ModelConfig.EARLY_EXIT_MARGIN, ModelConfig.INPUT_LENGTH);
+                audioRecorder.setPartialWindowListener(this::onPartialWindow, this::isReadyToSpeculate,
+                        audioRecorder.getSampleRate() * ModelConfig.EARLY_EXIT_MIN_MS / 1000,
+                        audioRecorder.getSampleRate() * ModelConfig.EARLY_EXIT_HOP_MS / 1000);
+                logMessage("✅ Rilevamento anticipato attivo (margine minimo " +
+                        Math.round(ModelConfig.EARLY_EXIT_MARGIN * 100) + "%)");
+            }
+
+            adaptiveController = new AdaptiveController(ModelConfig.ADAPTIVE_TARGET_LATENCY_MS,
+                    (previous, current, reason) -> {
+                        applyOperatingPoint(current);
+                        logMessage("⚙️ Punto di lavoro: " + previous.getName() + " → " + current.getName() +
+                                " (" + reason + ")");
+                    });
+            applyOperatingPoint(adaptiveController.getOperatingPoint());
+            registerThermalListener();
+            logMessage("✅ Controllo adattivo: " + adaptiveController.getOperatingPoint() +
+                    ", latenza target " + adaptiveController.getTargetLatencyMs() + " ms");
+
+            initClips();
+            logMessage("🧮 " + MemoryBudget.getInstance().report());
+
+        } catch (Exception e) {
+            logMessage("❌ Errore inizializzazione: " + e.getMessage());
+            Log.e(TAG, "Errore inizializzazione", e);
+        }
+    }
+
+    /**
+     * Storico audio fuori heap per le clip dei rilevamenti. È facoltativo: se il MemoryBudget
+     * non basta per tutto lo storico si tiene solo quello di una clip, altrimenti niente clip
+     */
+    private void initClips() {
+        int sampleRate = audioRecorder.getSampleRate();
+        preRollBuffer = PreRollBuffer.tryCreate(sampleRate, ModelConfig.PREROLL_HISTORY_SECONDS);
+        if (preRollBuffer == null) {
+            preRollBuffer = PreRollBuffer.tryCreate(sampleRate,
+                    ModelConfig.CLIP_PREROLL_SECONDS + ModelConfig.CLIP_POSTROLL_SECONDS);
+        }
+        if (preRollBuffer == null) {
+            logMessage("⚠️ Budget di memoria esaurito: clip dei rilevamenti disattivate");
+            return;
+        }
+
+        audioRecorder.addCaptureTap(preRollBuffer);
+        File clipDirectory = application.getExternalFilesDir("clips");
+        if (clipDirectory == null) {
+            clipDirectory = new File(application.getFilesDir(), "clips");
+        }
+        clipRecorder = new ClipRecorder(preRollBuffer, clipDirectory, ModelConfig.CLIP_PREROLL_SECONDS,
+                ModelConfig.CLIP_POSTROLL_SECONDS, ModelConfig.CLIP_DISK_QUOTA_BYTES, ModelConfig.CLIP_LOSSLESS);
+        clipRecorder.setListener((file, duration) ->
+                logMessage(String.format("💾 Clip salvata: %s (%.1f s)", file.getName(), duration)));
+        logMessage("✅ Pre-roll: " + String.format("%.0f", preRollBuffer.getCapacitySeconds()) +
+                " s (tieni premuto il pulsante per salvare una clip)");
+    }
+
+    /**
+     * Apre lo storico di telemetria e compatta i segmenti vecchi in background
+     */
+    private void initTelemetry() {
+        try {
+            telemetryStore = new TelemetryStore(new File(application.getFilesDir(), "telemetry"),
+                    ModelConfig.TELEMETRY_SEGMENT_BYTES,
+                    ModelConfig.TELEMETRY_RAW_RETENTION_DAYS * TelemetryStore.DAY_MILLIS,
+                    ModelConfig.TELEMETRY_DISK_QUOTA_BYTES);
+            TelemetryStore store = telemetryStore;
+            telemetryExecutor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Telemetry"));
+            telemetryExecutor.execute(() -> store.compact(System.currentTimeMillis()));
+            telemetryExecutor.scheduleWithFixedDelay(store::drain, TELEMETRY_DRAIN_MS, TELEMETRY_DRAIN_MS,
+                    TimeUnit.MILLISECONDS);
+            logMessage("✅ Storico telemetria: " + telemetryStore.summary());
+        } catch (Exception e) {
+            telemetryStore = null;
+            logMessage("⚠️ Storico telemetria non disponibile: " + e.getMessage());
+            Log.w(TAG, "Telemetria non disponibile", e);
+        }
+    }
+
+    /**
+     * Riepilogo dallo storico (tutte le sessioni): rilevamenti nelle ultime 24 ore
+     * e latenze di oggi. Gira sul thread di telemetria.
+     */
+    private void logTelemetrySummary() {
+        long now = System.currentTimeMillis();
+        SortedMap<Long, Long> perHour = telemetryStore.detectionsPerHour(now - TelemetryStore.DAY_MILLIS, now);
+        long detections = 0;
+        long peak = 0;
+        for (long count : perHour.values()) {
+            detections += count;
+            peak = Math.max(peak, count);
+        }
+        logMessage("📈 Storico: " + detections + " rilevamenti nelle ultime 24 h (max " + peak + " in un'ora)");
+
+        SortedMap<Long, LatencyHistogram> perDay = telemetryStore.latencyByDay(now - TelemetryStore.DAY_MILLIS, now + 1);
+        if (!perDay.isEmpty()) {
+            logMessage("   • Latenza oggi: " + perDay.get(perDay.lastKey()).summary());
+        }
+        logMessage("   • " + telemetryStore.summary());
+    }
+
+    /**
+     * Parole chiave personalizzate, solo se il modello di embedding è presente negli asset
+     */
+    private void initCustomKeywords() {
+        keywordEmbedder = new KeywordEmbedder(application);
+        if (!keywordEmbedder.isInitialized()) {
+            logMessage("ℹ️ Parole personalizzate non disponibili (manca " + ModelConfig.EMBEDDING_MODEL_FILE + ")");
+            keywordEmbedder = null;
+            return;
+        }
+        customKeywordSpotter = new CustomKeywordSpotter(keywordEmbedder,
+                new File(application.getFilesDir(), ModelConfig.CUSTOM_KEYWORD_INDEX_FILE));
+        customKeywordSpotter.setListener((label, recorded, total) -> {
+            logMessage("📝 Parola '" + label + "': ripetizione " + recorded + "/" + total + " registrata");
+            if (recorded == total) {
+                logMessage("✅ Parola personalizzata '" + label + "' pronta");
+            }
+        });
+        spottingPipeline.setCustomKeywords(customKeywordSpotter);
+        String[] keywords = customKeywordSpotter.getKeywords();
+        logMessage("✅ Parole personalizzate: " + (keywords.length == 0 ? "nessuna" : String.join(", ", keywords)));
+    }
+
+    /**
+     * Sorgente di cattura: microfono alla frequenza nativa se abilitato,
+     * altrimenti null (AudioRecorder usa il microfono a 16 kHz)
+     */
+    private AudioSource createCaptureSource() {
+        if (!ModelConfig.CAPTURE_AT_NATIVE_RATE) {
+            return null;
+        }
+        try {
+            return MicAudioSource.lowLatency(application, MicAudioSource.getNativeSampleRate(application), 1);
+        } catch (Exception e) {
+            Log.w(TAG, "Cattura a frequenza nativa non disponibile, uso 16 kHz", e);
+            return null;
+        }
+    }
+
+    public void saveClipNow() {
+        if (clipRecorder == null) {
+            logMessage("❌ Clip disattivate (budget di memoria)");
+            return;
+        }
+        if (!isRecording) {
+            logMessage("❌ Clip disponibile solo durante la registrazione");
+            return;
+        }
+        clipRecorder.requestClipNow("manual");
+        logMessage("💾 Clip richiesta - salvataggio tra " +
+                String.format("%.0f", clipRecorder.getPostRollSeconds()) + " secondi");
+    }
+
+    public void toggleBackgroundMode() {
+        backgroundMode = !backgroundMode;
+        if (backgroundMode) {
+            logMessage("🌙 Ascolto in background ATTIVO - continuerà con l'app in background");
+        } else {
+            logMessage("🌙 Ascolto in background disattivato");
+        }
+        notifyStateChanged();
+    }
+
+    /**
+     * Ripresa dell'ascolto in primo piano al ritorno dal servizio di background
+     */
+    public void setResumeAfterBackground(boolean resumeAfterBackground) {
+        this.resumeAfterBackground = resumeAfterBackground;
+    }
+
+    public void startRecording() {
+        try {
+            if (segmentSpotter != null) {
+                // VAD e segmenti contano i campioni dallo stesso istante della cattura
+                energyVad.reset();
+                segmentSpotter.reset();
+            }
+            audioRecorder.startRecording();
+            isRecording = true;
+            ListeningService.setAppCaptureActive(true);
+
+            // Reset statistiche
+            totalClassifications.set(0);
+            successfulClassifications.set(0);
+            windowsGated.reset();
+            windowsDropped.reset();
+            if (earlyExit != null) {
+                earlyExit.reset();
+            }
+            detectionDecoder.reset();
+            if (telemetryStore != null) {
+                telemetryStore.startSession();
+            }
+            cpuUsageMeter = new CpuUsageMeter("foreground");
+            cpuUsageMeter.start();
+
+            logMessage("🎙️ Registrazione AVVIATA - Parlare ora...");
+            logMessage("🎯 In ascolto per i comandi vocali...");
+            logMessage("⏳ Il primo buffer completo sarà pronto tra " +
+                    String.format("%.1f", audioRecorder.getBufferDurationSeconds()) + " secondi");
+            if (adaptiveController != null && segmentSpotter == null) {
+                logMessage("⚙️ Poi una finestra ogni " + audioRecorder.getHopSamples() * 1000 / audioRecorder.getSampleRate() +
+                        " ms (" + adaptiveController.getOperatingPoint() + ")");
+            }
+            if (earlyExit != null) {
+                logMessage("⚡ Comandi chiari riconosciuti già dopo " +
+                        String.format("%.1f", ModelConfig.EARLY_EXIT_MIN_MS / 1000f) + " secondi di parlato");
+            }
+
+            notifyStateChanged();
+
+        } catch (Exception e) {
+            logMessage("❌ Errore avvio registrazione: " + e.getMessage());
+            Log.e(TAG, "Errore avvio registrazione", e);
+        }
+    }
+
+    public void stopRecording() {
+        try {
+            if (audioRecorder != null) {
+                audioRecorder.stopRecording();
+            }
+            isRecording = false;
+            ListeningService.setAppCaptureActive(false);
+            // I client del motore condiviso restano in ascolto con la cattura del servizio
+            ListeningService.resumeForClients(getApplication());
+
+            // Le finestre ancora in coda appartengono alla sessione fermata: niente rilevamenti
+            // (né clip o azioni) dopo lo stop. Quella in corso finisce, le ultime dalla cattura
+            // vengono scartate da processAudioData
+            int discarded = 0;
+            if (inferenceExecutor != null) {
+                discarded = inferenceExecutor.getQueue().size();
+                inferenceExecutor.getQueue().clear();
+            }
+
+            logMessage("⏹️ Registrazione FERMATA");
+            logMessage("📊 Statistiche sessione:");
+            int total = totalClassifications.get();
+            int successful = successfulClassifications.get();
+            logMessage("   • Classificazioni totali: " + total);
+            logMessage("   • Comandi riconosciuti: " + successful);
+            if (total > 0) {
+                int successRate = (successful * 100) / total;
+                logMessage("   • Tasso successo: " + successRate + "%");
+            }
+            if (audioRecorder != null && audioRecorder.getCaptureStats().getReads() > 0) {
+                logMessage("   • Cattura: " + audioRecorder.getCaptureStats().summary());
+            }
+            if (adaptiveController != null) {
+                logMessage(String.format("   • Punto di lavoro: %s, latenza media %.0f ms, %d cambi",
+                        adaptiveController.getOperatingPoint().getName(),
+                        adaptiveController.getSmoothedLatencyMs(), adaptiveController.getChanges()));
+                logMessage("   • Finestre saltate dal VAD: " + windowsGated.sum() + ", scartate per ritardo: " +
+                        windowsDropped.sum() + ", scartate allo stop: " + discarded);
+            }
+            if (earlyExit != null) {
+                logMessage("   • " + earlyExit.summary());
+            }
+            if (segmentSpotter != null) {
+                logMessage("   • Segmenti classificati: " + segmentSpotter.getSegments() + " (troncati: " +
+                        segmentSpotter.getSegmentsTruncated() + ", troppo brevi: " +
+                        segmentSpotter.getSegmentsTooShort() + ")");
+            }
+            if (audioRecorder != null && audioRecorder.getCaptureSampleRate() != audioRecorder.getSampleRate()) {
+                logMessage(String.format("   • Conversione %dHz→%dHz: %.2f ms CPU/s, ritardo %.2f ms",
+                        audioRecorder.getCaptureSampleRate(), audioRecorder.getSampleRate(),
+                        audioRecorder.getConversionCpuMsPerSecond(), audioRecorder.getConversionLatencyMs()));
+            }
+            if (cpuUsageMeter != null && cpuUsageMeter.isRunning()) {
+                cpuUsageMeter.stop();
+                logMessage("   • " + cpuUsageMeter.summary());
+            }
+            logMessage("   • " + MemoryBudget.getInstance().summary());
+            if (telemetryStore != null && telemetryExecutor != null && !telemetryExecutor.isShutdown()) {
+                TelemetryStore store = telemetryStore;
+                telemetryExecutor.execute(() -> {
+                    store.flush();
+                    logTelemetrySummary();
+                });
+            }
+
+            notifyStateChanged();
+
+        } catch (Exception e) {
+            logMessage("❌ Errore stop registrazione: " + e.getMessage());
+            Log.e(TAG, "Errore stop registrazione", e);
+        }
+    }
+
+    public boolean hasRequiredComponents() {
+        return keywordClassifier != null && keywordClassifier.isInitialized() &&
+                audioRecorder != null &&
+                audioPreprocessor != null &&
+                spottingPipeline != null;
+    }
+
+    // ========== IMPLEMENTAZIONE AudioRecorderListener ==========
+
+    @Override
+    public void onAudioDataReceived(short[] audioData) {
+        // Chiamato sul thread di cattura ogni hop campioni, a buffer circolare pieno (44032 campioni)
+        long windowEnd = audioRecorder.getLastWindowEndSample();
+        // Letto qui, sul thread del VAD: identifica l'enunciato per i duplicati dei rilevamenti anticipati
+        long utteranceStart = energyVad != null ? energyVad.getSpeechStartPosition() : -1;
+
+        // In modalità segmenti le finestre a cadenza fissa sono disattivate (flushBuffer a parte)
+        if (segmentSpotter != null) {
+            return;
+        }
+
+        if (earlyExit != null) {
+            earlyExit.onRegularWindow();
+        }
+
+        // Cascata: senza attività VAD nella finestra il classificatore non parte
+        if (cascadeEnabled && energyVad != null) {
+            long windowStart = windowEnd - audioData.length;
+            if (!energyVad.isSpeechActive() && energyVad.getLastActivityPosition() <= windowStart) {
+                windowsGated.increment();
+                if (telemetryStore != null) {
+                    telemetryStore.recordWindow(TelemetryRecord.FLAG_GATED, -1, 0f, 0, 0, 0);
+                }
+                return;
+            }
+        }
+
+        // Elaborazione asincrona per non bloccare il thread audio
+        long enqueuedAt = System.nanoTime();
+        if (inferenceExecutor != null && !inferenceExecutor.isShutdown()) {
+            inferenceExecutor.execute(() -> processAudioData(audioData, windowEnd, utteranceStart, enqueuedAt));
+        } else {
+            processAudioData(audioData, windowEnd, utteranceStart, enqueuedAt);
+        }
+    }
+
+    /**
+     * Sonda del thread di cattura prima di copiare una finestra speculativa: si classifica solo
+     * con il thread di inferenza libero, così le finestre regolari non aspettano mai quelle speculative
+     */
+    private boolean isReadyToSpeculate() {
+        if (!earlyExit.shouldSpeculate() || inferenceExecutor == null || inferenceExecutor.isShutdown()
+                || inferenceExecutor.getActiveCount() > 0 || !inferenceExecutor.getQueue().isEmpty()) {
+            return false;
+        }
+        // Le finestre parziali non vanno usate come esempi di una parola personalizzata
+        return customKeywordSpotter == null || !customKeywordSpotter.isEnrolling();
+    }
+
+    /**
+     * Finestra speculativa (thread di cattura), già passata per isReadyToSpeculate
+     */
+    private void onPartialWindow(short[] window, int newSamples, long windowEnd) {
+        long utteranceStart = energyVad != null ? energyVad.getSpeechStartPosition() : -1;
+        inferenceExecutor.execute(() -> processSpeculativeWindow(window, windowEnd, utteranceStart));
+    }
+
+    /**
+     * Fine di un segmento di parlato (thread di cattura): la sua finestra va in coda all'inferenza
+     */
+    private void onSpeechSegment(short[] window, long start, long end, long streamPosition, boolean truncated) {
+        // Il segmento fa le veci della finestra regolare: le speculazioni ripartono
+        if (earlyExit != null) {
+            earlyExit.onRegularWindow();
+        }
+        long enqueuedAt = System.nanoTime();
+        if (inferenceExecutor != null && !inferenceExecutor.isShutdown()) {
+            inferenceExecutor.execute(() -> processAudioData(window, streamPosition, start, enqueuedAt));
+        }
+    }
+
+    @Override
+    public void onRecordingStopped() {
+        logMessage("🔄 Registrazione fermata dal sistema");
+        Log.d(TAG, "AudioRecorder fermato dal sistema");
+    }
+
+    @Override
+    public void onSilenceDetected() {
+        // Log del silenzio solo per debug verbose
+        Log.v(TAG, "Silenzio rilevato");
+    }
+
+    @Override
+    public void onSpeechDetected() {
+        logMessage("🗣️ Parlato rilevato - Elaborazione in corso...");
+        Log.d(TAG, "Speech rilevato");
+    }
+
+    @Override
+    public void onError(String error) {
+        logMessage("❌ Errore AudioRecorder: " + error);
+        Log.e(TAG, "Errore AudioRecorder: " + error);
+
+        // In caso di errore, ferma la registrazione
+        if (isRecording) {
+            stopRecording();
+        }
+    }
+
+    // ========== ELABORAZIONE AUDIO ==========
+
+    private void processAudioData(short[] rawAudioData, long windowEnd, long utteranceStart, long enqueuedAt) {
+        if (!isRecording) {
+            // Finestra accodata dopo lo stop della sessione
+            return;
+        }
+        try {
+            Log.v(TAG, "Elaborazione audio: " + (rawAudioData != null ? rawAudioData.length : 0) + " campioni");
+
+            // Il cambio di thread ricrea l'Interpreter: va fatto qui, sul thread di inferenza
+            int numThreads = pendingNumThreads;
+            if (numThreads > 0) {
+                pendingNumThreads = 0;
+                keywordClassifier.setNumThreads(numThreads);
+            }
+
+            // Preprocessing, rilevamento parlato, validazione e classificazione
+            long startedAt = System.nanoTime();
+            ClassificationResult result = spottingPipeline.process(rawAudioData);
+            long queueWaitNanos = startedAt - enqueuedAt;
+            long processNanos = System.nanoTime() - startedAt;
+            if (adaptiveController != null) {
+                adaptiveController.recordWindow(queueWaitNanos, processNanos,
+                        inferenceExecutor != null ? inferenceExecutor.getQueue().size() : 0);
+            }
+
+            long preprocessNanos = spottingPipeline.getLastPreprocessNanos();
+            long inferenceNanos = Math.max(0, processNanos - preprocessNanos);
+            int flags = energyVad != null && energyVad.isSpeechActive() ? TelemetryRecord.FLAG_SPEECH : 0;
+            if (telemetryStore != null) {
+                telemetryStore.recordWindow(result == null ? flags | TelemetryRecord.FLAG_SILENCE : flags,
+                        result != null ? result.getClassIndex() : -1, result != null ? result.getConfidence() : 0f,
+                        queueWaitNanos, preprocessNanos, inferenceNanos);
+            }
+
+            if (result == null) {
+                // Silenzio o finestra non classificabile - niente da mostrare
+                return;
+            }
+
+            int classification = totalClassifications.incrementAndGet();
+
+            if (result.isAccepted()) {
+                // Già emesso in anticipo da una finestra speculativa sullo stesso audio
+                if (earlyExit != null && !earlyExit.acceptRegular(result, windowEnd, utteranceStart)) {
+                    return;
+                }
+                if (handleClassificationResult(result, windowEnd) && telemetryStore != null) {
+                    telemetryStore.recordDetection(flags, result.getClassIndex(), result.getConfidence(),
+                            queueWaitNanos, preprocessNanos, inferenceNanos);
+                }
+            } else {
+                // Log occasionale per l'utente
+                if (classification % 3 == 0) {
+                    logMessage("🔍 Analizzando audio... (tentativo " + classification + ")");
+                }
+                Log.d(TAG, "Classificazione #" + classification + " - Nessun comando riconosciuto");
+            }
+
+        } catch (Exception e) {
+            logMessage("❌ Errore elaborazione audio: " + e.getMessage());
+            Log.e(TAG, "Errore elaborazione audio", e);
+        }
+    }
+
+    /**
+     * Finestra speculativa: il rilevamento si emette solo con margine ampio, altrimenti
+     * si aspetta la finestra successiva
+     */
+    private void processSpeculativeWindow(short[] window, long windowEnd, long utteranceStart) {
+        if (!isRecording) {
+            return;
+        }
+        try {
+            ClassificationResult result = spottingPipeline.process(window);
+            if (earlyExit.commitSpeculative(result, windowEnd, utteranceStart)) {
+                Log.d(TAG, "Rilevamento anticipato: " + result + " (margine " +
+                        String.format("%.2f", result.getMargin()) + ")");
+                totalClassifications.incrementAndGet();
+                handleClassificationResult(result, windowEnd);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Errore elaborazione finestra speculativa", e);
+        }
+    }
+
+    /**
+     * Restituisce true se il comando è stato accettato (supportato e non duplicato)
+     */
+    private boolean handleClassificationResult(ClassificationResult result, long windowEnd) {
+        try {
+            String command = result.getLabel();
+            float confidence = result.getConfidencePercent();
+
+            // Verifica se è un comando supportato (o una parola personalizzata)
+            boolean custom = result.getClassIndex() == CustomKeywordSpotter.CUSTOM_CLASS_INDEX;
+            if (!custom && !ModelConfig.isCommandSupported(command)) {
+                Log.d(TAG, "Comando non supportato: " + command);
+                return false;
+            }
+
+            // Evita duplicati con soglia dinamica basata sulla confidenza (1-1.5 secondi di stream)
+            if (!detectionDecoder.accept(result, windowEnd)) {
+                Log.d(TAG, "Comando duplicato ignorato: " + command + " (dopo " +
+                        detectionDecoder.getSamplesSinceLast(windowEnd) * 1000 / ModelConfig.SAMPLE_RATE + "ms)");
+                return false;
+            }
+
+            // Aggiorna statistiche
+            successfulClassifications.incrementAndGet();
+
+            // Con la cattura in primo piano i client del motore condiviso ricevono i rilevamenti da qui
+            ListeningService.publishDetection(result);
+
+            // Ottieni descrizione del comando
+            String description = custom ? "Parola personalizzata" : ModelConfig.getCommandDescription(command);
+
+            // Log del risultato
+            logMessage("✅ COMANDO RICONOSCIUTO: " + command.toUpperCase());
+            logMessage("   📝 " + description);
+            logMessage("   🎯 " + (custom ? "Similarità" : "Confidenza") + ": " + String.format("%.1f%%", confidence));
+
+            Log.i(TAG, "Comando riconosciuto: " + command + " (confidenza: " + confidence + "%)");
+
+            // Salva l'audio intorno al rilevamento per l'analisi dei falsi positivi
+            if (clipRecorder != null) {
+                clipRecorder.requestClip(command, windowEnd);
+            }
+
+            // Esegui le azioni associate al comando (asincrone)
+            if (commandDispatcher == null || commandDispatcher.dispatch(result) == 0) {
+                logMessage("   ➡️ Comando riconosciuto ma nessuna azione definita");
+            }
+            return true;
+
+        } catch (Exception e) {
+            logMessage("❌ Errore gestione risultato: " + e.getMessage());
+            Log.e(TAG, "Errore gestione risultato", e);
+            return false;
+        }
+    }
+
+    /**
+     * Applica un punto di lavoro: hop e VAD subito, thread alla prossima inferenza
+     */
+    private void applyOperatingPoint(OperatingPoint point) {
+        if (audioRecorder != null) {
+            audioRecorder.setHopSamples(point.getHopSamples());
+        }
+        if (energyVad != null) {
+            energyVad.setAggressiveness(point.getVadAggressiveness());
+        }
+        cascadeEnabled = point.isCascade();
+        pendingNumThreads = point.getNumThreads();
+    }
+
+    /**
+     * Stato termico del dispositivo (API 29+): limita il punto di lavoro più costoso
+     */
+    private void registerThermalListener() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return;
+        }
+        powerManager = (PowerManager) application.getSystemService(Application.POWER_SERVICE);
+        if (powerManager == null) {
+            return;
+        }
+        thermalListener = status -> adaptiveController.onThermalStatus(status);
+        adaptiveController.onThermalStatus(powerManager.getCurrentThermalStatus());
+        powerManager.addThermalStatusListener(thermalListener);
+    }
+
+    private void registerCommandHandlers() {
+        commandDispatcher.register("yes", result -> logMessage("   ➡️ Azione: Conferma affermativa"));
+        commandDispatcher.register("no", result -> logMessage("   ➡️ Azione: Negazione"));
+        commandDispatcher.register("stop", result -> logMessage("   ➡️ Azione: Arresto operazione"));
+        commandDispatcher.register("go", result -> logMessage("   ➡️ Azione: Avvio operazione"));
+        for (String direction : new String[]{"up", "down", "left", "right"}) {
+            commandDispatcher.register(direction, result -> logMessage("   ➡️ Azione: Movimento " + result.getLabel()));
+        }
+        commandDispatcher.register("on", result -> logMessage("   ➡️ Azione: Attivazione"));
+        commandDispatcher.register("off", result -> logMessage("   ➡️ Azione: Disattivazione"));
+    }
+
+    /**
+     * Registra una parola personalizzata dalle prossime ripetizioni pronunciate in ascolto
+     */
+    public void enrollCustomKeyword(String label) {
+        if (customKeywordSpotter == null) {
+            logMessage("❌ Parole personalizzate non disponibili");
+            return;
+        }
+        customKeywordSpotter.startEnrollment(label, ModelConfig.CUSTOM_KEYWORD_UTTERANCES);
+        logMessage("📝 Pronuncia '" + label + "' " + ModelConfig.CUSTOM_KEYWORD_UTTERANCES +
+                " volte, con una pausa tra una e l'altra");
+        if (!isRecording && hasRequiredComponents()) {
+            startRecording();
+        }
+    }
+
+    // ========== UTILITY ==========
+
+    /**
+     * Aggiunge un messaggio al log; chiamabile da qualsiasi thread
+     */
+    public void logMessage(String message) {
+        logRing.add(message, System.currentTimeMillis());
+        UiListener listener = uiListener;
+        if (listener != null) {
+            listener.onLogUpdated();
+        }
+    }
+
+    private void notifyStateChanged() {
+        UiListener listener = uiListener;
+        if (listener != null) {
+            listener.onStateChanged();
+        }
+    }
+
+    /**
+     * L'activity è terminata davvero (non ricreata): rilascia tutto
+     */
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        uiListener = null;
+
+        // Cleanup
+        if (isRecording) {
+            stopRecording();
+        }
+
+        if (powerManager != null && thermalListener != null) {
+            powerManager.removeThermalStatusListener(thermalListener);
+            thermalListener = null;
+        }
+
+        // Nessuna inferenza in corso prima di chiudere il classificatore
+        if (inferenceExecutor != null) {
+            inferenceExecutor.shutdownNow();
+            try {
+                inferenceExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inferenceExecutor = null;
+        }
+
+        // Rilascia le risorse
+        if (audioRecorder != null) {
+            audioRecorder.release();
+            audioRecorder = null;
+        }
+
+        if (commandDispatcher != null) {
+            Log.d(TAG, "Statistiche azioni:\n" + commandDispatcher.summary());
+            commandDispatcher.close();
+            commandDispatcher = null;
+        }
+
+        // Chiusura (ultimo drain e force) sul thread di scrittura; il drain periodico si ferma
+        if (telemetryExecutor != null) {
+            TelemetryStore store = telemetryStore;
+            if (store != null) {
+                telemetryExecutor.execute(store::close);
+            }
+            telemetryExecutor.shutdown();
+            telemetryExecutor = null;
+        } else if (telemetryStore != null) {
+            telemetryStore.close();
+        }
+        telemetryStore = null;
+
+        if (clipRecorder != null) {
+            clipRecorder.close();
+            clipRecorder = null;
+        }
+        if (preRollBuffer != null) {
+            preRollBuffer.release();
+            preRollBuffer = null;
+        }
+        if (segmentSpotter != null) {
+            segmentSpotter.release();
+        }
+        if (windowMemory != null) {
+            windowMemory.release();
+            windowMemory = null;
+        }
+
+        if (keywordClassifier != null) {
+            keywordClassifier.close();
+            keywordClassifier = null;
+        }
+
+        if (customKeywordSpotter != null) {
+            customKeywordSpotter.release();
+            customKeywordSpotter = null;
+        }
+        if (keywordEmbedder != null) {
+            keywordEmbedder.close();
+            keywordEmbedder = null;
+        }
+        Log.d(TAG, "🔄 Risorse del motore rilasciate");
+    }
+
+    // Getters
+    public LogRingBuffer getLogRing() {
+        return logRing;
+    }
+
+    public boolean isRecording() {
+        return isRecording;
+    }
+
+    public boolean isBackgroundMode() {
+        return backgroundMode;
+    }
+
+    public boolean isResumeAfterBackground() {
+        return resumeAfterBackground;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.spotting;
+
+import android.util.Log;
+
+/**
+ * Pipeline di riconoscimento per una finestra audio completa:
+ * preprocessing → rilevamento parlato → validazione → classificazione.
+ * È la stessa sequenza usata da MainActivity, condivisa con gli strumenti di replay
+ * e con lo stadio modello di PipelineStages, così che le misure fuori dal dispositivo
+ * riflettano il percorso di produzione.
+ */
+public class SpottingPipeline {
+    private static final String TAG = "SpottingPipeline";
+
+    // Soglia RMS sotto la quale la finestra è considerata silenzio
+    public static final float SPEECH_RMS_THRESHOLD = 0.01f;
+
+    private final AudioPreprocessor audioPreprocessor;
+    private final KeywordClassifier keywordClassifier;
+    private volatile CustomKeywordSpotter customKeywords;
+
+    // Statistiche
+    private long windowsProcessed = 0;
+    private long windowsSkipped = 0;
+    private long classifications = 0;
+    private long lastPreprocessNanos = 0;
+    private long customMatches = 0;
+
+    public SpottingPipeline(AudioPreprocessor audioPreprocessor, KeywordClassifier keywordClassifier) {
+        this.audioPreprocessor = audioPreprocessor;
+        this.keywordClassifier = keywordClassifier;
+    }
+
+    /**
+     * Elabora una finestra di campioni int16.
+     * Restituisce l'esito della classificazione (accettato o meno),
+     * oppure null se la finestra è silenzio o non è stato possibile classificarla.
+     */
+    public ClassificationResult process(short[] rawAudioData) {
+        if (rawAudioData == null || rawAudioData.length == 0) {
+            Log.w(TAG, "Dati audio vuoti ricevuti");
+            return null;
+        }
+
+        windowsProcessed++;
+
+        // 1. Preprocessa l'audio (normalizzazione di base)
+        long startTime = System.nanoTime();
+        float[] processedAudio = audioPreprocessor.preprocessAudio(rawAudioData);
+        lastPreprocessNanos = System.nanoTime() - startTime;
+
+        if (processedAudio == null) {
+            Log.w(TAG, "Errore nel preprocessing audio");
+            return null;
+        }
+        return classifyPreprocessed(processedAudio);
+    }
+
+    /**
+     * Elabora una finestra già normalizzata in [-1, 1] (ad esempio dal ring, senza copia int16):
+     * stessi passi di process() dal rilevamento del parlato in poi
+     */
+    public ClassificationResult processNormalized(float[] processedAudio) {
+        windowsProcessed++;
+        lastPreprocessNanos = 0;
+        return classifyPreprocessed(processedAudio);
+    }
+
+    private ClassificationResult classifyPreprocessed(float[] processedAudio) {
+        // 2. Verifica se contiene parlato (evita classificazioni inutili su silenzio)
+        if (!audioPreprocessor.containsSpeech(processedAudio, SPEECH_RMS_THRESHOLD)) {
+            windowsSkipped++;
+            Log.v(TAG, "Silenzio rilevato - classificazione saltata");
+            return null;
+        }
+
+        // 3. Valida i dati audio prima della classificazione
+        if (!keywordClassifier.validateAudioData(processedAudio)) {
+            Log.w(TAG, "Dati audio non validi per la classificazione");
+            return null;
+        }
+
+        // 4. Registrazione di una parola personalizzata: la finestra non va classificata
+        CustomKeywordSpotter custom = customKeywords;
+        if (custom != null && custom.isEnrolling()) {
+            custom.enroll(processedAudio);
+            return null;
+        }
+
+        // 5. Classifica l'audio
+        classifications++;
+        ClassificationResult result = keywordClassifier.classifyDetailed(processedAudio);
+
+        // 6. Se il modello non riconosce nulla, confronto con le parole personalizzate
+        if (custom != null && (result == null || !result.isAccepted())) {
+            ClassificationResult customResult = custom.match(processedAudio);
+            if (customResult != null && customResult.isAccepted()) {
+                customMatches++;
+                return customResult;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Abilita (o con null disabilita) le parole chiave personalizzate
+     */
+    public void setCustomKeywords(CustomKeywordSpotter customKeywords) {
+        this.customKeywords = customKeywords;
+    }
+
+    public void resetStatistics() {
+        windowsProcessed = 0;
+        windowsSkipped = 0;
+        classifications = 0;
+        customMatches = 0;
+    }
+
+    // Getters
+    public long getWindowsProcessed() {
+        return windowsProcessed;
+    }
+
+    public long getWindowsSkipped() {
+        return windowsSkipped;
+    }
+
+    public long getClassifications() {
+        return classifications;
+    }
+
+    public long getCustomMatches() {
+        return customMatches;
+    }
+
+    public long getLastPreprocessNanos() {
+        return lastPreprocessNanos;
+    }
+
+    public AudioPreprocessor getAudioPreprocessor() {
+        return audioPreprocessor;
+    }
+
+    public KeywordClassifier getKeywordClassifier() {
+        return keywordClassifier;
+    }
+}
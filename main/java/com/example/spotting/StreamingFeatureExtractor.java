@@ -0,0 +1,196 @@
+package com.example.spotting;
+
+import java.util.Arrays;
+
+/**
+ * Front-end di feature in streaming: finestra di Hann → FFT reale → filtri mel → log,
+ * con DCT opzionale per ottenere MFCC.
+ * Ogni frame (25 ms, passo 10 ms) viene calcolato una sola volta e salvato in un ring:
+ * finestre sovrapposte riusano i frame già calcolati invece di ricalcolare
+ * 2.75 s di FFT a ogni hop. Nessuna allocazione dopo la costruzione.
+ */
+public class StreamingFeatureExtractor {
+
+    private static final float LOG_FLOOR = 1e-6f;
+
+    private final int frameLength;
+    private final int frameStep;
+    private final int featureCount;
+    private final int frameCapacity;
+    private final boolean mfcc;
+
+    private final RealFft fft;
+    private final MelFilterBank melFilterBank;
+    private final float[] window;
+    private final float[] dctMatrix; // [coefficiente][filtro mel], null se log-mel
+
+    // Campioni in ingresso (ring di un frame)
+    private final float[] sampleRing;
+    private int samplePosition = 0;
+    private long samplesReceived = 0;
+    private int samplesSinceFrame = 0;
+
+    // Buffer di lavoro
+    private final float[] frameBuffer;
+    private final float[] powerSpectrum;
+    private final float[] melBuffer;
+
+    // Ring dei frame di feature
+    private final float[] featureRing;
+    private int frameWriteIndex = 0;
+    private long framesComputed = 0;
+
+    public StreamingFeatureExtractor(int sampleRate, int frameLengthMs, int frameStepMs, int fftSize,
+                                     int melBins, int mfccCount, float lowerHz, float upperHz,
+                                     int frameCapacity) {
+        this.frameLength = sampleRate * frameLengthMs / 1000;
+        this.frameStep = sampleRate * frameStepMs / 1000;
+        if (frameLength > fftSize) {
+            throw new IllegalArgumentException("Frame di " + frameLength + " campioni più lungo della FFT " + fftSize);
+        }
+
+        this.mfcc = mfccCount > 0;
+        this.featureCount = mfcc ? mfccCount : melBins;
+        this.frameCapacity = frameCapacity;
+
+        this.fft = new RealFft(fftSize);
+        this.melFilterBank = new MelFilterBank(melBins, fftSize, sampleRate, lowerHz, upperHz);
+
+        // Hann periodica
+        this.window = new float[frameLength];
+        for (int i = 0; i < frameLength; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / frameLength));
+        }
+
+        // DCT-II ortonormale
+        if (mfcc) {
+            dctMatrix = new float[mfccCount * melBins];
+            for (int k = 0; k < mfccCount; k++) {
+                double scale = Math.sqrt((k == 0 ? 1.0 : 2.0) / melBins);
+                for (int m = 0; m < melBins; m++) {
+                    dctMatrix[k * melBins + m] = (float) (scale * Math.cos(Math.PI * k * (m + 0.5) / melBins));
+                }
+            }
+        } else {
+            dctMatrix = null;
+        }
+
+        this.sampleRing = new float[frameLength];
+        this.frameBuffer = new float[fftSize];
+        this.powerSpectrum = new float[fft.getBinCount()];
+        this.melBuffer = new float[melBins];
+        this.featureRing = new float[frameCapacity * featureCount];
+    }
+
+    /**
+     * Aggiunge campioni int16 mono a 16 kHz; calcola i frame completati.
+     * Restituisce il numero di nuovi frame.
+     */
+    public int push(short[] samples, int offset, int length) {
+        int newFrames = 0;
+        for (int i = 0; i < length; i++) {
+            sampleRing[samplePosition] = samples[offset + i] / 32768.0f;
+            samplePosition = samplePosition + 1 == frameLength ? 0 : samplePosition + 1;
+            samplesReceived++;
+            samplesSinceFrame++;
+
+            // Primo frame appena il ring è pieno, poi uno ogni frameStep campioni
+            if (samplesReceived >= frameLength && (samplesReceived == frameLength || samplesSinceFrame >= frameStep)) {
+                computeFrame();
+                samplesSinceFrame = 0;
+                newFrames++;
+            }
+        }
+        return newFrames;
+    }
+
+    private void computeFrame() {
+        // Srotola il ring in ordine cronologico applicando la finestra (zero padding fino alla FFT)
+        for (int i = 0; i < frameLength; i++) {
+            int index = samplePosition + i;
+            if (index >= frameLength) {
+                index -= frameLength;
+            }
+            frameBuffer[i] = sampleRing[index] * window[i];
+        }
+        Arrays.fill(frameBuffer, frameLength, frameBuffer.length, 0f);
+
+        fft.powerSpectrum(frameBuffer, powerSpectrum);
+
+        int outputOffset = frameWriteIndex * featureCount;
+        if (mfcc) {
+            melFilterBank.applyLog(powerSpectrum, melBuffer, 0, LOG_FLOOR);
+            int melBins = melBuffer.length;
+            for (int k = 0; k < featureCount; k++) {
+                float acc = 0f;
+                int row = k * melBins;
+                for (int m = 0; m < melBins; m++) {
+                    acc += dctMatrix[row + m] * melBuffer[m];
+                }
+                featureRing[outputOffset + k] = acc;
+            }
+        } else {
+            melFilterBank.applyLog(powerSpectrum, featureRing, outputOffset, LOG_FLOOR);
+        }
+
+        frameWriteIndex = frameWriteIndex + 1 == frameCapacity ? 0 : frameWriteIndex + 1;
+        framesComputed++;
+    }
+
+    /**
+     * Copia gli ultimi frameCapacity frame in ordine cronologico in output
+     * (frameCapacity * featureCount valori). I frame non ancora calcolati,
+     * all'inizio dello stream, sono zeri.
+     */
+    public void copyWindow(float[] output) {
+        int available = (int) Math.min(framesComputed, frameCapacity);
+        int missing = frameCapacity - available;
+        Arrays.fill(output, 0, missing * featureCount, 0f);
+
+        // Il frame più vecchio disponibile
+        int oldest = frameWriteIndex - available;
+        if (oldest < 0) {
+            oldest += frameCapacity;
+        }
+
+        int firstPart = Math.min(available, frameCapacity - oldest);
+        System.arraycopy(featureRing, oldest * featureCount, output, missing * featureCount,
+                firstPart * featureCount);
+        System.arraycopy(featureRing, 0, output, (missing + firstPart) * featureCount,
+                (available - firstPart) * featureCount);
+    }
+
+    public void reset() {
+        Arrays.fill(sampleRing, 0f);
+        samplePosition = 0;
+        samplesReceived = 0;
+        samplesSinceFrame = 0;
+        frameWriteIndex = 0;
+        framesComputed = 0;
+    }
+
+    // Getters
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    public int getFrameCapacity() {
+        return frameCapacity;
+    }
+
+    public int getWindowSize() {
+        return frameCapacity * featureCount;
+    }
+
+    public long getFramesComputed() {
+        return framesComputed;
+    }
+
+    public int getFrameStep() {
+        return frameStep;
+    }
+
+    public boolean isMfcc() {
+        return mfcc;
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.spotting;
+
+import java.util.Random;
+
+/**
+ * Sorgente audio generata: silenzio, rumore bianco, sinusoide o raffiche di tono
+ * che simulano parole isolate a intervalli regolari.
+ * La posizione delle raffiche è nota, quindi si può misurare la latenza di rilevamento.
+ */
+public class SyntheticAudioSource extends ReplayAudioSource {
+
+    public enum Signal {
+        SILENCE,
+        WHITE_NOISE,
+        SINE,
+        TONE_BURSTS
+    }
+
+    private final Signal signal;
+    private final long totalFrames; // 0 = infinito
+    private final double frequency;
+    private final double amplitude;
+    private final double noiseAmplitude;
+    private final int burstFrames;
+    private final int periodFrames;
+    private final Random random;
+
+    private long frame = 0;
+
+    /**
+     * @param frequency      frequenza del tono in Hz (SINE, TONE_BURSTS)
+     * @param amplitude      ampiezza del segnale [0, 32767]
+     * @param noiseAmplitude ampiezza del rumore di fondo sommato al segnale [0, 32767]
+     * @param burstMs        durata di ogni raffica (TONE_BURSTS)
+     * @param periodMs       intervallo tra l'inizio di due raffiche (TONE_BURSTS)
+     */
+    public SyntheticAudioSource(Signal signal, float durationSeconds, boolean realTime,
+                                double frequency, double amplitude, double noiseAmplitude,
+                                int burstMs, int periodMs, long seed) {
+        super(ModelConfig.SAMPLE_RATE, 1, realTime);
+        this.signal = signal;
+        this.totalFrames = (long) (durationSeconds * ModelConfig.SAMPLE_RATE);
+        this.frequency = frequency;
+        this.amplitude = amplitude;
+        this.noiseAmplitude = noiseAmplitude;
+        this.burstFrames = burstMs * ModelConfig.SAMPLE_RATE / 1000;
+        this.periodFrames = Math.max(1, periodMs * ModelConfig.SAMPLE_RATE / 1000);
+        this.random = new Random(seed);
+    }
+
+    public static SyntheticAudioSource silence(float durationSeconds, boolean realTime) {
+        return new SyntheticAudioSource(Signal.SILENCE, durationSeconds, realTime, 0, 0, 0, 0, 0, 0);
+    }
+
+    public static SyntheticAudioSource whiteNoise(float durationSeconds, boolean realTime, double amplitude) {
+        return new SyntheticAudioSource(Signal.WHITE_NOISE, durationSeconds, realTime, 0, 0, amplitude, 0, 0, 1);
+    }
+
+    public static SyntheticAudioSource sine(float durationSeconds, boolean realTime, double frequency, double amplitude) {
+        return new SyntheticAudioSource(Signal.SINE, durationSeconds, realTime, frequency, amplitude, 0, 0, 0, 0);
+    }
+
+    /**
+     * Raffiche di tono da burstMs ogni periodMs su un fondo di rumore leggero
+     */
+    public static SyntheticAudioSource toneBursts(float durationSeconds, boolean realTime, int burstMs, int periodMs) {
+        return new SyntheticAudioSource(Signal.TONE_BURSTS, durationSeconds, realTime,
+                440.0, 8000.0, 100.0, burstMs, periodMs, 1);
+    }
+
+    @Override
+    protected int readSamples(short[] buffer, int offset, int length) {
+        int count = length;
+        if (totalFrames > 0) {
+            long remaining = totalFrames - frame;
+            if (remaining <= 0) {
+                return END_OF_STREAM;
+            }
+            count = (int) Math.min(count, remaining);
+        }
+
+        double phaseStep = 2.0 * Math.PI * frequency / ModelConfig.SAMPLE_RATE;
+
+        for (int i = 0; i < count; i++) {
+            long n = frame + i;
+            double value = 0;
+
+            switch (signal) {
+                case SINE:
+                    value = amplitude * Math.sin(phaseStep * n);
+                    break;
+                case TONE_BURSTS:
+                    if (n % periodFrames < burstFrames) {
+                        value = amplitude * Math.sin(phaseStep * n);
+                    }
+                    break;
+                default:
+                    break;
+            }
+
+            if (noiseAmplitude > 0) {
+                value += noiseAmplitude * (random.nextDouble() * 2.0 - 1.0);
+            }
+
+            buffer[offset + i] = (short) Math.max(-32768, Math.min(32767, Math.round(value)));
+        }
+
+        frame += count;
+        return count;
+    }
+
+    /**
+     * Fine (in frame) dell'ultima raffica terminata entro la posizione indicata,
+     * -1 se nessuna raffica è ancora terminata. Vale solo per TONE_BURSTS.
+     */
+    public long getLastBurstEnd(long position) {
+        if (signal != Signal.TONE_BURSTS || position < burstFrames) {
+            return -1;
+        }
+        long burstIndex = (position - burstFrames) / periodFrames;
+        return burstIndex * periodFrames + burstFrames;
+    }
+
+    /**
+     * Inizio (in frame) dell'ultima raffica iniziata prima della posizione indicata,
+     * -1 se nessuna. Vale solo per TONE_BURSTS.
+     */
+    public long getLastBurstStart(long position) {
+        if (signal != Signal.TONE_BURSTS || position <= 0) {
+            return -1;
+        }
+        return (position - 1) / periodFrames * periodFrames;
+    }
+
+    /**
+     * Raffiche terminate entro la posizione indicata (0 se il segnale non è TONE_BURSTS)
+     */
+    public long getBurstCount(long position) {
+        long lastEnd = getLastBurstEnd(position);
+        return lastEnd < 0 ? 0 : lastEnd / periodFrames + 1;
+    }
+
+    /**
+     * true se la posizione cade dentro una raffica (rilevamento prima della sua fine).
+     * Vale solo per TONE_BURSTS.
+     */
+    public boolean isInBurst(long position) {
+        return signal == Signal.TONE_BURSTS && position % periodFrames < burstFrames;
+    }
+
+    public Signal getSignal() {
+        return signal;
+    }
+
+    public int getBurstFrames() {
+        return burstFrames;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Sintetico " + signal + (isRealTime() ? " (tempo reale)" : " (max velocità)");
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.spotting;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Evento di telemetria: una finestra elaborata o un rilevamento.
+ * Record a dimensione fissa (32 byte, little endian) in TelemetryStore:
+ *   long timestamp (ms), byte tipo, byte flag VAD, short classe, float confidenza,
+ *   int preprocessing (µs), int inferenza (µs), int attesa in coda (µs), int sessione
+ * Durante le query la stessa istanza viene riusata per ogni record letto.
+ */
+public class TelemetryRecord {
+
+    public static final int SIZE = 32;
+
+    public static final byte TYPE_WINDOW = 0;
+    public static final byte TYPE_DETECTION = 1;
+
+    /** Parlato attivo secondo l'EnergyVad alla fine della finestra */
+    public static final int FLAG_SPEECH = 1;
+    /** Finestra scartata dalla cascata VAD, non classificata */
+    public static final int FLAG_GATED = 1 << 1;
+    /** Finestra classificata come silenzio dal preprocessing */
+    public static final int FLAG_SILENCE = 1 << 2;
+
+    public long timestamp;
+    public byte type;
+    public int flags;
+    public int classIndex = -1;
+    public float confidence;
+    public int preprocessMicros;
+    public int inferenceMicros;
+    public int queueWaitMicros;
+    public int session;
+
+    void writeTo(ByteBuffer buffer, int position) {
+        buffer.putLong(position, timestamp);
+        buffer.put(position + 8, type);
+        buffer.put(position + 9, (byte) flags);
+        buffer.putShort(position + 10, (short) classIndex);
+        buffer.putFloat(position + 12, confidence);
+        buffer.putInt(position + 16, preprocessMicros);
+        buffer.putInt(position + 20, inferenceMicros);
+        buffer.putInt(position + 24, queueWaitMicros);
+        buffer.putInt(position + 28, session);
+    }
+
+    void readFrom(ByteBuffer buffer, int position) {
+        timestamp = buffer.getLong(position);
+        type = buffer.get(position + 8);
+        flags = buffer.get(position + 9) & 0xFF;
+        classIndex = buffer.getShort(position + 10);
+        confidence = buffer.getFloat(position + 12);
+        preprocessMicros = buffer.getInt(position + 16);
+        inferenceMicros = buffer.getInt(position + 20);
+        queueWaitMicros = buffer.getInt(position + 24);
+        session = buffer.getInt(position + 28);
+    }
+
+    /**
+     * Latenza complessiva: attesa in coda + preprocessing + inferenza (µs)
+     */
+    public long getTotalLatencyMicros() {
+        return (long) queueWaitMicros + preprocessMicros + inferenceMicros;
+    }
+
+    public boolean isDetection() {
+        return type == TYPE_DETECTION;
+    }
+
+    public boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+}
@@ -0,0 +1,690 @@
+package com.example.spotting;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Registro persistente e append-only degli eventi di riconoscimento (finestre e rilevamenti),
+ * che sopravvive tra le sessioni.
+ *
+ * - I record (TelemetryRecord, 32 byte) si scrivono in un segmento mappato in memoria:
+ *   nessuna syscall per evento, e il contatore nell'intestazione si aggiorna dopo il record,
+ *   quindi un crash dell'app non lascia record a metà.
+ * - A segmento pieno si passa al successivo (telemetry-<n>.seg).
+ * - recordWindow/recordDetection non prendono lock né fanno I/O: il record va in una coda
+ *   lock-free (più produttori: thread di cattura e di inferenza) che drain() svuota sul
+ *   thread di scrittura. Cambio di segmento, force e quota avvengono solo lì.
+ * - compact() riscrive i segmenti più vecchi di rawRetention tenendo solo i rilevamenti,
+ *   accorpandoli, e cancella i più vecchi oltre la quota su disco.
+ * - Le query scorrono i segmenti mappati record per record e aggregano al volo
+ *   (contatori per intervallo, LatencyHistogram): nulla viene caricato nello heap.
+ *
+ * Intestazione del segmento (64 byte, little endian): int magic "KWTL", int versione,
+ * int dimensione record, int flag, long creazione, int numero record, int riservato,
+ * long primo timestamp, long ultimo timestamp.
+ */
+public class TelemetryStore implements Closeable {
+    private static final String TAG = "TelemetryStore";
+
+    private static final int MAGIC = 0x4C54574B; // "KWTL" letto in little endian
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int OFFSET_FLAGS = 12;
+    private static final int OFFSET_CREATED = 16;
+    private static final int OFFSET_COUNT = 24;
+    private static final int OFFSET_FIRST = 32;
+    private static final int OFFSET_LAST = 40;
+    private static final int FLAG_COMPACTED = 1;
+
+    // Record in attesa di drain(): potenza di due, a 10 eventi/s basta per 25 s senza drain
+    private static final int PENDING_CAPACITY = 256;
+
+    private static final String PREFIX = "telemetry-";
+    private static final String SUFFIX = ".seg";
+
+    public static final long HOUR_MILLIS = 3_600_000L;
+    public static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    public interface Visitor {
+        /** record è riusato: copiare i campi che servono dopo la chiamata */
+        void visit(TelemetryRecord record);
+    }
+
+    /**
+     * Metadati di un segmento; quelli sigillati non cambiano più
+     */
+    private static final class Segment {
+        final File file;
+        final long sequence;
+        int count;
+        long firstTimestamp;
+        long lastTimestamp;
+        boolean compacted;
+        // Dimensione del file, per la quota senza una syscall per segmento
+        long sizeBytes;
+
+        Segment(File file, long sequence) {
+            this.file = file;
+            this.sequence = sequence;
+        }
+    }
+
+    private final File directory;
+    private final int segmentRecords;
+    private final long rawRetentionMillis;
+    private final long quotaBytes;
+
+    // Segmenti sigillati in ordine di sequenza (quindi di tempo)
+    private final List<Segment> sealed = new ArrayList<>();
+    // Query (lettura) e compattazione (riscrittura dei file) si escludono
+    private final ReadWriteLock filesLock = new ReentrantReadWriteLock();
+
+    private Segment active;
+    private RandomAccessFile activeFile;
+    private MappedByteBuffer activeBuffer;
+    private long nextSequence = 0;
+    private boolean closed = false;
+
+    private volatile int session = 0;
+
+    // Coda lock-free verso il thread di scrittura: un produttore prenota una sequenza con CAS,
+    // compila lo slot e lo pubblica scrivendo sequenza + 1 in pendingPublished
+    private final TelemetryRecord[] pending = new TelemetryRecord[PENDING_CAPACITY];
+    private final AtomicLongArray pendingPublished = new AtomicLongArray(PENDING_CAPACITY);
+    private final AtomicLong pendingClaimed = new AtomicLong();
+    private volatile long pendingDrained = 0;
+    private final LongAdder recordsDropped = new LongAdder();
+
+    // Segmento attivo mappato e slot della coda; le query mappano i segmenti solo durante la scansione
+    private final MemoryBudget.Reservation activeMemory;
+    private final MemoryBudget.Reservation pendingMemory;
+
+    public TelemetryStore(File directory, int segmentBytes, long rawRetentionMillis, long quotaBytes)
+            throws IOException {
+        this.directory = directory;
+        this.segmentRecords = (segmentBytes - HEADER_SIZE) / TelemetryRecord.SIZE;
+        this.rawRetentionMillis = rawRetentionMillis;
+        this.quotaBytes = quotaBytes;
+        if (segmentRecords <= 0) {
+            throw new IllegalArgumentException("Segmento troppo piccolo: " + segmentBytes + " byte");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Impossibile creare " + directory);
+        }
+        for (int i = 0; i < PENDING_CAPACITY; i++) {
+            pending[i] = new TelemetryRecord();
+        }
+        MemoryBudget budget = MemoryBudget.getInstance();
+        activeMemory = budget.register(TAG, "segmento attivo", MemoryBudget.Kind.MAPPED, 0);
+        // Oggetto record (~48 byte) più la sequenza pubblicata per slot
+        pendingMemory = budget.register(TAG, "coda", MemoryBudget.Kind.HEAP, PENDING_CAPACITY * (48L + 8));
+        try {
+            loadSegments();
+        } catch (IOException e) {
+            activeMemory.release();
+            pendingMemory.release();
+            throw e;
+        }
+    }
+
+    private void loadSegments() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        List<Segment> found = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                Segment segment = readSegment(file);
+                if (segment != null) {
+                    found.add(segment);
+                }
+            }
+        }
+        Collections.sort(found, (a, b) -> Long.compare(a.sequence, b.sequence));
+        sealed.addAll(found);
+        if (!found.isEmpty()) {
+            nextSequence = found.get(found.size() - 1).sequence + 1;
+        }
+
+        // L'ultimo segmento non pieno torna attivo
+        Segment last = found.isEmpty() ? null : found.get(found.size() - 1);
+        if (last != null && !last.compacted && last.count < segmentRecords
+                && last.file.length() == HEADER_SIZE + (long) segmentRecords * TelemetryRecord.SIZE) {
+            sealed.remove(sealed.size() - 1);
+            openActive(last, false);
+        }
+        Log.d(TAG, "Telemetria: " + found.size() + " segmenti in " + directory);
+    }
+
+    private static Segment readSegment(File file) {
+        String name = file.getName();
+        long sequence;
+        try {
+            sequence = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (input.getChannel().read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC
+                    || header.getInt(4) != VERSION || header.getInt(8) != TelemetryRecord.SIZE) {
+                Log.w(TAG, "Segmento non valido ignorato: " + name);
+                return null;
+            }
+            Segment segment = new Segment(file, sequence);
+            long maxRecords = (input.length() - HEADER_SIZE) / TelemetryRecord.SIZE;
+            segment.count = (int) Math.max(0, Math.min(maxRecords, header.getInt(OFFSET_COUNT)));
+            segment.firstTimestamp = header.getLong(OFFSET_FIRST);
+            segment.lastTimestamp = header.getLong(OFFSET_LAST);
+            segment.compacted = (header.getInt(OFFSET_FLAGS) & FLAG_COMPACTED) != 0;
+            segment.sizeBytes = input.length();
+            return segment;
+        } catch (IOException e) {
+            Log.w(TAG, "Segmento non leggibile ignorato: " + name, e);
+            return null;
+        }
+    }
+
+    private File segmentFile(long sequence) {
+        return new File(directory, String.format("%s%010d%s", PREFIX, sequence, SUFFIX));
+    }
+
+    private void openActive(Segment segment, boolean create) throws IOException {
+        activeFile = new RandomAccessFile(segment.file, "rw");
+        long size = HEADER_SIZE + (long) segmentRecords * TelemetryRecord.SIZE;
+        if (create) {
+            activeFile.setLength(size);
+        }
+        activeBuffer = activeFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        activeBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (create) {
+            writeHeader(activeBuffer, 0, System.currentTimeMillis());
+        }
+        segment.sizeBytes = size;
+        active = segment;
+        activeMemory.set(size);
+    }
+
+    private static void writeHeader(ByteBuffer buffer, int flags, long created) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, TelemetryRecord.SIZE);
+        buffer.putInt(OFFSET_FLAGS, flags);
+        buffer.putLong(OFFSET_CREATED, created);
+        buffer.putInt(OFFSET_COUNT, 0);
+        buffer.putLong(OFFSET_FIRST, 0);
+        buffer.putLong(OFFSET_LAST, 0);
+    }
+
+    // ========== SCRITTURA ==========
+
+    /**
+     * Nuova sessione di ascolto: i record successivi ne portano l'identificativo
+     */
+    public int startSession() {
+        session = (int) (System.currentTimeMillis() / 1000);
+        return session;
+    }
+
+    /**
+     * Aggiunge subito un record; i campi timestamp (se 0) e sessione vengono compilati qui.
+     * Può aprire un nuovo segmento: da chiamare sul thread di scrittura.
+     */
+    public synchronized void append(TelemetryRecord record) {
+        if (record.timestamp == 0) {
+            record.timestamp = System.currentTimeMillis();
+        }
+        record.session = session;
+        write(record);
+    }
+
+    private void write(TelemetryRecord record) {
+        if (closed) {
+            return;
+        }
+        try {
+            if (active == null || active.count == segmentRecords) {
+                rollover();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Errore apertura segmento di telemetria", e);
+            return;
+        }
+
+        record.writeTo(activeBuffer, HEADER_SIZE + active.count * TelemetryRecord.SIZE);
+
+        if (active.count == 0) {
+            active.firstTimestamp = record.timestamp;
+            activeBuffer.putLong(OFFSET_FIRST, record.timestamp);
+        }
+        active.lastTimestamp = Math.max(active.lastTimestamp, record.timestamp);
+        activeBuffer.putLong(OFFSET_LAST, active.lastTimestamp);
+        // Il contatore per ultimo: il record è visibile solo quando è completo
+        active.count++;
+        activeBuffer.putInt(OFFSET_COUNT, active.count);
+    }
+
+    /**
+     * Finestra elaborata (o scartata dalla cascata, con FLAG_GATED). Non blocca: il record
+     * è scritto al prossimo drain()
+     */
+    public void recordWindow(int flags, int classIndex, float confidence,
+                             long queueWaitNanos, long preprocessNanos, long inferenceNanos) {
+        enqueue(TelemetryRecord.TYPE_WINDOW, flags, classIndex, confidence, queueWaitNanos, preprocessNanos, inferenceNanos);
+    }
+
+    /**
+     * Rilevamento accettato. Non blocca: il record è scritto al prossimo drain()
+     */
+    public void recordDetection(int flags, int classIndex, float confidence,
+                                long queueWaitNanos, long preprocessNanos, long inferenceNanos) {
+        enqueue(TelemetryRecord.TYPE_DETECTION, flags, classIndex, confidence, queueWaitNanos, preprocessNanos, inferenceNanos);
+    }
+
+    private void enqueue(byte type, int flags, int classIndex, float confidence,
+                         long queueWaitNanos, long preprocessNanos, long inferenceNanos) {
+        long sequence;
+        do {
+            sequence = pendingClaimed.get();
+            if (sequence - pendingDrained >= PENDING_CAPACITY) {
+                // Thread di scrittura in ritardo: si perde il record, non si aspetta
+                recordsDropped.increment();
+                return;
+            }
+        } while (!pendingClaimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence & (PENDING_CAPACITY - 1));
+        TelemetryRecord record = pending[slot];
+        record.timestamp = System.currentTimeMillis();
+        record.session = session;
+        record.type = type;
+        record.flags = flags;
+        record.classIndex = classIndex;
+        record.confidence = confidence;
+        record.queueWaitMicros = toMicros(queueWaitNanos);
+        record.preprocessMicros = toMicros(preprocessNanos);
+        record.inferenceMicros = toMicros(inferenceNanos);
+        pendingPublished.set(slot, sequence + 1);
+    }
+
+    /**
+     * Scrive nel segmento attivo i record in coda, in ordine di prenotazione; si ferma al primo
+     * slot prenotato ma non ancora pubblicato. Da chiamare sul thread di scrittura.
+     * Restituisce il numero di record scritti.
+     */
+    public synchronized int drain() {
+        int written = 0;
+        long sequence = pendingDrained;
+        while (true) {
+            int slot = (int) (sequence & (PENDING_CAPACITY - 1));
+            if (pendingPublished.get(slot) != sequence + 1) {
+                break;
+            }
+            write(pending[slot]);
+            sequence++;
+            written++;
+            // Lo slot torna ai produttori solo dopo la copia nel segmento
+            pendingDrained = sequence;
+        }
+        return written;
+    }
+
+    private static int toMicros(long nanos) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, nanos / 1000));
+    }
+
+    private void rollover() throws IOException {
+        if (active != null) {
+            sealActive();
+        }
+        Segment segment = new Segment(segmentFile(nextSequence), nextSequence);
+        nextSequence++;
+        openActive(segment, true);
+        Log.d(TAG, "Nuovo segmento di telemetria: " + segment.file.getName());
+    }
+
+    private void sealActive() throws IOException {
+        activeBuffer.force();
+        activeFile.close();
+        sealed.add(active);
+        active = null;
+        activeFile = null;
+        activeBuffer = null;
+        activeMemory.set(0);
+    }
+
+    /**
+     * Scrive i record in coda e forza su disco il segmento attivo (es. in onPause).
+     * Da chiamare sul thread di scrittura.
+     */
+    public synchronized void flush() {
+        drain();
+        if (activeBuffer != null) {
+            activeBuffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        drain();
+        closed = true;
+        if (active != null) {
+            try {
+                sealActive();
+            } catch (IOException e) {
+                Log.w(TAG, "Errore chiusura segmento", e);
+            }
+        }
+        activeMemory.release();
+        pendingMemory.release();
+    }
+
+    // ========== COMPATTAZIONE ==========
+
+    /**
+     * Riscrive i segmenti sigillati più vecchi di rawRetention tenendo solo i rilevamenti
+     * (più segmenti accorpati in uno finché ci stanno), poi cancella i segmenti più vecchi
+     * finché lo spazio occupato rientra nella quota. Da chiamare fuori dal thread di cattura.
+     */
+    public void compact(long nowMillis) {
+        filesLock.writeLock().lock();
+        try {
+            List<Segment> candidates = new ArrayList<>();
+            synchronized (this) {
+                for (Segment segment : sealed) {
+                    if (segment.lastTimestamp >= nowMillis - rawRetentionMillis) {
+                        break;
+                    }
+                    candidates.add(segment);
+                }
+            }
+
+            int rewritten = 0;
+            int index = 0;
+            while (index < candidates.size()) {
+                // Gruppo di segmenti consecutivi i cui rilevamenti stanno in un segmento
+                List<Segment> group = new ArrayList<>();
+                int detections = 0;
+                while (index < candidates.size()) {
+                    Segment segment = candidates.get(index);
+                    int segmentDetections = segment.compacted ? segment.count : countDetections(segment);
+                    if (!group.isEmpty() && detections + segmentDetections > segmentRecords) {
+                        break;
+                    }
+                    group.add(segment);
+                    detections += segmentDetections;
+                    index++;
+                }
+                if (group.size() == 1 && group.get(0).compacted) {
+                    continue;
+                }
+                Segment merged = rewriteDetections(group, detections);
+                synchronized (this) {
+                    int position = sealed.indexOf(group.get(0));
+                    sealed.removeAll(group);
+                    if (merged != null) {
+                        sealed.add(position, merged);
+                    }
+                }
+                rewritten += group.size();
+            }
+
+            int deleted = enforceQuota();
+            if (rewritten > 0 || deleted > 0) {
+                Log.i(TAG, "Compattazione: " + rewritten + " segmenti riscritti, " + deleted + " eliminati per quota");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Errore compattazione telemetria", e);
+        } finally {
+            filesLock.writeLock().unlock();
+        }
+    }
+
+    private int countDetections(Segment segment) throws IOException {
+        int[] detections = {0};
+        scanSegment(segment.file, segment.count, Long.MIN_VALUE, Long.MAX_VALUE, new TelemetryRecord(), record -> {
+            if (record.isDetection()) {
+                detections[0]++;
+            }
+        });
+        return detections[0];
+    }
+
+    /**
+     * Scrive i rilevamenti del gruppo nel file del primo segmento (via file temporaneo)
+     * e cancella gli altri. null se non ci sono rilevamenti.
+     */
+    private Segment rewriteDetections(List<Segment> group, int detections) throws IOException {
+        Segment first = group.get(0);
+        Segment merged = null;
+        if (detections > 0) {
+            File temporary = new File(directory, first.file.getName() + ".tmp");
+            long size = HEADER_SIZE + (long) detections * TelemetryRecord.SIZE;
+            merged = new Segment(first.file, first.sequence);
+            merged.compacted = true;
+            merged.sizeBytes = size;
+            try (RandomAccessFile output = new RandomAccessFile(temporary, "rw")) {
+                output.setLength(size);
+                MappedByteBuffer buffer = output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                writeHeader(buffer, FLAG_COMPACTED, System.currentTimeMillis());
+
+                final Segment target = merged;
+                for (Segment source : group) {
+                    scanSegment(source.file, source.count, Long.MIN_VALUE, Long.MAX_VALUE, new TelemetryRecord(),
+                            record -> {
+                                if (record.isDetection() && target.count < detections) {
+                                    record.writeTo(buffer, HEADER_SIZE + target.count * TelemetryRecord.SIZE);
+                                    if (target.count == 0) {
+                                        target.firstTimestamp = record.timestamp;
+                                    }
+                                    target.lastTimestamp = Math.max(target.lastTimestamp, record.timestamp);
+                                    target.count++;
+                                }
+                            });
+                }
+                buffer.putInt(OFFSET_COUNT, merged.count);
+                buffer.putLong(OFFSET_FIRST, merged.firstTimestamp);
+                buffer.putLong(OFFSET_LAST, merged.lastTimestamp);
+                buffer.force();
+            }
+            if (!temporary.renameTo(first.file)) {
+                temporary.delete();
+                throw new IOException("Impossibile sostituire " + first.file);
+            }
+        } else {
+            first.file.delete();
+        }
+
+        for (int i = 1; i < group.size(); i++) {
+            group.get(i).file.delete();
+        }
+        return merged;
+    }
+
+    private int enforceQuota() {
+        // Sotto il monitor solo la scelta (dimensioni in memoria), le cancellazioni fuori
+        List<Segment> victims = new ArrayList<>();
+        synchronized (this) {
+            long total = getDiskUsageBytes();
+            while (total > quotaBytes && !sealed.isEmpty()) {
+                Segment oldest = sealed.remove(0);
+                total -= oldest.sizeBytes;
+                victims.add(oldest);
+            }
+        }
+        int deleted = 0;
+        for (Segment victim : victims) {
+            if (victim.file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    // ========== QUERY ==========
+
+    /**
+     * Visita in ordine i record con timestamp in [fromMillis, toMillis), di tutte le sessioni
+     */
+    public void scan(long fromMillis, long toMillis, Visitor visitor) {
+        filesLock.readLock().lock();
+        try {
+            List<Segment> segments;
+            synchronized (this) {
+                segments = new ArrayList<>(sealed.size() + 1);
+                for (Segment segment : sealed) {
+                    segments.add(copyOf(segment));
+                }
+                if (active != null) {
+                    segments.add(copyOf(active));
+                }
+            }
+
+            TelemetryRecord record = new TelemetryRecord();
+            for (Segment segment : segments) {
+                // Salta i segmenti fuori dall'intervallo senza aprirli
+                if (segment.count == 0 || segment.lastTimestamp < fromMillis || segment.firstTimestamp >= toMillis) {
+                    continue;
+                }
+                try {
+                    scanSegment(segment.file, segment.count, fromMillis, toMillis, record, visitor);
+                } catch (IOException e) {
+                    Log.w(TAG, "Segmento non leggibile: " + segment.file.getName(), e);
+                }
+            }
+        } finally {
+            filesLock.readLock().unlock();
+        }
+    }
+
+    private static Segment copyOf(Segment segment) {
+        Segment copy = new Segment(segment.file, segment.sequence);
+        copy.count = segment.count;
+        copy.firstTimestamp = segment.firstTimestamp;
+        copy.lastTimestamp = segment.lastTimestamp;
+        copy.compacted = segment.compacted;
+        copy.sizeBytes = segment.sizeBytes;
+        return copy;
+    }
+
+    private static void scanSegment(File file, int count, long fromMillis, long toMillis,
+                                    TelemetryRecord record, Visitor visitor) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            long size = HEADER_SIZE + (long) count * TelemetryRecord.SIZE;
+            MappedByteBuffer buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < count; i++) {
+                record.readFrom(buffer, HEADER_SIZE + i * TelemetryRecord.SIZE);
+                if (record.timestamp >= fromMillis && record.timestamp < toMillis) {
+                    visitor.visit(record);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rilevamenti per intervallo di bucketMillis (allineato all'ora locale):
+     * inizio intervallo → numero di rilevamenti
+     */
+    public SortedMap<Long, Long> countDetections(long fromMillis, long toMillis, long bucketMillis) {
+        TimeZone timeZone = TimeZone.getDefault();
+        SortedMap<Long, Long> counts = new TreeMap<>();
+        scan(fromMillis, toMillis, record -> {
+            if (record.isDetection()) {
+                Long bucket = bucketStart(record.timestamp, bucketMillis, timeZone);
+                Long previous = counts.get(bucket);
+                counts.put(bucket, previous == null ? 1L : previous + 1);
+            }
+        });
+        return counts;
+    }
+
+    public SortedMap<Long, Long> detectionsPerHour(long fromMillis, long toMillis) {
+        return countDetections(fromMillis, toMillis, HOUR_MILLIS);
+    }
+
+    /**
+     * Latenza complessiva (coda + preprocessing + inferenza) delle finestre classificate,
+     * per giorno locale: inizio giorno → istogramma
+     */
+    public SortedMap<Long, LatencyHistogram> latencyByDay(long fromMillis, long toMillis) {
+        TimeZone timeZone = TimeZone.getDefault();
+        SortedMap<Long, LatencyHistogram> histograms = new TreeMap<>();
+        scan(fromMillis, toMillis, record -> {
+            if (!record.isDetection() && !record.hasFlag(TelemetryRecord.FLAG_GATED)) {
+                Long day = bucketStart(record.timestamp, DAY_MILLIS, timeZone);
+                LatencyHistogram histogram = histograms.get(day);
+                if (histogram == null) {
+                    histogram = new LatencyHistogram();
+                    histograms.put(day, histogram);
+                }
+                histogram.record(record.getTotalLatencyMicros());
+            }
+        });
+        return histograms;
+    }
+
+    private static long bucketStart(long timestamp, long bucketMillis, TimeZone timeZone) {
+        long offset = timeZone.getOffset(timestamp);
+        return Math.floorDiv(timestamp + offset, bucketMillis) * bucketMillis - offset;
+    }
+
+    // Getters
+    public synchronized int getSegmentCount() {
+        return sealed.size() + (active != null ? 1 : 0);
+    }
+
+    public synchronized long getRecordCount() {
+        long total = active != null ? active.count : 0;
+        for (Segment segment : sealed) {
+            total += segment.count;
+        }
+        return total;
+    }
+
+    public synchronized long getDiskUsageBytes() {
+        long total = active != null ? active.sizeBytes : 0;
+        for (Segment segment : sealed) {
+            total += segment.sizeBytes;
+        }
+        return total;
+    }
+
+    public int getSession() {
+        return session;
+    }
+
+    /**
+     * Record persi perché la coda era piena (thread di scrittura in ritardo)
+     */
+    public long getRecordsDropped() {
+        return recordsDropped.sum();
+    }
+
+    public String summary() {
+        return String.format("%d record in %d segmenti, %.1f KB", getRecordCount(), getSegmentCount(),
+                getDiskUsageBytes() / 1024.0);
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.spotting;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Riproduce un file WAV (o PCM grezzo int16 little-endian) come sorgente audio.
+ * Il file può essere ripetuto più volte per simulare sessioni lunghe.
+ */
+public class WavFileAudioSource extends ReplayAudioSource {
+    private static final String TAG = "WavFileAudioSource";
+
+    private static final int READ_CHUNK_BYTES = 16 * 1024;
+
+    private final File file;
+    private final WavHeader header;
+    private final int loops;
+    private final ByteBuffer readBuffer;
+
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private long dataPosition = 0;
+    private int completedLoops = 0;
+
+    /**
+     * @param loops numero di ripetizioni del file (0 = infinite)
+     */
+    public WavFileAudioSource(File file, boolean realTime, int loops) throws IOException {
+        this(file, readHeader(file), realTime, loops);
+    }
+
+    /**
+     * Costruttore per file PCM grezzi (header sintetico) o header già letto
+     */
+    public WavFileAudioSource(File file, WavHeader header, boolean realTime, int loops) throws IOException {
+        super(header.getSampleRate(), header.getChannelCount(), realTime);
+        this.file = file;
+        this.header = header;
+        this.loops = loops;
+        this.readBuffer = ByteBuffer.allocateDirect(READ_CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        randomAccessFile = new RandomAccessFile(file, "r");
+        channel = randomAccessFile.getChannel();
+
+        Log.d(TAG, "File " + file.getName() + ": " + header.getSampleRate() + "Hz, " +
+                header.getChannelCount() + " canali, " +
+                String.format("%.1f", header.getDurationSeconds()) + " secondi");
+    }
+
+    private static WavHeader readHeader(File file) throws IOException {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".pcm") || name.endsWith(".raw")) {
+            return WavHeader.rawPcm(ModelConfig.SAMPLE_RATE, 1, file.length());
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return WavHeader.read(raf.getChannel());
+        }
+    }
+
+    @Override
+    protected int readSamples(short[] buffer, int offset, int length) throws IOException {
+        if (channel == null) {
+            return ERROR_INVALID_OPERATION;
+        }
+
+        if (dataPosition >= header.getDataSize()) {
+            completedLoops++;
+            if (loops > 0 && completedLoops >= loops) {
+                return END_OF_STREAM;
+            }
+            dataPosition = 0;
+        }
+
+        long remainingBytes = header.getDataSize() - dataPosition;
+        int bytesToRead = (int) Math.min(Math.min(remainingBytes, (long) length * 2), readBuffer.capacity());
+
+        readBuffer.clear();
+        readBuffer.limit(bytesToRead);
+        while (readBuffer.hasRemaining()) {
+            int read = channel.read(readBuffer, header.getDataOffset() + dataPosition + readBuffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        readBuffer.flip();
+
+        int samples = readBuffer.remaining() / 2;
+        readBuffer.asShortBuffer().get(buffer, offset, samples);
+        dataPosition += samples * 2L;
+
+        return samples;
+    }
+
+    @Override
+    public void release() {
+        super.release();
+        try {
+            if (randomAccessFile != null) {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Errore chiusura file " + file.getName(), e);
+        }
+        randomAccessFile = null;
+        channel = null;
+    }
+
+    public WavHeader getHeader() {
+        return header;
+    }
+
+    @Override
+    public String getDescription() {
+        return "File " + file.getName() + " (" + header.getSampleRate() + "Hz, " +
+                header.getChannelCount() + " canali" + (isRealTime() ? ", tempo reale)" : ", max velocità)");
+    }
+}
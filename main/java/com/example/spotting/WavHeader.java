@@ -0,0 +1,167 @@
+package com.example.spotting;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Intestazione di un file WAV PCM (RIFF/WAVE).
+ * Supporta solo PCM intero a 16 bit, l'unico formato usato dalla pipeline.
+ */
+public class WavHeader {
+
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    // Intestazione canonica scritta da write(): RIFF + fmt (16 byte) + data
+    public static final int CANONICAL_SIZE = 44;
+
+    private final int sampleRate;
+    private final int channelCount;
+    private final int bitsPerSample;
+    private final long dataOffset;
+    private final long dataSize;
+
+    public WavHeader(int sampleRate, int channelCount, int bitsPerSample, long dataOffset, long dataSize) {
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        this.bitsPerSample = bitsPerSample;
+        this.dataOffset = dataOffset;
+        this.dataSize = dataSize;
+    }
+
+    /**
+     * Descrive un file PCM grezzo (senza intestazione) int16 little-endian
+     */
+    public static WavHeader rawPcm(int sampleRate, int channelCount, long fileSize) {
+        return new WavHeader(sampleRate, channelCount, 16, 0, fileSize - (fileSize % (2L * channelCount)));
+    }
+
+    /**
+     * Legge l'intestazione scorrendo i chunk RIFF fino al chunk "data".
+     * Non modifica la posizione del canale.
+     */
+    public static WavHeader read(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, 0);
+        if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) { // "RIFF", "WAVE"
+            throw new IOException("File non RIFF/WAVE");
+        }
+
+        ByteBuffer chunk = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        long position = 12;
+        int format = -1;
+        int channels = 0;
+        int rate = 0;
+        int bits = 0;
+
+        while (position + 8 <= channel.size()) {
+            chunk.clear();
+            readFully(channel, chunk, position);
+            int chunkId = chunk.getInt(0);
+            long chunkSize = chunk.getInt(4) & 0xFFFFFFFFL;
+            long body = position + 8;
+
+            if (chunkId == 0x20746d66) { // "fmt "
+                ByteBuffer fmt = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, fmt, body);
+                format = fmt.getShort(0) & 0xFFFF;
+                channels = fmt.getShort(2) & 0xFFFF;
+                rate = fmt.getInt(4);
+                bits = fmt.getShort(14) & 0xFFFF;
+            } else if (chunkId == 0x61746164) { // "data"
+                if (format != FORMAT_PCM && format != FORMAT_EXTENSIBLE) {
+                    throw new IOException("Formato WAV non supportato: " + format);
+                }
+                if (bits != 16) {
+                    throw new IOException("Bit per campione non supportati: " + bits);
+                }
+                // Alcuni registratori scrivono 0 o 0xFFFFFFFF se interrotti: si usa la dimensione reale
+                long available = channel.size() - body;
+                long size = chunkSize == 0 || chunkSize > available ? available : chunkSize;
+                size -= size % (2L * channels);
+                return new WavHeader(rate, channels, bits, body, size);
+            }
+
+            // I chunk hanno lunghezza pari (padding)
+            position = body + chunkSize + (chunkSize & 1);
+        }
+
+        throw new IOException("Chunk data non trovato");
+    }
+
+    /**
+     * Intestazione PCM 16 bit canonica per dataSize byte di campioni
+     */
+    public static WavHeader pcm16(int sampleRate, int channelCount, long dataSize) {
+        return new WavHeader(sampleRate, channelCount, 16, CANONICAL_SIZE, dataSize);
+    }
+
+    /**
+     * Scrive l'intestazione canonica di 44 byte all'inizio del canale.
+     * Non modifica la posizione del canale.
+     */
+    public void write(FileChannel channel) throws IOException {
+        int blockAlign = channelCount * bitsPerSample / 8;
+        ByteBuffer header = ByteBuffer.allocate(CANONICAL_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0x46464952);                     // "RIFF"
+        header.putInt((int) (CANONICAL_SIZE - 8 + dataSize));
+        header.putInt(0x45564157);                     // "WAVE"
+        header.putInt(0x20746d66);                     // "fmt "
+        header.putInt(16);
+        header.putShort((short) FORMAT_PCM);
+        header.putShort((short) channelCount);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * blockAlign);        // byte al secondo
+        header.putShort((short) blockAlign);
+        header.putShort((short) bitsPerSample);
+        header.putInt(0x61746164);                     // "data"
+        header.putInt((int) dataSize);
+        header.flip();
+
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Fine file inattesa nell'intestazione WAV");
+            }
+        }
+        buffer.flip();
+    }
+
+    // Getters
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    public long getFrameCount() {
+        return dataSize / (2L * channelCount);
+    }
+
+    public float getDurationSeconds() {
+        return getFrameCount() / (float) sampleRate;
+    }
+}